@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.aamtool;
+
+import com.bioinceptionlabs.reactionblast.mechanism.ReactionMechanismTool;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MDLRXNV2000Reader;
+import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.Reaction;
+import org.openscience.cdk.interfaces.IReaction;
+
+import static com.bioinceptionlabs.reactionblast.tools.MoleculeTools.ExtReactionManipulatorTool.deepClone;
+
+/**
+ * End-to-end mapping over the bundled RXN corpora. Every call maps the next
+ * reaction of the corpus, so the score is the mean latency (and, with
+ * {@code -prof gc}, the mean allocation) per reaction across the corpus.
+ *
+ * The files are parsed once before measurement; I/O is not timed. Run one
+ * corpus with {@code -p corpus=kegg}. The {@code bug} corpus of
+ * pathological inputs runs to the MCS timeouts and is left out of the
+ * defaults; benchmark it with {@code -p corpus=bug}. The corpus root defaults to
+ * {@code src/test/resources/rxn} and can be moved with
+ * {@code -Drdt.jmh.corpus.root}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class CorpusBenchmark {
+
+    private static final String CORPUS_ROOT
+            = System.getProperty("rdt.jmh.corpus.root", "src/test/resources/rxn");
+
+    @Param({"kegg", "rhea", "brenda", "macie", "other"})
+    public String corpus;
+
+    private final List<IReaction> reactions = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void read() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(Paths.get(CORPUS_ROOT, corpus))) {
+            files = listing.filter(p -> p.toString().endsWith(".rxn")).sorted().toList();
+        }
+        for (Path file : files) {
+            try (InputStream in = Files.newInputStream(file);
+                    MDLRXNV2000Reader reader = new MDLRXNV2000Reader(in)) {
+                IReaction reaction = reader.read(new Reaction());
+                String name = file.getFileName().toString();
+                reaction.setID(name.substring(0, name.length() - ".rxn".length()));
+                reactions.add(reaction);
+            } catch (Exception e) {
+                System.err.println("Skipping " + file + ": " + e.getMessage());
+            }
+        }
+        if (reactions.isEmpty()) {
+            throw new IllegalStateException("No readable RXN files in " + Paths.get(CORPUS_ROOT, corpus));
+        }
+    }
+
+    /**
+     * The mapper annotates its input, so every call gets a fresh copy.
+     */
+    @State(Scope.Thread)
+    public static class NextReaction {
+
+        IReaction reaction;
+
+        @Setup(Level.Invocation)
+        public void pick(CorpusBenchmark benchmark) throws CloneNotSupportedException {
+            reaction = deepClone(benchmark.reactions.get(benchmark.next));
+            benchmark.next = (benchmark.next + 1) % benchmark.reactions.size();
+        }
+    }
+
+    @Benchmark
+    public ReactionMechanismTool mapReaction(NextReaction next) throws Exception {
+        return new ReactionMechanismTool(next.reaction, true, true, false, true, true,
+                new StandardizeReaction());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import com.bioinceptionlabs.reactionblast.mapping.GraphMatcher.MCSSolution;
+import com.bioinceptionlabs.reactionblast.mapping.GraphMatcher.MCSThread;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.GameTheoryEngine.GameTheoryMatrix;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.Holder;
+import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Pairwise MCS stage: one full {@link GraphMatcher#matcher} pass over all
+ * educt/product pairs of a reaction, and a single {@link MCSThread} pair.
+ *
+ * The MCS result cache is emptied before every call, so each invocation pays
+ * for the search; the structure-key and artefact memos stay warm as they do
+ * across the algorithms of one mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class MatcherBenchmark {
+
+    @Param({
+        "CC(=O)C=C.CC=CC=C>>CC1CC(CC=C1)C(C)=O",
+        "CC(=O)OCC.O>>CC(=O)O.OCC",
+        "OC(=O)c1ccccc1O.CC(=O)OC(C)=O>>CC(=O)Oc1ccccc1C(O)=O.CC(O)=O"
+    })
+    public String reactionSmiles;
+
+    @Param({"MIN", "RINGS"})
+    public IMappingAlgorithm algorithm;
+
+    private Holder holder;
+    private IAtomContainer educt;
+    private IAtomContainer product;
+
+    @Setup(Level.Trial)
+    public void prepare() throws Exception {
+        IReaction reaction = new SmilesParser(SilentChemObjectBuilder.getInstance())
+                .parseReactionSmiles(reactionSmiles);
+        reaction.setID("JMH");
+        IReaction standardized = new StandardizeReaction().standardize(reaction);
+        IReaction prepared = Reactor.PreparedReaction.prepare(standardized).getReaction();
+        holder = new GameTheoryMatrix(algorithm, prepared, true).getMatrixHolder();
+        educt = prepared.getReactants().getAtomContainer(0);
+        product = prepared.getProducts().getAtomContainer(0);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws Exception {
+        ThreadSafeCache.getInstance().cleanup();
+        ReactionContainer container = holder.getReactionContainer();
+        for (int i = 0; i < container.getEductCount(); i++) {
+            container.setEductModified(i, true);
+        }
+        for (int j = 0; j < container.getProductCount(); j++) {
+            container.setProductModified(j, true);
+        }
+    }
+
+    @Benchmark
+    public Collection<MCSSolution> matcher() throws Exception {
+        return GraphMatcher.matcher(holder);
+    }
+
+    @Benchmark
+    public MCSSolution mcsThread() throws Exception {
+        return new MCSThread(algorithm, 0, 0, educt, product,
+                "JMH", algorithm.name(), 0).call();
+    }
+}
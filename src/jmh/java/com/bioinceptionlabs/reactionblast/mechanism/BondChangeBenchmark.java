@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mechanism;
+
+import com.bioinceptionlabs.reactionblast.api.RDT;
+import com.bioinceptionlabs.reactionblast.api.ReactionCanonicalizer;
+import com.bioinceptionlabs.reactionblast.api.ReactionResult;
+import com.bioinceptionlabs.reactionblast.fingerprints.IPatternFingerprinter;
+import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static com.bioinceptionlabs.reactionblast.tools.MoleculeTools.ExtReactionManipulatorTool.deepClone;
+
+/**
+ * Annotation stage of an already mapped reaction: bond change detection,
+ * the weighted reaction-centre fingerprint and the canonical reaction hash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class BondChangeBenchmark {
+
+    @Param({
+        "CC(=O)C=C.CC=CC=C>>CC1CC(CC=C1)C(C)=O",
+        "CC(=O)OCC.O>>CC(=O)O.OCC",
+        "OC(=O)c1ccccc1O.CC(=O)OC(C)=O>>CC(=O)Oc1ccccc1C(O)=O.CC(O)=O"
+    })
+    public String reactionSmiles;
+
+    private IReaction mappedReaction;
+    private IPatternFingerprinter reactionCentre;
+    private ReactionResult result;
+
+    @Setup(Level.Trial)
+    public void map() throws Exception {
+        IReaction reaction = new SmilesParser(SilentChemObjectBuilder.getInstance())
+                .parseReactionSmiles(reactionSmiles);
+        reaction.setID("JMH");
+        ReactionMechanismTool rmt = new ReactionMechanismTool(
+                reaction, true, false, false, true, true, new StandardizeReaction());
+        MappingSolution solution = rmt.getSelectedSolution();
+        mappedReaction = solution.getReactor().getReactionWithAtomAtomMapping();
+        reactionCentre = solution.getBondChangeCalculator().getReactionCenterWFingerprint();
+        result = RDT.map(reactionSmiles);
+    }
+
+    /**
+     * The calculator annotates the reaction it is given, so every call gets
+     * its own copy.
+     */
+    @State(Scope.Thread)
+    public static class WorkingCopy {
+
+        IReaction reaction;
+
+        @Setup(Level.Invocation)
+        public void copy(BondChangeBenchmark benchmark) throws Exception {
+            reaction = deepClone(benchmark.mappedReaction);
+        }
+    }
+
+    @Benchmark
+    public BondChangeCalculator computeBondChanges(WorkingCopy copy) throws Exception {
+        BondChangeCalculator bcc = new BondChangeCalculator(copy.reaction);
+        bcc.computeBondChanges(false, false);
+        return bcc;
+    }
+
+    @Benchmark
+    public double[] weightedHashedFingerprint() {
+        return reactionCentre.getWeightedHashedFingerPrint();
+    }
+
+    @Benchmark
+    public String canonicalHash() {
+        return ReactionCanonicalizer.computeCanonicalHash(
+                result.getFormedCleavedBonds(),
+                result.getOrderChangedBonds(),
+                result.getStereoChangedBonds(),
+                result.getReactionCentreFingerprint());
+    }
+}
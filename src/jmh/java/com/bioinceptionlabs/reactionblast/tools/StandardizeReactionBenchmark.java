@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.tools;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Reagent filtering of multi-component reactions. The filter builds a new
+ * reaction and leaves its input alone, so one parsed reaction serves every
+ * call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StandardizeReactionBenchmark {
+
+    @Param({
+        "CC(=O)O.OCC.OS(O)(=O)=O>>CC(=O)OCC.O",
+        "Brc1ccccc1.OB(O)c1ccccc1.CCO.O=C([O-])[O-].[K+].[K+]>>c1ccc(cc1)-c1ccccc1",
+        "CC(=O)C=C.CC=CC=C>>CC1CC(CC=C1)C(C)=O"
+    })
+    public String reactionSmiles;
+
+    private final StandardizeReaction standardizer = new StandardizeReaction();
+    private IReaction reaction;
+
+    @Setup(Level.Trial)
+    public void parse() throws Exception {
+        reaction = new SmilesParser(SilentChemObjectBuilder.getInstance())
+                .parseReactionSmiles(reactionSmiles);
+        reaction.setID("JMH");
+    }
+
+    @Benchmark
+    public IReaction filterReagents() {
+        return standardizer.filterReagents(reaction);
+    }
+}
@@ -26,16 +26,24 @@ import java.io.IOException;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.SEVERE;
 import static java.util.logging.Level.WARNING;
+import static org.openscience.cdk.CDKConstants.ATOM_ATOM_MAPPING;
 import org.openscience.cdk.AtomContainer;
 import org.openscience.cdk.Reaction;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.graph.ConnectivityChecker;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IDoubleBondStereochemistry;
 import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.interfaces.ISingleElectron;
+import org.openscience.cdk.interfaces.IStereoElement;
 import org.openscience.cdk.io.CMLReader;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.smiles.SmiFlavor;
@@ -45,6 +53,8 @@ import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.ExtAtomContainerManipulator;
 import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MDLRXNV2000Reader;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecord;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecordReader;
 
 /**
  * @contact Syed Asad Rahman, BioInception.
@@ -56,6 +66,13 @@ class ChemicalFormatParser {
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(ChemicalFormatParser.class);
 
+    /**
+     * System property selecting how parsed reactions are normalised:
+     * {@code direct} (default) configures the parsed molecules in place,
+     * {@code roundtrip} regenerates them from a mapped reaction SMILES.
+     */
+    static final String NORMALISATION_PROPERTY = "rdt.input.normalisation";
+
     protected static IReaction parseCML(String input) throws FileNotFoundException, CDKException {
         File f = new File(input);
         try {
@@ -106,9 +123,9 @@ class ChemicalFormatParser {
             LOGGER.info(INFO, "Annotating Reaction {0}", filepath.getName());
             IReaction rxnReactions;
             try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new FileReader(filepath))) {
-                rxnReactions = reader.read(new Reaction());
+                rxnReactions = reader.read(SilentChemObjectBuilder.getInstance().newReaction());
                 rxnReactions.setID(filepath.getName().split("\\.rxn")[0]);
-                rxnReactions = convertRoundTripRXNSMILES(rxnReactions);
+                rxnReactions = normaliseReaction(rxnReactions);
                 reactions.add(rxnReactions);
             } catch (IOException | CDKException ex) {
                 LOGGER.error(SEVERE, "ERROR in Reading Reaction file " + filepath, ex);
@@ -117,6 +134,100 @@ class ChemicalFormatParser {
         return reactions;
     }
 
+    /**
+     * Normalise a parsed reaction with the method selected by
+     * {@link #NORMALISATION_PROPERTY}.
+     *
+     * @param reaction parsed reaction
+     * @return the configured reaction
+     * @throws CDKException if the reaction cannot be configured
+     */
+    protected static IReaction normaliseReaction(IReaction reaction) throws CDKException {
+        if ("roundtrip".equalsIgnoreCase(getProperty(NORMALISATION_PROPERTY, "direct").trim())) {
+            return convertRoundTripRXNSMILES(reaction);
+        }
+        return configureReaction(reaction);
+    }
+
+    /**
+     * Normalise a parsed reaction in one pass, without writing and re-reading
+     * it as SMILES. The molecules follow those of
+     * {@link #convertRoundTripRXNSMILES(IReaction)}: each disconnected fragment
+     * becomes a molecule of its own (only the first keeps the molecule ID),
+     * coordinates, radicals, wedges and atom properties other than positive
+     * atom-atom map numbers are dropped, and atom types are configured. Unlike
+     * the round trip, atoms keep their input order and agents are configured
+     * as well as reactants and products.
+     *
+     * @param ref_reaction parsed reaction; its molecules are modified
+     * @return the configured reaction
+     * @throws CDKException if an atom has no implicit hydrogen count
+     */
+    protected static IReaction configureReaction(IReaction ref_reaction) throws CDKException {
+        IReaction reaction = ref_reaction.getBuilder().newInstance(IReaction.class);
+        reaction.setID(ref_reaction.getID());
+        for (IAtomContainer molecule : ref_reaction.getReactants().atomContainers()) {
+            for (IAtomContainer fragment : configureFragments(molecule)) {
+                reaction.addReactant(fragment, 1.0);
+            }
+        }
+        for (IAtomContainer molecule : ref_reaction.getProducts().atomContainers()) {
+            for (IAtomContainer fragment : configureFragments(molecule)) {
+                reaction.addProduct(fragment, 1.0);
+            }
+        }
+        for (IAtomContainer molecule : ref_reaction.getAgents().atomContainers()) {
+            for (IAtomContainer fragment : configureFragments(molecule)) {
+                reaction.addAgent(fragment);
+            }
+        }
+        return reaction;
+    }
+
+    private static List<IAtomContainer> configureFragments(IAtomContainer molecule) throws CDKException {
+        for (IAtom atom : molecule.atoms()) {
+            if (atom.getImplicitHydrogenCount() == null) {
+                throw new CDKException("One or more atoms had an undefined number of implicit hydrogens");
+            }
+            Object mapIdx = atom.getProperty(ATOM_ATOM_MAPPING);
+            atom.setProperties(new HashMap<>());
+            if (mapIdx instanceof Integer && (Integer) mapIdx > 0) {
+                atom.setProperty(ATOM_ATOM_MAPPING, mapIdx);
+            }
+            atom.setPoint2d(null);
+            atom.setPoint3d(null);
+            atom.setID(null);
+        }
+        for (IBond bond : molecule.bonds()) {
+            bond.setProperties(new HashMap<>());
+            bond.setStereo(IBond.Stereo.NONE);
+            bond.setID(null);
+        }
+        /*
+         the SMILES parser marks the double bonds it gave a configuration
+         */
+        for (IStereoElement<?, ?> element : molecule.stereoElements()) {
+            if (element instanceof IDoubleBondStereochemistry) {
+                ((IDoubleBondStereochemistry) element).getStereoBond().setStereo(IBond.Stereo.E_Z_BY_COORDINATES);
+            }
+        }
+        List<ISingleElectron> radicals = new ArrayList<>();
+        for (ISingleElectron electron : molecule.singleElectrons()) {
+            radicals.add(electron);
+        }
+        for (ISingleElectron electron : radicals) {
+            molecule.removeSingleElectron(electron);
+        }
+        ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(molecule);
+
+        List<IAtomContainer> fragments = new ArrayList<>();
+        for (IAtomContainer fragment : ConnectivityChecker.partitionIntoMolecules(molecule).atomContainers()) {
+            fragment.setID(fragments.isEmpty() ? molecule.getID() : null);
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
     protected static IReaction convertRoundTripRXNSMILES(IReaction ref_reaction) throws CDKException {
         final SmilesGenerator sg = new SmilesGenerator(
                 SmiFlavor.AtomAtomMap
@@ -150,7 +261,7 @@ class ChemicalFormatParser {
             try {
                 IReaction parseReactionSmile = sp.parseReactionSmiles(s);
                 try {
-                    parseReactionSmile = convertRoundTripRXNSMILES(parseReactionSmile);
+                    parseReactionSmile = normaliseReaction(parseReactionSmile);
                 } catch (CDKException e) {
                     LOGGER.error(SEVERE, NEW_LINE, " Sorry - error in Configuring reaction smiles: ", e.getMessage());
                 }
@@ -172,4 +283,36 @@ class ChemicalFormatParser {
         }
         return reactions;
     }
+
+    /**
+     * Parse one line of a batch SMILES file: the reaction SMILES followed by
+     * an optional identifier, separated by whitespace.
+     *
+     * @param line input line
+     * @param lineNumber 1-based line number, used when no identifier is given
+     * @return the configured reaction
+     * @throws CDKException if the SMILES cannot be parsed or configured
+     */
+    protected static IReaction parseReactionSMILESLine(String line, int lineNumber) throws CDKException {
+        String[] tokens = line.trim().split("\\s+", 2);
+        if (!tokens[0].contains(">>")) {
+            throw new InvalidSmilesException("Not a valid reaction SMILES: " + tokens[0]);
+        }
+        SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IReaction reaction = sp.parseReactionSmiles(tokens[0]);
+        reaction.setID(tokens.length > 1 ? tokens[1].trim() : "smiles_" + lineNumber);
+        return normaliseReaction(reaction);
+    }
+
+    /**
+     * Parse one record streamed by {@link RXNRecordReader}.
+     *
+     * @param record raw RXN record
+     * @return the configured reaction
+     * @throws CDKException if the record is not a valid RXN block
+     */
+    protected static IReaction parseRXNRecord(RXNRecord record) throws CDKException {
+        IReaction reaction = record.toReaction(SilentChemObjectBuilder.getInstance());
+        return normaliseReaction(reaction);
+    }
 }
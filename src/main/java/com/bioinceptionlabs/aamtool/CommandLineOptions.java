@@ -98,4 +98,39 @@ public class CommandLineOptions {
         return optionsCompare;
     }
 
+    /**
+     *
+     * @return
+     */
+    protected Options createAAMBatchOptions() {
+        Options optionsBatch = new Options();
+        optionsBatch.addOption("h", "help", false, "Help page for command usage");
+        optionsBatch.addOption("Q", "formatQ", true, "Query Type (SMI: one reaction SMILES [ID] per line, RXN: RDF/multi-RXN)");
+        optionsBatch.addOption("q", "query", true, "Query file (use - for stdin)");
+        optionsBatch.addOption("j", "job", true, "Task (AAM_BATCH)");
+        optionsBatch.addOption("o", "output", true, "Output file (default stdout)");
+        optionsBatch.addOption("f", "formatO", true, "Output format (SMI/RXN)");
+        optionsBatch.addOption("u", "premap", false, "use user defined mappings");
+        optionsBatch.addOption("c", "complexMode", false, "Use Rings etc. bit time comsuming");
+        optionsBatch.addOption("b", "acceptNoChange", false, "Accept Transporter Reactions (no bond change)");
+        return optionsBatch;
+    }
+
+    /**
+     *
+     * @return
+     */
+    protected Options createServeOptions() {
+        Options optionsServe = new Options();
+        optionsServe.addOption("h", "help", false, "Help page for command usage");
+        optionsServe.addOption("j", "job", true, "Task (SERVE)");
+        optionsServe.addOption("a", "address", true, "Address to listen on (default 127.0.0.1)");
+        optionsServe.addOption("P", "port", true, "Port to listen on (default 8080)");
+        optionsServe.addOption("w", "workers", true, "Reactions mapped at once (default: mapping threads)");
+        optionsServe.addOption("k", "queue", true, "Requests allowed to wait for a worker (default 64)");
+        optionsServe.addOption("d", "deadline", true, "Default and maximum per-request deadline in ms (default 60000)");
+        optionsServe.addOption("W", "warmup", true, "Warm-up before listening (NONE/TABLES/MAP/FULL, default MAP)");
+        return optionsServe;
+    }
+
 }
@@ -24,6 +24,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.PrintStream;
 import static java.lang.System.out;
 import java.util.Map;
 import org.apache.commons.cli.HelpFormatter;
@@ -45,6 +46,16 @@ class Helper extends ChemicalFormatParser {
             = LoggingToolFactory.createLoggingTool(Helper.class);
 
     protected static void getHeader() {
+        getHeader(out);
+    }
+
+    /**
+     * Print the banner to the given stream (batch mode sends it to stderr so
+     * that stdout carries only results).
+     *
+     * @param stream target stream
+     */
+    protected static void getHeader(PrintStream stream) {
         StringBuilder sb = new StringBuilder();
 
         sb.append("!--------------------------------------------------------");
@@ -75,7 +86,7 @@ class Helper extends ChemicalFormatParser {
         sb.append(NEW_LINE);
         sb.append("!--------------------------------------------------------");
         sb.append(NEW_LINE);
-        out.println(sb.toString());
+        stream.println(sb.toString());
 
     }
 
@@ -0,0 +1,643 @@
+/*
+ * Copyright (C) 2007-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.bioinceptionlabs.aamtool;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import com.bioinceptionlabs.reactionblast.api.RDT;
+import com.bioinceptionlabs.reactionblast.api.ReactionResult;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
+
+/**
+ * Long-running HTTP/JSON front end for {@link RDT}, started by
+ * {@code -j SERVE}. The JVM, CDK classes and mapping caches stay warm
+ * between requests, so latency is mapping time rather than process start.
+ * <p>
+ * Endpoints (GET with query parameters, or POST with a flat JSON object):
+ * <ul>
+ * <li>{@code /map?smiles=...} - atom-atom mapping and bond change counts</li>
+ * <li>{@code /annotate?smiles=...} - the mapping plus the bond changes,
+ * reaction centre, signature and ITS hash</li>
+ * <li>{@code /compare?query=...&target=...} - bond change similarity</li>
+ * <li>{@code /health} - liveness and load</li>
+ * <li>{@code /metrics} - {@link MappingDiagnostics} and server counters in
+ * Prometheus text format</li>
+ * </ul>
+ * Optional parameters are {@code budgetMs} (per-request deadline, capped by
+ * the server default), {@code generate2D} and {@code complexMapping}.
+ * <p>
+ * At most {@code workers} reactions are mapped at once, on the shared
+ * {@link MappingExecution} pool; up to {@code queueCapacity} more wait, and
+ * requests beyond that are refused with 503 at once. Time spent waiting
+ * counts towards the deadline. The remaining time becomes the reaction's
+ * time budget, so a slow reaction answers with its best mapping found so
+ * far ({@code "complete": false}); a request that cannot start or finish
+ * in time gets 504. A mapping given up on keeps its worker until it has
+ * stopped, so the limit holds under overload too.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class MappingServer {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(MappingServer.class);
+
+    /**
+     * How long past its deadline a mapping may run before the request gives
+     * up on it; the budget checkpoints are between searches, not inside one.
+     */
+    private static final long DEADLINE_GRACE_MS = 1_000L;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final HttpServer server;
+    private final ExecutorService exchanges;
+    final Semaphore admitted;
+    final Semaphore running;
+    private final int workers;
+    private final int queueCapacity;
+    private final long defaultBudgetMs;
+    private final CountDownLatch stopped;
+    private final AtomicInteger inFlight;
+    private final Map<String, LongAdder> responses;
+    private final LongAdder rejected;
+    private final LongAdder deadlineExceeded;
+
+    /**
+     * @param address address to listen on (port 0 picks a free port)
+     * @param workers reactions mapped at once
+     * @param queueCapacity requests allowed to wait for a worker
+     * @param defaultBudgetMs deadline of a request that does not ask for one,
+     * and the cap for those that do
+     * @throws IOException if the address cannot be bound
+     */
+    public MappingServer(InetSocketAddress address, int workers, int queueCapacity,
+            long defaultBudgetMs) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be >= 1: " + workers);
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity must be >= 0: " + queueCapacity);
+        }
+        if (defaultBudgetMs < 1) {
+            throw new IllegalArgumentException("defaultBudgetMs must be >= 1: " + defaultBudgetMs);
+        }
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.defaultBudgetMs = defaultBudgetMs;
+        this.admitted = new Semaphore(workers + queueCapacity);
+        this.running = new Semaphore(workers, true);
+        this.stopped = new CountDownLatch(1);
+        this.inFlight = new AtomicInteger();
+        this.responses = new LinkedHashMap<>();
+        this.rejected = new LongAdder();
+        this.deadlineExceeded = new LongAdder();
+        this.exchanges = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(exchanges);
+        for (String endpoint : List.of("map", "annotate", "compare", "health", "metrics")) {
+            responses.put(endpoint, new LongAdder());
+        }
+        server.createContext("/map", exchange -> handleMapping(exchange, "map"));
+        server.createContext("/annotate", exchange -> handleMapping(exchange, "annotate"));
+        server.createContext("/compare", exchange -> handleMapping(exchange, "compare"));
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, give those in progress up to
+     * {@code graceSeconds} to finish, and release {@link #awaitStop()}.
+     *
+     * @param graceSeconds seconds to wait for requests in progress
+     */
+    public void stop(int graceSeconds) {
+        server.stop(graceSeconds);
+        exchanges.shutdownNow();
+        stopped.countDown();
+    }
+
+    /**
+     * Block until {@link #stop(int)} is called.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleMapping(HttpExchange exchange, String endpoint) throws IOException {
+        long start = System.currentTimeMillis();
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, endpoint, 503, error("server busy: " + queueCapacity + " requests already waiting"));
+            return;
+        }
+        inFlight.incrementAndGet();
+        try {
+            Map<String, String> params = parameters(exchange);
+            long budgetMs = Math.min(defaultBudgetMs, parseLong(params.get("budgetMs"), defaultBudgetMs));
+            if (budgetMs < 1) {
+                respond(exchange, endpoint, 400, error("budgetMs must be >= 1"));
+                return;
+            }
+            long deadline = start + budgetMs;
+            Request request = new Request(endpoint, params,
+                    parseBoolean(params.get("generate2D"), true),
+                    parseBoolean(params.get("complexMapping"), true));
+            request.validate();
+            if (!running.tryAcquire(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                deadlineExceeded.increment();
+                respond(exchange, endpoint, 504, error("deadline expired while queued"));
+                return;
+            }
+            /*
+             * The worker slot is given back by the task itself when it
+             * stops, not when the request gives up on it: a pool task keeps
+             * running after cancel() until its budget ends it, and must go on
+             * counting against the worker limit until then.
+             */
+            AtomicBoolean started = new AtomicBoolean();
+            Future<String> future;
+            try {
+                future = MappingExecution.executor().submit(() -> {
+                    if (!started.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    try {
+                        return request.run(deadline);
+                    } finally {
+                        running.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                running.release();
+                throw e;
+            }
+            try {
+                long wait = Math.max(0L, deadline - System.currentTimeMillis()) + DEADLINE_GRACE_MS;
+                respond(exchange, endpoint, 200, future.get(wait, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException | CancellationException e) {
+                if (started.compareAndSet(false, true)) {
+                    running.release();
+                }
+                future.cancel(true);
+                deadlineExceeded.increment();
+                respond(exchange, endpoint, 504, error("deadline exceeded after " + budgetMs + " ms"));
+            } catch (ExecutionException e) {
+                Throwable cause = rootCause(e);
+                if (cause instanceof CancellationException) {
+                    deadlineExceeded.increment();
+                    respond(exchange, endpoint, 504, error("deadline exceeded after " + budgetMs + " ms"));
+                    return;
+                }
+                int status = cause instanceof IllegalArgumentException || cause instanceof CDKException
+                        ? 400 : 500;
+                respond(exchange, endpoint, status, error(message(cause)));
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, endpoint, 400, error(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, endpoint, 503, error("server stopping"));
+        } catch (RejectedExecutionException e) {
+            respond(exchange, endpoint, 503, error("server stopping"));
+        } finally {
+            inFlight.decrementAndGet();
+            admitted.release();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"status\":\"ok\"");
+        sb.append(",\"inFlight\":").append(inFlight.get());
+        sb.append(",\"workers\":").append(workers);
+        sb.append(",\"queueCapacity\":").append(queueCapacity);
+        sb.append(",\"defaultBudgetMs\":").append(defaultBudgetMs);
+        sb.append('}');
+        respond(exchange, "health", 200, sb.toString());
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringBuilder sb = new StringBuilder(8192);
+        MappingDiagnostics.writePrometheus(sb);
+        sb.append("# HELP rdt_server_responses_total Responses sent, by endpoint.\n");
+        sb.append("# TYPE rdt_server_responses_total counter\n");
+        for (Map.Entry<String, LongAdder> e : responses.entrySet()) {
+            sb.append("rdt_server_responses_total{endpoint=\"").append(e.getKey()).append("\"} ")
+                    .append(e.getValue().sum()).append('\n');
+        }
+        sb.append("# HELP rdt_server_rejected_total Requests refused because the queue was full.\n");
+        sb.append("# TYPE rdt_server_rejected_total counter\n");
+        sb.append("rdt_server_rejected_total ").append(rejected.sum()).append('\n');
+        sb.append("# HELP rdt_server_deadline_exceeded_total Requests that ran out of time.\n");
+        sb.append("# TYPE rdt_server_deadline_exceeded_total counter\n");
+        sb.append("rdt_server_deadline_exceeded_total ").append(deadlineExceeded.sum()).append('\n');
+        sb.append("# HELP rdt_server_in_flight Requests queued or being mapped.\n");
+        sb.append("# TYPE rdt_server_in_flight gauge\n");
+        sb.append("rdt_server_in_flight ").append(inFlight.get()).append('\n');
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        responses.get("metrics").increment();
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        responses.get(endpoint).increment();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        try {
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Client went away before the response was sent: ", e.getMessage());
+            exchange.close();
+        }
+    }
+
+    /**
+     * One map, annotate or compare call, validated before it is queued.
+     */
+    private static final class Request {
+
+        private final String endpoint;
+        private final Map<String, String> params;
+        private final boolean generate2D;
+        private final boolean complexMapping;
+
+        Request(String endpoint, Map<String, String> params, boolean generate2D, boolean complexMapping) {
+            this.endpoint = endpoint;
+            this.params = params;
+            this.generate2D = generate2D;
+            this.complexMapping = complexMapping;
+        }
+
+        void validate() {
+            if (endpoint.equals("compare")) {
+                required("query");
+                required("target");
+            } else {
+                required("smiles");
+            }
+        }
+
+        private String required(String name) {
+            String value = params.get(name);
+            if (value == null || value.isEmpty()) {
+                throw new IllegalArgumentException("missing parameter: " + name);
+            }
+            return value;
+        }
+
+        String run(long deadline) {
+            if (endpoint.equals("compare")) {
+                ReactionResult query = map(required("query"), deadline);
+                ReactionResult target = map(required("target"), deadline);
+                StringBuilder sb = new StringBuilder("{");
+                field(sb, "similarity").append(query.similarity(target));
+                field(sb, "complete").append(query.isComplete() && target.isComplete());
+                field(sb, "query");
+                writeResult(sb, query, false);
+                field(sb, "target");
+                writeResult(sb, target, false);
+                return sb.append('}').toString();
+            }
+            StringBuilder sb = new StringBuilder();
+            writeResult(sb, map(required("smiles"), deadline), endpoint.equals("annotate"));
+            return sb.toString();
+        }
+
+        private ReactionResult map(String smiles, long deadline) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining < 1) {
+                throw new CancellationException("deadline expired");
+            }
+            return RDT.map(smiles, generate2D, complexMapping, remaining);
+        }
+    }
+
+    static void writeResult(StringBuilder sb, ReactionResult result, boolean annotate) {
+        sb.append('{');
+        field(sb, "smiles");
+        quote(sb, result.getInputSmiles());
+        field(sb, "mapped").append(result.isMapped());
+        field(sb, "complete").append(result.isComplete());
+        field(sb, "mappedSmiles");
+        quote(sb, result.getMappedSmiles());
+        field(sb, "algorithm");
+        quote(sb, result.getAlgorithm());
+        field(sb, "formedCleaved").append(result.getFormedCleavedCount());
+        field(sb, "orderChanges").append(result.getOrderChangeCount());
+        field(sb, "stereoChanges").append(result.getStereoChangeCount());
+        if (annotate) {
+            field(sb, "formedCleavedBonds");
+            quote(sb, result.getFormedCleavedBonds());
+            field(sb, "orderChangedBonds");
+            quote(sb, result.getOrderChangedBonds());
+            field(sb, "stereoChangedBonds");
+            quote(sb, result.getStereoChangedBonds());
+            field(sb, "reactionCentre");
+            quote(sb, result.getReactionCentreFingerprint());
+            field(sb, "signature");
+            quote(sb, result.getReactionSignature());
+            field(sb, "canonicalHash");
+            quote(sb, result.getCanonicalHash());
+        }
+        sb.append('}');
+    }
+
+    private static StringBuilder field(StringBuilder sb, String name) {
+        if (sb.charAt(sb.length() - 1) != '{') {
+            sb.append(',');
+        }
+        return quote(sb, name).append(':');
+    }
+
+    private static StringBuilder quote(StringBuilder sb, List<String> values) {
+        sb.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            quote(sb, values.get(i));
+        }
+        return sb.append(']');
+    }
+
+    static StringBuilder quote(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        return quote(sb, message).append('}').toString();
+    }
+
+    private static Throwable rootCause(Throwable t) {
+        Throwable cause = t;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static String message(Throwable t) {
+        return t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+    }
+
+    private static boolean parseBoolean(String value, boolean fallback) {
+        return value == null || value.isEmpty() ? fallback : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Query parameters, overlaid by the fields of a JSON request body.
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (body.length > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("request body larger than " + MAX_BODY_BYTES + " bytes");
+                }
+                String text = new String(body, StandardCharsets.UTF_8).trim();
+                if (!text.isEmpty()) {
+                    params.putAll(parseJsonObject(text));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parse a flat JSON object of string, number, boolean and null values;
+     * numbers and booleans are returned as their literal text.
+     *
+     * @param text JSON object
+     * @return field values by name, null values omitted
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, String> parseJsonObject(String text) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String name = readString(text, pos);
+                expect(text, pos, ':');
+                String value;
+                if (peek(text, pos) == '"') {
+                    value = readString(text, pos);
+                } else {
+                    int start = pos[0];
+                    while (pos[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(pos[0])) < 0) {
+                        pos[0]++;
+                    }
+                    value = text.substring(start, pos[0]);
+                    if (value.isEmpty() || "{[".indexOf(value.charAt(0)) >= 0) {
+                        throw new IllegalArgumentException("unsupported JSON value for " + name);
+                    }
+                    if (value.equals("null")) {
+                        value = null;
+                    }
+                }
+                if (value != null) {
+                    fields.put(name, value);
+                }
+                if (peek(text, pos) == ',') {
+                    pos[0]++;
+                    continue;
+                }
+                expect(text, pos, '}');
+                break;
+            }
+        }
+        if (skipSpace(text, pos[0]) != text.length()) {
+            throw new IllegalArgumentException("trailing characters after JSON object");
+        }
+        return fields;
+    }
+
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("bad unicode escape in JSON string");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad unicode escape in JSON string");
+                    }
+                    pos[0] += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("unterminated JSON string");
+    }
+
+    private static void expect(String text, int[] pos, char c) {
+        if (peek(text, pos) != c) {
+            throw new IllegalArgumentException("expected '" + c + "' at offset " + pos[0] + " of JSON body");
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpace(text, pos[0]);
+        return pos[0] < text.length() ? text.charAt(pos[0]) : '\0';
+    }
+
+    private static int skipSpace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -18,15 +18,29 @@
  */
 package com.bioinceptionlabs.aamtool;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.net.InetSocketAddress;
 import static java.lang.System.out;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 import static java.util.logging.Level.SEVERE;
@@ -45,7 +59,10 @@ import javax.xml.transform.stream.StreamResult;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
+import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.w3c.dom.DOMException;
@@ -55,7 +72,14 @@ import static com.bioinceptionlabs.aamtool.ChemicalFormatParser.parseRXN;
 import static com.bioinceptionlabs.aamtool.Helper.displayBlankLines;
 import static com.bioinceptionlabs.aamtool.Helper.getHeader;
 import static com.bioinceptionlabs.aamtool.Helper.printHelp;
+import com.bioinceptionlabs.reactionblast.api.RDT;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
+import com.bioinceptionlabs.reactionblast.mechanism.MappingSolution;
 import com.bioinceptionlabs.reactionblast.mechanism.ReactionMechanismTool;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MDLV2000RXNWriter;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecord;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecordReader;
 
 /**
  * @contact Syed Asad Rahman, BioInception.
@@ -75,6 +99,8 @@ public class ReactionDecoder extends Annotator {
             Options createAAMOptions = cmd.createAAMOptions();
             Options createCompareOptions = cmd.createCompareOptions();
             Options createAnnotateOptions = cmd.createAnnotateOptions();
+            Options createAAMBatchOptions = cmd.createAAMBatchOptions();
+            Options createServeOptions = cmd.createServeOptions();
 
             DefaultParser parser1 = new DefaultParser();
             CommandLine aamLine = parser1.parse(createAAMOptions, args, true);
@@ -82,11 +108,18 @@ public class ReactionDecoder extends Annotator {
             CommandLine compareLine = parser2.parse(createCompareOptions, args, true);
             DefaultParser parser3 = new DefaultParser();
             CommandLine annotateLine = parser3.parse(createAnnotateOptions, args, true);
+            DefaultParser parser4 = new DefaultParser();
+            CommandLine batchLine = parser4.parse(createAAMBatchOptions, args, true);
+            DefaultParser parser5 = new DefaultParser();
+            CommandLine serveLine = parser5.parse(createServeOptions, args, true);
+
+            boolean batchMode = batchLine.hasOption('j')
+                    && batchLine.getOptionValue("j").equalsIgnoreCase("AAM_BATCH");
 
             /*
-             * Print the Header
+             * Print the Header (stdout is reserved for results in batch mode)
              */
-            getHeader();
+            getHeader(batchMode ? System.err : out);
 
             boolean complexMappingFlag = false;
             if (aamLine.hasOption('c') || compareLine.hasOption('c') || annotateLine.hasOption('c')) {
@@ -106,7 +139,19 @@ public class ReactionDecoder extends Annotator {
              */
             ReactionDecoder rxn = new ReactionDecoder();
 
-            if (aamLine.hasOption('j') && aamLine.getOptionValue("j").equalsIgnoreCase("AAM")
+            if (serveLine.hasOption('j') && serveLine.getOptionValue("j").equalsIgnoreCase("SERVE")
+                    && serveLine.hasOption('h')) {
+                out.println("-- SERVE USAGE --");
+                printHelp(out, createServeOptions);
+            } else if (serveLine.hasOption('j') && serveLine.getOptionValue("j").equalsIgnoreCase("SERVE")) {
+
+                out.println("-- SERVE --");
+                rxn.ServeTask(serveLine);
+            } else if (batchMode && batchLine.hasOption('Q') && batchLine.hasOption('q')) {
+
+                System.err.println("-- AAM BATCH --");
+                rxn.AAMBatchTask(batchLine, createAAMBatchOptions, complexMappingFlag, accept_no_change);
+            } else if (aamLine.hasOption('j') && aamLine.getOptionValue("j").equalsIgnoreCase("AAM")
                     && aamLine.hasOption('Q') && aamLine.hasOption('q') && aamLine.hasOption('f')) {
 
                 out.println("-- AAM --");
@@ -129,6 +174,9 @@ public class ReactionDecoder extends Annotator {
             } else if (aamLine.hasOption('j') && aamLine.getOptionValue("j").equalsIgnoreCase("AAM")) {
                 out.println("-- AAM USAGE --");
                 printHelp(out, createAAMOptions);
+            } else if (batchMode) {
+                out.println("-- AAM BATCH USAGE --");
+                printHelp(out, createAAMBatchOptions);
             } else if (compareLine.hasOption('j') && compareLine.getOptionValue("j").equalsIgnoreCase("COMPARE")) {
                 out.println("-- REACTION COMPARE USAGE --");
                 printHelp(out, createCompareOptions);
@@ -139,8 +187,10 @@ public class ReactionDecoder extends Annotator {
                 out.println("-- REACTION DECODER HELP --");
                 Map<String, Options> options = new TreeMap<>();
                 options.put("Atom-Atom Mapping (AAM-Tool)", createAAMOptions);
+                options.put("Atom-Atom Mapping Batch (AAM-Tool)", createAAMBatchOptions);
                 options.put("Reaction Annotation (RA-Tool)", createAnnotateOptions);
                 options.put("Reaction Comparison (RC-Tool)", createCompareOptions);
+                options.put("Mapping Server (SERVE)", createServeOptions);
                 printHelp(options, 80, "EC-BLAST", "End of Help", 5, 3, true, out);
             }
         } catch (Exception ex) {
@@ -194,6 +244,27 @@ public class ReactionDecoder extends Annotator {
         out.println("Output is presented in text format: " + file.getAbsolutePath());
     }
 
+    private void ServeTask(CommandLine serveLine) throws IOException, InterruptedException {
+        String address = serveLine.getOptionValue("a", "127.0.0.1");
+        int port = Integer.parseInt(serveLine.getOptionValue("P", "8080"));
+        int workers = Integer.parseInt(serveLine.getOptionValue("w",
+                Integer.toString(MappingExecution.getParallelism())));
+        int queue = Integer.parseInt(serveLine.getOptionValue("k", "64"));
+        long deadline = Long.parseLong(serveLine.getOptionValue("d", "60000"));
+        RDT.WarmUpLevel warmUp = RDT.WarmUpLevel.valueOf(
+                serveLine.getOptionValue("W", "MAP").toUpperCase(Locale.ROOT));
+
+        MappingServer server = new MappingServer(new InetSocketAddress(address, port), workers, queue, deadline);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(2)));
+        out.println("Warming up (" + warmUp + ")");
+        RDT.warmUp(warmUp);
+        server.start();
+        InetSocketAddress bound = server.getAddress();
+        out.println("Listening on http://" + bound.getHostString() + ":" + bound.getPort()
+                + " (" + workers + " workers, queue " + queue + ", deadline " + deadline + " ms)");
+        server.awaitStop();
+    }
+
     private void AAMTask(CommandLine aamLine, Options createAAMOptions,
             boolean complexMappingFlag, boolean accept_no_change)
             throws Exception {
@@ -586,4 +657,197 @@ public class ReactionDecoder extends Annotator {
             LOGGER.error(SEVERE, null, e);
         }
     }
+
+    /**
+     * Map every reaction in a SMILES or RDF/multi-RXN stream within this JVM.
+     * Input is read one record at a time and each result is written and
+     * flushed before the next reaction is parsed, so memory use does not grow
+     * with the size of the input.
+     */
+    private void AAMBatchTask(CommandLine batchLine, Options createAAMBatchOptions,
+            boolean complexMappingFlag, boolean accept_no_change)
+            throws IOException {
+
+        String inputFormat = batchLine.getOptionValue("Q").toUpperCase(Locale.ROOT);
+        String outputFormat = batchLine.getOptionValue("f", "SMI").toUpperCase(Locale.ROOT);
+        if (!(inputFormat.equals("SMI") || inputFormat.equals("RXN"))
+                || !(outputFormat.equals("SMI") || outputFormat.equals("RXN"))) {
+            displayBlankLines(2, out);
+            out.println("-- USAGE --");
+            printHelp(out, createAAMBatchOptions);
+            return;
+        }
+
+        if (batchLine.hasOption('u')) {
+            REMAP = false;
+        }
+
+        String query = batchLine.getOptionValue("q");
+        InputStream inputStream = query.equals("-") ? System.in : new FileInputStream(query);
+        OutputStream outputStream = batchLine.hasOption('o')
+                ? new FileOutputStream(batchLine.getOptionValue("o")) : nonClosing(out);
+
+        int mapped = 0;
+        int failed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+
+            if (outputFormat.equals("RXN")) {
+                writer.write("$RDFILE 1\n");
+                writer.write("$DATM    " + new SimpleDateFormat("MM/dd/yy HH:mm").format(new Date()) + "\n");
+            } else {
+                writer.write("#ID\tMAPPED_SMILES\tSTATUS\n");
+            }
+
+            if (inputFormat.equals("SMI")) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    String trimmed = line.trim();
+                    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                        continue;
+                    }
+                    String[] tokens = trimmed.split("\\s+", 2);
+                    String id = tokens.length > 1 ? tokens[1].trim() : "smiles_" + lineNumber;
+                    IReaction reaction = null;
+                    String error = null;
+                    try {
+                        reaction = parseReactionSMILESLine(trimmed, lineNumber);
+                    } catch (CDKException ex) {
+                        error = ex.getMessage();
+                    }
+                    if (writeBatchRecord(writer, outputFormat, id, reaction, error,
+                            complexMappingFlag, accept_no_change)) {
+                        mapped++;
+                    } else {
+                        failed++;
+                    }
+                }
+            } else {
+                RXNRecordReader records = new RXNRecordReader(reader);
+                while (hasNextRecord(records)) {
+                    RXNRecord record = records.next();
+                    IReaction reaction = null;
+                    String error = null;
+                    try {
+                        reaction = parseRXNRecord(record);
+                    } catch (CDKException ex) {
+                        error = ex.getMessage();
+                    }
+                    if (writeBatchRecord(writer, outputFormat, record.getId(), reaction, error,
+                            complexMappingFlag, accept_no_change)) {
+                        mapped++;
+                    } else {
+                        failed++;
+                    }
+                }
+            }
+        }
+        System.err.println("Mapped " + mapped + " reaction(s), " + failed + " failed");
+    }
+
+    /**
+     * Standard output for the batch writer: closing the writer flushes it but
+     * leaves the stream open for the rest of the process.
+     */
+    private static OutputStream nonClosing(OutputStream target) {
+        return new FilterOutputStream(target) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static boolean hasNextRecord(RXNRecordReader records) throws IOException {
+        try {
+            return records.hasNext();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Map one reaction and write its result record. Failures are reported in
+     * the output record instead of aborting the batch.
+     *
+     * @return true if the reaction was mapped
+     */
+    private boolean writeBatchRecord(Writer writer, String outputFormat, String id,
+            IReaction reaction, String parseError,
+            boolean complexMappingFlag, boolean accept_no_change) throws IOException {
+
+        IReaction mappedReaction = null;
+        String error = parseError;
+        if (reaction != null && reaction.getReactantCount() == 0 && reaction.getProductCount() == 0) {
+            // e.g. the empty $RXN block of a record that failed in an earlier run
+            error = "empty reaction";
+            reaction = null;
+        }
+        if (reaction != null) {
+            try {
+                ReactionMechanismTool rmt = getReactionMechanismTool(reaction, REMAP,
+                        complexMappingFlag, accept_no_change);
+                MappingSolution solution = rmt.getSelectedSolution();
+                if (solution != null) {
+                    mappedReaction = solution.getBondChangeCalculator().getReaction();
+                } else {
+                    error = "no mapping solution";
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Batch mapping failed for " + id, ex);
+                error = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+            } finally {
+                MappingDiagnostics.resetReaction(reaction.getID());
+            }
+        }
+
+        String status = mappedReaction != null ? "OK"
+                : "FAILED: " + (error == null ? "unknown error" : error.replaceAll("\\s+", " "));
+        if (outputFormat.equals("RXN")) {
+            writer.write("$RFMT $RIREG " + id + "\n");
+            String rxnBlock = null;
+            if (mappedReaction != null) {
+                StringWriter block = new StringWriter();
+                try (MDLV2000RXNWriter rxnWriter = new MDLV2000RXNWriter(block)) {
+                    rxnWriter.write(mappedReaction);
+                } catch (CDKException ex) {
+                    status = "FAILED: " + ex.getMessage();
+                    mappedReaction = null;
+                }
+                if (mappedReaction != null) {
+                    rxnBlock = block.toString();
+                }
+            }
+            /*
+             * RDF readers expect an $RXN block in every record: a failed
+             * reaction gets an empty one and the reason in an ERROR field.
+             */
+            writer.write(rxnBlock != null ? rxnBlock : "$RXN\n" + id + "\n  RDT\n\n  0  0\n");
+            writer.write("$DTYPE ID\n$DATUM " + id + "\n");
+            writer.write("$DTYPE STATUS\n$DATUM " + status + "\n");
+            if (mappedReaction == null) {
+                writer.write("$DTYPE ERROR\n$DATUM " + status.substring("FAILED: ".length()) + "\n");
+            }
+        } else {
+            String smiles = "";
+            if (mappedReaction != null) {
+                try {
+                    smiles = new SmilesGenerator(SmiFlavor.Stereo | SmiFlavor.AtomAtomMap).create(mappedReaction);
+                } catch (CDKException ex) {
+                    status = "FAILED: " + ex.getMessage();
+                    mappedReaction = null;
+                }
+            }
+            writer.write(id + "\t" + smiles + "\t" + status + "\n");
+        }
+        writer.flush();
+        return mappedReaction != null;
+    }
 }
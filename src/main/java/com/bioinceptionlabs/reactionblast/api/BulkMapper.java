@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2007-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
+
+/**
+ * Reaction-level scheduler behind {@link RDT#mapAll}. Reactions are pulled
+ * from the input only while fewer than {@code maxInFlight} results are
+ * pending, mapped as top-level tasks on the shared {@link MappingExecution}
+ * pool (their algorithm and MCS subtasks are forked onto the same worker and
+ * stolen by idle ones; in virtual-thread mode each reaction gets its own
+ * virtual thread), and handed back either in input order (head-of-line)
+ * or in completion order.
+ * <p>
+ * Every reaction is mapped independently with the same settings as
+ * {@link RDT#map(String, boolean, boolean)}, so a result does not depend on
+ * which worker ran it or on what ran alongside it.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+final class BulkMapper implements Iterator<IndexedResult>, AutoCloseable {
+
+    private final Iterator<String> input;
+    private final MappingOptions options;
+    private final ExecutorService executor;
+    private final Deque<Future<IndexedResult>> pending;
+    private final CompletionService<IndexedResult> completed;
+    private int inFlight;
+    private long nextIndex;
+    private boolean closed;
+
+    BulkMapper(Iterator<String> input, MappingOptions options) {
+        this.input = input;
+        this.options = options;
+        this.pending = new ArrayDeque<>();
+        this.executor = MappingExecution.executor();
+        this.completed = new ExecutorCompletionService<>(executor);
+        this.inFlight = 0;
+        this.nextIndex = 0L;
+        this.closed = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        if (inFlight == 0) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public IndexedResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Future<IndexedResult> future;
+        try {
+            if (options.isOrdered()) {
+                future = pending.removeFirst();
+            } else {
+                future = completed.take();
+                pending.remove(future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new CancellationException("Interrupted while waiting for mapping results");
+        }
+        inFlight--;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new CancellationException("Interrupted while waiting for mapping results");
+        } catch (ExecutionException e) {
+            // RDT.mapIndexed reports failures in the result; this is a bug
+            close();
+            throw new IllegalStateException("Bulk mapping worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Top up the pending window from the input. This is the only place the
+     * input is consumed, so a slow consumer throttles the producer.
+     */
+    private void fill() {
+        while (!closed && inFlight < options.getMaxInFlight() && input.hasNext()) {
+            final long index = nextIndex++;
+            final String smiles = input.next();
+            Callable<IndexedResult> task = () -> RDT.mapIndexed(index, smiles, options);
+            pending.addLast(options.isOrdered()
+                    ? executor.submit(task)
+                    : completed.submit(task));
+            inFlight++;
+        }
+    }
+
+    /**
+     * Stop taking input and cancel reactions that have not started yet.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            for (Future<IndexedResult> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            inFlight = 0;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2007-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+/**
+ * Result of one reaction in a bulk run, tagged with its position in the
+ * input stream. A reaction that fails to parse or map does not abort the
+ * run; it is reported here with {@link #getError()} set instead.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class IndexedResult {
+
+    private final long index;
+    private final String inputSmiles;
+    private final ReactionResult result;
+    private final String error;
+
+    IndexedResult(long index, String inputSmiles, ReactionResult result, String error) {
+        this.index = index;
+        this.inputSmiles = inputSmiles;
+        this.result = result;
+        this.error = error;
+    }
+
+    /** 0-based position of the reaction in the input stream */
+    public long getIndex() { return index; }
+
+    /** Original input SMILES */
+    public String getInputSmiles() { return inputSmiles; }
+
+    /** Mapping result, or null if the reaction failed */
+    public ReactionResult getResult() { return result; }
+
+    /** Failure message, or null on success */
+    public String getError() { return error; }
+
+    /** Whether the reaction was parsed and mapped without error */
+    public boolean isSuccess() { return result != null; }
+
+    @Override
+    public String toString() {
+        return index + ": " + (result != null ? result : "FAILED " + error);
+    }
+}
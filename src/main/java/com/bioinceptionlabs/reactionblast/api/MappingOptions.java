@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2007-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
+
+/**
+ * Immutable settings for {@link RDT#mapAll(java.util.stream.Stream, MappingOptions)}.
+ *
+ * <pre>
+ * MappingOptions options = MappingOptions.defaults()
+ *         .withMaxInFlight(256)
+ *         .withOrdered(false);
+ * </pre>
+ *
+ * The number of worker threads is not set here: all mapping work shares one
+ * pool, sized by {@link MappingExecution#setParallelism(int)} or the
+ * {@code rdt.threads} system property.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class MappingOptions {
+
+    private final boolean generate2D;
+    private final boolean complexMapping;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final ReactionStore store;
+    private final long timeBudgetMs;
+
+    private MappingOptions(boolean generate2D, boolean complexMapping,
+                           int maxInFlight, boolean ordered, ReactionStore store,
+                           long timeBudgetMs) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1: " + maxInFlight);
+        }
+        if (timeBudgetMs < 1) {
+            throw new IllegalArgumentException("timeBudgetMs must be >= 1: " + timeBudgetMs);
+        }
+        this.generate2D = generate2D;
+        this.complexMapping = complexMapping;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+        this.store = store;
+        this.timeBudgetMs = timeBudgetMs;
+    }
+
+    /**
+     * Same mapping settings as {@link RDT#map(String)}, at most two reactions
+     * in flight per mapping thread, results in input order.
+     */
+    public static MappingOptions defaults() {
+        return new MappingOptions(true, true, 2 * MappingExecution.getParallelism(), true, null,
+                Long.MAX_VALUE);
+    }
+
+    /** Perceive 2D stereo centres */
+    public MappingOptions withGenerate2D(boolean generate2D) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    /** Handle ring system mapping */
+    public MappingOptions withComplexMapping(boolean complexMapping) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    /**
+     * Maximum number of reactions pulled from the input but not yet handed to
+     * the consumer. Bounds memory and applies backpressure to the input; it
+     * should be at least the mapping thread count to keep every core busy.
+     */
+    public MappingOptions withMaxInFlight(int maxInFlight) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    /**
+     * Emit results in input order (default). When false, results are emitted
+     * as they complete and must be matched up by {@link IndexedResult#getIndex()}.
+     */
+    public MappingOptions withOrdered(boolean ordered) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    /**
+     * Reuse results from a {@link ReactionStore}: a reaction whose SMILES is
+     * already stored under the same mapping settings is returned from the
+     * store without being mapped, and newly mapped reactions are added to it.
+     * Null (default) maps every reaction.
+     */
+    public MappingOptions withStore(ReactionStore store) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    /**
+     * Time budget per reaction, in milliseconds. A reaction that runs out of
+     * time returns the best mapping found so far, flagged by
+     * {@link ReactionResult#isComplete()}. {@link Long#MAX_VALUE} (default)
+     * leaves only the built-in search timeouts.
+     */
+    public MappingOptions withTimeBudget(long timeBudgetMs) {
+        return new MappingOptions(generate2D, complexMapping, maxInFlight, ordered, store, timeBudgetMs);
+    }
+
+    public boolean isGenerate2D() { return generate2D; }
+
+    public boolean isComplexMapping() { return complexMapping; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+
+    public boolean isOrdered() { return ordered; }
+
+    public ReactionStore getStore() { return store; }
+
+    public long getTimeBudget() { return timeBudgetMs; }
+}
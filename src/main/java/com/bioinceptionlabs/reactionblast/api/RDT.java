@@ -20,11 +20,26 @@ package com.bioinceptionlabs.reactionblast.api;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.openscience.cdk.atomtype.CDKAtomTypeMatcher;
+import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IReaction;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.BondEnergies;
+import org.openscience.smsd.ExtAtomContainerManipulator;
 import com.bioinceptionlabs.reactionblast.fingerprints.IPatternFingerprinter;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
 import com.bioinceptionlabs.reactionblast.mechanism.BondChangeCalculator;
 import com.bioinceptionlabs.reactionblast.mechanism.MappingSolution;
 import com.bioinceptionlabs.reactionblast.mechanism.ReactionMechanismTool;
@@ -41,14 +56,140 @@ import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
  * System.out.println(result.getBondChanges());    // [C-O, O-H, C=O, ...]
  * System.out.println(result.getMappedSmiles());    // mapped SMILES
  * System.out.println(result.getBondChangeCount()); // number of bond changes
+ *
+ * // Map a large file on all cores
+ * try (Stream&lt;IndexedResult&gt; results = RDT.mapAll(Files.lines(path))) {
+ *     results.forEach(r -&gt; ...);
+ * }
  * </pre>
  *
  * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
  */
 public final class RDT {
 
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(RDT.class);
+
+    /**
+     * How much {@link #warmUp(WarmUpLevel)} does before returning.
+     */
+    public enum WarmUpLevel {
+        /** Nothing. */
+        NONE,
+        /**
+         * Load the atom type and bond energy tables, the SMILES parser and
+         * generator, and start the mapping pool.
+         */
+        TABLES,
+        /** {@link #TABLES}, then map the training reactions once. */
+        MAP,
+        /**
+         * {@link #TABLES}, then map the training reactions several times so
+         * the mapping path is JIT-compiled.
+         */
+        FULL
+    }
+
+    /**
+     * Small, diverse reactions mapped by {@link #warmUp(WarmUpLevel)}:
+     * ester hydrolysis, epoxide ring opening, a Diels-Alder ring closure,
+     * a stereo inversion, an ATP-dependent phosphorylation, an NAD+
+     * dependent oxidation, a transamination, an aromatic substitution and a
+     * dehydrogenation.
+     */
+    private static final List<String> TRAINING_REACTIONS = List.of(
+            "CC(=O)OCC.O>>CC(=O)O.OCC",
+            "C1CO1.O>>OCCO",
+            "C=CC=C.C=CC(C)=O>>CC(=O)C1CCC=CC1",
+            "C[C@H](N)C(=O)O>>C[C@@H](N)C(=O)O",
+            "OC[C@H]1OC(O)[C@H](O)[C@@H](O)[C@@H]1O"
+            + ".Nc1ncnc2n(cnc12)[C@@H]1O[C@H](COP(O)(=O)OP(O)(=O)OP(O)(O)=O)[C@@H](O)[C@H]1O"
+            + ">>O[C@H]1C(O)O[C@H](COP(O)(O)=O)[C@@H](O)[C@@H]1O"
+            + ".Nc1ncnc2n(cnc12)[C@@H]1O[C@H](COP(O)(=O)OP(O)(O)=O)[C@@H](O)[C@H]1O",
+            "CCO.NC(=O)c1ccc[n+](c1)[C@@H]1O[C@H](COP([O-])(=O)OP(O)(=O)OC[C@H]2O[C@H]([C@H](O)[C@@H]2O)"
+            + "n2cnc3c(N)ncnc23)[C@@H](O)[C@H]1O"
+            + ">>CC=O.NC(=O)C1=CN(C=CC1)[C@@H]1O[C@H](COP(O)(=O)OP(O)(=O)OC[C@H]2O[C@H]([C@H](O)[C@@H]2O)"
+            + "n2cnc3c(N)ncnc23)[C@@H](O)[C@H]1O",
+            "C[C@H](N)C(=O)O.OC(=O)CCC(=O)C(=O)O>>CC(=O)C(=O)O.N[C@@H](CCC(=O)O)C(=O)O",
+            "c1ccccc1.BrBr>>Brc1ccccc1.Br",
+            "OC1CCCCC1>>O=C1CCCCC1.[H][H]");
+
+    /** Training passes at {@link WarmUpLevel#FULL}. */
+    private static final int FULL_WARM_UP_ROUNDS = 5;
+
+    /** Time budget of each training reaction, so warm-up cannot stall. */
+    private static final long WARM_UP_BUDGET_MS = 10_000L;
+
+    private static volatile ReactionResultCache resultCache;
+    private static WarmUpLevel warmedUp = WarmUpLevel.NONE;
+
     private RDT() {}
 
+    /**
+     * Pay the first-call costs up front, e.g. when a service starts, so the
+     * first real request is not several times slower than the rest. Lookup
+     * tables and parsers are otherwise loaded lazily on the first reaction,
+     * and the mapping code starts out interpreted.
+     * <p>
+     * Training reactions bypass the result cache, but their timings are
+     * recorded in {@link MappingDiagnostics}. A training reaction that
+     * fails is skipped. Repeated calls only do the work of a higher level.
+     *
+     * @param level how far to warm up
+     */
+    public static synchronized void warmUp(WarmUpLevel level) {
+        if (level.compareTo(warmedUp) <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            BondEnergies.getInstance();
+            SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+            IAtomContainer molecule = sp.parseSmiles("OC(=O)c1ccccc1N");
+            CDKAtomTypeMatcher.getInstance(SilentChemObjectBuilder.getInstance());
+            ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(molecule);
+            new SmilesGenerator(SmiFlavor.Stereo | SmiFlavor.AtomAtomMap).create(molecule);
+        } catch (Exception e) {
+            LOGGER.warn("Warm-up could not preload the lookup tables: ", e.getMessage());
+        }
+        MappingExecution.executor();
+
+        int rounds = level == WarmUpLevel.FULL ? FULL_WARM_UP_ROUNDS
+                : level == WarmUpLevel.MAP ? 1 : 0;
+        if (warmedUp == WarmUpLevel.MAP) {
+            rounds--;
+        }
+        for (int round = 0; round < rounds; round++) {
+            for (String smiles : TRAINING_REACTIONS) {
+                try {
+                    map(smiles, "RDT_WARMUP_" + Integer.toHexString(smiles.hashCode()),
+                            true, true, WARM_UP_BUDGET_MS);
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Warm-up reaction failed: ", smiles, " ", e.getMessage());
+                }
+            }
+        }
+        warmedUp = level;
+        LOGGER.debug("Warm-up to ", level, " took ", System.currentTimeMillis() - start, " ms");
+    }
+
+    /**
+     * Memoise {@link #map(String, boolean, boolean)} results, so a reaction
+     * seen again (in any molecule or atom order) is not mapped twice.
+     *
+     * @param cache result cache, or null to map every call (the default)
+     */
+    public static void setResultCache(ReactionResultCache cache) {
+        resultCache = cache;
+    }
+
+    /**
+     * @return the result cache in use, or null if results are not memoised
+     */
+    public static ReactionResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      * Map a reaction from SMILES and extract bond changes.
      *
@@ -70,18 +211,141 @@ public final class RDT {
      * @throws IllegalArgumentException if SMILES is invalid
      */
     public static ReactionResult map(String reactionSmiles, boolean generate2D, boolean complexMapping) {
+        return map(reactionSmiles, generate2D, complexMapping, Long.MAX_VALUE);
+    }
+
+    /**
+     * Map a reaction within a time budget. The budget is shared by every
+     * stage of the mapping (first algorithm, remaining algorithms, MCS
+     * searches); when it runs out the best mapping found so far is returned
+     * and {@link ReactionResult#isComplete()} is false.
+     *
+     * @param reactionSmiles reaction SMILES (reactants>>products)
+     * @param generate2D perceive 2D stereo centers
+     * @param complexMapping handle ring system mapping
+     * @param timeBudgetMs time budget in milliseconds, {@link Long#MAX_VALUE}
+     * for none
+     * @return ReactionResult with mapping, bond changes, and fingerprints
+     * @throws IllegalArgumentException if SMILES is invalid
+     */
+    public static ReactionResult map(String reactionSmiles, boolean generate2D, boolean complexMapping,
+            long timeBudgetMs) {
         if (reactionSmiles == null || !reactionSmiles.contains(">>")) {
             throw new IllegalArgumentException("Invalid reaction SMILES: must contain '>>'");
         }
+        ReactionResultCache cache = resultCache;
+        if (cache != null) {
+            return cache.map(reactionSmiles, generate2D, complexMapping,
+                    smiles -> map(smiles, "RDT_" + Integer.toHexString(smiles.hashCode()),
+                            generate2D, complexMapping, timeBudgetMs));
+        }
+        return map(reactionSmiles, "RDT_" + Integer.toHexString(reactionSmiles.hashCode()),
+                generate2D, complexMapping, timeBudgetMs);
+    }
+
+    /**
+     * Map a stream of reaction SMILES in parallel, one reaction per worker.
+     * <p>
+     * The input is consumed lazily: at most
+     * {@link MappingOptions#getMaxInFlight()} reactions are read ahead of the
+     * consumer, so the input may be larger than memory (e.g.
+     * {@code Files.lines(path)}). Results come back in input order unless
+     * {@link MappingOptions#withOrdered(boolean)} is false; either way each
+     * carries its input index, and a reaction maps to the same result as
+     * {@link #map(String, boolean, boolean)} would give it. Failed reactions
+     * are reported in the result rather than thrown.
+     * <p>
+     * Reactions run on the shared mapping pool (see
+     * {@link MappingExecution}); closing the returned stream stops reading
+     * input and cancels reactions that have not started.
+     *
+     * <pre>
+     * try (Stream&lt;String&gt; lines = Files.lines(path);
+     *      Stream&lt;IndexedResult&gt; results = RDT.mapAll(lines, MappingOptions.defaults())) {
+     *     results.forEach(r -&gt; System.out.println(r.getIndex() + "\t" + r.getResult()));
+     * }
+     * </pre>
+     *
+     * @param reactionSmiles reaction SMILES, one reaction per element
+     * @param options mapping and scheduling options
+     * @return results tagged with their input index
+     */
+    public static Stream<IndexedResult> mapAll(Stream<String> reactionSmiles, MappingOptions options) {
+        BulkMapper mapper = new BulkMapper(reactionSmiles.iterator(), options);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(mapper, Spliterator.ORDERED | Spliterator.NONNULL),
+                false)
+                .onClose(mapper::close)
+                .onClose(reactionSmiles::close);
+    }
+
+    /**
+     * Map a stream of reaction SMILES in parallel with
+     * {@link MappingOptions#defaults()}.
+     *
+     * @param reactionSmiles reaction SMILES, one reaction per element
+     * @return results in input order
+     */
+    public static Stream<IndexedResult> mapAll(Stream<String> reactionSmiles) {
+        return mapAll(reactionSmiles, MappingOptions.defaults());
+    }
+
+    /**
+     * Bulk worker entry point; never throws.
+     */
+    static IndexedResult mapIndexed(long index, String reactionSmiles, MappingOptions options) {
+        if (reactionSmiles == null || !reactionSmiles.contains(">>")) {
+            return new IndexedResult(index, reactionSmiles, null,
+                    "Invalid reaction SMILES: must contain '>>'");
+        }
+        ReactionStore store = options.getStore();
+        if (store != null) {
+            ReactionResult stored = store.get(reactionSmiles, options.isGenerate2D(), options.isComplexMapping());
+            if (stored != null) {
+                return new IndexedResult(index, reactionSmiles, stored, null);
+            }
+        }
+        /*
+         * The index keeps IDs unique when the same SMILES is in flight on
+         * two workers, so their per-reaction diagnostics do not mix. Nobody
+         * reads them after the result is returned, so a long bulk run
+         * drops them as it goes.
+         */
+        String reactionId = "RDT_" + index + "_" + Integer.toHexString(reactionSmiles.hashCode());
         try {
-            SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
-            IReaction reaction = sp.parseReactionSmiles(reactionSmiles);
-            reaction.setID("RDT_" + Integer.toHexString(reactionSmiles.hashCode()));
+            ReactionResult result = map(reactionSmiles, reactionId,
+                    options.isGenerate2D(), options.isComplexMapping(), options.getTimeBudget());
+            if (store != null) {
+                store.put("RDT_" + Integer.toHexString(reactionSmiles.hashCode()), result,
+                        options.isGenerate2D(), options.isComplexMapping());
+            }
+            return new IndexedResult(index, reactionSmiles, result, null);
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return new IndexedResult(index, reactionSmiles, null,
+                    cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        } finally {
+            MappingDiagnostics.resetReaction(reactionId);
+        }
+    }
+
+    private static ReactionResult map(String reactionSmiles, String reactionId,
+            boolean generate2D, boolean complexMapping, long timeBudgetMs) {
+        try {
+            IReaction reaction;
+            try (MappingDiagnostics.StageTimer parse = MappingDiagnostics.start(Stage.PARSE, null)) {
+                SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+                reaction = sp.parseReactionSmiles(reactionSmiles);
+            }
+            reaction.setID(reactionId);
 
-            ReactionMechanismTool rmt = new ReactionMechanismTool(
-                    reaction, true, generate2D, false, complexMapping, true, new StandardizeReaction());
+            MappingExecution.Outcome<ReactionMechanismTool> mapped = MappingExecution.callWithBudget(
+                    timeBudgetMs,
+                    () -> new ReactionMechanismTool(
+                            reaction, true, generate2D, false, complexMapping, true, new StandardizeReaction()));
 
-            return extractResult(rmt, reactionSmiles);
+            ReactionResult result = extractResult(mapped.getValue(), reactionSmiles);
+            return mapped.isComplete() ? result : result.truncated();
         } catch (Exception e) {
             throw new RuntimeException("Mapping failed for: " + reactionSmiles, e);
         }
@@ -44,12 +44,24 @@ public final class ReactionResult {
     private final String algorithmUsed;
     private final String reactionSignature;
     private final String canonicalHash;
+    private final boolean complete;
 
     ReactionResult(String inputSmiles, String mappedSmiles,
                    int formedCleavedCount, int orderChangeCount, int stereoChangeCount,
                    List<String> formedCleavedBonds, List<String> orderChangedBonds,
                    List<String> stereoChangedBonds, List<String> reactionCentreFingerprint,
                    String algorithmUsed) {
+        this(inputSmiles, mappedSmiles, formedCleavedCount, orderChangeCount, stereoChangeCount,
+                formedCleavedBonds, orderChangedBonds, stereoChangedBonds, reactionCentreFingerprint,
+                algorithmUsed, true);
+    }
+
+    private ReactionResult(String inputSmiles, String mappedSmiles,
+                           int formedCleavedCount, int orderChangeCount, int stereoChangeCount,
+                           List<String> formedCleavedBonds, List<String> orderChangedBonds,
+                           List<String> stereoChangedBonds, List<String> reactionCentreFingerprint,
+                           String algorithmUsed, boolean complete) {
+        this.complete = complete;
         this.inputSmiles = inputSmiles;
         this.mappedSmiles = mappedSmiles;
         this.formedCleavedCount = formedCleavedCount;
@@ -65,6 +77,26 @@ public final class ReactionResult {
                 formedCleavedBonds, orderChangedBonds, stereoChangedBonds, reactionCentreFingerprint);
     }
 
+    /**
+     * The same bond changes reported for another spelling of the reaction.
+     */
+    ReactionResult withInput(String inputSmiles, String mappedSmiles) {
+        return new ReactionResult(inputSmiles, mappedSmiles,
+                formedCleavedCount, orderChangeCount, stereoChangeCount,
+                formedCleavedBonds, orderChangedBonds, stereoChangedBonds,
+                reactionCentreFingerprint, algorithmUsed, complete);
+    }
+
+    /**
+     * The same result, marked as cut short by the time budget.
+     */
+    ReactionResult truncated() {
+        return new ReactionResult(inputSmiles, mappedSmiles,
+                formedCleavedCount, orderChangeCount, stereoChangeCount,
+                formedCleavedBonds, orderChangedBonds, stereoChangedBonds,
+                reactionCentreFingerprint, algorithmUsed, false);
+    }
+
     /** Original input SMILES */
     public String getInputSmiles() { return inputSmiles; }
 
@@ -86,6 +118,12 @@ public final class ReactionResult {
     /** Whether mapping was successful */
     public boolean isMapped() { return mappedSmiles != null; }
 
+    /**
+     * False if the time budget (or a search timeout) cut the mapping short,
+     * so this is the best mapping found in time rather than the full answer
+     */
+    public boolean isComplete() { return complete; }
+
     /** Bond formation/cleavage patterns, e.g. ["C-O:1", "O-H:-1"] */
     public List<String> getFormedCleavedBonds() { return formedCleavedBonds; }
 
@@ -171,9 +209,10 @@ public final class ReactionResult {
      * Get all fingerprint features as a combined set (for similarity).
      * Keeps the full "PATTERN:WEIGHT" strings so that "C-O:2" and "C-O:1"
      * are treated as distinct, giving accurate Tanimoto scores for reactions
-     * that differ only in stoichiometry.
+     * that differ only in stoichiometry. {@link ReactionSimilarityIndex}
+     * indexes the same set.
      */
-    private Set<String> getAllFingerprints() {
+    Set<String> getAllFingerprints() {
         Set<String> all = new HashSet<>();
         all.addAll(formedCleavedBonds);
         all.addAll(orderChangedBonds);
@@ -199,6 +238,7 @@ public final class ReactionResult {
     public String toString() {
         return "ReactionResult{" +
                 "mapped=" + isMapped() +
+                (complete ? "" : ", truncated") +
                 ", algorithm=" + algorithmUsed +
                 ", bondChanges=" + getTotalBondChanges() +
                 ", formed/cleaved=" + formedCleavedBonds +
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import com.bioinceptionlabs.reactionblast.mapping.MappingKeyUtil;
+import com.bioinceptionlabs.reactionblast.mapping.ThreadSafeCache;
+
+/**
+ * Result cache in front of {@link RDT#map(String, boolean, boolean)}, keyed by
+ * an order-independent canonical form of the reaction.
+ *
+ * The key is the sorted list of canonical component keys
+ * ({@link MappingKeyUtil#computeStructureKey}) on each side,
+ * with repeated components kept for stoichiometry and input atom-map numbers
+ * ignored, so the same reaction written with its molecules or atoms in
+ * another order, or with other atom maps, is mapped only once. The
+ * structure key carries no stereo, so a component with stereo elements also
+ * gets its stereo SMILES, written in canonical atom order: stereoisomers,
+ * whose stereo bond changes differ, never share an entry (a symmetric one
+ * written in another order may just miss it). A hit returns
+ * the stored bond changes with the caller's SMILES as input; the atom-map
+ * numbers of the stored mapping are carried over to the caller's atoms
+ * through the canonical atom order of each component, so the mapped SMILES
+ * follows the caller's atom order. When the components of the stored
+ * mapping do not line up with the input (e.g. explicit hydrogens on one
+ * side only) the stored mapped SMILES is returned as it is.
+ *
+ * Reactions with a component that has no canonical key are mapped every
+ * time, since their key would not identify them. Results cut short by a time
+ * budget are not cached. Entries are held in a
+ * bounded {@link ThreadSafeCache}; with a
+ * {@link ReactionStore} they are also written to disk as cache records, under
+ * the canonical reaction key, and found again in later runs.
+ *
+ * <pre>
+ * RDT.setResultCache(new ReactionResultCache(100_000));
+ * </pre>
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class ReactionResultCache {
+
+    private static final ILoggingTool LOGGER = createLoggingTool(ReactionResultCache.class);
+
+    private static final int CANONICAL = SmiFlavor.Canonical;
+    private static final int MAPPED = SmiFlavor.Stereo | SmiFlavor.AtomAtomMap;
+    /*
+     Canonical stereo SMILES need the InChI module, so the stereo part of a
+     key is written in the canonical order of the stereo-free SMILES instead
+     */
+    private static final int STEREO = SmiFlavor.Stereo;
+
+    private final ThreadSafeCache<String, ReactionResult> results;
+    private final ReactionStore store;
+
+    /**
+     * @param maxEntries bound on the number of cached reactions
+     */
+    public ReactionResultCache(long maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * @param maxEntries bound on the number of reactions held in memory
+     * @param store store that keeps results across runs, or null
+     */
+    public ReactionResultCache(long maxEntries, ReactionStore store) {
+        this.results = ThreadSafeCache.withMaxEntries(maxEntries);
+        this.store = store;
+    }
+
+    /**
+     * Canonical, order-independent form of a reaction: canonical component
+     * keys sorted within reactants, agents and products, atom maps dropped.
+     *
+     * @param reactionSmiles reaction SMILES
+     * @return canonical reaction key
+     * @throws CDKException if the SMILES cannot be parsed or a component
+     * has no canonical key
+     */
+    public static String canonicalKey(String reactionSmiles) throws CDKException {
+        IReaction reaction = parse(reactionSmiles);
+        return side(reaction.getReactants()) + ">"
+                + side(reaction.getAgents()) + ">"
+                + side(reaction.getProducts());
+    }
+
+    static String side(IAtomContainerSet molecules) throws CDKException {
+        List<String> components = new ArrayList<>();
+        for (IAtomContainer molecule : molecules.atomContainers()) {
+            for (IAtom atom : molecule.atoms()) {
+                atom.removeProperty(CDKConstants.ATOM_ATOM_MAPPING);
+            }
+            String key = MappingKeyUtil.computeStructureKey(molecule);
+            if (!MappingKeyUtil.isCanonicalStructureKey(key)) {
+                throw new CDKException("no canonical key for component " + key);
+            }
+            if (molecule.stereoElements().iterator().hasNext()) {
+                key += " " + stereoSmiles(molecule);
+            }
+            components.add(key);
+        }
+        Collections.sort(components);
+        return String.join(".", components);
+    }
+
+    /**
+     * SMILES with stereo of a molecule whose atoms and bonds are first put in
+     * canonical order. Equal strings mean the same stereoisomer.
+     */
+    private static String stereoSmiles(IAtomContainer molecule) throws CDKException {
+        int[] order = new int[molecule.getAtomCount()];
+        new SmilesGenerator(CANONICAL).create(molecule, order);
+        IAtom[] atoms = new IAtom[order.length];
+        for (int i = 0; i < order.length; i++) {
+            atoms[order[i]] = molecule.getAtom(i);
+        }
+        IBond[] bonds = new IBond[molecule.getBondCount()];
+        for (int i = 0; i < bonds.length; i++) {
+            bonds[i] = molecule.getBond(i);
+        }
+        Arrays.sort(bonds, Comparator
+                .comparingInt((IBond bond) -> Math.min(order[bond.getBegin().getIndex()],
+                        order[bond.getEnd().getIndex()]))
+                .thenComparingInt(bond -> Math.max(order[bond.getBegin().getIndex()],
+                        order[bond.getEnd().getIndex()])));
+        molecule.setAtoms(atoms);
+        molecule.setBonds(bonds);
+        return new SmilesGenerator(STEREO).create(molecule);
+    }
+
+    /**
+     * The cached result for a reaction, mapping it with the given function on
+     * a miss.
+     */
+    ReactionResult map(String reactionSmiles, boolean generate2D, boolean complexMapping,
+            Function<String, ReactionResult> mapper) {
+        String canonical;
+        try {
+            canonical = canonicalKey(reactionSmiles);
+        } catch (CDKException | RuntimeException ex) {
+            return mapper.apply(reactionSmiles);
+        }
+        String key = ReactionStore.settings(generate2D, complexMapping) + "|" + canonical;
+        ReactionResult cached = results.get(key);
+        if (cached == null && store != null) {
+            cached = store.getCached(canonical, generate2D, complexMapping);
+            if (cached != null) {
+                results.put(key, cached);
+            }
+        }
+        if (cached != null) {
+            return project(reactionSmiles, cached);
+        }
+        ReactionResult result = mapper.apply(reactionSmiles);
+        if (!result.isComplete()) {
+            return result;
+        }
+        results.put(key, result);
+        if (store != null) {
+            store.putCached("RDT_" + Integer.toHexString(reactionSmiles.hashCode()),
+                    result.withInput(canonical, result.getMappedSmiles()), generate2D, complexMapping);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of reactions held in memory
+     */
+    public int size() {
+        return results.size();
+    }
+
+    public long getHitCount() {
+        return results.getHitCount();
+    }
+
+    public long getMissCount() {
+        return results.getMissCount();
+    }
+
+    /**
+     * The stored result, reported for the caller's spelling of the reaction.
+     */
+    static ReactionResult project(String reactionSmiles, ReactionResult cached) {
+        if (reactionSmiles.equals(cached.getInputSmiles()) || !cached.isMapped()) {
+            return cached.withInput(reactionSmiles, cached.getMappedSmiles());
+        }
+        String mappedSmiles = cached.getMappedSmiles();
+        try {
+            IReaction input = parse(reactionSmiles);
+            IReaction mapped = parse(cached.getMappedSmiles());
+            SmilesGenerator generator = new SmilesGenerator(CANONICAL);
+            if (transfer(generator, mapped.getReactants(), input.getReactants())
+                    && transfer(generator, mapped.getAgents(), input.getAgents())
+                    && transfer(generator, mapped.getProducts(), input.getProducts())) {
+                mappedSmiles = new SmilesGenerator(MAPPED).create(input);
+            }
+        } catch (CDKException | RuntimeException ex) {
+            LOGGER.debug("Atom maps not re-projected onto " + reactionSmiles + ": " + ex.getMessage());
+        }
+        return cached.withInput(reactionSmiles, mappedSmiles);
+    }
+
+    /**
+     * Copy the atom maps of one side onto the same molecules in another
+     * order. Equal canonical SMILES mean equal graphs, and atoms written at
+     * the same position of the canonical SMILES correspond.
+     *
+     * @return false if the two sides do not hold the same molecules
+     */
+    private static boolean transfer(SmilesGenerator generator, IAtomContainerSet from, IAtomContainerSet to)
+            throws CDKException {
+        if (from.getAtomContainerCount() != to.getAtomContainerCount()) {
+            return false;
+        }
+        Map<String, List<IAtomContainer>> sources = new HashMap<>();
+        Map<IAtomContainer, int[]> sourceOrders = new HashMap<>();
+        for (IAtomContainer molecule : from.atomContainers()) {
+            int[] order = new int[molecule.getAtomCount()];
+            String smiles = generator.create(molecule, order);
+            sources.computeIfAbsent(smiles, k -> new ArrayList<>()).add(molecule);
+            sourceOrders.put(molecule, order);
+        }
+        for (IAtomContainer molecule : to.atomContainers()) {
+            int[] order = new int[molecule.getAtomCount()];
+            List<IAtomContainer> candidates = sources.get(generator.create(molecule, order));
+            if (candidates == null || candidates.isEmpty()) {
+                return false;
+            }
+            IAtomContainer source = candidates.remove(0);
+            int[] sourceOrder = sourceOrders.get(source);
+            IAtom[] byPosition = new IAtom[sourceOrder.length];
+            for (int i = 0; i < sourceOrder.length; i++) {
+                byPosition[sourceOrder[i]] = source.getAtom(i);
+            }
+            for (int i = 0; i < order.length; i++) {
+                IAtom atom = molecule.getAtom(i);
+                atom.setProperty(CDKConstants.ATOM_ATOM_MAPPING,
+                        byPosition[order[i]].getProperty(CDKConstants.ATOM_ATOM_MAPPING));
+            }
+        }
+        return true;
+    }
+
+    private static IReaction parse(String reactionSmiles) throws CDKException {
+        return new SmilesParser(SilentChemObjectBuilder.getInstance()).parseReactionSmiles(reactionSmiles);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Inverted-list index over the bond-change fingerprints of mapped
+ * reactions, for top-k and threshold similarity search.
+ *
+ * A reaction is indexed by the feature set {@link ReactionResult#similarity}
+ * compares: formed/cleaved, order change, stereo change and reaction centre
+ * patterns with their weights. Scores are the same Tanimoto coefficient.
+ *
+ * Each feature keeps the list of reactions that carry it. A query walks the
+ * lists of its rarest features first and uses two Tanimoto bounds to skip
+ * reactions that cannot reach the threshold: a size window, since
+ * T &le; min(|A|,|B|) / max(|A|,|B|), and a prefix filter, since a reaction
+ * scoring t must share at least ceil(t|A|) query features, so it must appear
+ * in one of the first |A| - ceil(t|A|) + 1 lists.
+ *
+ * The index can be written with {@link #save(Path)} and read back with
+ * {@link #load(Path)}; the lists are rebuilt from the stored feature ids.
+ * Adding is not thread-safe; searches on an index that is no longer
+ * changing may run concurrently.
+ *
+ * <pre>
+ * ReactionSimilarityIndex index = new ReactionSimilarityIndex();
+ * index.add("R00001", RDT.map(smiles));
+ * List&lt;ReactionSimilarityIndex.Hit&gt; hits = index.search(RDT.map(query), 10);
+ * </pre>
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class ReactionSimilarityIndex {
+
+    private static final int MAGIC = 0x52445349;
+    private static final int VERSION = 1;
+    private static final double EPSILON = 1e-9;
+
+    private final Map<String, Integer> featureIds = new HashMap<>();
+    private final List<String> features = new ArrayList<>();
+    private int[][] postings = new int[64][];
+    private int[] postingSizes = new int[64];
+
+    private final List<String> keys = new ArrayList<>();
+    /*
+     Feature ids of reaction r are reactionFeatures[offsets[r] .. offsets[r + 1])
+     */
+    private int[] offsets = new int[65];
+    private int[] reactionFeatures = new int[256];
+    private int featureCount;
+    private final List<Integer> emptyReactions = new ArrayList<>();
+
+    /**
+     * Adds a mapped reaction to the index.
+     *
+     * @param key caller's identifier, returned in search hits
+     * @param result mapping result
+     * @return position of the reaction in the index, or -1 if the result is
+     * unmapped and so can never be similar to anything
+     */
+    public int add(String key, ReactionResult result) {
+        if (key == null) {
+            throw new IllegalArgumentException("Reaction key must not be null");
+        }
+        if (result == null || !result.isMapped()) {
+            return -1;
+        }
+        Set<String> patterns = result.getAllFingerprints();
+        int[] ids = new int[patterns.size()];
+        int n = 0;
+        for (String pattern : patterns) {
+            ids[n++] = intern(pattern);
+        }
+        Arrays.sort(ids);
+        return addReaction(key, ids);
+    }
+
+    private int addReaction(String key, int[] ids) {
+        int reaction = keys.size();
+        keys.add(key);
+        if (reaction + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        if (featureCount + ids.length > reactionFeatures.length) {
+            reactionFeatures = Arrays.copyOf(reactionFeatures,
+                    Math.max(reactionFeatures.length * 2, featureCount + ids.length));
+        }
+        System.arraycopy(ids, 0, reactionFeatures, featureCount, ids.length);
+        featureCount += ids.length;
+        offsets[reaction + 1] = featureCount;
+        for (int id : ids) {
+            addPosting(id, reaction);
+        }
+        if (ids.length == 0) {
+            emptyReactions.add(reaction);
+        }
+        return reaction;
+    }
+
+    private int intern(String pattern) {
+        Integer id = featureIds.get(pattern);
+        if (id == null) {
+            id = features.size();
+            features.add(pattern);
+            featureIds.put(pattern, id);
+            if (id == postings.length) {
+                postings = Arrays.copyOf(postings, id * 2);
+                postingSizes = Arrays.copyOf(postingSizes, id * 2);
+            }
+            postings[id] = new int[4];
+        }
+        return id;
+    }
+
+    private void addPosting(int id, int reaction) {
+        int[] list = postings[id];
+        int size = postingSizes[id];
+        if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+            postings[id] = list;
+        }
+        list[size] = reaction;
+        postingSizes[id] = size + 1;
+    }
+
+    /**
+     * @return number of indexed reactions
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return number of distinct features
+     */
+    public int getFeatureCount() {
+        return features.size();
+    }
+
+    /**
+     * @param reaction position returned by {@link #add}
+     * @return the key the reaction was added with
+     */
+    public String getKey(int reaction) {
+        return keys.get(reaction);
+    }
+
+    /**
+     * The k most similar reactions with a positive score.
+     *
+     * @param query mapped query reaction
+     * @param k maximum number of hits
+     * @return hits, best first
+     */
+    public List<Hit> search(ReactionResult query, int k) {
+        return search(query, k, 0.0);
+    }
+
+    /**
+     * All reactions scoring at least the threshold.
+     *
+     * @param query mapped query reaction
+     * @param threshold minimum Tanimoto score
+     * @return hits, best first
+     */
+    public List<Hit> searchAbove(ReactionResult query, double threshold) {
+        return search(query, Integer.MAX_VALUE, threshold);
+    }
+
+    /**
+     * At most k reactions with a positive score of at least the threshold.
+     * Ties keep the order in which the reactions were added.
+     *
+     * @param query mapped query reaction
+     * @param k maximum number of hits
+     * @param threshold minimum Tanimoto score
+     * @return hits, best first
+     */
+    public List<Hit> search(ReactionResult query, int k, double threshold) {
+        if (query == null || !query.isMapped() || k <= 0 || threshold > 1.0) {
+            return Collections.emptyList();
+        }
+        Set<String> patterns = query.getAllFingerprints();
+        int querySize = patterns.size();
+        if (querySize == 0) {
+            /*
+             Two reactions without bond changes are identical
+             */
+            List<Hit> hits = new ArrayList<>();
+            for (int i = 0; i < emptyReactions.size() && hits.size() < k; i++) {
+                int reaction = emptyReactions.get(i);
+                hits.add(new Hit(keys.get(reaction), reaction, 1.0));
+            }
+            return hits;
+        }
+
+        int[] ids = new int[querySize];
+        int known = 0;
+        for (String pattern : patterns) {
+            Integer id = featureIds.get(pattern);
+            if (id != null) {
+                ids[known++] = id;
+            }
+        }
+        ids = Arrays.copyOf(ids, known);
+        sortByPostingSize(ids);
+
+        double t = Math.max(threshold, 0.0);
+        int minOverlap = Math.max(1, (int) Math.ceil(t * querySize - EPSILON));
+        int prefix = known - minOverlap + 1;
+        if (prefix <= 0) {
+            return Collections.emptyList();
+        }
+        int minSize = Math.max(1, (int) Math.ceil(t * querySize - EPSILON));
+        int maxSize = t > 0 ? (int) Math.min(Integer.MAX_VALUE, Math.floor(querySize / t + EPSILON))
+                : Integer.MAX_VALUE;
+
+        /*
+         * Allocated per query: a zeroed int per reaction is cheap next to
+         * walking the postings, and nothing outlives the call
+         */
+        int[] counts = new int[keys.size()];
+        int[] touched = new int[16];
+        int candidates = 0;
+        for (int f = 0; f < ids.length; f++) {
+            int[] list = postings[ids[f]];
+            int length = postingSizes[ids[f]];
+            boolean admit = f < prefix;
+            for (int p = 0; p < length; p++) {
+                int reaction = list[p];
+                if (counts[reaction] > 0) {
+                    counts[reaction]++;
+                } else if (admit) {
+                    int n = offsets[reaction + 1] - offsets[reaction];
+                    if (n >= minSize && n <= maxSize) {
+                        counts[reaction] = 1;
+                        if (candidates == touched.length) {
+                            touched = Arrays.copyOf(touched, candidates * 2);
+                        }
+                        touched[candidates++] = reaction;
+                    }
+                }
+            }
+        }
+        return rank(touched, candidates, counts, querySize, k, t);
+    }
+
+    private List<Hit> rank(int[] touched, int candidates, int[] counts,
+            int querySize, int k, double threshold) {
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(k, Math.max(candidates, 1)), Hit::compareTo);
+        for (int i = 0; i < candidates; i++) {
+            int reaction = touched[i];
+            int n = offsets[reaction + 1] - offsets[reaction];
+            if (best.size() == k) {
+                double bound = (double) Math.min(querySize, n) / Math.max(querySize, n);
+                if (bound < best.peek().score) {
+                    continue;
+                }
+            }
+            int common = counts[reaction];
+            double score = (double) common / (querySize + n - common);
+            if (score < threshold - EPSILON) {
+                continue;
+            }
+            Hit hit = new Hit(keys.get(reaction), reaction, score);
+            if (best.size() < k) {
+                best.add(hit);
+            } else if (hit.compareTo(best.peek()) > 0) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Collections.reverseOrder());
+        return hits;
+    }
+
+    private void sortByPostingSize(int[] ids) {
+        long[] keyed = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            keyed[i] = ((long) postingSizes[ids[i]] << 32) | ids[i];
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (int) keyed[i];
+        }
+    }
+
+    /**
+     * Writes the index to a file.
+     *
+     * @param file target file, replaced if it exists
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(features.size());
+            for (String feature : features) {
+                writeString(out, feature);
+            }
+            out.writeInt(keys.size());
+            for (int reaction = 0; reaction < keys.size(); reaction++) {
+                writeString(out, keys.get(reaction));
+                out.writeInt(offsets[reaction + 1] - offsets[reaction]);
+                for (int i = offsets[reaction]; i < offsets[reaction + 1]; i++) {
+                    out.writeInt(reactionFeatures[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}.
+     *
+     * @param file index file
+     * @return the index
+     * @throws IOException if the file is not a reaction index
+     */
+    public static ReactionSimilarityIndex load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a reaction similarity index: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported reaction similarity index version " + version);
+            }
+            ReactionSimilarityIndex index = new ReactionSimilarityIndex();
+            int featureTotal = in.readInt();
+            for (int i = 0; i < featureTotal; i++) {
+                index.intern(readString(in));
+            }
+            int reactions = in.readInt();
+            for (int reaction = 0; reaction < reactions; reaction++) {
+                String key = readString(in);
+                int[] ids = new int[in.readInt()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = in.readInt();
+                    if (ids[i] < 0 || ids[i] >= featureTotal) {
+                        throw new IOException("Corrupt reaction similarity index: feature " + ids[i]);
+                    }
+                }
+                index.addReaction(key, ids);
+            }
+            return index;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One search result. Hits order by score, then by position in the index
+     * (earlier first).
+     */
+    public static final class Hit implements Comparable<Hit> {
+
+        private final String key;
+        private final int reaction;
+        private final double score;
+
+        Hit(String key, int reaction, double score) {
+            this.key = key;
+            this.reaction = reaction;
+            this.score = score;
+        }
+
+        /** Key the reaction was added with */
+        public String getKey() { return key; }
+
+        /** Position of the reaction in the index */
+        public int getReaction() { return reaction; }
+
+        /** Tanimoto similarity to the query */
+        public double getScore() { return score; }
+
+        /**
+         * Better hits compare greater.
+         */
+        @Override
+        public int compareTo(Hit other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(other.reaction, reaction);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + score;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Append-only on-disk store of mapped reactions, keyed by their
+ * {@link ReactionResult#getCanonicalHash() canonical ITS hash} and by input
+ * SMILES.
+ *
+ * The hash key groups reactions with the same bond changes, for
+ * deduplication and mechanism classes; the SMILES key lets a batch run
+ * ({@link MappingOptions#withStore}) reuse a result instead of mapping the
+ * reaction again. A SMILES entry is only reused under the same
+ * generate2D/complexMapping settings it was mapped with.
+ *
+ * A {@link ReactionResultCache} keeps its entries here as records of their
+ * own kind, keyed by the canonical reaction key; they are found only through
+ * the cache, and are not listed under their hash.
+ *
+ * The file is memory-mapped read-only and indexed by both keys; only
+ * record offsets are held in memory and records are decoded when asked for.
+ * Records written in this run are read back by mapping the grown file again.
+ *
+ * File layout (big-endian): a header of {@link #MAGIC} and
+ * {@link #FORMAT_VERSION}, then records of {@code [length][crc32][payload]},
+ * as in {@code PersistentMCSCache}. Writers append whole records under an
+ * exclusive file lock, so several processes may share one file; a record torn
+ * by a crash fails its checksum and is cut off at the next open. Once the
+ * file reaches its size cap no further records are written.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class ReactionStore implements Closeable {
+
+    /** "RDTR" */
+    static final int MAGIC = 0x52445452;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_PREFIX_BYTES = 8;
+    private static final int NO_STRING = -1;
+    /** Settings bit of a record written by a {@link ReactionResultCache} */
+    private static final int CACHE_ENTRY = 4;
+
+    private static final ILoggingTool LOGGER = createLoggingTool(ReactionStore.class);
+
+    /*
+     File locks are held by the JVM, not the channel, so two stores on one
+     file in the same JVM must not ask for them at the same time
+     */
+    private static final ConcurrentHashMap<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long maxBytes;
+    private final Object fileMonitor;
+    /*
+     The mapping, and both indexes of payload offsets into it, are guarded by
+     this
+     */
+    private MappedByteBuffer mapped;
+    private final Map<String, Integer> bySmiles;
+    private final Map<String, List<Integer>> byHash;
+    private int count;
+    private boolean full;
+
+    /**
+     * One stored reaction.
+     */
+    public static final class Record {
+
+        private final String reactionId;
+        private final int settings;
+        private final ReactionResult result;
+
+        Record(String reactionId, int settings, ReactionResult result) {
+            this.reactionId = reactionId;
+            this.settings = settings;
+            this.result = result;
+        }
+
+        /** Identifier the reaction was stored under */
+        public String getReactionId() { return reactionId; }
+
+        /** The stored mapping result */
+        public ReactionResult getResult() { return result; }
+
+        /** Whether 2D stereo perception was on when it was mapped */
+        public boolean isGenerate2D() { return (settings & 1) != 0; }
+
+        /** Whether ring system mapping was on when it was mapped */
+        public boolean isComplexMapping() { return (settings & 2) != 0; }
+    }
+
+    /**
+     * Open (or create) a store file.
+     *
+     * @param file store file
+     * @param maxBytes size cap of the file
+     * @return the store
+     * @throws IOException if the file cannot be read, or has another format
+     */
+    public static ReactionStore open(Path file, long maxBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new ReactionStore(file, channel, Math.min(maxBytes, Integer.MAX_VALUE));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ReactionStore(Path file, FileChannel channel, long maxBytes) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.maxBytes = maxBytes;
+        this.fileMonitor = FILE_MONITORS.computeIfAbsent(file.toRealPath(), path -> new Object());
+        this.bySmiles = new HashMap<>();
+        this.byHash = new HashMap<>();
+        synchronized (fileMonitor) {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        try (FileLock lock = channel.lock()) {
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+                writeFully(header, 0);
+                size = HEADER_BYTES;
+            }
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("not a reaction store file");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("not a reaction store file");
+            }
+            int version = mapped.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported reaction store format version " + version);
+            }
+            long end = index();
+            if (end < size) {
+                LOGGER.warn("Discarding " + (size - end) + " damaged bytes at the end of " + file);
+                channel.truncate(end);
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            }
+            full = end >= maxBytes;
+        }
+    }
+
+    /**
+     * Index the records of the mapped file.
+     *
+     * @return offset just past the last intact record
+     */
+    private long index() {
+        int limit = mapped.limit();
+        int offset = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_PREFIX_BYTES <= limit) {
+            int length = mapped.getInt(offset);
+            int checksum = mapped.getInt(offset + 4);
+            int payload = offset + RECORD_PREFIX_BYTES;
+            if (length < 4 || length > limit - payload) {
+                break;
+            }
+            ByteBuffer slice = mapped.duplicate();
+            slice.position(payload).limit(payload + length);
+            crc.reset();
+            crc.update(slice);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int settings = mapped.getInt(payload);
+            int cursor = payload + 4;
+            String hash = readString(mapped, cursor);
+            cursor = skipString(mapped, cursor);
+            String smiles = readString(mapped, cursor);
+            bySmiles.putIfAbsent(smilesKey(smiles, settings), payload);
+            if ((settings & CACHE_ENTRY) == 0) {
+                byHash.computeIfAbsent(hash, k -> new ArrayList<>(1)).add(payload);
+            }
+            count++;
+            offset = payload + length;
+        }
+        return offset;
+    }
+
+    static int settings(boolean generate2D, boolean complexMapping) {
+        return (generate2D ? 1 : 0) | (complexMapping ? 2 : 0);
+    }
+
+    private static String smilesKey(String smiles, int settings) {
+        return settings + "\t" + smiles;
+    }
+
+    /**
+     * @param inputSmiles reaction SMILES as it was mapped
+     * @param generate2D 2D stereo perception setting
+     * @param complexMapping ring system mapping setting
+     * @return the stored result, or null
+     */
+    public ReactionResult get(String inputSmiles, boolean generate2D, boolean complexMapping) {
+        return get(inputSmiles, settings(generate2D, complexMapping));
+    }
+
+    /**
+     * @param canonicalKey canonical reaction key of a {@link ReactionResultCache}
+     * @return the result the cache stored under it, or null
+     */
+    ReactionResult getCached(String canonicalKey, boolean generate2D, boolean complexMapping) {
+        return get(canonicalKey, settings(generate2D, complexMapping) | CACHE_ENTRY);
+    }
+
+    private ReactionResult get(String smiles, int settings) {
+        Integer payload;
+        MappedByteBuffer view;
+        synchronized (this) {
+            payload = bySmiles.get(smilesKey(smiles, settings));
+            if (payload == null || (view = viewOf(payload)) == null) {
+                return null;
+            }
+        }
+        return readRecord(view, payload).getResult();
+    }
+
+    /**
+     * @param canonicalHash canonical ITS hash
+     * @return true if a reaction with these bond changes is stored
+     */
+    public synchronized boolean containsHash(String canonicalHash) {
+        return byHash.containsKey(canonicalHash);
+    }
+
+    /**
+     * @param canonicalHash canonical ITS hash
+     * @return ids of the stored reactions with these bond changes, in the
+     * order they were stored
+     */
+    public List<String> getReactionIds(String canonicalHash) {
+        List<String> ids = new ArrayList<>();
+        for (Record record : getRecords(canonicalHash)) {
+            ids.add(record.getReactionId());
+        }
+        return ids;
+    }
+
+    /**
+     * @param canonicalHash canonical ITS hash
+     * @return stored reactions with these bond changes, in the order they
+     * were stored
+     */
+    public List<Record> getRecords(String canonicalHash) {
+        List<Integer> payloads;
+        MappedByteBuffer view;
+        synchronized (this) {
+            List<Integer> group = byHash.get(canonicalHash);
+            if (group == null || (view = viewOf(group.get(group.size() - 1))) == null) {
+                return Collections.emptyList();
+            }
+            payloads = new ArrayList<>(group);
+        }
+        List<Record> records = new ArrayList<>(payloads.size());
+        for (int payload : payloads) {
+            records.add(readRecord(view, payload));
+        }
+        return records;
+    }
+
+    /**
+     * The mapping that covers a payload, mapping the file again if this run
+     * appended the record after the last mapping. Callers hold this.
+     *
+     * @return the mapping, or null if the file could not be mapped again
+     */
+    private MappedByteBuffer viewOf(int payload) {
+        if (payload < mapped.limit()
+                && payload + mapped.getInt(payload - RECORD_PREFIX_BYTES) <= mapped.limit()) {
+            return mapped;
+        }
+        try {
+            if (channel.isOpen()) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return mapped;
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("Reaction store remap failed: " + ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Store a mapped reaction unless its SMILES is already stored with the
+     * same settings, or the file is full. Unmapped results, and results cut
+     * short by a time budget, are not stored.
+     *
+     * @param reactionId caller's identifier for the reaction
+     * @param result mapping result
+     * @param generate2D 2D stereo perception setting it was mapped with
+     * @param complexMapping ring system mapping setting it was mapped with
+     * @return true if the reaction was added
+     */
+    public boolean put(String reactionId, ReactionResult result, boolean generate2D, boolean complexMapping) {
+        return put(reactionId, result, settings(generate2D, complexMapping));
+    }
+
+    /**
+     * Store a result of a {@link ReactionResultCache}, whose input SMILES is
+     * the canonical reaction key, apart from the reactions stored by
+     * {@link #put}.
+     */
+    boolean putCached(String reactionId, ReactionResult result, boolean generate2D, boolean complexMapping) {
+        return put(reactionId, result, settings(generate2D, complexMapping) | CACHE_ENTRY);
+    }
+
+    private boolean put(String reactionId, ReactionResult result, int settings) {
+        if (result == null || !result.isMapped() || !result.isComplete() || reactionId == null) {
+            return false;
+        }
+        String key = smilesKey(result.getInputSmiles(), settings);
+        Record record = new Record(reactionId, settings, result);
+        ByteBuffer encoded = encode(record);
+        synchronized (this) {
+            if (full || !channel.isOpen() || bySmiles.containsKey(key)) {
+                return false;
+            }
+            int payload;
+            synchronized (fileMonitor) {
+                try (FileLock lock = channel.lock()) {
+                    long end = channel.size();
+                    if (end + encoded.remaining() > maxBytes) {
+                        full = true;
+                        LOGGER.info("Reaction store " + file + " reached its size cap; no further reactions are stored");
+                        return false;
+                    }
+                    writeFully(encoded, end);
+                    payload = (int) end + RECORD_PREFIX_BYTES;
+                } catch (IOException ex) {
+                    full = true;
+                    LOGGER.warn("Reaction store " + file + " is no longer written: " + ex.getMessage());
+                    return false;
+                }
+            }
+            bySmiles.put(key, payload);
+            if ((settings & CACHE_ENTRY) == 0) {
+                byHash.computeIfAbsent(result.getCanonicalHash(), k -> new ArrayList<>(1)).add(payload);
+            }
+            count++;
+            return true;
+        }
+    }
+
+    /**
+     * @return number of stored reactions
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return number of distinct canonical hashes
+     */
+    public synchronized int getHashCount() {
+        return byHash.size();
+    }
+
+    /**
+     * @return true once the size cap stopped further writes
+     */
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /*
+     Payload: settings, canonical hash, input SMILES, reaction id, mapped
+     SMILES, algorithm, the three counts, then the four feature lists
+     */
+    private static ByteBuffer encode(Record record) {
+        ReactionResult result = record.result;
+        List<byte[]> strings = new ArrayList<>();
+        strings.add(utf8(result.getCanonicalHash()));
+        strings.add(utf8(result.getInputSmiles()));
+        strings.add(utf8(record.reactionId));
+        strings.add(utf8(result.getMappedSmiles()));
+        strings.add(utf8(result.getAlgorithm()));
+        List<List<String>> lists = List.of(result.getFormedCleavedBonds(), result.getOrderChangedBonds(),
+                result.getStereoChangedBonds(), result.getReactionCentreFingerprint());
+        int length = 4 + 12 + 16;
+        for (byte[] bytes : strings) {
+            length += 4 + (bytes == null ? 0 : bytes.length);
+        }
+        List<byte[]> features = new ArrayList<>();
+        for (List<String> list : lists) {
+            for (String feature : list) {
+                byte[] bytes = utf8(feature);
+                features.add(bytes);
+                length += 4 + bytes.length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_BYTES + length);
+        buffer.position(RECORD_PREFIX_BYTES);
+        buffer.putInt(record.settings);
+        for (byte[] bytes : strings) {
+            putString(buffer, bytes);
+        }
+        buffer.putInt(result.getFormedCleavedCount())
+                .putInt(result.getOrderChangeCount())
+                .putInt(result.getStereoChangeCount());
+        int next = 0;
+        for (List<String> list : lists) {
+            buffer.putInt(list.size());
+            for (int i = 0; i < list.size(); i++) {
+                putString(buffer, features.get(next++));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_PREFIX_BYTES, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        buffer.position(0);
+        return buffer;
+    }
+
+    private static Record readRecord(MappedByteBuffer mapped, int payload) {
+        int settings = mapped.getInt(payload);
+        int cursor = skipString(mapped, payload + 4);
+        String inputSmiles = readString(mapped, cursor);
+        cursor = skipString(mapped, cursor);
+        String reactionId = readString(mapped, cursor);
+        cursor = skipString(mapped, cursor);
+        String mappedSmiles = readString(mapped, cursor);
+        cursor = skipString(mapped, cursor);
+        String algorithm = readString(mapped, cursor);
+        cursor = skipString(mapped, cursor);
+        int formedCleavedCount = mapped.getInt(cursor);
+        int orderChangeCount = mapped.getInt(cursor + 4);
+        int stereoChangeCount = mapped.getInt(cursor + 8);
+        cursor += 12;
+        List<List<String>> lists = new ArrayList<>(4);
+        for (int l = 0; l < 4; l++) {
+            int size = mapped.getInt(cursor);
+            cursor += 4;
+            List<String> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readString(mapped, cursor));
+                cursor = skipString(mapped, cursor);
+            }
+            lists.add(list);
+        }
+        ReactionResult result = new ReactionResult(inputSmiles, mappedSmiles,
+                formedCleavedCount, orderChangeCount, stereoChangeCount,
+                lists.get(0), lists.get(1), lists.get(2), lists.get(3), algorithm);
+        return new Record(reactionId, settings, result);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(NO_STRING);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String readString(MappedByteBuffer mapped, int offset) {
+        int length = mapped.getInt(offset);
+        if (length == NO_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        mapped.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipString(MappedByteBuffer mapped, int offset) {
+        int length = mapped.getInt(offset);
+        return offset + 4 + (length == NO_STRING ? 0 : length);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -18,16 +18,19 @@
  */
 package com.bioinceptionlabs.reactionblast.fingerprints;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
@@ -35,7 +38,7 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.valueOf;
 import static java.lang.System.getProperty;
-import static java.util.Collections.unmodifiableCollection;
+import static java.util.Collections.unmodifiableList;
 import static java.util.logging.Level.SEVERE;
 import static com.bioinceptionlabs.reactionblast.fingerprints.ReactionFingerprinter.FingerprintGenerator.getFingerprinterSize;
 
@@ -49,7 +52,7 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
         Comparator<IPatternFingerprinter>,
         Serializable {
 
-    private static final long serialVersionUID = 0156306561546552043757L;
+    private static final long serialVersionUID = 0156306561546552043760L;
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(PatternFingerprinter.class);
 
@@ -80,9 +83,22 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
         }
         return new PatternFingerprinter(features);
     }
-    private final Set<IFeature> featureSet;
+    private transient FeatureWeights weights;
+    /*
+     Dictionary the ids in weights belong to
+     */
+    private transient FeatureDictionary dictionary;
     private String fingerprintID = "?";
     private int fingerprintSize;
+    /*
+     Derived views, dropped on every change of the weights. The getters fill
+     them lazily, so readers on several threads may race to build one: each
+     builds its own and publishes it only when complete, through the
+     volatile field.
+     */
+    private transient volatile IFeature[] sortedFeatures;
+    private transient volatile double[] weightedHashedFingerPrint;
+    private transient volatile BitSet hashedFingerPrint;
 
     /**
      *
@@ -106,10 +122,13 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     public PatternFingerprinter(int fingerprintSize) {
         this.fingerprintSize = fingerprintSize;
-        featureSet = new TreeSet<IFeature>();
+        this.weights = new FeatureWeights();
+        this.dictionary = FeatureDictionary.current();
     }
 
     /**
+     * The first occurrence of a pattern is counted as 1.0, repeats add their
+     * weight.
      *
      * @param features
      * @param fingerprintSize
@@ -117,16 +136,11 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
     public PatternFingerprinter(Collection<IFeature> features, int fingerprintSize) {
         this(fingerprintSize);
         for (final IFeature feature : features) {
-            if (!this.featureSet.contains(feature)) {
-                this.featureSet.add(new Feature(feature.getPattern()));
+            int id = dictionary.intern(feature.getPattern());
+            if (weights.contains(id)) {
+                weights.add(id, feature.getWeight());
             } else {
-                for (IFeature localFeature : featureSet) {
-                    if (localFeature.getPattern().equals(feature.getPattern())) {
-                        double newWeight = localFeature.getWeight() + feature.getWeight();
-                        localFeature.setValue(newWeight);
-                        break;
-                    }
-                }
+                weights.add(id, 1.0);
             }
         }
     }
@@ -138,14 +152,14 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     @Override
     public void addBinary(BitSet fingerprint) throws CDKException {
-        if (featureSet == null) {
+        if (weights == null) {
             throw new CDKException("Cannot perform PatternFingerprint.add() as Fingerprint not initialized");
         }
-        for (int i = 0; i < fingerprint.size(); i++) {
-            if (fingerprint.get(i)) {
-                add(new Feature(valueOf(i), 1.0));
-            }
+        rebaseIfRetired();
+        for (int i = fingerprint.nextSetBit(0); i >= 0; i = fingerprint.nextSetBit(i + 1)) {
+            weights.add(dictionary.intern(valueOf(i)), 1.0);
         }
+        changed();
     }
 
     /**
@@ -154,21 +168,12 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     @Override
     public void add(IFeature feature) throws CDKException {
-        if (featureSet == null) {
+        if (weights == null) {
             throw new CDKException("Cannot perform PatternFingerprint.add() as Fingerprint not initialized");
         }
-
-        if (!this.featureSet.contains(feature)) {
-            this.featureSet.add(new Feature(feature.getPattern(), feature.getWeight()));
-        } else {
-            for (IFeature localFeature : featureSet) {
-                if (localFeature.getPattern().equals(feature.getPattern())) {
-                    double newWeight = localFeature.getWeight() + feature.getWeight();
-                    localFeature.setValue(newWeight);
-                    break;
-                }
-            }
-        }
+        rebaseIfRetired();
+        weights.add(dictionary.intern(feature.getPattern()), feature.getWeight());
+        changed();
     }
 
     /**
@@ -178,71 +183,115 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     @Override
     public void add(IPatternFingerprinter fngp) throws CDKException {
-        if (featureSet == null || fngp == null) {
+        if (weights == null || fngp == null) {
             throw new CDKException("Cannot perform PatternFingerprint.add() as Fingerprint not initialized");
         }
         if (fngp.getFingerprintSize() != this.fingerprintSize) {
             throw new CDKException("Cannot perform PatternFingerprint.add() as Fingerprint size not equal");
         }
-        for (IFeature feature : fngp.getFeatures()) {
-            if (!this.featureSet.contains(feature)) {
-                this.featureSet.add(new Feature(feature.getPattern(), feature.getWeight()));
-            } else {
-                for (IFeature localFeature : featureSet) {
-                    if (localFeature.getPattern().equals(feature.getPattern())) {
-                        double newWeight = localFeature.getWeight() + feature.getWeight();
-                        localFeature.setValue(newWeight);
-                        break;
-                    }
-                }
+        rebaseIfRetired();
+        if (fngp instanceof PatternFingerprinter
+                && ((PatternFingerprinter) fngp).dictionary == dictionary) {
+            FeatureWeights other = ((PatternFingerprinter) fngp).weights;
+            for (int slot = other.next(-1); slot >= 0; slot = other.next(slot)) {
+                weights.add(other.keyAt(slot), other.valueAt(slot));
+            }
+        } else {
+            for (IFeature feature : fngp.getFeatures()) {
+                weights.add(dictionary.intern(feature.getPattern()), feature.getWeight());
+            }
+        }
+        changed();
+    }
+
+    /*
+     Move the weights to the current dictionary once their own is retired,
+     so a retired dictionary stops growing and is freed with its last users
+     */
+    private void rebaseIfRetired() {
+        if (!dictionary.isRetired()) {
+            return;
+        }
+        FeatureDictionary target = FeatureDictionary.current();
+        FeatureWeights moved = new FeatureWeights();
+        for (int slot = weights.next(-1); slot >= 0; slot = weights.next(slot)) {
+            moved.add(target.intern(dictionary.pattern(weights.keyAt(slot))), weights.valueAt(slot));
+        }
+        weights = moved;
+        dictionary = target;
+    }
+
+    private void changed() {
+        sortedFeatures = null;
+        weightedHashedFingerPrint = null;
+        hashedFingerPrint = null;
+    }
+
+    /**
+     * Features in pattern order, built once per change of the weights
+     */
+    private IFeature[] sortedFeatures() {
+        IFeature[] features = sortedFeatures;
+        if (features == null) {
+            features = new IFeature[weights.size()];
+            int pos = 0;
+            for (int slot = weights.next(-1); slot >= 0; slot = weights.next(slot)) {
+                features[pos++] = new Feature(dictionary.pattern(weights.keyAt(slot)), weights.valueAt(slot));
             }
+            Arrays.sort(features);
+            sortedFeatures = features;
         }
+        return features;
     }
 
     @Override
     public double[] getValuesAsArray() {
-        int pos = 0;
-        double[] res = new double[featureSet.size()];
-        for (IFeature feature : featureSet) {
-            res[pos] = feature.getWeight();
-            pos += 1;
+        IFeature[] features = sortedFeatures();
+        double[] res = new double[features.length];
+        for (int pos = 0; pos < features.length; pos++) {
+            res[pos] = features[pos].getWeight();
         }
         return res;
     }
 
+    /**
+     * @return the features in pattern order; these are read-only snapshots,
+     * change the weights through add()
+     */
     @Override
     public Collection<IFeature> getFeatures() {
-        return unmodifiableCollection(featureSet);
+        return unmodifiableList(Arrays.asList(sortedFeatures()));
     }
 
     @Override
     public Collection<Double> getValues() {
-        List<Double> collection = new ArrayList<>(featureSet.size());
-        int i = 0;
-        for (IFeature feature : featureSet) {
-            collection.add(i, feature.getWeight());
-            i += 1;
+        IFeature[] features = sortedFeatures();
+        List<Double> collection = new ArrayList<>(features.length);
+        for (IFeature feature : features) {
+            collection.add(feature.getWeight());
         }
         return collection;
     }
 
     @Override
     public int getFeatureCount() {
-        return featureSet.size();
+        return weights.size();
     }
 
     @Override
     public BitSet getHashedFingerPrint() {
-        double[] weightedHashedFingerPrint = getWeightedHashedFingerPrint();
-        BitSet binary = new BitSet(this.fingerprintSize);
-        for (int i = 0; i < weightedHashedFingerPrint.length; i++) {
-            if (weightedHashedFingerPrint[i] > 0.) {
-                binary.set(i, true);
-            } else {
-                binary.set(i, false);
+        BitSet binary = hashedFingerPrint;
+        if (binary == null) {
+            double[] weightedHashed = weightedHashedFingerPrint();
+            binary = new BitSet(this.fingerprintSize);
+            for (int i = 0; i < weightedHashed.length; i++) {
+                if (weightedHashed[i] > 0.) {
+                    binary.set(i);
+                }
             }
+            hashedFingerPrint = binary;
         }
-        return binary;
+        return (BitSet) binary.clone();
     }
 
     /**
@@ -251,28 +300,60 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     @Override
     public double[] getWeightedHashedFingerPrint() {
-        double[] hashedFingerPrint = new double[this.fingerprintSize];
-        for (int i = 0; i < hashedFingerPrint.length; i++) {
-            hashedFingerPrint[i] = 0.;
+        return weightedHashedFingerPrint().clone();
+    }
+
+    private double[] weightedHashedFingerPrint() {
+        double[] hashed = weightedHashedFingerPrint;
+        if (hashed == null) {
+            hashed = new double[this.fingerprintSize];
+            for (IFeature feature : sortedFeatures()) {
+                hashed[bucket(feature.hashCode(), this.fingerprintSize)] += feature.getWeight();
+            }
+            weightedHashedFingerPrint = hashed;
         }
-        Collection<IFeature> features = this.getFeatures();
-        features.stream().forEach((feature) -> {
-            long hashCode = feature.hashCode();
-            java.util.Random rng = new java.util.Random(hashCode);
-            int randomNumber = rng.nextInt(this.fingerprintSize);
-            hashedFingerPrint[randomNumber] += feature.getWeight();
-        });
-        return hashedFingerPrint;
+        return hashed;
+    }
+
+    /**
+     * The bucket of a feature is the first {@code nextInt(size)} of a
+     * {@link java.util.Random} seeded with the feature hash code. This is the
+     * same number computed without creating the generator, so fingerprints
+     * keep their bit layout.
+     *
+     * @param hashCode feature hash code
+     * @param size fingerprint size
+     * @return bucket index in [0, size)
+     */
+    static int bucket(long hashCode, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long seed = (hashCode ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
+        seed = (seed * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+        int r = (int) (seed >>> 17);
+        int m = size - 1;
+        if ((size & m) == 0) {
+            return (int) ((size * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % size) + m < 0;) {
+            seed = (seed * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+            u = (int) (seed >>> 17);
+        }
+        return r;
     }
 
+    private static final long RANDOM_MULTIPLIER = 0x5DEECE66DL;
+    private static final long RANDOM_ADDEND = 0xBL;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
         String NEW_LINE = getProperty("line.separator");
-        DecimalFormat df = new DecimalFormat();
         result.append(NEW_LINE);
         result.append("ID=").append(this.fingerprintID);
-        result.append(" (").append(this.featureSet.size()).append(")");
+        result.append(" (").append(this.weights.size()).append(")");
         result.append(NEW_LINE);
         result.append(this.getFeatures());
         result.append(NEW_LINE);
@@ -281,44 +362,20 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
 
     @Override
     public IFeature getFeature(int index) throws CDKException {
-        if (featureSet.size() >= index) {
-            int i = 0;
-            for (final IFeature key : featureSet) {
-                if (i == index) {
-                    return key;
-                }
-                i++;
-            }
-        }
-        return null;
+        IFeature[] features = sortedFeatures();
+        return index >= 0 && index < features.length ? features[index] : null;
     }
 
     @Override
     public Double getWeight(String pattern) {
-        if (!featureSet.isEmpty()) {
-            int i = 0;
-            for (final IFeature key : featureSet) {
-                if (key.getPattern().equals(pattern)) {
-                    return key.getWeight();
-                }
-                i++;
-            }
-        }
-        return -1.0;
+        int id = dictionary.find(pattern);
+        return id >= 0 && weights.contains(id) ? weights.get(id) : -1.0;
     }
 
     @Override
     public Double getWeight(int index) {
-        if (featureSet.size() >= index) {
-            int i = 0;
-            for (final IFeature value : featureSet) {
-                if (i == index) {
-                    return value.getWeight();
-                }
-                i++;
-            }
-        }
-        return -1.0;
+        IFeature[] features = sortedFeatures();
+        return index >= 0 && index < features.length ? features[index].getWeight() : -1.0;
     }
 
     /**
@@ -388,7 +445,7 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
     }
 
     /**
-     * Return true if two Fingerprints are equal
+     * Return true if two Fingerprints are equal (same patterns, ID and size)
      *
      * @param object
      * @return
@@ -402,7 +459,7 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
             return false;
         }
         final PatternFingerprinter other = (PatternFingerprinter) object;
-        if (this.featureSet != other.featureSet && (this.featureSet == null || !this.featureSet.equals(other.featureSet))) {
+        if (!sameKeys(other)) {
             return false;
         }
         if ((this.fingerprintID == null) ? (other.fingerprintID != null) : !this.fingerprintID.equals(other.fingerprintID)) {
@@ -413,13 +470,33 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
 
     @Override
     public int hashCode() {
+        int featureHash = 0;
+        for (int slot = weights.next(-1); slot >= 0; slot = weights.next(slot)) {
+            featureHash += Feature.hashCode(dictionary.pattern(weights.keyAt(slot)));
+        }
         int hash = 5;
-        hash = 83 * hash + (this.featureSet != null ? this.featureSet.hashCode() : 0);
+        hash = 83 * hash + featureHash;
         hash = 83 * hash + (this.fingerprintID != null ? this.fingerprintID.hashCode() : 0);
         hash = 83 * hash + this.fingerprintSize;
         return hash;
     }
 
+    private boolean sameKeys(PatternFingerprinter other) {
+        if (dictionary == other.dictionary) {
+            return weights.sameKeys(other.weights);
+        }
+        if (weights.size() != other.weights.size()) {
+            return false;
+        }
+        for (int slot = weights.next(-1); slot >= 0; slot = weights.next(slot)) {
+            int id = other.dictionary.find(dictionary.pattern(weights.keyAt(slot)));
+            if (id < 0 || !other.weights.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int getFingerprintSize() {
         return fingerprintSize;
@@ -432,7 +509,8 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
      */
     @Override
     public boolean hasFeature(IFeature key) {
-        return this.featureSet.contains(key);
+        int id = dictionary.find(key.getPattern());
+        return id >= 0 && weights.contains(id);
     }
 
     @Override
@@ -446,6 +524,236 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
         return p;
     }
 
+    /*
+     Feature ids are process local, so the weights travel as pattern strings
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        IFeature[] features = sortedFeatures();
+        out.writeInt(features.length);
+        for (IFeature feature : features) {
+            out.writeUTF(feature.getPattern());
+            out.writeDouble(feature.getWeight());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        weights = new FeatureWeights();
+        dictionary = FeatureDictionary.current();
+        for (int i = 0; i < count; i++) {
+            String pattern = in.readUTF();
+            weights.add(dictionary.intern(pattern), in.readDouble());
+        }
+    }
+
+    /**
+     * Pattern string to int id table, shared by the fingerprints created
+     * while it is current so a pattern is stored once however many reactions
+     * carry it.
+     *
+     * The table is bounded: once it holds {@link #MAX_PATTERNS} patterns it
+     * is retired and a fresh one becomes current. Fingerprints move their
+     * weights to the current table at their next change, and a retired table
+     * is collected once no fingerprint refers to it, so a long-running
+     * process does not keep every pattern it has ever seen.
+     */
+    static final class FeatureDictionary {
+
+        static final int MAX_PATTERNS = 1 << 20;
+
+        private static volatile FeatureDictionary current = new FeatureDictionary(MAX_PATTERNS);
+
+        private final int maxPatterns;
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] patterns = new String[1024];
+        private int count;
+        private volatile boolean retired;
+
+        FeatureDictionary(int maxPatterns) {
+            this.maxPatterns = maxPatterns;
+        }
+
+        /**
+         * @return the table new fingerprints use
+         */
+        static FeatureDictionary current() {
+            return current;
+        }
+
+        /**
+         * Make a fresh table current, as when the current one is full.
+         *
+         * @param maxPatterns bound of the fresh table
+         */
+        static synchronized void startNew(int maxPatterns) {
+            current.retired = true;
+            current = new FeatureDictionary(maxPatterns);
+        }
+
+        private static synchronized void retire(FeatureDictionary full) {
+            if (current == full) {
+                startNew(full.maxPatterns);
+            }
+        }
+
+        /**
+         * @return the id of the pattern, assigned on first use
+         */
+        int intern(String pattern) {
+            Integer id = ids.get(pattern);
+            if (id != null) {
+                return id;
+            }
+            boolean full;
+            synchronized (this) {
+                id = ids.get(pattern);
+                if (id != null) {
+                    return id;
+                }
+                String[] table = patterns;
+                if (count == table.length) {
+                    table = Arrays.copyOf(table, count * 2);
+                    patterns = table;
+                }
+                table[count] = pattern;
+                id = count++;
+                ids.put(pattern, id);
+                full = count >= maxPatterns && !retired;
+            }
+            if (full) {
+                retire(this);
+            }
+            return id;
+        }
+
+        /**
+         * @return the id of the pattern, or -1 if it was never interned
+         */
+        int find(String pattern) {
+            Integer id = pattern == null ? null : ids.get(pattern);
+            return id == null ? -1 : id;
+        }
+
+        String pattern(int id) {
+            return patterns[id];
+        }
+
+        boolean isRetired() {
+            return retired;
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+
+    /**
+     * Open-addressing id to weight map with linear probing; ids are never
+     * removed.
+     */
+    static final class FeatureWeights {
+
+        private static final int FREE = -1;
+
+        private int[] keys;
+        private double[] values;
+        private int size;
+
+        FeatureWeights() {
+            keys = new int[16];
+            values = new double[16];
+            Arrays.fill(keys, FREE);
+        }
+
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private int slotOf(int id) {
+            int mask = keys.length - 1;
+            int slot = mix(id) & mask;
+            while (keys[slot] != FREE && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        boolean contains(int id) {
+            return keys[slotOf(id)] == id;
+        }
+
+        double get(int id) {
+            int slot = slotOf(id);
+            return keys[slot] == id ? values[slot] : 0.;
+        }
+
+        void add(int id, double weight) {
+            int slot = slotOf(id);
+            if (keys[slot] == id) {
+                values[slot] += weight;
+                return;
+            }
+            keys[slot] = id;
+            values[slot] = weight;
+            if (++size * 2 > keys.length) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            Arrays.fill(keys, FREE);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the next occupied slot after the given one, or -1
+         */
+        int next(int slot) {
+            for (int i = slot + 1; i < keys.length; i++) {
+                if (keys[i] != FREE) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int keyAt(int slot) {
+            return keys[slot];
+        }
+
+        double valueAt(int slot) {
+            return values[slot];
+        }
+
+        boolean sameKeys(FeatureWeights other) {
+            if (size != other.size) {
+                return false;
+            }
+            for (int slot = next(-1); slot >= 0; slot = next(slot)) {
+                if (!other.contains(keys[slot])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 
     // === Inner classes/interfaces merged from separate files ===
 
@@ -542,8 +850,12 @@ public class PatternFingerprinter implements Cloneable, IPatternFingerprinter,
 
         @Override
         public int hashCode() {
+            return hashCode(pattern);
+        }
+
+        static int hashCode(String pattern) {
             int hash = 7;
-            hash = 29 * hash + (this.pattern != null ? this.pattern.hashCode() : 0);
+            hash = 29 * hash + (pattern != null ? pattern.hashCode() : 0);
             return hash;
         }
 
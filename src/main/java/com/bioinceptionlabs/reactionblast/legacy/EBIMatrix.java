@@ -62,7 +62,7 @@ import static java.lang.Math.hypot;
  * Technology.
  * @version 5 August 1998
  */
-public class EBIMatrix extends Object implements Cloneable, java.io.Serializable {
+public class EBIMatrix extends Object implements MatrixView, Cloneable, java.io.Serializable {
 
     static final String NEW_LINE = getProperty("line.separator");
 
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2007-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.bioinceptionlabs.reactionblast.legacy;
+
+/**
+ * Element access to a matrix, dense ({@link EBIMatrix}) or held in storage
+ * of its own (the sparse bond-electron matrices, the planes of a score
+ * tensor). For the matrix algebra take a dense copy with
+ * {@link #duplicate()}.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public interface MatrixView {
+
+    /**
+     * @param i row
+     * @param j column
+     * @return the value, or -1 outside the matrix
+     */
+    double getValue(int i, int j);
+
+    /**
+     * @param row row
+     * @param col column
+     * @param value new value
+     * @return false if the cell is outside the matrix
+     */
+    boolean setValue(int row, int col, double value);
+
+    /**
+     * @return number of rows
+     */
+    int getRowDimension();
+
+    /**
+     * @return number of columns
+     */
+    int getColumnDimension();
+
+    /**
+     * @return a dense copy of the matrix
+     */
+    EBIMatrix duplicate();
+}
@@ -20,17 +20,13 @@ package com.bioinceptionlabs.reactionblast.mapping;
 
 import java.io.Serializable;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static java.lang.System.getProperty;
 import static java.util.Collections.unmodifiableMap;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
@@ -40,6 +36,8 @@ import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
 import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
 import com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import com.bioinceptionlabs.reactionblast.mapping.Reactor.PreparedReaction;
 import static com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm.MAX;
 import static com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm.MIN;
 import static com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm.MIXTURE;
@@ -60,10 +58,11 @@ public class CallableAtomMappingTool implements Serializable {
     private static final long serialVersionUID = 0x29e2adb1716b13eL;
     /** Hard timeout per algorithm worker. Covers all MCS pairs + matrix selection. */
     private static final long ALGORITHM_TIMEOUT_MS = 120_000L; // 2 minutes
-    private static final int MAPPING_PARALLELISM
-            = Math.max(2, Math.min(3, Runtime.getRuntime().availableProcessors()));
-    private static final ExecutorService MAPPING_EXECUTOR
-            = Executors.newFixedThreadPool(MAPPING_PARALLELISM, new MappingThreadFactory());
+    /**
+     * Share of a reaction's time budget the first funnel pass may use, so
+     * the remaining algorithms still get a turn if it is not accepted.
+     */
+    private static final double FUNNEL_BUDGET_SHARE = 0.5;
 
     private Map<IMappingAlgorithm, Reactor> solution = null;
 
@@ -104,6 +103,7 @@ public class CallableAtomMappingTool implements Serializable {
          * Standardize the reaction ONCE.
          */
         IReaction standardizedReaction = null;
+        long standardiseStart = nanoTime();
         try {
             standardizedReaction = standardizer.standardize(reaction);
         } catch (Exception e) {
@@ -116,11 +116,19 @@ public class CallableAtomMappingTool implements Serializable {
         }
 
         MappingDiagnostics.resetReaction(standardizedReaction.getID());
+        MappingDiagnostics.recordStage(Stage.STANDARDISE, standardizedReaction.getID(),
+                nanoTime() - standardiseStart);
+
+        /*
+         * Type, order, lay out and aromatise the molecules ONCE; every
+         * algorithm below copies from this shared, read-only reaction.
+         */
+        PreparedReaction preparedReaction = PreparedReaction.prepare(standardizedReaction);
 
         if (isIdentityReaction(standardizedReaction)) {
             try {
                 Reactor minResult = new MappingThread(
-                        "IMappingAlgorithm.MIN", standardizedReaction, MIN, removeHydrogen).call();
+                        "IMappingAlgorithm.MIN", preparedReaction, MIN, removeHydrogen).call();
                 putSolution(MIN, minResult);
             } catch (InterruptedException | ExecutionException e) {
                 LOGGER.debug("MIN identity phase failed: " + e.getMessage());
@@ -144,27 +152,44 @@ public class CallableAtomMappingTool implements Serializable {
                 + standardizedReaction.getProductCount();
         boolean hasRings = hasRingSystems(standardizedReaction);
         IMappingAlgorithm firstPass = (checkComplex && hasRings) ? RINGS : MIN;
+
         if (totalMolecules <= 5) {
-            java.util.concurrent.Future<Reactor> phase1Future = null;
-            try {
-                phase1Future = MAPPING_EXECUTOR.submit(new MappingThread(
+            try (MappingDiagnostics.StageTimer funnel
+                    = MappingDiagnostics.start(Stage.RINGS_FUNNEL, standardizedReaction.getID())) {
+                long firstPassTimeout = MappingExecution.boundedTimeout(ALGORITHM_TIMEOUT_MS, FUNNEL_BUDGET_SHARE);
+                MappingThread firstPassJob = new MappingThread(
                         "IMappingAlgorithm." + firstPass.name(),
-                        standardizedReaction, firstPass, removeHydrogen));
-                Reactor firstPassResult = phase1Future.get(
-                        ALGORITHM_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
-                putSolution(firstPass, firstPassResult);
-
-                if (isMappingAcceptable(firstPassResult)) {
-                    LOGGER.debug(firstPass + " mapping accepted — skipping remaining algorithms");
-                    return;
-                }
-                LOGGER.debug(firstPass + " mapping insufficient — running remaining algorithms");
-            } catch (java.util.concurrent.TimeoutException e) {
-                LOGGER.warn(firstPass + " phase timed out after " + ALGORITHM_TIMEOUT_MS + "ms");
-                if (phase1Future != null) {
-                    phase1Future.cancel(true);
+                        preparedReaction, firstPass, removeHydrogen);
+                /*
+                 * A first pass that runs out of time is simply run again with
+                 * the other algorithms, so it only makes the answer
+                 * incomplete if its (partial) result is kept.
+                 */
+                MappingExecution.Outcome<java.util.concurrent.Future<Reactor>> phase1 = MappingExecution.callWithBudget(
+                        firstPassTimeout,
+                        () -> MappingExecution.invokeAll(java.util.Collections.singletonList(firstPassJob),
+                                firstPassTimeout, firstPassTimeout).get(0));
+                java.util.concurrent.Future<Reactor> phase1Future = phase1.getValue();
+                if (phase1Future.isCancelled()) {
+                    LOGGER.warn(firstPass + " phase timed out after " + firstPassTimeout + "ms");
+                } else {
+                    Reactor firstPassResult = phase1Future.get(); // already complete
+                    putSolution(firstPass, firstPassResult);
+                    if (!phase1.isComplete()) {
+                        MappingExecution.markTruncated();
+                    }
+
+                    if (isMappingAcceptable(firstPassResult)) {
+                        LOGGER.debug(firstPass + " mapping accepted — skipping remaining algorithms");
+                        return;
+                    }
+                    LOGGER.debug(firstPass + " mapping insufficient — running remaining algorithms");
                 }
-            } catch (InterruptedException | ExecutionException e) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.debug(firstPass + " phase interrupted: " + e.getMessage());
+                return;
+            } catch (ExecutionException e) {
                 LOGGER.debug(firstPass + " phase failed: " + e.getMessage());
                 LOGGER.error(e);
             } catch (Exception e) {
@@ -190,47 +215,43 @@ public class CallableAtomMappingTool implements Serializable {
             remaining = new IMappingAlgorithm[]{MIN, MAX, MIXTURE, RINGS};
         }
 
-        java.util.List<java.util.concurrent.Future<Reactor>> submittedFutures = new java.util.ArrayList<>();
-        try {
-            CompletionService<Reactor> cs = new ExecutorCompletionService<>(MAPPING_EXECUTOR);
-            int jobCounter = 0;
+        try (MappingDiagnostics.StageTimer algorithms
+                = MappingDiagnostics.start(Stage.ALGORITHMS, standardizedReaction.getID())) {
+            java.util.List<MappingThread> jobs = new java.util.ArrayList<>();
             for (IMappingAlgorithm algo : remaining) {
                 LOGGER.debug("Submitting " + algo.description());
-                submittedFutures.add(cs.submit(new MappingThread("IMappingAlgorithm." + algo.name(),
-                        standardizedReaction, algo, removeHydrogen)));
-                jobCounter++;
+                jobs.add(new MappingThread("IMappingAlgorithm." + algo.name(),
+                        preparedReaction, algo, removeHydrogen));
             }
-            int collected = 0;
-            for (int i = 0; i < jobCounter; i++) {
+            /*
+             * Algorithms run on the shared mapping pool; when this reaction is
+             * itself a pool task (RDT.mapAll) they are forked onto the current
+             * worker, which runs them itself while it waits.
+             */
+            java.util.List<java.util.concurrent.Future<Reactor>> futures
+                    = MappingExecution.invokeAll(jobs, Long.MAX_VALUE, ALGORITHM_TIMEOUT_MS);
+            int skipped = 0;
+            for (java.util.concurrent.Future<Reactor> future : futures) {
+                if (future.isCancelled()) {
+                    skipped++;
+                    continue;
+                }
                 try {
-                    java.util.concurrent.Future<Reactor> future =
-                            cs.poll(ALGORITHM_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
-                    if (future == null) {
-                        LOGGER.warn("Algorithm poll timed out after " + ALGORITHM_TIMEOUT_MS
-                                + "ms — " + (jobCounter - collected) + " remaining algorithms skipped");
-                        break;
-                    }
-                    collected++;
                     Reactor chosen = future.get(); // already complete
                     putSolution(chosen.getAlgorithm(), chosen);
                 } catch (ExecutionException e) {
-                    collected++;
                     LOGGER.debug("Algorithm worker failed: " + e.getCause());
                     LOGGER.error(e);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    LOGGER.debug("Mapping interrupted during collection: " + e.getMessage());
-                    break;
                 }
             }
-            // Cancel any orphaned workers still running in the shared pool
-            // so they don't starve future mapping requests
-            for (java.util.concurrent.Future<Reactor> f : submittedFutures) {
-                if (!f.isDone()) {
-                    f.cancel(true);
-                }
+            if (skipped > 0) {
+                LOGGER.warn("Algorithm poll timed out after " + ALGORITHM_TIMEOUT_MS
+                        + "ms — " + skipped + " remaining algorithms skipped");
             }
             LOGGER.debug("======DONE CallableAtomMappingTool=======");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Mapping interrupted during collection: " + e.getMessage());
         } catch (Exception e) {
             LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
             LOGGER.error(e);
@@ -416,13 +437,13 @@ public class CallableAtomMappingTool implements Serializable {
 
         private static final ILoggingTool MT_LOGGER = createLoggingTool(MappingThread.class);
 
-        private final IReaction cleanedReaction;
+        private final PreparedReaction preparedReaction;
         private final IMappingAlgorithm algorithm;
         private final boolean removeHydrogen;
 
-        MappingThread(String message, IReaction cleanedReaction,
+        MappingThread(String message, PreparedReaction preparedReaction,
                 IMappingAlgorithm algorithm, boolean removeHydrogen) {
-            this.cleanedReaction = cleanedReaction;
+            this.preparedReaction = preparedReaction;
             this.algorithm = algorithm;
             this.removeHydrogen = removeHydrogen;
             MT_LOGGER.info("|++++++++++++++++++++++++++++|");
@@ -433,7 +454,7 @@ public class CallableAtomMappingTool implements Serializable {
         public Reactor call() throws Exception {
             try {
                 Reactor reactor;
-                reactor = new Reactor(cleanedReaction, removeHydrogen, algorithm);
+                reactor = new Reactor(preparedReaction, removeHydrogen, algorithm);
                 MT_LOGGER.info("|Done " + reactor.getAlgorithm() + " |");
                 return reactor;
             } catch (Exception ex) {
@@ -442,14 +463,4 @@ public class CallableAtomMappingTool implements Serializable {
         }
     }
 
-    private static final class MappingThreadFactory implements ThreadFactory {
-
-        @Override
-        public Thread newThread(Runnable runnable) {
-            Thread thread = new Thread(runnable, "rdt-mapping");
-            thread.setDaemon(true);
-            return thread;
-        }
-    }
-
 }
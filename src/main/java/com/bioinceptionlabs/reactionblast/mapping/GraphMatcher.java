@@ -11,6 +11,8 @@ import com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.Key;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer;
 import com.bioinceptionlabs.reactionblast.mapping.ThreadSafeCache;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
 import com.bioinceptionlabs.reactionblast.mapping.algorithm.Holder;
 import java.io.IOException;
 import java.io.Serializable;
@@ -19,6 +21,7 @@ import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,18 +29,10 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import org.openscience.cdk.aromaticity.Aromaticity;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.graph.ConnectivityChecker;
-import org.openscience.cdk.graph.CycleFinder;
-import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
@@ -54,7 +49,6 @@ import org.openscience.smsd.AtomBondMatcher;
 import org.openscience.smsd.BaseMapping.Algorithm;
 import org.openscience.smsd.BaseMapping;
 import org.openscience.smsd.ExtAtomContainerManipulator;
-import static java.lang.Runtime.getRuntime;
 import static java.lang.String.valueOf;
 import static java.lang.System.currentTimeMillis;
 import static java.lang.System.getProperty;
@@ -64,7 +58,6 @@ import static java.util.Collections.unmodifiableMap;
 import static java.util.logging.Level.SEVERE;
 import static java.util.logging.Level.WARNING;
 import static org.openscience.cdk.CDKConstants.UNSET;
-import static org.openscience.cdk.aromaticity.ElectronDonation.daylight;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
 import static org.openscience.smsd.ExtAtomContainerManipulator.cloneWithIDs;
 
@@ -78,12 +71,10 @@ public class GraphMatcher extends Debugger {
     private static final int SINGLE_SUBGRAPH_MATCH = 1;
     private static final long SUBGRAPH_TIMEOUT_MS = 5_000L;
     private static final long MCS_TIMEOUT_MS = 10_000L;
-    /** Hard timeout per poll() call waiting for the next completed MCS pair. */
+    /** Hard timeout waiting for the next MCS pair result. */
     private static final long MCS_POLL_TIMEOUT_MS = 15_000L;
     /** Overall wall-clock budget for the entire matcher() call. */
     private static final long MATCHER_BUDGET_MS = 60_000L;
-    /** Hard timeout for the executor shutdown after collection. */
-    private static final long MATCHER_SHUTDOWN_TIMEOUT_MS = 2_000L;
 
     /**
      * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
@@ -156,6 +147,9 @@ public class GraphMatcher extends Debugger {
         private final int numberOfCyclesProduct;
         private final String queryStructureKey;
         private final String targetStructureKey;
+        /** Position among the jobs to run before they are prioritised. */
+        private int rank;
+        private int upperBound;
 
         PairJob(Combination representative,
                 MatcherSettings settings,
@@ -180,6 +174,116 @@ public class GraphMatcher extends Debugger {
         }
     }
 
+    /**
+     * Upper bound on the number of atoms an MCS of two molecules can map,
+     * from their element counts. Atoms without bonds take part only in a
+     * single-atom MCS, so beyond one atom only bonded atoms of each element
+     * are counted.
+     */
+    static int mcsUpperBound(IAtomContainer query, IAtomContainer target) {
+        Map<String, int[]> queryCounts = countAtomsByElement(query);
+        Map<String, int[]> targetCounts = countAtomsByElement(target);
+        int common = 0;
+        int commonBonded = 0;
+        for (Map.Entry<String, int[]> entry : queryCounts.entrySet()) {
+            int[] targetCount = targetCounts.get(entry.getKey());
+            if (targetCount != null) {
+                common += Math.min(entry.getValue()[0], targetCount[0]);
+                commonBonded += Math.min(entry.getValue()[1], targetCount[1]);
+            }
+        }
+        return Math.max(commonBonded, Math.min(common, 1));
+    }
+
+    /**
+     * Atoms per element: all of them, and those with at least one bond.
+     */
+    private static Map<String, int[]> countAtomsByElement(IAtomContainer container) {
+        Map<String, int[]> counts = new HashMap<>();
+        if (container == null) {
+            return counts;
+        }
+        for (IAtom atom : container.atoms()) {
+            int[] count = counts.computeIfAbsent(atom.getSymbol(), k -> new int[2]);
+            count[0]++;
+            if (container.getConnectedBondsCount(atom) > 0) {
+                count[1]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Order MCS jobs so the searches that can still change a row or column
+     * winner go first: larger bounds and closer ring counts first. A pair
+     * whose upper bound is below the best clique already known in both its
+     * row and its column cannot become either's winner and runs last; such
+     * cliques are only known for identity pairs and for cells kept from an
+     * earlier pass, so on a first pass the order rests on the bounds. No pair
+     * is dropped, so with enough time the matrices are filled exactly as in
+     * input order; {@link MappingExecution#invokeAll} runs the jobs in this
+     * order, so under the matcher budget the pairs that are cut are the
+     * least useful ones.
+     */
+    private static List<PairJob> prioritise(List<PairJob> jobs, double[] rowBest, double[] columnBest) {
+        List<PairJob> ordered = new ArrayList<>(jobs);
+        ordered.sort(Comparator
+                .comparing((PairJob job) -> isDominated(job, rowBest, columnBest))
+                .thenComparing(job -> -job.upperBound)
+                .thenComparing(job -> Math.abs(job.numberOfCyclesEduct - job.numberOfCyclesProduct))
+                .thenComparing(job -> job.rank));
+        return ordered;
+    }
+
+    private static double pairWeight(ReactionContainer reactionContainer, PairJob job) throws Exception {
+        return (double) reactionContainer.getEduct(job.representative.getRowIndex()).getAtomCount()
+                * reactionContainer.getProduct(job.representative.getColIndex()).getAtomCount();
+    }
+
+    private static boolean isDominated(PairJob job, double[] rowBest, double[] columnBest) {
+        return job.upperBound < rowBest[job.representative.getRowIndex()]
+                && job.upperBound < columnBest[job.representative.getColIndex()];
+    }
+
+    /**
+     * Clone molecule preserving IDs.
+     * Aromaticity and atom-type perception already done in GraphMatcher
+     * before MCSThread is created — do NOT repeat here (was ~25% of total time).
+     */
+    private static IAtomContainer newContainerWithIDs(IAtomContainer mol)
+            throws CDKException, CloneNotSupportedException {
+        if (mol != null && mol.getAtomCount() > 0) {
+            IAtomContainer ac = ExtAtomContainerManipulator.cloneWithIDs(mol);
+
+            for (int i = 0; i < ac.getAtomCount(); i++) {
+                String atomID = mol.getAtom(i).getID() == null
+                        ? valueOf(i) : mol.getAtom(i).getID();
+                ac.getAtom(i).setID(atomID);
+            }
+            String containerID = mol.getID() == null ? valueOf(nanoTime()) : mol.getID();
+            ac.setID(containerID);
+            harmonizeForSmsd(ac);
+
+            return ac;
+        }
+        return mol;
+    }
+
+    /**
+     * Harmonise bond flags and perceive aromaticity in place.
+     *
+     * @return number of rings, 0 if perception fails
+     */
+    private static int prepareForMatching(IAtomContainer molecule) {
+        harmonizeForSmsd(molecule);
+        try {
+            MappingKeyUtil.applyAromaticity(molecule);
+            return MappingKeyUtil.ringCount(molecule);
+        } catch (CDKException | RuntimeException ex) {
+            return 0;
+        }
+    }
+
     private static void harmonizeForSmsd(IAtomContainer container) {
         if (container == null) {
             return;
@@ -209,17 +313,20 @@ public class GraphMatcher extends Debugger {
      * @throws InterruptedException
      */
     public static Collection<MCSSolution> matcher(Holder mh) throws Exception {
-        ExecutorService executor = null;
         Collection<MCSSolution> mcsSolutions = new ArrayList<>();
         long matcherStart = currentTimeMillis();
         String reactionId = mh.getReactionID();
         String algorithmName = mh.getTheory() == null ? "UNKNOWN" : mh.getTheory().name();
 
         LOGGER.debug("Matcher Class for " + mh.getTheory());
+        if (MappingExecution.isCancelled()) {
+            LOGGER.debug("Matcher cancelled before start");
+            MappingExecution.markTruncated();
+            return unmodifiableCollection(mcsSolutions);
+        }
         List<Combination> jobReplicatorList = new ArrayList<>();
-        int taskCounter = 0;
 
-        try {
+        try (MappingDiagnostics.StageTimer mcsTimer = MappingDiagnostics.start(Stage.MCS, reactionId)) {
             ReactionContainer reactionStructureInformation = mh.getReactionContainer();
             Integer eductCount = reactionStructureInformation.getEductCount();
             Integer productCount = reactionStructureInformation.getProductCount();
@@ -253,25 +360,30 @@ public class GraphMatcher extends Debugger {
             /*
              * Pre-compute aromaticity and cycle counts ONCE per molecule.
              * Previously this ran for every educt×product pair — O(E*P) redundancy.
+             * Only the rows and columns refreshed in this pass are prepared;
+             * the reaction container keeps each molecule's ring count (and
+             * structure key) until the molecule is modified, so later
+             * iterations only prepare the fragments the last removal touched.
              */
-            CycleFinder allCycles = Cycles.or(Cycles.all(),
-                    Cycles.or(Cycles.relevant(), Cycles.essential()));
-            Aromaticity aromaticity = new Aromaticity(daylight(), allCycles);
-            CycleFinder shortCycles = Cycles.vertexShort();
+            boolean[] eductRefreshed = new boolean[eductCount];
+            boolean[] productRefreshed = new boolean[productCount];
+            for (Combination c : jobReplicatorList) {
+                eductRefreshed[c.getRowIndex()] = true;
+                productRefreshed[c.getColIndex()] = true;
+            }
 
             int[] eductCycleCache = new int[eductCount];
             String[] eductStructureKeys = new String[eductCount];
             for (int i = 0; i < eductCount; i++) {
                 IAtomContainer educt = reactionStructureInformation.getEduct(i);
-                if (educt != null && educt.getAtomCount() > 0) {
-                    harmonizeForSmsd(educt);
-                    try {
-                        aromaticity.apply(educt);
-                        eductCycleCache[i] = shortCycles.find(educt).numberOfCycles();
-                    } catch (CDKException | RuntimeException ex) {
-                        eductCycleCache[i] = 0;
+                if (eductRefreshed[i] && educt != null && educt.getAtomCount() > 0) {
+                    Integer rings = reactionStructureInformation.getEductRingCount(i);
+                    if (rings == null) {
+                        rings = prepareForMatching(educt);
+                        reactionStructureInformation.setEductRingCount(i, rings);
                     }
-                    eductStructureKeys[i] = MappingKeyUtil.computeStructureKey(educt);
+                    eductCycleCache[i] = rings;
+                    eductStructureKeys[i] = reactionStructureInformation.getEductStructureKey(i);
                 }
             }
 
@@ -279,15 +391,14 @@ public class GraphMatcher extends Debugger {
             String[] productStructureKeys = new String[productCount];
             for (int j = 0; j < productCount; j++) {
                 IAtomContainer product = reactionStructureInformation.getProduct(j);
-                if (product != null && product.getAtomCount() > 0) {
-                    harmonizeForSmsd(product);
-                    try {
-                        aromaticity.apply(product);
-                        productCycleCache[j] = shortCycles.find(product).numberOfCycles();
-                    } catch (CDKException | RuntimeException ex) {
-                        productCycleCache[j] = 0;
+                if (productRefreshed[j] && product != null && product.getAtomCount() > 0) {
+                    Integer rings = reactionStructureInformation.getProductRingCount(j);
+                    if (rings == null) {
+                        rings = prepareForMatching(product);
+                        reactionStructureInformation.setProductRingCount(j, rings);
                     }
-                    productStructureKeys[j] = MappingKeyUtil.computeStructureKey(product);
+                    productCycleCache[j] = rings;
+                    productStructureKeys[j] = reactionStructureInformation.getProductStructureKey(j);
                 }
             }
 
@@ -328,33 +439,34 @@ public class GraphMatcher extends Debugger {
                 }
             }
 
-            /*
-             * Assign the threads
-             *
-             * Use Single Thread to computed MCS as muntiple threads lock the calculations!
-             */
-            int threadsAvailable = Math.max(1, getRuntime().availableProcessors() - 1);
-            threadsAvailable = Math.max(1, Math.min(threadsAvailable, pairJobs.size()));
-
             LOGGER.debug("Candidate pairs " + jobReplicatorList.size()
                     + ", unique structural pairs " + pairJobs.size());
-            LOGGER.debug(threadsAvailable + " threads requested for MCS in " + mh.getTheory());
-
-            final int mcsThreads = threadsAvailable;
-            executor = Executors.newFixedThreadPool(mcsThreads, r -> {
-                Thread t = new Thread(r, "rdt-mcs");
-                t.setDaemon(true);
-                return t;
-            });
-            CompletionService<MCSSolution> callablesQueue = new ExecutorCompletionService<>(executor);
 
             List<PairJob> jobsToRun = new ArrayList<>();
             List<MCSThread> listOfJobs = new ArrayList<>();
             Map<Combination, PairJob> pairJobsByRepresentative = new HashMap<>();
 
-            int skippedIdentity = 0, skippedRatio = 0, skippedTanimoto = 0;
+            int skippedIdentity = 0, skippedRatio = 0, skippedTanimoto = 0, skippedDisjoint = 0;
             List<MCSSolution> directMCSSolutions = new ArrayList<>();
 
+            /*
+             * Best clique already known per row and column: cells this pass
+             * does not recompute, and identity pairs found below.
+             */
+            double[] rowBest = new double[eductCount];
+            double[] columnBest = new double[productCount];
+            Set<Combination> refreshed = new HashSet<>(jobReplicatorList);
+            MatrixView cliques = mh.getCliqueMatrix();
+            for (int i = 0; i < eductCount; i++) {
+                for (int j = 0; j < productCount; j++) {
+                    if (!refreshed.contains(new Combination(i, j))) {
+                        double clique = cliques.getValue(i, j);
+                        rowBest[i] = Math.max(rowBest[i], clique);
+                        columnBest[j] = Math.max(columnBest[j], clique);
+                    }
+                }
+            }
+
             for (PairJob pairJob : pairJobs.values()) {
                 Combination representative = pairJob.representative;
                 int substrateIndex = representative.getRowIndex();
@@ -383,6 +495,12 @@ public class GraphMatcher extends Debugger {
                         MCSSolution identityMCS = new MCSSolution(substrateIndex, productIndex,
                                 eductClone, productClone, identityAAM);
                         directMCSSolutions.add(identityMCS);
+                        for (Combination occurrence : pairJob.occurrences) {
+                            rowBest[occurrence.getRowIndex()] = Math.max(
+                                    rowBest[occurrence.getRowIndex()], educt.getAtomCount());
+                            columnBest[occurrence.getColIndex()] = Math.max(
+                                    columnBest[occurrence.getColIndex()], educt.getAtomCount());
+                        }
                         skippedIdentity++;
                         continue;
                     } catch (Exception ex) {
@@ -415,13 +533,30 @@ public class GraphMatcher extends Debugger {
                     continue;
                 }
 
+                /*
+                 * PRE-FILTER 4: Upper bound — molecules without a common
+                 * element have an empty MCS; record it without building a job.
+                 */
+                pairJob.upperBound = mcsUpperBound(educt, product);
+                if (pairJob.upperBound == 0) {
+                    IAtomContainer eductClone = newContainerWithIDs(educt);
+                    IAtomContainer productClone = newContainerWithIDs(product);
+                    directMCSSolutions.add(new MCSSolution(substrateIndex, productIndex,
+                            eductClone, productClone, new AtomAtomMapping(eductClone, productClone)));
+                    skippedDisjoint++;
+                    continue;
+                }
+
+                pairJob.rank = jobsToRun.size();
                 jobsToRun.add(pairJob);
             }
 
-            if (skippedIdentity + skippedRatio + skippedTanimoto > 0) {
+            if (skippedIdentity + skippedRatio + skippedTanimoto + skippedDisjoint > 0) {
                 LOGGER.debug("Pre-filter: skipped " + skippedIdentity + " identity, "
-                        + skippedRatio + " ratio, " + skippedTanimoto + " tanimoto pairs");
+                        + skippedRatio + " ratio, " + skippedTanimoto + " tanimoto, "
+                        + skippedDisjoint + " disjoint pairs");
             }
+            jobsToRun = prioritise(jobsToRun, rowBest, columnBest);
 
             int invocationIndex = MappingDiagnostics.recordMatcherInvocation(
                     reactionId,
@@ -433,6 +568,17 @@ public class GraphMatcher extends Debugger {
                     skippedTanimoto,
                     jobsToRun.size());
 
+            /*
+             * Under a time budget each pair may use a share of what is left,
+             * by its size (atoms × atoms) relative to the other pairs that
+             * run beside it on the pool.
+             */
+            double totalWeight = 0.0;
+            for (PairJob pairJob : jobsToRun) {
+                totalWeight += pairWeight(reactionStructureInformation, pairJob);
+            }
+            int parallelism = MappingExecution.getParallelism();
+
             for (PairJob pairJob : jobsToRun) {
                 Combination representative = pairJob.representative;
                 int substrateIndex = representative.getRowIndex();
@@ -445,62 +591,46 @@ public class GraphMatcher extends Debugger {
                 mcsThread.setHasPerfectRings(pairJob.hasPerfectRings);
                 mcsThread.setEductRingCount(pairJob.numberOfCyclesEduct);
                 mcsThread.setProductRingCount(pairJob.numberOfCyclesProduct);
+                mcsThread.setBudgetShare(totalWeight <= 0.0 ? 1.0
+                        : Math.min(1.0, parallelism * pairWeight(reactionStructureInformation, pairJob) / totalWeight));
                 listOfJobs.add(mcsThread);
             }
 
             if (listOfJobs.size() > LARGE_JOB_THRESHOLD) {
                 LOGGER.warn("Large job: " + listOfJobs.size() + " MCS pairs to compute");
             }
-            java.util.List<java.util.concurrent.Future<MCSSolution>> mcsJobFutures = new java.util.ArrayList<>();
-            if (!listOfJobs.isEmpty()) {
-                for (MCSThread mcsThreadJob : listOfJobs) {
-                    mcsJobFutures.add(callablesQueue.submit(mcsThreadJob));
-                    taskCounter++;
+            /*
+             * MCS pairs run on the shared mapping pool. The matcher is normally
+             * called from an algorithm task, so the pairs are forked onto that
+             * worker and idle workers steal them; no extra threads are created.
+             */
+            LOGGER.debug("submited " + listOfJobs.size() + " jobs");
+            List<java.util.concurrent.Future<MCSSolution>> mcsJobFutures
+                    = MappingExecution.invokeAll(listOfJobs, MATCHER_BUDGET_MS, MCS_POLL_TIMEOUT_MS);
+            MCSSolution[] solutionsByRank = new MCSSolution[jobsToRun.size()];
+            int skipped = 0;
+            for (int ji = 0; ji < mcsJobFutures.size(); ji++) {
+                java.util.concurrent.Future<MCSSolution> future = mcsJobFutures.get(ji);
+                if (future.isCancelled()) {
+                    skipped++;
+                    continue;
                 }
-            }
-
-            LOGGER.debug("submited " + taskCounter + " jobs");
-            Collection<MCSSolution> threadedUniqueMCSSolutions = new ArrayList<>();
-            int collected = 0;
-            long matcherDeadline = currentTimeMillis() + MATCHER_BUDGET_MS;
-            for (int count = 0; count < taskCounter; count++) {
                 try {
-                    long remaining = matcherDeadline - currentTimeMillis();
-                    if (remaining <= 0) {
-                        LOGGER.warn("Matcher budget (" + MATCHER_BUDGET_MS
-                                + "ms) exhausted — " + (taskCounter - collected)
-                                + " remaining pairs skipped");
-                        break;
-                    }
-                    long pollMs = Math.min(remaining, MCS_POLL_TIMEOUT_MS);
-                    java.util.concurrent.Future<MCSSolution> future =
-                            callablesQueue.poll(pollMs, TimeUnit.MILLISECONDS);
-                    if (future == null) {
-                        LOGGER.warn("MCS poll timed out after " + pollMs
-                                + "ms — " + (taskCounter - collected)
-                                + " remaining pairs will be skipped");
-                        break;
-                    }
-                    MCSSolution isomorphism = future.get(); // already complete
-                    if (isomorphism != null) {
-                        threadedUniqueMCSSolutions.add(isomorphism);
-                    }
-                    collected++;
+                    // already complete; kept in input order, not run order
+                    solutionsByRank[jobsToRun.get(ji).rank] = future.get();
                 } catch (ExecutionException ex) {
-                    collected++;
                     Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
                     LOGGER.error(SEVERE, "MCS worker failed", cause);
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    LOGGER.debug("MCS collection interrupted — aborting remaining pairs");
-                    break;
                 }
             }
-            // Cancel and log stuck MCS pairs for SMSD debugging
+            if (skipped > 0) {
+                LOGGER.warn("Matcher budget (" + MATCHER_BUDGET_MS + "ms) or MCS poll timeout ("
+                        + MCS_POLL_TIMEOUT_MS + "ms) reached — " + skipped + " remaining pairs skipped");
+            }
+            // Log the stuck MCS pairs (cancelled by the execution layer) for SMSD debugging
             for (int ji = 0; ji < mcsJobFutures.size(); ji++) {
                 java.util.concurrent.Future<MCSSolution> f = mcsJobFutures.get(ji);
-                if (!f.isDone()) {
-                    f.cancel(true);
+                if (f.isCancelled()) {
                     MCSThread stuck = listOfJobs.get(ji);
                     PairJob stuckJob = jobsToRun.size() > ji ? jobsToRun.get(ji) : null;
                     String flags = stuckJob != null
@@ -520,14 +650,14 @@ public class GraphMatcher extends Debugger {
                             + " — cancelled after timeout");
                 }
             }
-            // Add directly-constructed identity mappings (bypassed MCSThread)
-            threadedUniqueMCSSolutions.addAll(directMCSSolutions);
-            // Shut down the local executor; interrupt any stuck threads
-            executor.shutdown();
-            if (!executor.awaitTermination(MATCHER_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
-                LOGGER.warn("MCS executor did not shut down cleanly — forcing shutdown");
-                executor.shutdownNow();
+            Collection<MCSSolution> threadedUniqueMCSSolutions = new ArrayList<>();
+            for (MCSSolution isomorphism : solutionsByRank) {
+                if (isomorphism != null) {
+                    threadedUniqueMCSSolutions.add(isomorphism);
+                }
             }
+            // Add directly-constructed identity and empty mappings (bypassed MCSThread)
+            threadedUniqueMCSSolutions.addAll(directMCSSolutions);
 
             LOGGER.debug("==Gathering MCS solution from the Thread==");
             long replayedMappings = 0;
@@ -566,10 +696,6 @@ public class GraphMatcher extends Debugger {
             LOGGER.debug("matcher() interrupted — returning partial results");
         } catch (Exception ex) {
             LOGGER.error(SEVERE, null, ex);
-        } finally {
-            if (executor != null) {
-                executor.shutdownNow();
-            }
         }
         return unmodifiableCollection(mcsSolutions);
     }
@@ -602,14 +728,16 @@ public class GraphMatcher extends Debugger {
             AtomAtomMapping atomAtomMapping = mcs.getAtomAtomMapping();
             AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(q, t);
 
-            atomAtomMapping.getMappingsByIndex().forEach((queryIndex, targetIndex) -> {
-                if (queryIndex >= 0 && queryIndex < q.getAtomCount()
-                        && targetIndex >= 0 && targetIndex < t.getAtomCount()) {
-                    atomAtomMappingNew.put(q.getAtom(queryIndex), t.getAtom(targetIndex));
+            int[] queryIndices = atomAtomMapping.getQueryIndices();
+            int[] targetIndices = atomAtomMapping.getTargetIndices();
+            for (int i = 0; i < queryIndices.length; i++) {
+                if (queryIndices[i] < q.getAtomCount()
+                        && targetIndices[i] < t.getAtomCount()) {
+                    atomAtomMappingNew.put(queryIndices[i], targetIndices[i]);
                 } else {
                     LOGGER.error(WARNING, "Unexpected atom index while replaying cached mapping");
                 }
-            });
+            }
 
             LOGGER.debug("------Mapped PAIRS------");
             LOGGER.debug("Query " + q.getAtomCount());
@@ -1026,6 +1154,21 @@ public class GraphMatcher extends Debugger {
         public int getQueryPosition() {
             return queryPosition;
         }
+
+        /**
+         * Copy for the MCS cache: the scores and the index pairs of the
+         * mapping, without the molecules, which are only replayed by index.
+         *
+         * @return index-only copy of this solution
+         */
+        public MCSSolution compact() {
+            MCSSolution copy = new MCSSolution(queryPosition, targetPosition,
+                    null, null, atomatomMapping.compact());
+            copy.energy = energy;
+            copy.fragmentSize = fragmentSize;
+            copy.stereoScore = stereoScore;
+            return copy;
+        }
     }
 
 
@@ -1079,6 +1222,7 @@ public class GraphMatcher extends Debugger {
         private boolean hasRings;
         private int numberOfCyclesEduct;
         private int numberOfCyclesProduct;
+        private double budgetShare = 1.0;
 
         /**
          *
@@ -1097,8 +1241,8 @@ public class GraphMatcher extends Debugger {
                 IAtomContainer educt, IAtomContainer product,
                 String reactionId, String algorithmName, int invocationIndex)
                 throws CloneNotSupportedException, CDKException {
-            this.compound1 = getNewContainerWithIDs(educt);
-            this.compound2 = getNewContainerWithIDs(product);
+            this.compound1 = newContainerWithIDs(educt);
+            this.compound2 = newContainerWithIDs(product);
             this.queryPosition = queryPosition;
             this.targetPosition = targetPosition;
             this.theory = theory;
@@ -1134,6 +1278,11 @@ public class GraphMatcher extends Debugger {
             LOGGER.debug("in mcsthread call ");
 
             try {
+                if (MappingExecution.isCancelled()) {
+                    LOGGER.debug("MCS pair cancelled before start");
+                    MappingExecution.markTruncated();
+                    return null;
+                }
                 if (commonAtomUpperBound == 0) {
                     return emptySolution();
                 }
@@ -1168,26 +1317,20 @@ public class GraphMatcher extends Debugger {
                     am = AtomBondMatcher.atomMatcher(true, isHasPerfectRings());
                     bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
-                    MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                    substructure = MAPPING_ENGINE.findSubstructure(ac1, ac2, am, bm, true,
-                            SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                    substructure = findSubstructure(ac1, ac2, am, bm);
 
                     if (!substructure.isSubgraph() && !theory.equals(IMappingAlgorithm.RINGS)) {
                         am = AtomBondMatcher.atomMatcher(false, ringFlag);
                         bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
                         LOGGER.debug("---1.3---");
-                        MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                        substructure = MAPPING_ENGINE.findSubstructure(ac1, ac2,
-                                am, bm, true, SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                        substructure = findSubstructure(ac1, ac2, am, bm);
                     } else if (moleculeConnected && !substructure.isSubgraph()) {
                         am = AtomBondMatcher.atomMatcher(false, false);
                         bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
                         LOGGER.debug("---1.2---");
-                        MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                        substructure = MAPPING_ENGINE.findSubstructure(ac1, ac2, am, bm, true,
-                                SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                        substructure = findSubstructure(ac1, ac2, am, bm);
                     }
                     MAPPING_ENGINE.applyDefaultFilters(substructure);
                     if (substructure.isSubgraph()
@@ -1221,26 +1364,20 @@ public class GraphMatcher extends Debugger {
                     am = AtomBondMatcher.atomMatcher(true, isHasPerfectRings());
                     bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
-                    MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                    substructure = MAPPING_ENGINE.findSubstructure(ac2, ac1, am, bm, true,
-                            SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                    substructure = findSubstructure(ac2, ac1, am, bm);
 
                     if (!substructure.isSubgraph() && !theory.equals(IMappingAlgorithm.RINGS)) {
                         am = AtomBondMatcher.atomMatcher(false, ringFlag);
                         bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
                         LOGGER.debug("---2.3---");
-                        MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                        substructure = MAPPING_ENGINE.findSubstructure(ac2, ac1, am, bm, true,
-                                SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                        substructure = findSubstructure(ac2, ac1, am, bm);
                     } else if (moleculeConnected && !substructure.isSubgraph()) {
                         am = AtomBondMatcher.atomMatcher(false, false);
                         bm = AtomBondMatcher.bondMatcher(false, isHasPerfectRings());
 
                         LOGGER.debug("---2.2---");
-                        MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
-                        substructure = MAPPING_ENGINE.findSubstructure(ac2, ac1, am, bm, true,
-                                SINGLE_SUBGRAPH_MATCH, SUBGRAPH_TIMEOUT_MS);
+                        substructure = findSubstructure(ac2, ac1, am, bm);
                     }
                     MAPPING_ENGINE.applyDefaultFilters(substructure);
 
@@ -1295,28 +1432,19 @@ public class GraphMatcher extends Debugger {
             return null;
         }
 
-        /**
-         * Clone molecule preserving IDs.
-         * Aromaticity and atom-type perception already done in GraphMatcher
-         * before MCSThread is created — do NOT repeat here (was ~25% of total time).
+        /*
+         * A substructure search stopped early by the reaction's time budget
+         * leaves the mapping incomplete, as a cut MCS search does.
          */
-        private IAtomContainer getNewContainerWithIDs(IAtomContainer mol)
-                throws CDKException, CloneNotSupportedException {
-            if (mol != null && mol.getAtomCount() > 0) {
-                IAtomContainer ac = ExtAtomContainerManipulator.cloneWithIDs(mol);
-
-                for (int i = 0; i < ac.getAtomCount(); i++) {
-                    String atomID = mol.getAtom(i).getID() == null
-                            ? valueOf(i) : mol.getAtom(i).getID();
-                    ac.getAtom(i).setID(atomID);
-                }
-                String containerID = mol.getID() == null ? valueOf(nanoTime()) : mol.getID();
-                ac.setID(containerID);
-                harmonizeForSmsd(ac);
-
-                return ac;
-            }
-            return mol;
+        private BaseMapping findSubstructure(IAtomContainer query, IAtomContainer target,
+                AtomMatcher am, BondMatcher bm) throws CDKException {
+            MappingDiagnostics.recordSubstructureSearch(reactionId, algorithmName, invocationIndex);
+            long timeoutMs = MappingExecution.boundedTimeout(SUBGRAPH_TIMEOUT_MS, budgetShare);
+            long searchStart = currentTimeMillis();
+            BaseMapping substructure = MAPPING_ENGINE.findSubstructure(query, target, am, bm, true,
+                    SINGLE_SUBGRAPH_MATCH, timeoutMs);
+            MappingExecution.recordSearch(searchStart, SUBGRAPH_TIMEOUT_MS, timeoutMs);
+            return substructure;
         }
 
         private boolean isPossibleSubgraphMatch(Map<String, Integer> queryAtomCounts,
@@ -1386,15 +1514,31 @@ public class GraphMatcher extends Debugger {
                         getCompound1(), getCompound2(),
                         cachedSolution);
 
+            } else if ((cachedSolution = restoreStoredSolution(key)) != null) {
+                LOGGER.debug("===={Aladdin} Stored Mapping {Gini}====");
+                MappingDiagnostics.recordMcsCacheHit(reactionId, algorithmName, invocationIndex);
+                mcs = copyOldSolutionToNew(
+                        getQueryPosition(), getTargetPosition(),
+                        getCompound1(), getCompound2(),
+                        mappingCache.putIfAbsent(key, cachedSolution.compact()));
+
             } else {
                 SearchEngine.McsOptions mcsOptions = new SearchEngine.McsOptions();
-                mcsOptions.timeoutMs = MCS_TIMEOUT_MS;
+                mcsOptions.timeoutMs = MappingExecution.boundedTimeout(MCS_TIMEOUT_MS, budgetShare);
                 mcsOptions.connectedOnly = moleculesConnected;
                 mcsOptions.disconnectedMCS = !mcsOptions.connectedOnly;
                 mcsOptions.maximizeBonds = settings.bondMatch;
                 MappingDiagnostics.recordActualMcsSearch(reactionId, algorithmName, invocationIndex);
+                long searchStart = currentTimeMillis();
                 isomorphism = MAPPING_ENGINE.findMcs(ac1, ac2, Algorithm.VFLibMCS, am, bm, mcsOptions);
-                mcs = addMCSSolution(key, mappingCache, isomorphism);
+                /*
+                 * A search stopped early by the reaction's time budget is the
+                 * best found so far: use it here, but keep it out of the
+                 * caches so a later run with more time searches again.
+                 */
+                boolean cutByBudget = MappingExecution.recordSearch(
+                        searchStart, MCS_TIMEOUT_MS, mcsOptions.timeoutMs);
+                mcs = addMCSSolution(key, mappingCache, isomorphism, !cutByBudget);
             }
 
             return mcs;
@@ -1507,6 +1651,14 @@ public class GraphMatcher extends Debugger {
             return targetPosition;
         }
 
+        /**
+         * @param budgetShare fraction of the time left in the reaction's
+         * budget this pair's searches may use
+         */
+        void setBudgetShare(double budgetShare) {
+            this.budgetShare = budgetShare;
+        }
+
         void setHasPerfectRings(boolean ring) {
             this.hasRings = ring;
         }
@@ -1546,18 +1698,62 @@ public class GraphMatcher extends Debugger {
                     settings.ringSizeMatch);
         }
 
+        /*
+         * Rebuild a solution kept by the persistent cache from an earlier run,
+         * provided the molecules are numbered as they were then
+         */
+        private MCSSolution restoreStoredSolution(String key) {
+            PersistentMCSCache store = PersistentMCSCache.shared();
+            if (store == null) {
+                return null;
+            }
+            PersistentMCSCache.Entry entry = store.get(key);
+            IAtomContainer query = getCompound1();
+            IAtomContainer target = getCompound2();
+            if (entry == null
+                    || entry.getQuerySignature() != PersistentMCSCache.signature(query)
+                    || entry.getTargetSignature() != PersistentMCSCache.signature(target)) {
+                return null;
+            }
+            AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+            for (int i = 0; i < entry.size(); i++) {
+                mapping.put(entry.getQueryIndex(i), entry.getTargetIndex(i));
+            }
+            MCSSolution solution = new MCSSolution(getQueryPosition(), getTargetPosition(),
+                    query, target, mapping);
+            solution.setEnergy(entry.getEnergy());
+            solution.setFragmentSize(entry.getFragmentSize());
+            solution.setStereoScore(entry.getStereoScore());
+            return solution;
+        }
+
+        private void storeSolution(String key, MCSSolution solution) {
+            PersistentMCSCache store = PersistentMCSCache.shared();
+            if (store == null) {
+                return;
+            }
+            int[] queryIndices = solution.getAtomAtomMapping().getQueryIndices();
+            int[] targetIndices = solution.getAtomAtomMapping().getTargetIndices();
+            store.put(key, new PersistentMCSCache.Entry(
+                    PersistentMCSCache.signature(getCompound1()),
+                    PersistentMCSCache.signature(getCompound2()),
+                    queryIndices, targetIndices,
+                    solution.getEnergy(), solution.getFragmentSize(), solution.getStereoScore()));
+        }
+
         /*
          * copy old mapping from the cache to new
          */
         MCSSolution copyOldSolutionToNew(int queryPosition, int targetPosition,
                 IAtomContainer compound1, IAtomContainer compound2, MCSSolution oldSolution) {
             AtomAtomMapping atomAtomMapping = oldSolution.getAtomAtomMapping();
-            Map<Integer, Integer> mappingsByIndex = atomAtomMapping.getMappingsByIndex();
+            int[] queryIndices = atomAtomMapping.getQueryIndices();
+            int[] targetIndices = atomAtomMapping.getTargetIndices();
 
             AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(compound1, compound2);
-            mappingsByIndex.entrySet().forEach((m) -> {
-                atomAtomMappingNew.put(compound1.getAtom(m.getKey()), compound2.getAtom(m.getValue()));
-            });
+            for (int i = 0; i < queryIndices.length; i++) {
+                atomAtomMappingNew.put(queryIndices[i], targetIndices[i]);
+            }
             MCSSolution mcsSolution = new MCSSolution(queryPosition, targetPosition, compound1, compound2, atomAtomMappingNew);
             mcsSolution.setEnergy(oldSolution.getEnergy());
             mcsSolution.setFragmentSize(oldSolution.getFragmentSize());
@@ -1567,6 +1763,11 @@ public class GraphMatcher extends Debugger {
         }
 
         MCSSolution addMCSSolution(String key, ThreadSafeCache<String, MCSSolution> mappingcache, BaseMapping isomorphism) {
+            return addMCSSolution(key, mappingcache, isomorphism, true);
+        }
+
+        MCSSolution addMCSSolution(String key, ThreadSafeCache<String, MCSSolution> mappingcache,
+                BaseMapping isomorphism, boolean cacheable) {
 
             MAPPING_ENGINE.applyDefaultFilters(isomorphism);
             LOGGER.debug("MCS " + isomorphism.getFirstAtomMapping().getCount());
@@ -1583,12 +1784,17 @@ public class GraphMatcher extends Debugger {
             long time = stopTime - startTime;
             printMatch(isomorphism);
             LOGGER.debug("\" Time:\" " + time);
-            MCSSolution cached = mappingcache.putIfAbsent(key, mcs);
-            if (cached == mcs) {
+            if (!cacheable) {
+                return mcs;
+            }
+            MCSSolution entry = mcs.compact();
+            MCSSolution cached = mappingcache.putIfAbsent(key, entry);
+            if (cached == entry) {
                 LOGGER.debug("Key " + key);
                 LOGGER.debug("mcs size " + mcs.getAtomAtomMapping().getCount());
                 LOGGER.debug("mcs map " + mcs.getAtomAtomMapping().getMappingsByIndex());
                 LOGGER.debug("\n\n\n ");
+                storeSolution(key, mcs);
                 return mcs;
             }
             return copyOldSolutionToNew(
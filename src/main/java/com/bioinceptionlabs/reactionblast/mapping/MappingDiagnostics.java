@@ -8,29 +8,256 @@
  */
 package com.bioinceptionlabs.reactionblast.mapping;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 /**
- * Per-reaction diagnostics for mapping hot-path benchmarking.
+ * Diagnostics for the mapping pipeline.
+ *
+ * Per-reaction counters and stage times are kept for the most recent
+ * {@code rdt.diagnostics.maxReactions} reactions (default 1,024); older ones
+ * are dropped first-in, first-out. Process-wide, every {@link Stage} has a
+ * latency histogram and every {@link Counter} a running total. They are
+ * exported three ways: {@link #writePrometheus(Appendable)} renders the
+ * Prometheus text format, registered {@link MetricsSink}s (e.g. a Micrometer
+ * bridge) see every observation, and stages timed with {@link #start} are
+ * committed as {@code com.bioinceptionlabs.rdt.MappingStage} JFR events.
  */
 public final class MappingDiagnostics {
 
+    public static final String MAX_REACTIONS_PROPERTY = "rdt.diagnostics.maxReactions";
+
+    private static final int MAX_RETAINED_REACTIONS
+            = Math.max(1, Integer.getInteger(MAX_REACTIONS_PROPERTY, 1024));
+
     private static final ConcurrentMap<String, ReactionStats> REACTIONS = new ConcurrentHashMap<>();
+    /**
+     * Retained reactions keyed by arrival number, counted by ARRIVAL_COUNT,
+     * so a reset reaction leaves in O(log n) and the eldest is the first
+     * key. A reaction removed while it is being created may linger until
+     * evicted.
+     */
+    private static final ConcurrentSkipListMap<Long, ReactionStats> ARRIVALS = new ConcurrentSkipListMap<>();
+    private static final AtomicInteger ARRIVAL_COUNT = new AtomicInteger();
+    private static final AtomicLong ARRIVAL_SEQUENCE = new AtomicLong();
+
+    private static final Map<Stage, LatencyHistogram> LATENCIES = new EnumMap<>(Stage.class);
+    private static final Map<Counter, LongAdder> COUNTERS = new EnumMap<>(Counter.class);
+    private static final List<MetricsSink> SINKS = new CopyOnWriteArrayList<>();
+
+    static {
+        for (Stage stage : Stage.values()) {
+            LATENCIES.put(stage, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            COUNTERS.put(counter, new LongAdder());
+        }
+    }
 
     private MappingDiagnostics() {
     }
 
+    /**
+     * The nine stages of the pipeline, in the order of ALGORITHM.md §3.
+     * MCS time is not part of SCORING, and bond-change annotation is not
+     * part of RANKING.
+     */
+    public enum Stage {
+        PARSE, STANDARDISE, RINGS_FUNNEL, ALGORITHMS, MCS, SCORING, ASSIGNMENT, RANKING, BOND_CHANGES;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Process-wide event counters.
+     */
+    public enum Counter {
+        MATCHER_INVOCATIONS("rdt_matcher_invocations_total", "GraphMatcher.matcher calls"),
+        MCS_JOBS("rdt_mcs_jobs_total", "MCS pair jobs scheduled"),
+        MCS_CACHE_HITS("rdt_mcs_cache_hits_total", "MCS pairs answered from a cache"),
+        MCS_SEARCHES("rdt_mcs_searches_total", "MCS searches run"),
+        SUBSTRUCTURE_SEARCHES("rdt_substructure_searches_total", "Substructure searches run"),
+        QUICK_MAPPINGS("rdt_quick_mappings_total", "Quick mapping calls"),
+        QUICK_MAPPING_CACHE_HITS("rdt_quick_mapping_cache_hits_total", "Quick mappings answered from the cache"),
+        QUICK_MAPPING_SEARCHES("rdt_quick_mapping_searches_total", "Quick mapping searches run"),
+        EVICTED_REACTIONS("rdt_diagnostics_evicted_reactions_total", "Per-reaction diagnostics dropped by the retention bound");
+
+        private final String metricName;
+        private final String help;
+
+        Counter(String metricName, String help) {
+            this.metricName = metricName;
+            this.help = help;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    /**
+     * Receives every stage latency and counter increment, e.g. to forward
+     * them to a metrics registry. Called on the mapping threads, so
+     * implementations must be thread-safe and cheap.
+     */
+    public interface MetricsSink {
+
+        void recordLatency(Stage stage, long elapsedNanos);
+
+        default void incrementCounter(Counter counter, long delta) {
+        }
+    }
+
+    public static void addSink(MetricsSink sink) {
+        SINKS.add(sink);
+    }
+
+    public static void removeSink(MetricsSink sink) {
+        SINKS.remove(sink);
+    }
+
+    /**
+     * Starts timing a stage; {@link StageTimer#close()} records it.
+     *
+     * @param stage stage
+     * @param reactionId reaction, may be null
+     * @return running timer
+     */
+    public static StageTimer start(Stage stage, String reactionId) {
+        return new StageTimer(stage, reactionId);
+    }
+
+    /**
+     * Records a stage that was timed by the caller.
+     *
+     * @param stage stage
+     * @param reactionId reaction, may be null
+     * @param elapsedNanos elapsed time
+     */
+    public static void recordStage(Stage stage, String reactionId, long elapsedNanos) {
+        long nanos = Math.max(0L, elapsedNanos);
+        LATENCIES.get(stage).record(nanos);
+        if (reactionId != null) {
+            reactionStats(reactionId).stageNanos.addAndGet(stage.ordinal(), nanos);
+        }
+        for (MetricsSink sink : SINKS) {
+            sink.recordLatency(stage, nanos);
+        }
+    }
+
+    private static void count(Counter counter, long delta) {
+        COUNTERS.get(counter).add(delta);
+        for (MetricsSink sink : SINKS) {
+            sink.incrementCounter(counter, delta);
+        }
+    }
+
+    /**
+     * @param stage stage
+     * @return process-wide latency distribution of the stage
+     */
+    public static LatencySnapshot latency(Stage stage) {
+        return LATENCIES.get(stage).snapshot();
+    }
+
+    /**
+     * @param counter counter
+     * @return process-wide total
+     */
+    public static long count(Counter counter) {
+        return COUNTERS.get(counter).sum();
+    }
+
+    /**
+     * Writes all stage histograms and counters in the Prometheus text
+     * exposition format (version 0.0.4).
+     *
+     * @param out destination
+     * @throws IOException if the destination fails
+     */
+    public static void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP rdt_stage_duration_seconds Latency of RDT mapping pipeline stages.\n");
+        out.append("# TYPE rdt_stage_duration_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            LatencySnapshot snapshot = latency(stage);
+            long cumulative = 0L;
+            for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++) {
+                cumulative += snapshot.bucketCounts[i];
+                out.append("rdt_stage_duration_seconds_bucket{stage=\"").append(stage.label())
+                        .append("\",le=\"").append(seconds(LatencyHistogram.BOUNDS_NANOS[i]))
+                        .append("\"} ").append(Long.toString(cumulative)).append('\n');
+            }
+            out.append("rdt_stage_duration_seconds_bucket{stage=\"").append(stage.label())
+                    .append("\",le=\"+Inf\"} ").append(Long.toString(snapshot.count)).append('\n');
+            out.append("rdt_stage_duration_seconds_sum{stage=\"").append(stage.label())
+                    .append("\"} ").append(seconds(snapshot.sumNanos)).append('\n');
+            out.append("rdt_stage_duration_seconds_count{stage=\"").append(stage.label())
+                    .append("\"} ").append(Long.toString(snapshot.count)).append('\n');
+        }
+        for (Counter counter : Counter.values()) {
+            out.append("# HELP ").append(counter.metricName).append(' ').append(counter.help).append(".\n");
+            out.append("# TYPE ").append(counter.metricName).append(" counter\n");
+            out.append(counter.metricName).append(' ').append(Long.toString(count(counter))).append('\n');
+        }
+        out.append("# HELP rdt_diagnostics_retained_reactions Reactions with per-reaction diagnostics held.\n");
+        out.append("# TYPE rdt_diagnostics_retained_reactions gauge\n");
+        out.append("rdt_diagnostics_retained_reactions ").append(Integer.toString(REACTIONS.size())).append('\n');
+    }
+
+    /**
+     * @return {@link #writePrometheus(Appendable)} as a string
+     */
+    public static String prometheusText() {
+        StringBuilder sb = new StringBuilder(8192);
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Clears the process-wide histograms and counters.
+     */
+    static void clearMetrics() {
+        for (LatencyHistogram histogram : LATENCIES.values()) {
+            histogram.clear();
+        }
+        for (LongAdder counter : COUNTERS.values()) {
+            counter.reset();
+        }
+    }
+
     public static void resetReaction(String reactionId) {
         if (reactionId != null) {
-            REACTIONS.remove(reactionId);
+            forget(REACTIONS.remove(reactionId));
         }
     }
 
@@ -38,6 +265,8 @@ public final class MappingDiagnostics {
             long candidatePairs, long uniquePairs,
             long identitySkips, long ratioSkips, long tanimotoSkips,
             long scheduledJobs) {
+        count(Counter.MATCHER_INVOCATIONS, 1L);
+        count(Counter.MCS_JOBS, scheduledJobs);
         return reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .recordMatcherInvocation(candidatePairs, uniquePairs,
@@ -53,6 +282,7 @@ public final class MappingDiagnostics {
     }
 
     public static void recordSubstructureSearch(String reactionId, String algorithm, int invocationIndex) {
+        count(Counter.SUBSTRUCTURE_SEARCHES, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .invocation(invocationIndex)
@@ -60,6 +290,7 @@ public final class MappingDiagnostics {
     }
 
     public static void recordMcsCacheHit(String reactionId, String algorithm, int invocationIndex) {
+        count(Counter.MCS_CACHE_HITS, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .invocation(invocationIndex)
@@ -67,6 +298,7 @@ public final class MappingDiagnostics {
     }
 
     public static void recordActualMcsSearch(String reactionId, String algorithm, int invocationIndex) {
+        count(Counter.MCS_SEARCHES, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .invocation(invocationIndex)
@@ -74,18 +306,21 @@ public final class MappingDiagnostics {
     }
 
     public static void recordQuickMappingCall(String reactionId, String algorithm) {
+        count(Counter.QUICK_MAPPINGS, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .quickMappingCalls.incrementAndGet();
     }
 
     public static void recordQuickMappingCacheHit(String reactionId, String algorithm) {
+        count(Counter.QUICK_MAPPING_CACHE_HITS, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .quickMappingCacheHits.incrementAndGet();
     }
 
     public static void recordQuickMappingSearch(String reactionId, String algorithm) {
+        count(Counter.QUICK_MAPPING_SEARCHES, 1L);
         reactionStats(reactionId)
                 .algorithmStats(algorithm)
                 .quickMappingSearches.incrementAndGet();
@@ -101,22 +336,74 @@ public final class MappingDiagnostics {
 
     public static ReactionSnapshot snapshot(String reactionId) {
         ReactionStats stats = REACTIONS.remove(reactionId);
+        forget(stats);
         return stats == null
                 ? new ReactionSnapshot(reactionId, 0L, 0L, Collections.emptyList())
                 : stats.snapshot(reactionId);
     }
 
     private static ReactionStats reactionStats(String reactionId) {
-        return REACTIONS.computeIfAbsent(
-                reactionId == null ? "UNKNOWN_REACTION" : reactionId,
-                ignored -> new ReactionStats());
+        String key = reactionId == null ? "UNKNOWN_REACTION" : reactionId;
+        ReactionStats stats = REACTIONS.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        ReactionStats created = new ReactionStats(key, ARRIVAL_SEQUENCE.getAndIncrement());
+        stats = REACTIONS.putIfAbsent(key, created);
+        if (stats != null) {
+            return stats;
+        }
+        ARRIVALS.put(created.arrival, created);
+        if (ARRIVAL_COUNT.incrementAndGet() > MAX_RETAINED_REACTIONS) {
+            evictEldest();
+        }
+        return created;
+    }
+
+    /*
+     Drop a removed reaction from the arrival order, so finished reactions
+     do not count against the bound and crowd out running ones
+     */
+    private static void forget(ReactionStats stats) {
+        if (stats != null && ARRIVALS.remove(stats.arrival, stats)) {
+            ARRIVAL_COUNT.decrementAndGet();
+        }
+    }
+
+    private static void evictEldest() {
+        while (ARRIVAL_COUNT.get() > MAX_RETAINED_REACTIONS) {
+            Map.Entry<Long, ReactionStats> first = ARRIVALS.pollFirstEntry();
+            if (first == null) {
+                return;
+            }
+            ReactionStats eldest = first.getValue();
+            ARRIVAL_COUNT.decrementAndGet();
+            if (REACTIONS.remove(eldest.reactionId, eldest)) {
+                count(Counter.EVICTED_REACTIONS, 1L);
+            }
+        }
+    }
+
+    /**
+     * @return number of reactions whose diagnostics are currently held
+     */
+    public static int retainedReactions() {
+        return REACTIONS.size();
     }
 
     private static final class ReactionStats {
 
+        private final String reactionId;
+        private final long arrival;
         private final ConcurrentMap<String, AlgorithmStats> algorithms = new ConcurrentHashMap<>();
         private final AtomicLong mappingPhaseMillis = new AtomicLong();
         private final AtomicLong evaluationPhaseMillis = new AtomicLong();
+        private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+
+        private ReactionStats(String reactionId, long arrival) {
+            this.reactionId = reactionId;
+            this.arrival = arrival;
+        }
 
         private AlgorithmStats algorithmStats(String algorithm) {
             String key = algorithm == null ? "UNKNOWN" : algorithm;
@@ -129,11 +416,19 @@ public final class MappingDiagnostics {
                 algorithmSnapshots.add(stats.snapshot());
             }
             algorithmSnapshots.sort(Comparator.comparing(snapshot -> snapshot.algorithm));
+            Map<Stage, Long> stages = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                long nanos = stageNanos.get(stage.ordinal());
+                if (nanos > 0L) {
+                    stages.put(stage, nanos);
+                }
+            }
             return new ReactionSnapshot(
                     reactionId,
                     mappingPhaseMillis.get(),
                     evaluationPhaseMillis.get(),
-                    algorithmSnapshots);
+                    algorithmSnapshots,
+                    stages);
         }
     }
 
@@ -230,15 +525,29 @@ public final class MappingDiagnostics {
         public final long mappingPhaseMillis;
         public final long evaluationPhaseMillis;
         public final List<AlgorithmSnapshot> algorithms;
+        /** Total time per stage; stages that did not run are absent. */
+        public final Map<Stage, Long> stageNanos;
 
         public ReactionSnapshot(String reactionId,
                 long mappingPhaseMillis,
                 long evaluationPhaseMillis,
                 List<AlgorithmSnapshot> algorithms) {
+            this(reactionId, mappingPhaseMillis, evaluationPhaseMillis, algorithms,
+                    Collections.emptyMap());
+        }
+
+        public ReactionSnapshot(String reactionId,
+                long mappingPhaseMillis,
+                long evaluationPhaseMillis,
+                List<AlgorithmSnapshot> algorithms,
+                Map<Stage, Long> stageNanos) {
             this.reactionId = reactionId;
             this.mappingPhaseMillis = mappingPhaseMillis;
             this.evaluationPhaseMillis = evaluationPhaseMillis;
             this.algorithms = Collections.unmodifiableList(new ArrayList<>(algorithms));
+            this.stageNanos = stageNanos.isEmpty()
+                    ? Collections.emptyMap()
+                    : Collections.unmodifiableMap(new EnumMap<>(stageNanos));
         }
     }
 
@@ -304,4 +613,149 @@ public final class MappingDiagnostics {
             this.elapsedMillis = elapsedMillis;
         }
     }
+
+    /**
+     * Times one stage; closing it records the latency and commits a JFR
+     * event when the event is enabled.
+     */
+    public static final class StageTimer implements AutoCloseable {
+
+        private final Stage stage;
+        private final String reactionId;
+        private final StageEvent event;
+        private final long startNanos;
+        private boolean stopped;
+
+        private StageTimer(Stage stage, String reactionId) {
+            this.stage = stage;
+            this.reactionId = reactionId;
+            this.event = new StageEvent();
+            this.event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stops the timer; later calls do nothing.
+         *
+         * @return elapsed nanoseconds, 0 if already stopped
+         */
+        public long stop() {
+            if (stopped) {
+                return 0L;
+            }
+            stopped = true;
+            long elapsed = System.nanoTime() - startNanos;
+            event.end();
+            if (event.shouldCommit()) {
+                event.reactionId = reactionId;
+                event.stage = stage.label();
+                event.commit();
+            }
+            recordStage(stage, reactionId, elapsed);
+            return elapsed;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    @Name("com.bioinceptionlabs.rdt.MappingStage")
+    @Label("Mapping Stage")
+    @Category({"RDT", "Mapping"})
+    @Description("One stage of the reaction mapping pipeline")
+    static final class StageEvent extends Event {
+
+        @Label("Reaction")
+        String reactionId;
+
+        @Label("Stage")
+        String stage;
+    }
+
+    /**
+     * Fixed-bucket latency histogram, 100 µs to 60 s.
+     */
+    private static final class LatencyHistogram {
+
+        private static final long[] BOUNDS_NANOS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+            10_000_000_000L, 30_000_000_000L, 60_000_000_000L
+        };
+
+        /** One slot per bound plus the overflow slot. */
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        private void record(long nanos) {
+            int i = 0;
+            while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.add(nanos);
+        }
+
+        private void clear() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0L);
+            }
+            sumNanos.reset();
+        }
+
+        private LatencySnapshot snapshot() {
+            long[] counts = new long[buckets.length()];
+            long total = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            return new LatencySnapshot(total, sumNanos.sum(), counts);
+        }
+    }
+
+    public static final class LatencySnapshot {
+
+        public final long count;
+        public final long sumNanos;
+        private final long[] bucketCounts;
+
+        private LatencySnapshot(long count, long sumNanos, long[] bucketCounts) {
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.bucketCounts = bucketCounts;
+        }
+
+        /**
+         * @return mean latency in milliseconds, 0 if nothing was recorded
+         */
+        public double meanMillis() {
+            return count == 0L ? 0.0 : sumNanos / 1e6 / count;
+        }
+
+        /**
+         * @param quantile in [0, 1]
+         * @return upper bound of the bucket holding the quantile, in
+         * milliseconds; {@code Double.POSITIVE_INFINITY} past 60 s
+         */
+        public double quantileMillis(double quantile) {
+            if (count == 0L) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * count);
+            long seen = 0L;
+            for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= Math.max(1L, rank)) {
+                    return LatencyHistogram.BOUNDS_NANOS[i] / 1e6;
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
 }
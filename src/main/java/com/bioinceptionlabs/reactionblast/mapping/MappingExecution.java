@@ -0,0 +1,567 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * The one thread pool used by every mapping layer: reactions in
+ * {@code RDT.mapAll}, algorithms in {@link CallableAtomMappingTool}, MCS pairs
+ * in {@link GraphMatcher} and solution scoring in {@code ReactionMechanismTool}.
+ *
+ * The pool is a fork-join pool whose size is the only thread setting
+ * ({@value #THREADS_PROPERTY} system property, default: number of cores).
+ * Nested work is forked onto the caller's own queue, and a worker waiting for
+ * its subtasks runs them itself (or steals others) instead of blocking, so the
+ * layers never multiply into more threads than the pool size.
+ *
+ * Alternatively, {@link Mode#VIRTUAL_THREADS} ({@value #MODE_PROPERTY}=virtual)
+ * runs every task on its own virtual thread, so concurrency is limited only by
+ * the caller (e.g. the in-flight bound of {@code RDT.mapAll}) and no pool has
+ * to be sized. Each {@link #invokeAll} call is then a structured scope: it
+ * does not return before all of its tasks have finished, and tasks left over
+ * when the budget expires are interrupted and given a short grace period to
+ * stop; any still running after it are logged and left behind.
+ *
+ * In both modes the deadline of an {@link #invokeAll} call is inherited by
+ * nested calls, and SMSD searches take their timeout from
+ * {@link #boundedTimeout(long)}, so an expired deadline also cuts short the
+ * searches already running.
+ *
+ * A caller can give a whole reaction a time budget with
+ * {@link #callWithBudget(long, Callable)}: every layer below then shares
+ * the one deadline (see {@link #boundedTimeout(long, double)} for how it is
+ * split), work that does not fit is dropped in favour of the best solution
+ * found so far, and the outcome records whether anything was cut short.
+ */
+public final class MappingExecution {
+
+    /**
+     * System property holding the pool size.
+     */
+    public static final String THREADS_PROPERTY = "rdt.threads";
+
+    /**
+     * System property selecting the {@link Mode}: {@code forkjoin} (default)
+     * or {@code virtual}.
+     */
+    public static final String MODE_PROPERTY = "rdt.execution";
+
+    /**
+     * How mapping tasks are run.
+     */
+    public enum Mode {
+        /** Bounded shared fork-join pool */
+        FORK_JOIN,
+        /** One virtual thread per task */
+        VIRTUAL_THREADS
+    }
+
+    private static final ILoggingTool LOGGER = createLoggingTool(MappingExecution.class);
+
+    /**
+     * How long a virtual-thread scope waits, once its tasks are done or
+     * cancelled, for their threads to stop.
+     */
+    static final long STOP_GRACE_MS = 1_000L;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadLocal<Budget> BUDGET = new ThreadLocal<>();
+    private static volatile ForkJoinPool pool;
+    private static volatile Mode mode = defaultMode();
+    private static ExecutorService virtualExecutor;
+
+    private MappingExecution() {
+    }
+
+    /**
+     * Deadline of the enclosing budget, and whether any work under it was cut
+     * short. Nested calls narrow the deadline but share the flag. A fork-join
+     * task is not interrupted when it is cancelled, so tasks given up on by
+     * {@link #invokeAll} are told through {@code cancelled}, which nested
+     * budgets see through their parent.
+     */
+    private static final class Budget {
+
+        private final long deadline;
+        private final AtomicBoolean truncated;
+        private final Budget parent;
+        private volatile boolean cancelled;
+
+        Budget(long deadline, AtomicBoolean truncated, Budget parent) {
+            this.deadline = deadline;
+            this.truncated = truncated;
+            this.parent = parent;
+        }
+
+        boolean isCancelled() {
+            for (Budget budget = this; budget != null; budget = budget.parent) {
+                if (budget.cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Result of a task run under a time budget.
+     *
+     * @param <T> result type
+     */
+    public static final class Outcome<T> {
+
+        private final T value;
+        private final boolean complete;
+
+        Outcome(T value, boolean complete) {
+            this.value = value;
+            this.complete = complete;
+        }
+
+        /**
+         * @return the task's result
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return false if a search or task under the budget was cut short,
+         * so the result is the best found in time rather than the full answer
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * Run a task on the calling thread with a deadline {@code budgetMs} from
+     * now (or the enclosing deadline, if sooner). Every {@link #invokeAll}
+     * and search underneath is held to it. Whether anything was cut short is
+     * reported in the outcome only; the caller decides whether that makes
+     * its own work incomplete (see {@link #markTruncated()}).
+     *
+     * @param budgetMs time budget, {@link Long#MAX_VALUE} for none
+     * @param task task to run
+     * @return the task's result and whether it ran to completion
+     * @throws Exception if the task throws
+     */
+    public static <T> Outcome<T> callWithBudget(long budgetMs, Callable<T> task) throws Exception {
+        if (budgetMs < 1) {
+            throw new IllegalArgumentException("budgetMs must be >= 1: " + budgetMs);
+        }
+        Budget previous = BUDGET.get();
+        long deadline = budgetMs == Long.MAX_VALUE
+                ? Long.MAX_VALUE : System.currentTimeMillis() + budgetMs;
+        if (previous != null) {
+            deadline = Math.min(deadline, previous.deadline);
+        }
+        Budget budget = new Budget(deadline, new AtomicBoolean(), previous);
+        BUDGET.set(budget);
+        try {
+            T value = task.call();
+            return new Outcome<>(value, !budget.truncated.get());
+        } finally {
+            if (previous == null) {
+                BUDGET.remove();
+            } else {
+                BUDGET.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Record that work under the current budget was cut short.
+     */
+    public static void markTruncated() {
+        Budget budget = BUDGET.get();
+        if (budget != null) {
+            budget.truncated.set(true);
+        }
+    }
+
+    /**
+     * Record a search started at {@code startMillis} as cut short if the
+     * budget clamped its timeout below the one it asked for and it ran for
+     * the whole clamped timeout.
+     *
+     * @param startMillis start of the search
+     * @param requestedMs timeout the search would use on its own
+     * @param timeoutMs timeout the search was given
+     * @return true if the search was recorded as cut short
+     */
+    public static boolean recordSearch(long startMillis, long requestedMs, long timeoutMs) {
+        if (timeoutMs < requestedMs
+                && System.currentTimeMillis() - startMillis >= timeoutMs) {
+            markTruncated();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the shared pool, created on first use
+     */
+    public static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = newPool(defaultParallelism());
+        }
+        return pool;
+    }
+
+    /**
+     * @return number of worker threads in the shared pool
+     */
+    public static int getParallelism() {
+        return pool().getParallelism();
+    }
+
+    /**
+     * Resize the shared pool. Work already submitted finishes on the old
+     * pool, which then shuts down.
+     *
+     * @param parallelism number of worker threads
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1: " + parallelism);
+        }
+        if (pool != null && pool.getParallelism() == parallelism) {
+            return;
+        }
+        ForkJoinPool previous = pool;
+        pool = newPool(parallelism);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * @return the current execution mode
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Switch the execution mode. Work already submitted finishes in the mode
+     * it was started in.
+     *
+     * @param newMode execution mode
+     */
+    public static void setMode(Mode newMode) {
+        if (newMode == null) {
+            throw new IllegalArgumentException("mode must not be null");
+        }
+        mode = newMode;
+    }
+
+    /**
+     * Executor for top-level work such as whole reactions: the shared pool,
+     * or an unbounded virtual-thread executor in
+     * {@link Mode#VIRTUAL_THREADS} mode.
+     *
+     * @return executor for top-level mapping tasks
+     */
+    public static ExecutorService executor() {
+        if (mode == Mode.VIRTUAL_THREADS) {
+            synchronized (MappingExecution.class) {
+                if (virtualExecutor == null) {
+                    virtualExecutor = Executors.newThreadPerTaskExecutor(
+                            Thread.ofVirtual().name("rdt-mapping-v", 1).factory());
+                }
+                return virtualExecutor;
+            }
+        }
+        return pool();
+    }
+
+    /**
+     * Clamp a search timeout to the deadline of the enclosing
+     * {@link #invokeAll} call, if any.
+     *
+     * @param timeoutMs timeout the search would use on its own
+     * @return the smaller of the timeout and the time left, at least 1 ms
+     */
+    public static long boundedTimeout(long timeoutMs) {
+        return boundedTimeout(timeoutMs, 1.0);
+    }
+
+    /**
+     * Clamp a search timeout to a share of the time left before the
+     * enclosing deadline. Stages that will be followed by others (such as the
+     * first algorithm of the funnel) or that run beside many siblings (such
+     * as one MCS pair among many) take a share below 1, so one hard case
+     * cannot use up the budget of the rest. Without a deadline the timeout
+     * is returned unchanged.
+     *
+     * @param timeoutMs timeout the search would use on its own
+     * @param share fraction of the remaining time this search may use
+     * @return the smaller of the timeout and the share, at least 1 ms
+     */
+    public static long boundedTimeout(long timeoutMs, double share) {
+        Budget budget = BUDGET.get();
+        if (budget != null && budget.isCancelled()) {
+            return 1L;
+        }
+        if (budget == null || budget.deadline == Long.MAX_VALUE) {
+            return timeoutMs;
+        }
+        long remaining = budget.deadline - System.currentTimeMillis();
+        long granted = share >= 1.0 ? remaining : (long) (remaining * share);
+        return Math.max(1L, Math.min(timeoutMs, granted));
+    }
+
+    /**
+     * @return true if the current task was cancelled or its deadline passed;
+     * long-running tasks should give up early
+     */
+    public static boolean isCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        Budget budget = BUDGET.get();
+        return budget != null && (budget.isCancelled() || budget.deadline != Long.MAX_VALUE
+                && System.currentTimeMillis() >= budget.deadline);
+    }
+
+    /**
+     * @return true if the current thread is a worker of the shared pool, or
+     * of an earlier one replaced by {@link #setParallelism} that is still
+     * finishing its work
+     */
+    public static boolean inMappingPool() {
+        return Thread.currentThread() instanceof MappingWorker;
+    }
+
+    /**
+     * Run the tasks in the current {@link Mode} and wait for them.
+     *
+     * Waiting stops once {@code budgetMs} has passed in total, or once no
+     * further task has finished for {@code stallMs}; tasks still pending then
+     * are cancelled. Use {@link Long#MAX_VALUE} for no limit.
+     *
+     * @param tasks tasks to run
+     * @param budgetMs overall time limit
+     * @param stallMs limit on the wait for any single result
+     * @return one future per task, in task order; all are done, and those that
+     * did not finish in time are cancelled
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public static <T> List<Future<T>> invokeAll(List<? extends Callable<T>> tasks,
+            long budgetMs, long stallMs) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long deadline = budgetMs == Long.MAX_VALUE
+                ? Long.MAX_VALUE : System.currentTimeMillis() + budgetMs;
+        Budget inherited = BUDGET.get();
+        if (inherited != null) {
+            deadline = Math.min(deadline, inherited.deadline);
+        }
+        Budget budget = new Budget(deadline,
+                inherited != null ? inherited.truncated : new AtomicBoolean(), inherited);
+        if (mode == Mode.VIRTUAL_THREADS) {
+            return invokeAllVirtual(tasks, budget, stallMs);
+        }
+
+        List<ForkJoinTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(ForkJoinTask.adapt(withBudget(task, budget)));
+        }
+        if (inMappingPool()) {
+            /*
+             * A worker pops its own forks newest first and thieves take the
+             * oldest, so forking in reverse runs the tasks in list order on
+             * this worker; joining in list order then finds each one on top
+             * of its queue and runs it here rather than waiting.
+             */
+            for (int k = futures.size() - 1; k >= 0; k--) {
+                futures.get(k).fork();
+            }
+        } else {
+            ForkJoinPool target = pool();
+            for (ForkJoinTask<T> future : futures) {
+                target.execute(future);
+            }
+        }
+        awaitAll(futures, budget, stallMs);
+        return new ArrayList<>(futures);
+    }
+
+    private static <T> List<Future<T>> invokeAllVirtual(List<? extends Callable<T>> tasks,
+            Budget budget, long stallMs) throws InterruptedException {
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        List<Thread> threads = new ArrayList<>(tasks.size());
+        Thread.Builder builder = Thread.ofVirtual().name("rdt-mapping-v", 1);
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<>(withBudget(task, budget));
+            futures.add(future);
+            threads.add(builder.start(future));
+        }
+        try {
+            awaitAll(futures, budget, stallMs);
+        } finally {
+            /*
+             * Scope exit. Every future is done by now; cancelled tasks were
+             * interrupted and their searches are clamped to the same
+             * deadline, so they stop shortly after it. One that ignores
+             * both is not worth holding the caller for.
+             */
+            long until = System.currentTimeMillis() + STOP_GRACE_MS;
+            int abandoned = 0;
+            for (Thread thread : threads) {
+                thread.join(Math.max(1L, until - System.currentTimeMillis()));
+                if (thread.isAlive()) {
+                    abandoned++;
+                }
+            }
+            if (abandoned > 0) {
+                LOGGER.warn(abandoned + " cancelled task(s) still running after "
+                        + STOP_GRACE_MS + "ms — abandoned");
+            }
+        }
+        return new ArrayList<>(futures);
+    }
+
+    /**
+     * Wait for the futures until the deadline or a stall, then cancel (and
+     * interrupt) whatever is left, marking the budget as truncated.
+     */
+    private static <T, F extends Future<T>> void awaitAll(List<F> futures,
+            Budget budget, long stallMs) throws InterruptedException {
+        long deadline = budget.deadline;
+        for (int k = 0; k < futures.size(); k++) {
+            Future<T> future = futures.get(k);
+            int pending = futures.size() - k;
+            long remaining = deadline == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+            long waitMs = Math.min(remaining, stallMs);
+            if (waitMs <= 0) {
+                LOGGER.debug("Execution budget exhausted — " + pending + " task(s) cancelled");
+                cancelPending(futures, budget);
+                break;
+            }
+            try {
+                if (waitMs == Long.MAX_VALUE) {
+                    future.get();
+                } else {
+                    future.get(waitMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (ExecutionException | CancellationException ex) {
+                // reported to the caller through the future
+            } catch (TimeoutException ex) {
+                LOGGER.debug("No result within " + waitMs + "ms — " + pending + " task(s) cancelled");
+                cancelPending(futures, budget);
+                break;
+            } catch (InterruptedException ex) {
+                cancelPending(futures, budget);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Run the task with the given budget visible to
+     * {@link #boundedTimeout(long)}, restoring the caller's budget after:
+     * a fork-join worker may run the task inline inside another one.
+     */
+    private static <T> Callable<T> withBudget(Callable<T> task, Budget budget) {
+        return () -> {
+            Budget previous = BUDGET.get();
+            BUDGET.set(budget);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) {
+                    BUDGET.remove();
+                } else {
+                    BUDGET.set(previous);
+                }
+            }
+        };
+    }
+
+    private static <T, F extends Future<T>> void cancelPending(List<F> futures, Budget budget) {
+        budget.cancelled = true;
+        budget.truncated.set(true);
+        for (F future : futures) {
+            if (!future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static Mode defaultMode() {
+        String configured = System.getProperty(MODE_PROPERTY);
+        if (configured == null || configured.trim().isEmpty()
+                || configured.trim().equalsIgnoreCase("forkjoin")) {
+            return Mode.FORK_JOIN;
+        }
+        if (configured.trim().equalsIgnoreCase("virtual")) {
+            return Mode.VIRTUAL_THREADS;
+        }
+        LOGGER.warn("Ignoring invalid " + MODE_PROPERTY + "=" + configured);
+        return Mode.FORK_JOIN;
+    }
+
+    private static int defaultParallelism() {
+        String configured = System.getProperty(THREADS_PROPERTY);
+        if (configured != null) {
+            try {
+                int parallelism = Integer.parseInt(configured.trim());
+                if (parallelism > 0) {
+                    return parallelism;
+                }
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Ignoring invalid " + THREADS_PROPERTY + "=" + configured);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        /*
+         * No compensation threads: maximumPoolSize equals parallelism and the
+         * saturate predicate lets a blocked join wait instead of failing, so
+         * the thread count stays at the configured size.
+         */
+        return new ForkJoinPool(parallelism, MappingWorker::new,
+                null, false, 0, parallelism, 1, p -> true, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Worker of a mapping pool.
+     */
+    private static final class MappingWorker extends ForkJoinWorkerThread {
+
+        MappingWorker(ForkJoinPool pool) {
+            super(pool);
+            setName("rdt-mapping-" + THREAD_COUNTER.incrementAndGet());
+            setDaemon(true);
+        }
+    }
+}
@@ -9,29 +9,163 @@
 package com.bioinceptionlabs.reactionblast.mapping;
 
 import com.bioinception.smsd.core.MolGraph;
+import com.bioinceptionlabs.reactionblast.fingerprints.ReactionFingerprinter.FingerprintGenerator;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+import org.openscience.cdk.aromaticity.Aromaticity;
 import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.CycleFinder;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObject;
+import org.openscience.cdk.interfaces.IStereoElement;
 import org.openscience.cdk.smiles.SmiFlavor;
 import org.openscience.cdk.smiles.SmilesGenerator;
 
+import static org.openscience.cdk.aromaticity.ElectronDonation.daylight;
+
 /**
  * Utility methods for building structure-based molecule and pair cache keys.
  *
  * The keys intentionally ignore occurrence-specific atom IDs so the same
  * molecular structure can reuse one MCS template across stoichiometric copies.
+ *
+ * Canonicalisation is memoised across reactions: molecules are looked up by
+ * an exact, atom-order-dependent serialisation of their graph, which costs
+ * one linear pass instead of a canonical labelling. Copies of a molecule
+ * (per algorithm, per matcher pass, or the same input in another reaction)
+ * therefore share one canonical key.
+ *
+ * The same signature memoises the other per-molecule artefacts the mapping
+ * algorithms recompute on their private copies: path fingerprints, ring
+ * counts and whether aromaticity perception would change the molecule.
  */
 public final class MappingKeyUtil {
 
     private static final SmilesGenerator CANONICAL_SMILES
             = new SmilesGenerator(SmiFlavor.Canonical | SmiFlavor.Stereo);
 
+    /** Fallback key of a molecule no canonicaliser accepts: atom and bond counts. */
+    private static final Pattern COUNT_KEY = Pattern.compile("\\d+:\\d+");
+
+    /** Bound on the memo, in estimated bytes. */
+    private static final long STRUCTURE_KEY_MEMO_BYTES = 32L << 20;
+
+    /** Typical estimate of a memo entry: the signature of a 30-40 atom molecule. */
+    private static final long TYPICAL_MEMO_ENTRY_BYTES = 1024L;
+
+    private static final ThreadSafeCache<String, String> STRUCTURE_KEYS
+            = new ThreadSafeCache<>(STRUCTURE_KEY_MEMO_BYTES,
+                    STRUCTURE_KEY_MEMO_BYTES / TYPICAL_MEMO_ENTRY_BYTES,
+                    (graph, key) -> 2L * (graph.length() + key.length()) + 96L);
+
+    /** Bound on each artefact memo, in estimated bytes. */
+    private static final long ARTEFACT_MEMO_BYTES = 16L << 20;
+
+    private static final ThreadSafeCache<String, BitSet> FINGERPRINTS
+            = new ThreadSafeCache<>(ARTEFACT_MEMO_BYTES,
+                    ARTEFACT_MEMO_BYTES / TYPICAL_MEMO_ENTRY_BYTES,
+                    (graph, fp) -> 2L * graph.length() + fp.size() / 8 + 96L);
+
+    private static final ThreadSafeCache<String, Integer> RING_COUNTS
+            = new ThreadSafeCache<>(ARTEFACT_MEMO_BYTES,
+                    ARTEFACT_MEMO_BYTES / TYPICAL_MEMO_ENTRY_BYTES,
+                    (graph, count) -> 2L * graph.length() + 64L);
+
+    /** Signatures of molecules that are already perceived by AROMATICITY. */
+    private static final ThreadSafeCache<String, Boolean> AROMATIC_FIXED_POINTS
+            = new ThreadSafeCache<>(ARTEFACT_MEMO_BYTES,
+                    ARTEFACT_MEMO_BYTES / TYPICAL_MEMO_ENTRY_BYTES,
+                    (graph, fixed) -> 2L * graph.length() + 64L);
+
+    private static final Aromaticity AROMATICITY = new Aromaticity(daylight(),
+            Cycles.or(Cycles.all(), Cycles.or(Cycles.relevant(), Cycles.essential())));
+
+    private static final CycleFinder SHORT_CYCLES = Cycles.vertexShort();
+
     private MappingKeyUtil() {
     }
 
+    /**
+     * @param molecule molecule
+     * @return path fingerprint of the molecule; a copy the caller may modify
+     * @throws CDKException
+     */
+    public static BitSet fingerprint(IAtomContainer molecule) throws CDKException {
+        String graph = graphSignature(molecule);
+        BitSet fp = FINGERPRINTS.get(graph);
+        if (fp == null) {
+            fp = new FingerprintGenerator().getFingerprint(molecule);
+            FINGERPRINTS.put(graph, fp);
+        }
+        return (BitSet) fp.clone();
+    }
+
+    /**
+     * @param molecule molecule
+     * @return number of vertex-short cycles
+     * @throws CDKException if cycle perception is intractable
+     */
+    public static int ringCount(IAtomContainer molecule) throws CDKException {
+        String graph = graphSignature(molecule);
+        Integer count = RING_COUNTS.get(graph);
+        if (count == null) {
+            count = SHORT_CYCLES.find(molecule).numberOfCycles();
+            RING_COUNTS.put(graph, count);
+        }
+        return count;
+    }
+
+    /**
+     * Applies Daylight aromaticity (all, relevant or essential cycles). The
+     * model only reads what the signature records, so a molecule whose
+     * signature equals one seen after perception is already perceived and is
+     * left untouched.
+     *
+     * @param molecule molecule, aromatic flags are updated in place
+     * @throws CDKException
+     */
+    public static void applyAromaticity(IAtomContainer molecule) throws CDKException {
+        if (AROMATIC_FIXED_POINTS.get(graphSignature(molecule)) != null) {
+            return;
+        }
+        AROMATICITY.apply(molecule);
+        AROMATIC_FIXED_POINTS.put(graphSignature(molecule), Boolean.TRUE);
+    }
+
+    /**
+     * @param molecule molecule
+     * @return canonical structure key of the molecule
+     */
     public static String computeStructureKey(IAtomContainer molecule) {
         if (molecule == null) {
             return "null";
         }
+        String graph = graphSignature(molecule);
+        String key = STRUCTURE_KEYS.get(graph);
+        if (key == null) {
+            key = canonicalStructureKey(molecule);
+            STRUCTURE_KEYS.put(graph, key);
+        }
+        return key;
+    }
+
+    /**
+     * Whether a key from {@link #computeStructureKey} identifies the
+     * structure. When neither canonicaliser accepts a molecule its key falls
+     * back to the atom and bond counts, which many structures share; such a
+     * key (or the key of a null molecule) must not stand for a result.
+     *
+     * @param key structure key
+     * @return false for the count fallback and for null molecules
+     */
+    public static boolean isCanonicalStructureKey(String key) {
+        return key != null && !"null".equals(key) && !COUNT_KEY.matcher(key).matches();
+    }
+
+    private static String canonicalStructureKey(IAtomContainer molecule) {
         try {
             return new MolGraph(molecule).toCanonicalSmiles();
         } catch (RuntimeException ex) {
@@ -43,6 +177,55 @@ public final class MappingKeyUtil {
         }
     }
 
+    /**
+     * Everything canonicalisation can see, in atom order: element, charge,
+     * hydrogens, isotope, aromaticity and atom map of each atom, order and
+     * aromaticity of each bond, and the stereo elements. Equal signatures
+     * imply equal canonical keys.
+     */
+    static String graphSignature(IAtomContainer molecule) {
+        StringBuilder sb = new StringBuilder(16 * molecule.getAtomCount() + 8 * molecule.getBondCount());
+        for (IAtom atom : molecule.atoms()) {
+            sb.append(atom.getSymbol())
+                    .append(',').append(atom.getFormalCharge())
+                    .append(',').append(atom.getImplicitHydrogenCount())
+                    .append(',').append(atom.getMassNumber())
+                    .append(',').append(atom.isAromatic() ? 'a' : 'A')
+                    .append(',').append(atom.getMapIdx())
+                    .append(';');
+        }
+        sb.append('|');
+        for (IBond bond : molecule.bonds()) {
+            sb.append(molecule.indexOf(bond.getBegin()))
+                    .append('-').append(molecule.indexOf(bond.getEnd()))
+                    .append(',').append(bond.getOrder())
+                    .append(',').append(bond.isAromatic() ? 'a' : 'A')
+                    .append(',').append(bond.getStereo())
+                    .append(';');
+        }
+        sb.append('|');
+        for (IStereoElement<?, ?> stereo : molecule.stereoElements()) {
+            sb.append(stereo.getConfigClass())
+                    .append(',').append(stereo.getConfigOrder())
+                    .append(',').append(indexOf(molecule, stereo.getFocus()));
+            for (IChemObject carrier : stereo.getCarriers()) {
+                sb.append(',').append(indexOf(molecule, carrier));
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    private static String indexOf(IAtomContainer molecule, IChemObject object) {
+        if (object instanceof IAtom) {
+            return "a" + molecule.indexOf((IAtom) object);
+        }
+        if (object instanceof IBond) {
+            return "b" + molecule.indexOf((IBond) object);
+        }
+        return "?";
+    }
+
     public static String buildPairKey(IAtomContainer query, IAtomContainer target,
             String modeLabel,
             boolean atomType, boolean bondMatch,
@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Append-only on-disk store of MCS results, keyed by
+ * {@link MappingKeyUtil#buildPairKey} and shared across runs.
+ *
+ * Each entry keeps only what {@code GraphMatcher} needs to rebuild a
+ * solution: the mapped atom index pairs plus energy, fragment size and stereo
+ * score. The file is memory-mapped read-only and only record offsets are
+ * kept in memory, so a lookup copies nothing but the requested record.
+ * Entries written in this run are read back through a fresh mapping of the
+ * grown file.
+ *
+ * File layout (big-endian): a header of {@link #MAGIC} and
+ * {@link #FORMAT_VERSION}, then records of {@code [length][crc32][payload]}.
+ * A file with another version is left untouched and the cache stays off.
+ * Writers append whole records under an exclusive file lock, so several
+ * processes may share one file; within one JVM the locks on a file are
+ * taken one at a time, so it may also be opened more than once. A record
+ * torn by a crash fails its checksum and is cut off at the next open. Once
+ * the file reaches its size cap no further entries are written.
+ *
+ * The shared instance is enabled by the {@value #FILE_PROPERTY} system
+ * property; {@value #MAX_MB_PROPERTY} sets the cap (default 512 MB).
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class PersistentMCSCache implements Closeable {
+
+    /**
+     * System property holding the cache file path.
+     */
+    public static final String FILE_PROPERTY = "rdt.mcs.cache.file";
+
+    /**
+     * System property holding the size cap in megabytes.
+     */
+    public static final String MAX_MB_PROPERTY = "rdt.mcs.cache.maxMB";
+
+    /** "RDTC" */
+    static final int MAGIC = 0x52445443;
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_PREFIX_BYTES = 8;
+    private static final long DEFAULT_MAX_BYTES = 512L << 20;
+
+    private static final ILoggingTool LOGGER = createLoggingTool(PersistentMCSCache.class);
+
+    private static volatile PersistentMCSCache shared;
+    private static volatile boolean sharedResolved;
+
+    /*
+     * File locks are held by the JVM, not the channel, so two caches on one
+     * file in the same JVM must not ask for them at the same time
+     */
+    private static final ConcurrentHashMap<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long maxBytes;
+    private final Object fileMonitor;
+    private volatile MappedByteBuffer mapped;
+    private final ConcurrentHashMap<String, Integer> offsets;
+    private final Object writeLock = new Object();
+    private boolean full;
+
+    /**
+     * Compact, index-based MCS result.
+     */
+    public static final class Entry {
+
+        private final int querySignature;
+        private final int targetSignature;
+        private final int[] queryIndices;
+        private final int[] targetIndices;
+        private final double energy;
+        private final int fragmentSize;
+        private final int stereoScore;
+
+        /**
+         * @param querySignature {@link #signature} of the query
+         * @param targetSignature {@link #signature} of the target
+         * @param queryIndices mapped query atom indices
+         * @param targetIndices target atom indices, parallel to the query ones
+         * @param energy energy score
+         * @param fragmentSize fragment size score
+         * @param stereoScore stereo score
+         */
+        public Entry(int querySignature, int targetSignature,
+                int[] queryIndices, int[] targetIndices,
+                double energy, int fragmentSize, int stereoScore) {
+            if (queryIndices.length != targetIndices.length) {
+                throw new IllegalArgumentException("Index arrays differ in length");
+            }
+            this.querySignature = querySignature;
+            this.targetSignature = targetSignature;
+            this.queryIndices = queryIndices;
+            this.targetIndices = targetIndices;
+            this.energy = energy;
+            this.fragmentSize = fragmentSize;
+            this.stereoScore = stereoScore;
+        }
+
+        public int getQuerySignature() {
+            return querySignature;
+        }
+
+        public int getTargetSignature() {
+            return targetSignature;
+        }
+
+        public int size() {
+            return queryIndices.length;
+        }
+
+        public int getQueryIndex(int i) {
+            return queryIndices[i];
+        }
+
+        public int getTargetIndex(int i) {
+            return targetIndices[i];
+        }
+
+        public double getEnergy() {
+            return energy;
+        }
+
+        public int getFragmentSize() {
+            return fragmentSize;
+        }
+
+        public int getStereoScore() {
+            return stereoScore;
+        }
+    }
+
+    /**
+     * Hash of a molecule in its atom order: element, charge, hydrogens and
+     * isotope of each atom, then the atom indices and order of each bond.
+     *
+     * A stored mapping is only valid for molecules numbered the same way as
+     * the one it was computed on; callers compare signatures before reuse.
+     * Two numberings of one molecule differ in their bonds even where the
+     * element sequence is the same.
+     *
+     * @param molecule molecule
+     * @return signature
+     */
+    public static int signature(IAtomContainer molecule) {
+        int hash = molecule.getAtomCount();
+        for (IAtom atom : molecule.atoms()) {
+            String symbol = atom.getSymbol();
+            hash = 31 * hash + (symbol == null ? 0 : symbol.hashCode());
+            hash = 31 * hash + (atom.getFormalCharge() == null ? 0 : atom.getFormalCharge());
+            hash = 31 * hash + (atom.getImplicitHydrogenCount() == null ? -1 : atom.getImplicitHydrogenCount());
+            hash = 31 * hash + (atom.getMassNumber() == null ? 0 : atom.getMassNumber());
+        }
+        hash = 31 * hash + molecule.getBondCount();
+        for (IBond bond : molecule.bonds()) {
+            hash = 31 * hash + molecule.indexOf(bond.getBegin());
+            hash = 31 * hash + molecule.indexOf(bond.getEnd());
+            hash = 31 * hash + (bond.getOrder() == null ? 0 : bond.getOrder().numeric());
+        }
+        return hash;
+    }
+
+    /**
+     * @return the cache named by {@value #FILE_PROPERTY}, or null if the
+     * property is unset or the file cannot be used
+     */
+    public static PersistentMCSCache shared() {
+        if (!sharedResolved) {
+            synchronized (PersistentMCSCache.class) {
+                if (!sharedResolved) {
+                    shared = openConfigured();
+                    sharedResolved = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    private static PersistentMCSCache openConfigured() {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        long maxBytes = DEFAULT_MAX_BYTES;
+        String configured = System.getProperty(MAX_MB_PROPERTY);
+        if (configured != null) {
+            try {
+                maxBytes = Long.parseLong(configured.trim()) << 20;
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Ignoring invalid " + MAX_MB_PROPERTY + "=" + configured);
+            }
+        }
+        try {
+            PersistentMCSCache cache = open(Paths.get(path.trim()), maxBytes);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.close();
+                } catch (IOException ex) {
+                    LOGGER.debug("MCS cache close failed: " + ex.getMessage());
+                }
+            }, "rdt-mcs-cache-close"));
+            return cache;
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Persistent MCS cache disabled (" + path + "): " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Open (or create) a cache file.
+     *
+     * @param file cache file
+     * @param maxBytes size cap of the file
+     * @return the cache
+     * @throws IOException if the file cannot be read, or has another format
+     */
+    public static PersistentMCSCache open(Path file, long maxBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new PersistentMCSCache(file, channel, Math.min(maxBytes, Integer.MAX_VALUE));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private PersistentMCSCache(Path file, FileChannel channel, long maxBytes) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.maxBytes = maxBytes;
+        this.fileMonitor = FILE_MONITORS.computeIfAbsent(file.toRealPath(), path -> new Object());
+        this.offsets = new ConcurrentHashMap<>();
+        synchronized (fileMonitor) {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        try (FileLock lock = channel.lock()) {
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+                writeFully(header, 0);
+                size = HEADER_BYTES;
+            }
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("not an MCS cache file");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("not an MCS cache file");
+            }
+            int version = mapped.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported MCS cache format version " + version);
+            }
+            long end = index();
+            if (end < size) {
+                LOGGER.warn("Discarding " + (size - end) + " damaged bytes at the end of " + file);
+                channel.truncate(end);
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            }
+            full = end >= maxBytes;
+        }
+    }
+
+    /**
+     * Index the records of the mapped file.
+     *
+     * @return offset just past the last intact record
+     */
+    private long index() {
+        int limit = mapped.limit();
+        int offset = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_PREFIX_BYTES <= limit) {
+            int length = mapped.getInt(offset);
+            int checksum = mapped.getInt(offset + 4);
+            int payload = offset + RECORD_PREFIX_BYTES;
+            if (length < 4 || length > limit - payload) {
+                break;
+            }
+            ByteBuffer slice = mapped.duplicate();
+            slice.position(payload).limit(payload + length);
+            crc.reset();
+            crc.update(slice);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            offsets.putIfAbsent(readKey(mapped, payload), payload);
+            offset = payload + length;
+        }
+        return offset;
+    }
+
+    /**
+     * @param key pair key
+     * @return the stored entry, or null
+     */
+    public Entry get(String key) {
+        Integer offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        MappedByteBuffer view = mapped;
+        if (offset >= view.limit() || offset + view.getInt(offset - RECORD_PREFIX_BYTES) > view.limit()) {
+            view = remap();
+            if (view == null) {
+                return null;
+            }
+        }
+        return readEntry(view, offset);
+    }
+
+    /*
+     * Map the file again after this run has appended to it
+     */
+    private MappedByteBuffer remap() {
+        synchronized (writeLock) {
+            try {
+                if (channel.isOpen()) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    return mapped;
+                }
+            } catch (IOException ex) {
+                LOGGER.debug("MCS cache remap failed: " + ex.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store an entry unless the key is already present or the file is full.
+     *
+     * @param key pair key
+     * @param entry entry
+     */
+    public void put(String key, Entry entry) {
+        if (full || offsets.containsKey(key)) {
+            return;
+        }
+        ByteBuffer record = encode(key, entry);
+        synchronized (writeLock) {
+            if (full || !channel.isOpen() || offsets.containsKey(key)) {
+                return;
+            }
+            synchronized (fileMonitor) {
+                try (FileLock lock = channel.lock()) {
+                    long end = channel.size();
+                    if (end + record.remaining() > maxBytes) {
+                        full = true;
+                        LOGGER.info("MCS cache " + file + " reached its size cap; no further entries are stored");
+                        return;
+                    }
+                    writeFully(record, end);
+                    offsets.put(key, (int) end + RECORD_PREFIX_BYTES);
+                } catch (IOException ex) {
+                    full = true;
+                    LOGGER.warn("MCS cache " + file + " is no longer written: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of entries visible to {@link #get}
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * @return true once the size cap stopped further writes
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String key, Entry entry) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 4 + keyBytes.length + 4 + 4 + 8 + 4 + 4 + 4 + 8 * entry.size();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_BYTES + length);
+        record.position(RECORD_PREFIX_BYTES);
+        record.putInt(keyBytes.length).put(keyBytes)
+                .putInt(entry.querySignature).putInt(entry.targetSignature)
+                .putDouble(entry.energy).putInt(entry.fragmentSize).putInt(entry.stereoScore)
+                .putInt(entry.size());
+        for (int i = 0; i < entry.size(); i++) {
+            record.putInt(entry.queryIndices[i]).putInt(entry.targetIndices[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_PREFIX_BYTES, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue());
+        record.position(0);
+        return record;
+    }
+
+    private static String readKey(MappedByteBuffer mapped, int payload) {
+        byte[] keyBytes = new byte[mapped.getInt(payload)];
+        mapped.get(payload + 4, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private static Entry readEntry(MappedByteBuffer mapped, int payload) {
+        int offset = payload + 4 + mapped.getInt(payload);
+        int querySignature = mapped.getInt(offset);
+        int targetSignature = mapped.getInt(offset + 4);
+        double energy = mapped.getDouble(offset + 8);
+        int fragmentSize = mapped.getInt(offset + 16);
+        int stereoScore = mapped.getInt(offset + 20);
+        int count = mapped.getInt(offset + 24);
+        offset += 28;
+        int[] queryIndices = new int[count];
+        int[] targetIndices = new int[count];
+        for (int i = 0; i < count; i++, offset += 8) {
+            queryIndices[i] = mapped.getInt(offset);
+            targetIndices[i] = mapped.getInt(offset + 4);
+        }
+        return new Entry(querySignature, targetSignature,
+                queryIndices, targetIndices, energy, fragmentSize, stereoScore);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
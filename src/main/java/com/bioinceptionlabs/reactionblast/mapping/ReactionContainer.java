@@ -111,7 +111,10 @@ public class ReactionContainer implements Cloneable, Serializable {
     private final Map<Integer, BitSet> pFingerPrintMap;
     private final Map<Integer, Boolean> eductContainerModificationMap;
     private final Map<Integer, Boolean> productContainerModificationMap;
-    private final IFingerprintGenerator fpr;
+    private final Map<Integer, String> eStructureKeyMap;
+    private final Map<Integer, String> pStructureKeyMap;
+    private final Map<Integer, Integer> eRingCountMap;
+    private final Map<Integer, Integer> pRingCountMap;
 
     //~--- constructors -------------------------------------------------------
     /**
@@ -125,7 +128,10 @@ public class ReactionContainer implements Cloneable, Serializable {
         pFingerPrintMap = new TreeMap<>();
         eductContainerModificationMap = new TreeMap<>();
         productContainerModificationMap = new TreeMap<>();
-        fpr = new FingerprintGenerator();
+        eStructureKeyMap = new TreeMap<>();
+        pStructureKeyMap = new TreeMap<>();
+        eRingCountMap = new TreeMap<>();
+        pRingCountMap = new TreeMap<>();
     }
 
     @Override
@@ -136,7 +142,8 @@ public class ReactionContainer implements Cloneable, Serializable {
                 + ", pFingerPrintMap=" + pFingerPrintMap
                 + ", eductContainerModificationMap=" + eductContainerModificationMap
                 + ", productContainerModificationMap=" + productContainerModificationMap
-                + ", fpr=" + fpr + '}';
+                + ", eStructureKeyMap=" + eStructureKeyMap
+                + ", pStructureKeyMap=" + pStructureKeyMap + '}';
     }
 
     //~--- methods ------------------------------------------------------------
@@ -151,6 +158,10 @@ public class ReactionContainer implements Cloneable, Serializable {
         pFingerPrintMap.clear();
         eductContainerModificationMap.clear();
         productContainerModificationMap.clear();
+        eStructureKeyMap.clear();
+        pStructureKeyMap.clear();
+        eRingCountMap.clear();
+        pRingCountMap.clear();
     }
 
     /**
@@ -162,6 +173,8 @@ public class ReactionContainer implements Cloneable, Serializable {
         eAtomContainerMap.remove(Key);
         eFingerPrintMap.remove(Key);
         eductContainerModificationMap.remove(Key);
+        eStructureKeyMap.remove(Key);
+        eRingCountMap.remove(Key);
     }
 
     /**
@@ -173,6 +186,8 @@ public class ReactionContainer implements Cloneable, Serializable {
         pAtomContainerMap.remove(Key);
         pFingerPrintMap.remove(Key);
         productContainerModificationMap.remove(Key);
+        pStructureKeyMap.remove(Key);
+        pRingCountMap.remove(Key);
     }
 
     /**
@@ -277,11 +292,12 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void putEduct(int index, IAtomContainer educt)
             throws IOException, Exception {
         eAtomContainerMap.put(index, educt);
+        eStructureKeyMap.remove(index);
+        eRingCountMap.remove(index);
         if (educt.getAtomCount() == 0) {
             setFingerPrintofEduct(index, new BitSet(getFingerprinterSize()));
         } else {
-            BitSet fp = fpr.getFingerprint(educt);
-            setFingerPrintofEduct(index, (BitSet) fp.clone());
+            setFingerPrintofEduct(index, MappingKeyUtil.fingerprint(educt));
         }
     }
 
@@ -295,11 +311,12 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void putProduct(int index, IAtomContainer product)
             throws IOException, Exception {
         pAtomContainerMap.put(index, product);
+        pStructureKeyMap.remove(index);
+        pRingCountMap.remove(index);
         if (product.getAtomCount() == 0) {
             setFingerPrintofProduct(index, new BitSet(getFingerprinterSize()));
         } else {
-            BitSet fp = fpr.getFingerprint(product);
-            setFingerPrintofProduct(index, (BitSet) fp.clone());
+            setFingerPrintofProduct(index, MappingKeyUtil.fingerprint(product));
         }
     }
 
@@ -314,6 +331,10 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void setEductModified(int index, boolean flag)
             throws IOException, Exception {
         eductContainerModificationMap.put(index, flag);
+        if (flag) {
+            eStructureKeyMap.remove(index);
+            eRingCountMap.remove(index);
+        }
     }
 
     /**
@@ -326,6 +347,10 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void setProductModified(int index, boolean flag)
             throws IOException, Exception {
         productContainerModificationMap.put(index, flag);
+        if (flag) {
+            pStructureKeyMap.remove(index);
+            pRingCountMap.remove(index);
+        }
     }
 
     /**
@@ -337,9 +362,10 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void putAllEduct(TreeMap<Integer, IAtomContainer> eudMap)
             throws IOException, Exception {
         eAtomContainerMap.putAll(eudMap);
+        eStructureKeyMap.keySet().removeAll(eudMap.keySet());
+        eRingCountMap.keySet().removeAll(eudMap.keySet());
         for (Map.Entry<Integer, IAtomContainer> map : eudMap.entrySet()) {
-            BitSet fp = fpr.getFingerprint(map.getValue());
-            setFingerPrintofEduct(map.getKey(), fp);
+            setFingerPrintofEduct(map.getKey(), MappingKeyUtil.fingerprint(map.getValue()));
         }
     }
 
@@ -352,13 +378,85 @@ public class ReactionContainer implements Cloneable, Serializable {
     public void putAllProduct(TreeMap<Integer, IAtomContainer> prodMap)
             throws IOException, Exception {
         pAtomContainerMap.putAll(prodMap);
+        pStructureKeyMap.keySet().removeAll(prodMap.keySet());
+        pRingCountMap.keySet().removeAll(prodMap.keySet());
         for (Map.Entry<Integer, IAtomContainer> map : prodMap.entrySet()) {
-            BitSet fp = fpr.getFingerprint(map.getValue());
-            setFingerPrintofProduct(map.getKey(), fp);
+            setFingerPrintofProduct(map.getKey(), MappingKeyUtil.fingerprint(map.getValue()));
         }
     }
 
     //~--- get methods --------------------------------------------------------
+    /**
+     * Structure key of an educt (see {@link MappingKeyUtil#computeStructureKey}),
+     * computed once and reused until the educt is replaced or marked modified.
+     *
+     * @param index
+     * @return structure key, or null if there is no such educt
+     */
+    public String getEductStructureKey(int index) {
+        IAtomContainer educt = eAtomContainerMap.get(index);
+        if (educt == null) {
+            return null;
+        }
+        return eStructureKeyMap.computeIfAbsent(index, i -> MappingKeyUtil.computeStructureKey(educt));
+    }
+
+    /**
+     * Structure key of a product, computed once and reused until the product
+     * is replaced or marked modified.
+     *
+     * @param index
+     * @return structure key, or null if there is no such product
+     */
+    public String getProductStructureKey(int index) {
+        IAtomContainer product = pAtomContainerMap.get(index);
+        if (product == null) {
+            return null;
+        }
+        return pStructureKeyMap.computeIfAbsent(index, i -> MappingKeyUtil.computeStructureKey(product));
+    }
+
+    /**
+     * Ring count of an educt recorded when it was prepared for matching
+     * (aromaticity perceived), kept until the educt is replaced or marked
+     * modified.
+     *
+     * @param index
+     * @return ring count, or null if the educt has not been prepared since it
+     * last changed
+     */
+    public Integer getEductRingCount(int index) {
+        return eRingCountMap.get(index);
+    }
+
+    /**
+     * @param index
+     * @param ringCount ring count of the prepared educt
+     */
+    public void setEductRingCount(int index, int ringCount) {
+        eRingCountMap.put(index, ringCount);
+    }
+
+    /**
+     * Ring count of a product recorded when it was prepared for matching,
+     * kept until the product is replaced or marked modified.
+     *
+     * @param index
+     * @return ring count, or null if the product has not been prepared since
+     * it last changed
+     */
+    public Integer getProductRingCount(int index) {
+        return pRingCountMap.get(index);
+    }
+
+    /**
+     * @param index
+     * @param ringCount ring count of the prepared product
+     */
+    public void setProductRingCount(int index, int ringCount) {
+        pRingCountMap.put(index, ringCount);
+    }
+
     /**
      *
      * @param value
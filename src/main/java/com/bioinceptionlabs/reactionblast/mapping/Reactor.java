@@ -11,7 +11,7 @@ import com.bioinceptionlabs.reactionblast.mapping.algorithm.CalculationProcess;
 import com.bioinceptionlabs.reactionblast.mapping.algorithm.MappingChecks;
 import com.bioinceptionlabs.reactionblast.mapping.algorithm.Holder;
 import com.bioinceptionlabs.reactionblast.tools.CDKSMILES;
-import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
 import com.bioinceptionlabs.reactionblast.legacy.ImageGenerator;
 import com.bioinceptionlabs.reactionblast.tools.MoleculeTools.BasicDebugger;
 import java.io.IOException;
@@ -110,6 +110,22 @@ public class Reactor extends BasicDebugger implements Serializable {
             boolean partialMapping,
             IMappingAlgorithm algorithm)
             throws Exception {
+        this(PreparedReaction.prepare(reaction), partialMapping, algorithm);
+    }
+
+    /**
+     *
+     * @param preparedReaction reaction prepared once and shared read-only by
+     * the reactors of all algorithms
+     * @param partialMapping (without Hydrogens is set True, its faster)
+     * @param algorithm mapping algorithm
+     * @throws Exception
+     */
+    Reactor(PreparedReaction preparedReaction,
+            boolean partialMapping,
+            IMappingAlgorithm algorithm)
+            throws Exception {
+        IReaction reaction = preparedReaction.getReaction();
         if (partialMapping) {
             //else CDKToBeam throws an error "Aromatic bond connects non-aromatic atomic atoms"
             smiles = new SmilesGenerator(
@@ -169,48 +185,32 @@ public class Reactor extends BasicDebugger implements Serializable {
     }
 
     /**
-     * Copy reference reaction molecules into the stoichiometry reaction.
-     * Uses direct clone + perceive instead of expensive SMILES round-trip
-     * (serialize → parse → perceive was ~15% of total mapping time).
+     * Copy the prepared molecules into the stoichiometry reaction. Typing,
+     * canonical ordering, layout and aromaticity were done once by
+     * {@link PreparedReaction}; only the mutable copy is made here.
      */
     private void copyReferenceReaction(IReaction referenceReaction) throws CDKException, IOException, Exception {
         try {
             for (int i = 0; i < referenceReaction.getReactantCount(); i++) {
                 IAtomContainer refMol = referenceReaction.getReactants().getAtomContainer(i);
-                IAtomContainer cloneMolecule = cloneWithIDs(refMol);
-                ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(cloneMolecule);
-                cloneMolecule = prepareMol(cloneMolecule);
-                cloneMolecule.setID(refMol.getID());
                 Double st = referenceReaction.getReactantCoefficient(refMol);
-                aromatizeMolecule(cloneMolecule);
-                reactionWithSTOICHIOMETRY.addReactant(cloneMolecule, st);
+                reactionWithSTOICHIOMETRY.addReactant(cloneWithIDs(refMol), st);
             }
-        } catch (CloneNotSupportedException | CDKException e) {
-            LOGGER.error(SEVERE, null, e);
-        }
-        try {
             for (int i = 0; i < referenceReaction.getProductCount(); i++) {
                 IAtomContainer refMol = referenceReaction.getProducts().getAtomContainer(i);
-                IAtomContainer cloneMolecule = cloneWithIDs(refMol);
-                ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(cloneMolecule);
-                cloneMolecule = prepareMol(cloneMolecule);
-                cloneMolecule.setID(refMol.getID());
                 Double st = referenceReaction.getProductCoefficient(refMol);
-                aromatizeMolecule(cloneMolecule);
-                reactionWithSTOICHIOMETRY.addProduct(cloneMolecule, st);
+                reactionWithSTOICHIOMETRY.addProduct(cloneWithIDs(refMol), st);
             }
             reactionWithSTOICHIOMETRY.setID(referenceReaction.getID());
             reactionWithSTOICHIOMETRY.setDirection(referenceReaction.getDirection());
-        } catch (CloneNotSupportedException | CDKException e) {
+        } catch (CloneNotSupportedException e) {
             LOGGER.error(SEVERE, "Error in Reactor class", e.getMessage());
         }
         // Preserve agents (e.g. filtered reagents) for downstream consumers
         try {
             if (referenceReaction.getAgents() != null) {
                 for (IAtomContainer agent : referenceReaction.getAgents().atomContainers()) {
-                    IAtomContainer cloneAgent = cloneWithIDs(agent);
-                    cloneAgent.setID(agent.getID());
-                    reactionWithSTOICHIOMETRY.addAgent(cloneAgent);
+                    reactionWithSTOICHIOMETRY.addAgent(cloneWithIDs(agent));
                 }
             }
         } catch (CloneNotSupportedException e) {
@@ -1166,7 +1166,7 @@ public class Reactor extends BasicDebugger implements Serializable {
         return algorithm;
     }
 
-    private IAtomContainer prepareMol(IAtomContainer cloneMolecule)
+    private static IAtomContainer prepareMol(IAtomContainer cloneMolecule)
             throws CloneNotSupportedException, CDKException {
 
         LOGGER.debug("Original");
@@ -1222,7 +1222,7 @@ public class Reactor extends BasicDebugger implements Serializable {
      * This is a very imp code modified by John May
      * The idea is to canonicalise the atoms and bonds
      */
-    private void permuteWithoutClone(int[] p, IAtomContainer atomContainer) {
+    private static void permuteWithoutClone(int[] p, IAtomContainer atomContainer) {
         int n = atomContainer.getAtomCount();
         int[] permutation = normalizePermutation(p, n);
         LOGGER.debug("permuting " + java.util.Arrays.toString(p));
@@ -1262,7 +1262,7 @@ public class Reactor extends BasicDebugger implements Serializable {
         atomContainer.setBonds(bonds);
     }
 
-    private int[] normalizePermutation(int[] permutation, int size) {
+    private static int[] normalizePermutation(int[] permutation, int size) {
         if (permutation == null || permutation.length != size) {
             return identityPermutation(size);
         }
@@ -1277,7 +1277,7 @@ public class Reactor extends BasicDebugger implements Serializable {
         return permutation;
     }
 
-    private int[] identityPermutation(int size) {
+    private static int[] identityPermutation(int size) {
         int[] identity = new int[size];
         for (int i = 0; i < size; i++) {
             identity[i] = i;
@@ -1466,7 +1466,7 @@ public class Reactor extends BasicDebugger implements Serializable {
          * @param PdMap
          */
         protected void printStereoMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-            EBIMatrix StereoMatrix = mh.getStereoMatrix();
+            MatrixView StereoMatrix = mh.getStereoMatrix();
 
             StringBuilder sb = new StringBuilder();
             sb.append(NEW_LINE);
@@ -1513,7 +1513,7 @@ public class Reactor extends BasicDebugger implements Serializable {
          * @param PdMap
          */
         protected void printFragmentMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-            EBIMatrix fragmentMatrix = mh.getFragmentMatrix();
+            MatrixView fragmentMatrix = mh.getFragmentMatrix();
 
             StringBuilder sb = new StringBuilder();
             sb.append(NEW_LINE);
@@ -1560,7 +1560,7 @@ public class Reactor extends BasicDebugger implements Serializable {
          * @param PdMap
          */
         protected void printCarbonMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-            EBIMatrix carbonMatrix = mh.getCarbonOverlapMatrix();
+            MatrixView carbonMatrix = mh.getCarbonOverlapMatrix();
 
             StringBuilder sb = new StringBuilder();
             sb.append(NEW_LINE);
@@ -1605,7 +1605,7 @@ public class Reactor extends BasicDebugger implements Serializable {
          * @param PdMap
          */
         protected void printEnergyMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-            EBIMatrix energyMatrixProfile = mh.getEnergyMatrix();
+            MatrixView energyMatrixProfile = mh.getEnergyMatrix();
 
             StringBuilder sb = new StringBuilder();
             sb.append(NEW_LINE);
@@ -1757,6 +1757,78 @@ public class Reactor extends BasicDebugger implements Serializable {
 
 
 
+    /**
+     * A reaction whose molecules were atom typed, canonically ordered, laid
+     * out in 2D and aromatised once. The MIN, MAX, MIXTURE and RINGS reactors
+     * share it read-only and each clones the molecules it will mutate.
+     */
+    static final class PreparedReaction {
+
+        private final IReaction reaction;
+
+        private PreparedReaction(IReaction reaction) {
+            this.reaction = reaction;
+        }
+
+        /**
+         * @param referenceReaction standardized reaction, left untouched
+         * @return the prepared copy
+         */
+        static PreparedReaction prepare(IReaction referenceReaction) {
+            IReaction prepared = referenceReaction.getBuilder().newInstance(IReaction.class);
+            try {
+                for (int i = 0; i < referenceReaction.getReactantCount(); i++) {
+                    IAtomContainer refMol = referenceReaction.getReactants().getAtomContainer(i);
+                    prepared.addReactant(prepareCopy(refMol),
+                            referenceReaction.getReactantCoefficient(refMol));
+                }
+            } catch (CloneNotSupportedException | CDKException e) {
+                LOGGER.error(SEVERE, null, e);
+            }
+            try {
+                for (int i = 0; i < referenceReaction.getProductCount(); i++) {
+                    IAtomContainer refMol = referenceReaction.getProducts().getAtomContainer(i);
+                    prepared.addProduct(prepareCopy(refMol),
+                            referenceReaction.getProductCoefficient(refMol));
+                }
+            } catch (CloneNotSupportedException | CDKException e) {
+                LOGGER.error(SEVERE, "Error in Reactor class", e.getMessage());
+            }
+            prepared.setID(referenceReaction.getID());
+            prepared.setDirection(referenceReaction.getDirection());
+            try {
+                if (referenceReaction.getAgents() != null) {
+                    for (IAtomContainer agent : referenceReaction.getAgents().atomContainers()) {
+                        IAtomContainer cloneAgent = cloneWithIDs(agent);
+                        cloneAgent.setID(agent.getID());
+                        prepared.addAgent(cloneAgent);
+                    }
+                }
+            } catch (CloneNotSupportedException e) {
+                LOGGER.error(SEVERE, "Error cloning agents", e.getMessage());
+            }
+            return new PreparedReaction(prepared);
+        }
+
+        private static IAtomContainer prepareCopy(IAtomContainer refMol)
+                throws CloneNotSupportedException, CDKException {
+            IAtomContainer cloneMolecule = cloneWithIDs(refMol);
+            percieveAtomTypesAndConfigureAtoms(cloneMolecule);
+            cloneMolecule = prepareMol(cloneMolecule);
+            cloneMolecule.setID(refMol.getID());
+            aromatizeMolecule(cloneMolecule);
+            return cloneMolecule;
+        }
+
+        /**
+         * @return the prepared reaction; callers must not modify it
+         */
+        IReaction getReaction() {
+            return reaction;
+        }
+    }
+
+
     /**
      * @Author: Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
      * @Date: 2009/06/3
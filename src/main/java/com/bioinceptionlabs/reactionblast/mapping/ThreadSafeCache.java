@@ -3,22 +3,44 @@
  */
 package com.bioinceptionlabs.reactionblast.mapping;
 
-import java.lang.ref.SoftReference;
+import com.bioinceptionlabs.reactionblast.mapping.GraphMatcher.MCSSolution;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongBiFunction;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
 
 /**
- * Thread-safe cache for MCS solutions backed by {@link SoftReference} values.
+ * Thread-safe, bounded cache for MCS solutions with frequency-aware
+ * admission (W-TinyLFU).
  * <p>
- * Under normal heap pressure the cache behaves like a regular map — entries
- * remain reachable and provide O(1) MCS reuse across reactions with identical
- * molecule pairs.  When the JVM is low on memory the GC is free to reclaim
- * any soft-referenced value; a subsequent {@link #get} for that key simply
- * returns {@code null} and the caller falls through to a fresh MCS computation.
+ * New entries go to a small LRU window (1% of the bound). An entry pushed
+ * out of the window is admitted to the main LRU region only if it has been
+ * requested more often than the entry it would evict there; access counts
+ * are kept in a compact count-min sketch that is halved periodically, so
+ * recurring pairs (cofactors such as ATP/ADP or NAD/NADH) stay cached
+ * while one-off pairs pass through the window.
  * <p>
- * A hard capacity limit ({@link #MAX_CAPACITY}) prevents unbounded growth of
- * the key set itself; when reached, approximately half the entries are evicted.
+ * The bound is either an entry count ({@value #MAX_ENTRIES_PROPERTY},
+ * default {@value #DEFAULT_MAX_ENTRIES}) or, if {@value #MAX_MB_PROPERTY} is
+ * set, an estimate of the retained bytes. Hit, miss, eviction and rejection
+ * counters are exposed for monitoring.
+ * <p>
+ * Lookups do not lock: values are read from a concurrent map, and the access
+ * is recorded in a per-thread-stripe read buffer. The buffers are drained
+ * into the sketch and the LRU order under the policy lock by the next write,
+ * or by a reader that finds the lock free once its buffer fills up; a full
+ * buffer drops further records, which only makes the policy less precise.
  *
  * @author Syed Asad Rahman <asad.rahman at bioinceptionlabs.com>
  * @param <K> key type (typically a canonical SMILES pair key)
@@ -31,127 +53,532 @@ interface Cache<K, V> {
 
 public class ThreadSafeCache<K, V> implements Cache<K, V> {
 
-    /** Maximum number of key entries before random eviction kicks in. */
-    private static final int MAX_CAPACITY = 500;
+    /** System property bounding the number of entries. */
+    public static final String MAX_ENTRIES_PROPERTY = "rdt.cache.maxEntries";
+
+    /** System property bounding the estimated size in megabytes instead. */
+    public static final String MAX_MB_PROPERTY = "rdt.cache.maxMB";
+
+    static final long DEFAULT_MAX_ENTRIES = 10_000L;
+
+    private static final int ESTIMATED_ENTRY_BYTES = 96;
+    private static final int ESTIMATED_ATOM_BYTES = 400;
+    private static final int ESTIMATED_BOND_BYTES = 160;
+    private static final int ESTIMATED_PAIR_BYTES = 64;
+
+    /** Typical estimate of a compacted MCS entry, to size the sketch of a byte bound. */
+    private static final int TYPICAL_ENTRY_BYTES = 2048;
 
-    private final ConcurrentHashMap<K, SoftReference<V>> map;
+    /** Reads a buffer holds; records beyond it are dropped. */
+    private static final int READ_BUFFER_SIZE = 128;
+    /** Buffered reads after which a reader tries to drain. */
+    private static final int READ_DRAIN_THRESHOLD = 32;
+    private static final int READ_BUFFERS
+            = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    private static final ILoggingTool LOGGER = createLoggingTool(ThreadSafeCache.class);
 
     @SuppressWarnings("rawtypes")
-    private static final ThreadSafeCache SC = new ThreadSafeCache();
+    private static final ThreadSafeCache SC = configured();
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final ConcurrentHashMap<K, Node<V>> data;
+    private final ReadBuffer[] readBuffers;
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final LinkedHashMap<K, Node<V>> window;
+    private final LinkedHashMap<K, Node<V>> main;
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long mainWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private static final class Node<V> {
+
+        volatile V value;
+        long weight;
+
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
 
     @SuppressWarnings("unchecked")
     public static <K, V> ThreadSafeCache<K, V> getInstance() {
         return SC;
     }
 
-    private ThreadSafeCache() {
-        map = new ConcurrentHashMap<>(256, 0.75f, 4);
+    /**
+     * A separate cache bounded by entry count, for values other than the
+     * shared MCS solutions.
+     *
+     * @param maxEntries bound on the number of entries
+     * @return an empty cache
+     */
+    public static <K, V> ThreadSafeCache<K, V> withMaxEntries(long maxEntries) {
+        return new ThreadSafeCache<>(maxEntries, (k, v) -> 1L);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static ThreadSafeCache configured() {
+        String megabytes = System.getProperty(MAX_MB_PROPERTY);
+        if (megabytes != null) {
+            try {
+                long maxBytes = Long.parseLong(megabytes.trim()) << 20;
+                if (maxBytes > 0) {
+                    return new ThreadSafeCache<>(maxBytes, maxBytes / TYPICAL_ENTRY_BYTES,
+                            ThreadSafeCache::estimateBytes);
+                }
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Ignoring invalid " + MAX_MB_PROPERTY + "=" + megabytes);
+            }
+        }
+        long maxEntries = DEFAULT_MAX_ENTRIES;
+        String entries = System.getProperty(MAX_ENTRIES_PROPERTY);
+        if (entries != null) {
+            try {
+                maxEntries = Math.max(1L, Long.parseLong(entries.trim()));
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Ignoring invalid " + MAX_ENTRIES_PROPERTY + "=" + entries);
+            }
+        }
+        return new ThreadSafeCache<>(maxEntries, (k, v) -> 1L);
+    }
+
+    /**
+     * @param maxWeight bound on the summed weight of all entries, also taken
+     * as the expected number of entries
+     * @param weigher weight of one entry (1 for a bound by entry count)
+     */
+    ThreadSafeCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+        this(maxWeight, maxWeight, weigher);
+    }
+
+    /**
+     * @param maxWeight bound on the summed weight of all entries
+     * @param expectedEntries number of entries expected within the bound; it
+     * sizes the frequency sketch, so a byte bound should pass an estimate of
+     * the entries it holds rather than the bytes
+     * @param weigher weight of one entry
+     */
+    ThreadSafeCache(long maxWeight, long expectedEntries, ToLongBiFunction<? super K, ? super V> weigher) {
+        this.maxWeight = Math.max(1L, maxWeight);
+        this.windowMaxWeight = Math.max(1L, this.maxWeight / 100);
+        this.weigher = weigher;
+        this.data = new ConcurrentHashMap<>();
+        this.readBuffers = new ReadBuffer[READ_BUFFERS];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.main = new LinkedHashMap<>(256, 0.75f, true);
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * @return bytes held by the frequency sketch
+     */
+    int sketchBytes() {
+        return sketch.table.length;
+    }
+
+    /**
+     * Rough heap footprint of a cached entry, used for the byte bound. The
+     * molecules of an {@link MCSSolution} are counted when it still holds
+     * them; cached solutions are normally compacted to their index pairs.
+     */
+    static long estimateBytes(Object key, Object value) {
+        long bytes = ESTIMATED_ENTRY_BYTES;
+        if (key instanceof String) {
+            bytes += 2L * ((String) key).length();
+        }
+        if (value instanceof MCSSolution) {
+            MCSSolution solution = (MCSSolution) value;
+            bytes += estimateBytes(solution.getQueryContainer());
+            bytes += estimateBytes(solution.getTargetContainer());
+            if (solution.getAtomAtomMapping() != null) {
+                bytes += (long) ESTIMATED_PAIR_BYTES * solution.getAtomAtomMapping().getCount();
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(IAtomContainer molecule) {
+        if (molecule == null) {
+            return 0L;
+        }
+        return (long) ESTIMATED_ATOM_BYTES * molecule.getAtomCount()
+                + (long) ESTIMATED_BOND_BYTES * molecule.getBondCount();
     }
 
     @Override
     public void put(K key, V value) {
-        if (map.size() >= MAX_CAPACITY) {
-            evict();
+        policyLock.lock();
+        try {
+            drainReads();
+            sketch.increment(key);
+            Node<V> node = window.get(key);
+            if (node == null) {
+                node = main.get(key);
+            }
+            if (node != null) {
+                long weight = weigher.applyAsLong(key, value);
+                if (window.containsKey(key)) {
+                    windowWeight += weight - node.weight;
+                } else {
+                    mainWeight += weight - node.weight;
+                }
+                node.value = value;
+                node.weight = weight;
+                drainWindow();
+                return;
+            }
+            insert(key, value);
+        } finally {
+            policyLock.unlock();
         }
-        map.put(key, new SoftReference<>(value));
     }
 
     @Override
     public V get(K key) {
-        SoftReference<V> ref = map.get(key);
-        if (ref == null) {
+        Node<V> node = data.get(key);
+        recordRead(key);
+        if (node == null) {
+            misses.increment();
             return null;
         }
-        V value = ref.get();
-        if (value == null) {
-            // Referent was GC'd — remove the stale key
-            map.remove(key);
-        }
-        return value;
+        hits.increment();
+        return node.value;
     }
 
     /**
-     * Check if key is present and its referent is still alive.
+     * Check if key is present (does not count as an access).
      */
     public boolean containsKey(K key) {
-        SoftReference<V> ref = map.get(key);
-        if (ref == null) {
-            return false;
-        }
-        if (ref.get() == null) {
-            map.remove(key);
-            return false;
-        }
-        return true;
+        return data.containsKey(key);
     }
 
     /**
-     * Insert the value only if the key is absent (or its referent was GC'd).
+     * Insert the value only if the key is absent.
      *
-     * @return the existing live value if present, otherwise the newly inserted value
+     * @return the existing value if present, otherwise the newly inserted value
      */
     public V putIfAbsent(K key, V value) {
-        while (true) {
-            SoftReference<V> existingRef = map.get(key);
-            if (existingRef != null) {
-                V existing = existingRef.get();
-                if (existing != null) {
-                    return existing;
-                }
-                // Stale reference — remove and retry
-                map.remove(key, existingRef);
-            }
-            if (map.size() >= MAX_CAPACITY) {
-                evict();
-            }
-            SoftReference<V> newRef = new SoftReference<>(value);
-            SoftReference<V> prev = map.putIfAbsent(key, newRef);
-            if (prev == null) {
-                return value;
-            }
-            V prevValue = prev.get();
-            if (prevValue != null) {
-                return prevValue;
+        Node<V> node = data.get(key);
+        if (node != null) {
+            return node.value;
+        }
+        policyLock.lock();
+        try {
+            node = data.get(key);
+            if (node != null) {
+                return node.value;
             }
-            // Another thread inserted a stale reference — retry
-            map.remove(key, prev);
+            drainReads();
+            sketch.increment(key);
+            insert(key, value);
+            return value;
+        } finally {
+            policyLock.unlock();
         }
     }
 
     /**
-     * Clear all cached entries.
+     * Clear all cached entries (counters are kept).
      */
     public void cleanup() {
-        map.clear();
+        policyLock.lock();
+        try {
+            for (ReadBuffer buffer : readBuffers) {
+                buffer.clear();
+            }
+            data.clear();
+            window.clear();
+            main.clear();
+            windowWeight = 0L;
+            mainWeight = 0L;
+            sketch.clear();
+        } finally {
+            policyLock.unlock();
+        }
     }
 
     /**
-     * @return approximate number of key entries (some may have GC'd referents)
+     * @return number of entries
      */
     public int size() {
-        return map.size();
+        return data.size();
     }
 
+    /**
+     * @return snapshot of the cached keys
+     */
     public Set<K> keySet() {
-        return map.keySet();
+        return new HashSet<>(data.keySet());
+    }
+
+    /**
+     * @return summed weight of the entries (entries, or estimated bytes)
+     */
+    public long weight() {
+        policyLock.lock();
+        try {
+            return windowWeight + mainWeight;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * @return the configured bound on {@link #weight()}
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
     }
 
     /**
-     * Evict roughly half the entries when over capacity.
-     * Also purges any keys whose soft references have been cleared by GC.
+     * @return entries removed to make room, including rejected candidates
      */
-    private void evict() {
-        // First pass: remove stale (GC'd) entries
-        map.entrySet().removeIf(e -> e.getValue().get() == null);
-        // If still over capacity, remove half
-        if (map.size() >= MAX_CAPACITY) {
-            int toRemove = map.size() / 2;
-            int removed = 0;
-            for (K key : map.keySet()) {
-                if (removed >= toRemove) break;
-                map.remove(key);
-                removed++;
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return candidates refused by the frequency admission filter
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * @return hits / (hits + misses), or 0 before the first lookup
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadSafeCache{size=" + size() + ", weight=" + weight() + "/" + maxWeight
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", rejections=" + getRejectionCount() + "}";
+    }
+
+    private void insert(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        if (weight > maxWeight) {
+            rejections.increment();
+            return;
+        }
+        Node<V> node = new Node<>(value, weight);
+        window.put(key, node);
+        data.put(key, node);
+        windowWeight += weight;
+        drainWindow();
+    }
+
+    /**
+     * Move entries pushed out of the window into the main region, where they
+     * compete with its least recently used entries.
+     */
+    private void drainWindow() {
+        while (windowWeight > windowMaxWeight && window.size() > 1) {
+            Iterator<Map.Entry<K, Node<V>>> it = window.entrySet().iterator();
+            Map.Entry<K, Node<V>> candidate = it.next();
+            it.remove();
+            windowWeight -= candidate.getValue().weight;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+        evictMainOverflow();
+    }
+
+    private void admit(K key, Node<V> node) {
+        long mainMaxWeight = maxWeight - windowMaxWeight;
+        if (node.weight > mainMaxWeight) {
+            data.remove(key, node);
+            rejections.increment();
+            evictions.increment();
+            return;
+        }
+        int candidateFrequency = sketch.frequency(key);
+        while (mainWeight + node.weight > mainMaxWeight) {
+            Iterator<Map.Entry<K, Node<V>>> it = main.entrySet().iterator();
+            Map.Entry<K, Node<V>> victim = it.next();
+            if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+                data.remove(key, node);
+                rejections.increment();
+                evictions.increment();
+                return;
+            }
+            it.remove();
+            data.remove(victim.getKey(), victim.getValue());
+            mainWeight -= victim.getValue().weight;
+            evictions.increment();
+        }
+        main.put(key, node);
+        mainWeight += node.weight;
+    }
+
+    /**
+     * Enforce the overall bound after an update grew an entry.
+     */
+    private void evictMainOverflow() {
+        Iterator<Map.Entry<K, Node<V>>> it = main.entrySet().iterator();
+        while (windowWeight + mainWeight > maxWeight && it.hasNext()) {
+            Map.Entry<K, Node<V>> victim = it.next();
+            it.remove();
+            data.remove(victim.getKey(), victim.getValue());
+            mainWeight -= victim.getValue().weight;
+            evictions.increment();
+        }
+    }
+
+    private void recordRead(K key) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().threadId() & (readBuffers.length - 1)];
+        if (buffer.offer(key) >= READ_DRAIN_THRESHOLD && policyLock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Apply the buffered reads to the sketch and the LRU order; called with
+     * the policy lock held.
+     */
+    private void drainReads() {
+        for (ReadBuffer buffer : readBuffers) {
+            Object key;
+            while ((key = buffer.poll()) != null) {
+                sketch.increment(key);
+                if (window.get(key) == null) {
+                    main.get(key);
+                }
             }
         }
     }
+
+    /**
+     * Bounded, lossy queue of read keys.
+     */
+    private static final class ReadBuffer {
+
+        private final ConcurrentLinkedQueue<Object> keys = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * @return reads now pending, or {@link #READ_BUFFER_SIZE} if the key
+         * was dropped
+         */
+        int offer(Object key) {
+            int size = pending.incrementAndGet();
+            if (size > READ_BUFFER_SIZE) {
+                pending.decrementAndGet();
+                return READ_BUFFER_SIZE;
+            }
+            keys.offer(key);
+            return size;
+        }
+
+        Object poll() {
+            Object key = keys.poll();
+            if (key != null) {
+                pending.decrementAndGet();
+            }
+            return key;
+        }
+
+        void clear() {
+            while (poll() != null) {
+                // discard
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch: four rows of saturating counters (max 15), each with
+     * at least four counters per cached entry. All counters are halved after
+     * every {@code 10 x entries} increments so that old popularity fades.
+     */
+    static final class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+        /** Beyond this the sketch is shared by several entries per counter. */
+        private static final int MAX_ENTRIES = 1 << 16;
+        private static final int[] SEEDS = {0x97cb3127, 0xb26b6e3d, 0x61c88647, 0x7feb352d};
+
+        private final byte[] table;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(long expectedEntries) {
+            int entries = (int) Math.max(16L, Math.min(MAX_ENTRIES, expectedEntries));
+            this.width = Integer.highestOneBit(4 * entries - 1) << 1;
+            this.table = new byte[SEEDS.length * width];
+            this.sampleSize = 10 * entries;
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = indexOf(hash, row);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, table[indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        void clear() {
+            Arrays.fill(table, (byte) 0);
+            additions = 0;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 17;
+            h *= 0x9e3779b9;
+            h ^= h >>> 15;
+            return row * width + (h & (width - 1));
+        }
+    }
 }
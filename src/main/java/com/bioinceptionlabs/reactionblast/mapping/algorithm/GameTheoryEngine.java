@@ -38,8 +38,6 @@ import java.util.logging.Level;
 import static java.util.logging.Level.SEVERE;
 
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.CycleFinder;
-import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IPseudoAtom;
@@ -56,14 +54,15 @@ import org.openscience.smsd.BaseMapping.Algorithm;
 import org.openscience.smsd.ExtAtomContainerManipulator;
 import static org.openscience.smsd.ExtAtomContainerManipulator.removeHydrogensExceptSingleAndPreserveAtomID;
 import static com.bioinceptionlabs.reactionblast.fingerprints.ReactionFingerprinter.Similarity.getTanimotoSimilarity;
-import com.bioinceptionlabs.reactionblast.fingerprints.ReactionFingerprinter.FingerprintGenerator;
 import static com.bioinceptionlabs.reactionblast.fingerprints.ReactionFingerprinter.FingerprintGenerator.getFingerprinterSize;
 import com.bioinceptionlabs.reactionblast.mapping.ThreadSafeCache;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionMappingEngine;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.ScoreTensor.Score;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.BestMatchContainer;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.HydrogenFreeFingerPrintContainer;
 import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
 import com.bioinceptionlabs.reactionblast.mapping.MappingKeyUtil;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.MoleculeMoleculeMapping;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.MolMapping;
@@ -152,6 +151,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
 
     @Override
     public void UpdateMatrix(Holder mh, boolean removeHydrogen) throws InterruptedException {
+        MappingDiagnostics.StageTimer scoring = null;
         try {
             LOGGER.debug("**********Updated Matrix And Calculate Similarity**************");
             ReactionContainer reactionStructureInformation = mh.getReactionContainer();
@@ -162,6 +162,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                 Thread.currentThread().interrupt();
                 throw e;
             }
+            scoring = MappingDiagnostics.start(Stage.SCORING, mh.getReactionID());
             Map<ReactionContainer.Key, MCSSolution> indexedSolutions = indexSolutions(mcsSolutions);
             for (int substrateIndex = 0; substrateIndex < reactionStructureInformation.getEductCount(); substrateIndex++) {
                 for (int productIndex = 0; productIndex < reactionStructureInformation.getProductCount(); productIndex++) {
@@ -207,6 +208,10 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
             throw e;
         } catch (Exception e) {
             LOGGER.error("Error in matching molecules, check Graph Matcher module! ", e.getMessage());
+        } finally {
+            if (scoring != null) {
+                scoring.close();
+            }
         }
         try {
             resetFLAGS(mh);
@@ -217,7 +222,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
 
     @Override
     public void UpdateMatrix(Collection<MCSSolution> mcsSolutions, Holder mh, boolean removeHydrogen) throws Exception {
-        try {
+        try (MappingDiagnostics.StageTimer scoring = MappingDiagnostics.start(Stage.SCORING, mh.getReactionID())) {
             LOGGER.debug("**********Updated Matrix And Calculate Similarity**************");
             ReactionContainer reactionStructureInformation = mh.getReactionContainer();
             Map<ReactionContainer.Key, MCSSolution> indexedSolutions = indexSolutions(mcsSolutions);
@@ -386,11 +391,8 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
             LOGGER.error(Level.SEVERE, "Error in config. mol ", ex.getMessage());
         }
         try {
-            CycleFinder cycles = Cycles.vertexShort();
-            Cycles rings = cycles.find(educt);
-            int numberOfCyclesEduct = rings.numberOfCycles();
-            rings = cycles.find(product);
-            int numberOfCyclesProduct = rings.numberOfCycles();
+            int numberOfCyclesEduct = MappingKeyUtil.ringCount(educt);
+            int numberOfCyclesProduct = MappingKeyUtil.ringCount(product);
             String key = generateUniqueKey(
                     educt, product,
                     educt.getID(), product.getID(),
@@ -543,11 +545,12 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
     MCSSolution copyOldSolutionToNew(int queryPosition, int targetPosition,
             IAtomContainer compound1, IAtomContainer compound2, MCSSolution oldSolution) {
         AtomAtomMapping atomAtomMapping = oldSolution.getAtomAtomMapping();
-        Map<Integer, Integer> mappingsByIndex = atomAtomMapping.getMappingsByIndex();
+        int[] queryIndices = atomAtomMapping.getQueryIndices();
+        int[] targetIndices = atomAtomMapping.getTargetIndices();
         AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(compound1, compound2);
-        mappingsByIndex.entrySet().forEach((m) -> {
-            atomAtomMappingNew.put(compound1.getAtom(m.getKey()), compound2.getAtom(m.getValue()));
-        });
+        for (int i = 0; i < queryIndices.length; i++) {
+            atomAtomMappingNew.put(queryIndices[i], targetIndices[i]);
+        }
         MCSSolution mcsSolution = new MCSSolution(queryPosition, targetPosition, compound1, compound2, atomAtomMappingNew);
         mcsSolution.setEnergy(oldSolution.getEnergy());
         mcsSolution.setFragmentSize(oldSolution.getFragmentSize());
@@ -564,8 +567,9 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
         mcs.setEnergy(isomorphism.getEnergyScore(0));
         mcs.setFragmentSize(isomorphism.getFragmentSize(0));
         mcs.setStereoScore(isomorphism.getStereoScore(0));
-        MCSSolution cached = mappingcache.putIfAbsent(key, mcs);
-        if (cached == mcs) {
+        MCSSolution entry = mcs.compact();
+        MCSSolution cached = mappingcache.putIfAbsent(key, entry);
+        if (cached == entry) {
             return mcs;
         }
         return copyOldSolutionToNew(queryPosition, targetPosition, educt, product, cached);
@@ -672,16 +676,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         if (rc.getProduct(j).getAtomCount() > 0) allMapped = false;
                     }
                     if (allMapped) { break; }
-                    boolean hasRemainingPairs = false;
-                    for (int i = 0; i < mh.getGraphSimilarityMatrix().getRowDimension(); i++) {
-                        for (int j = 0; j < mh.getGraphSimilarityMatrix().getColumnDimension(); j++) {
-                            if (mh.getGraphSimilarityMatrix().getValue(i, j) > 0) {
-                                hasRemainingPairs = true;
-                                break;
-                            }
-                        }
-                        if (hasRemainingPairs) break;
-                    }
+                    boolean hasRemainingPairs = mh.getScores().anyAbove(Score.GRAPH_SIMILARITY, 0);
                     if (!hasRemainingPairs) { break; }
                     UpdateMatrix(mh, removeHydrogen);
                     iteration++;
@@ -830,16 +825,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         if (rc.getProduct(j).getAtomCount() > 0) allMapped = false;
                     }
                     if (allMapped) { break; }
-                    boolean hasRemainingPairs = false;
-                    for (int i = 0; i < mh.getGraphSimilarityMatrix().getRowDimension(); i++) {
-                        for (int j = 0; j < mh.getGraphSimilarityMatrix().getColumnDimension(); j++) {
-                            if (mh.getGraphSimilarityMatrix().getValue(i, j) > 0) {
-                                hasRemainingPairs = true;
-                                break;
-                            }
-                        }
-                        if (hasRemainingPairs) break;
-                    }
+                    boolean hasRemainingPairs = mh.getScores().anyAbove(Score.GRAPH_SIMILARITY, 0);
                     if (!hasRemainingPairs) { break; }
                     UpdateMatrix(mh, removeHydrogen);
                     iteration++;
@@ -978,16 +964,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         if (rc.getProduct(j).getAtomCount() > 0) allMapped = false;
                     }
                     if (allMapped) { break; }
-                    boolean hasRemainingPairs = false;
-                    for (int i = 0; i < mh.getGraphSimilarityMatrix().getRowDimension(); i++) {
-                        for (int j = 0; j < mh.getGraphSimilarityMatrix().getColumnDimension(); j++) {
-                            if (mh.getGraphSimilarityMatrix().getValue(i, j) > 0) {
-                                hasRemainingPairs = true;
-                                break;
-                            }
-                        }
-                        if (hasRemainingPairs) break;
-                    }
+                    boolean hasRemainingPairs = mh.getScores().anyAbove(Score.GRAPH_SIMILARITY, 0);
                     if (!hasRemainingPairs) { break; }
                     UpdateMatrix(mh, removeHydrogen);
                     iteration++;
@@ -1125,16 +1102,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         if (rc.getProduct(j).getAtomCount() > 0) allMapped = false;
                     }
                     if (allMapped) { break; }
-                    boolean hasRemainingPairs = false;
-                    for (int i = 0; i < mh.getGraphSimilarityMatrix().getRowDimension(); i++) {
-                        for (int j = 0; j < mh.getGraphSimilarityMatrix().getColumnDimension(); j++) {
-                            if (mh.getGraphSimilarityMatrix().getValue(i, j) > 0) {
-                                hasRemainingPairs = true;
-                                break;
-                            }
-                        }
-                        if (hasRemainingPairs) break;
-                    }
+                    boolean hasRemainingPairs = mh.getScores().anyAbove(Score.GRAPH_SIMILARITY, 0);
                     if (!hasRemainingPairs) { break; }
                     UpdateMatrix(mh, removeHydrogen);
                     iteration++;
@@ -1202,7 +1170,6 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
         private final IReaction reaction;
         private final Map<Integer, BitSet> substrateductFPMap;
         private final Map<Integer, BitSet> productFPMap;
-        private final FingerprintGenerator fpr;
         private final HydrogenFreeFingerPrintContainer hydFreeFPContainer;
         private final boolean removeHydrogen;
         private final String reactionID;
@@ -1217,7 +1184,6 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
             this.reactionID = reaction.getID();
             this.substrateductFPMap = new TreeMap<>();
             this.productFPMap = new TreeMap<>();
-            this.fpr = new FingerprintGenerator();
             this.eductCounter = new LinkedList<>();
             this.productCounter = new LinkedList<>();
             this.structureMapObj = new ReactionContainer();
@@ -1276,7 +1242,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         FP = hydFreeFPContainer.getFingerPrint(eductID);
                     } else if (mol.getAtomCount() > 0) {
                         IAtomContainer tempMol = removeHydrogensExceptSingleAndPreserveAtomID(mol);
-                        FP = fpr.getFingerprint(tempMol);
+                        FP = MappingKeyUtil.fingerprint(tempMol);
                     } else {
                         FP = new BitSet(getFingerprinterSize());
                     }
@@ -1299,7 +1265,7 @@ public abstract class GameTheoryEngine extends Debugger implements IGameTheory,
                         fingerPrint = hydFreeFPContainer.getFingerPrint(productID);
                     } else if (mol.getAtomCount() > 0) {
                         IAtomContainer tempMol = removeHydrogensExceptSingleAndPreserveAtomID(mol);
-                        fingerPrint = fpr.getFingerprint(tempMol);
+                        fingerPrint = MappingKeyUtil.fingerprint(tempMol);
                     } else {
                         fingerPrint = new BitSet(getFingerprinterSize());
                     }
@@ -20,7 +20,6 @@ package com.bioinceptionlabs.reactionblast.mapping.algorithm;
 
 import java.io.IOException;
 import java.io.Serializable;
-import static java.lang.System.arraycopy;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
@@ -32,7 +31,8 @@ import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer.MolMapping;
 import com.bioinceptionlabs.reactionblast.mapping.Reactor.Debugger;
 import com.bioinceptionlabs.reactionblast.mapping.BestMatch;
 import com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm;
-import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.ScoreTensor.Score;
 
 import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
@@ -50,13 +50,14 @@ public class Holder extends Debugger implements Cloneable, Serializable {
      Final methods
      */
     private final List<MolMapping> mappingMolPair;
-    private final EBIMatrix stereoMatrix;
-    private final EBIMatrix cliqueMatrix;
-    private final EBIMatrix graphSimilarityMatrix;
-    private final EBIMatrix fragmentMatrix;
-    private final EBIMatrix energyMatrix;
-    private final EBIMatrix carbonOverlapMatrix;
-    private final EBIMatrix fpSimMatrixWithoutHydrogen;
+    private final ScoreTensor scores;
+    private final MatrixView stereoMatrix;
+    private final MatrixView cliqueMatrix;
+    private final MatrixView graphSimilarityMatrix;
+    private final MatrixView fragmentMatrix;
+    private final MatrixView energyMatrix;
+    private final MatrixView carbonOverlapMatrix;
+    private final MatrixView fpSimMatrixWithoutHydrogen;
     private final int row;
     private final int coloumn;
 
@@ -109,65 +110,70 @@ public class Holder extends Debugger implements Cloneable, Serializable {
      * @param column
      */
     public Holder(int row, int column) {
-        this.row = row;
-        this.coloumn = column;
-        this.graphSimilarityMatrix = new EBIMatrix(row, column);
-        this.stereoMatrix = new EBIMatrix(row, column);
-        this.cliqueMatrix = new EBIMatrix(row, column);
-        this.fragmentMatrix = new EBIMatrix(row, column);
-        this.carbonOverlapMatrix = new EBIMatrix(row, column);
-        this.fpSimMatrixWithoutHydrogen = new EBIMatrix(row, column);
-        this.energyMatrix = new EBIMatrix(row, column);
+        this(new ScoreTensor(row, column));
+    }
+
+    /**
+     * All score matrices are planes of one tensor, starting at zero
+     *
+     * @param scores
+     */
+    private Holder(ScoreTensor scores) {
+        this.row = scores.getRowDimension();
+        this.coloumn = scores.getColumnDimension();
+        this.scores = scores;
+        this.graphSimilarityMatrix = scores.matrix(Score.GRAPH_SIMILARITY);
+        this.stereoMatrix = scores.matrix(Score.STEREO);
+        this.cliqueMatrix = scores.matrix(Score.CLIQUE);
+        this.fragmentMatrix = scores.matrix(Score.FRAGMENT);
+        this.carbonOverlapMatrix = scores.matrix(Score.CARBON_OVERLAP);
+        this.fpSimMatrixWithoutHydrogen = scores.matrix(Score.FP_SIMILARITY);
+        this.energyMatrix = scores.matrix(Score.ENERGY);
         this.mappingMolPair = new ArrayList<>();
-        LOGGER.debug("initialize the Matrix");
-        initialize();
+    }
+
+    /**
+     * @return the score tensor behind the matrices of this holder
+     */
+    public ScoreTensor getScores() {
+        return scores;
     }
 
     /**
      * @return the stereoMatrix
      */
-    public EBIMatrix getStereoMatrix() {
+    public MatrixView getStereoMatrix() {
         return stereoMatrix;
     }
 
     /**
      * @return the cliqueMatrix
      */
-    public EBIMatrix getCliqueMatrix() {
+    public MatrixView getCliqueMatrix() {
         return cliqueMatrix;
     }
 
     /**
      * @return the graphSimilarityMatrix
      */
-    public EBIMatrix getGraphSimilarityMatrix() {
+    public MatrixView getGraphSimilarityMatrix() {
         return graphSimilarityMatrix;
     }
 
     /**
      * @return the fragmentMatrix
      */
-    public EBIMatrix getFragmentMatrix() {
+    public MatrixView getFragmentMatrix() {
         return fragmentMatrix;
     }
 
     /**
      * @return the energyMatrix
      */
-    public EBIMatrix getEnergyMatrix() {
+    public MatrixView getEnergyMatrix() {
         return energyMatrix;
     }
 
-    private void initialize() {
-        graphSimilarityMatrix.initMatrix(0.0);
-        stereoMatrix.initMatrix(0.0);
-        cliqueMatrix.initMatrix(0.0);
-        fragmentMatrix.initMatrix(0.0);
-        fpSimMatrixWithoutHydrogen.initMatrix(0.0);
-        energyMatrix.initMatrix(0.0);
-        carbonOverlapMatrix.initMatrix(0.0);
-    }
-
     private void setFingerprintAndMolMapping() {
         // Pre-cache trimmed names and fingerprints to avoid redundant lookups
         int eSize = eductCounter.size();
@@ -212,7 +218,7 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     /**
      * @return the fpSimMatrixWithoutHydrogen
      */
-    public EBIMatrix getFPSimilarityMatrix() {
+    public MatrixView getFPSimilarityMatrix() {
         return fpSimMatrixWithoutHydrogen;
     }
 
@@ -231,65 +237,21 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     }
 
     /**
-     * Cloned EBIMatrix Objects
+     * Cloned score matrices
      *
      * @return
      * @throws CloneNotSupportedException
      */
     @Override
     public Object clone() throws CloneNotSupportedException {
-        Holder mhClone = new Holder(this.row, this.coloumn);
+        Holder mhClone = new Holder(this.scores.copy());
         mhClone.setTheory(this.getTheory());
         mhClone.reactionID = this.reactionID;
-
-        double[][] arrayCopy = this.getGraphSimilarityMatrix().getArrayCopy();
-        EBIMatrix matrix = mhClone.getGraphSimilarityMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getFragmentMatrix().getArrayCopy();
-        matrix = mhClone.getFragmentMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getStereoMatrix().getArrayCopy();
-        matrix = mhClone.getStereoMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getCliqueMatrix().getArrayCopy();
-        matrix = mhClone.getCliqueMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getEnergyMatrix().getArrayCopy();
-        matrix = mhClone.getEnergyMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getCarbonOverlapMatrix().getArrayCopy();
-        matrix = mhClone.getCarbonOverlapMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getFPSimilarityMatrix().getArrayCopy();
-        matrix = mhClone.getFPSimilarityMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
         mhClone.structureInformation = this.getReactionContainer();
         mhClone.bestMatchContainer = this.getBestMatchContainer();
         return mhClone;
     }
 
-    /**
-     * Make a deep duplicate of a matrix
-     *
-     * @param sourceData
-     * @param sinkMatrix
-     * @param rows
-     * @param coloumns
-     */
-    private void setData(double[][] sourceData, EBIMatrix sinkMatrix, int rows, int coloumns) {
-        double[][] newDataMatrix = sinkMatrix.getArray();
-        for (int i = 0; i < rows; i++) {
-            arraycopy(sourceData[i], 0, newDataMatrix[i], 0, coloumns);
-        }
-    }
-
     /**
      * @return the bestMatchContainer
      */
@@ -314,7 +276,7 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     /**
      * @return the carbonOverlapMatrix
      */
-    public EBIMatrix getCarbonOverlapMatrix() {
+    public MatrixView getCarbonOverlapMatrix() {
         return carbonOverlapMatrix;
     }
 
@@ -50,8 +50,11 @@ import org.openscience.smsd.AtomBondMatcher.AtomMatcher;
 import org.openscience.smsd.AtomBondMatcher.BondMatcher;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionMappingEngine;
 import com.bioinceptionlabs.reactionblast.mapping.ReactionContainer;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
 import com.bioinceptionlabs.reactionblast.mapping.SmsdReactionMappingEngine;
-import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.ScoreTensor.Score;
 
 /**
  * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
@@ -92,7 +95,7 @@ public final class MappingChecks {
                     double cliqueValue = orignal.getCliqueMatrix().getValue(i, j);
                     double simValue = cliqueValue / totalAtomCount;
                     if (cliqueValue >= 1) {
-                        localHolder.getGraphSimilarityMatrix().set(i, j, simValue);
+                        localHolder.getGraphSimilarityMatrix().setValue(i, j, simValue);
                     }
                 }
             }
@@ -104,158 +107,74 @@ public final class MappingChecks {
         boolean[][] flagMatrix;
 
         protected boolean isMajorSubgraphColumn(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
-            double queryColScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
-            if (queryColScore > 0) {
-                for (int col = 0; col < colSize; col++) {
-                    if (flagMatrix[IndexI][col] && col != IndexJ) {
-                        double colCSize = mh.getCliqueMatrix().getValue(IndexI, col);
-                        if (queryColScore < colCSize) {
-                            return false;
-                        }
-                    }
-                }
-            }
-            return true;
+            return isMajorSubgraphColumn(mh.getScores(), Score.CLIQUE, IndexI, IndexJ);
         }
 
         protected boolean isMajorSubgraphRow(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
-            double queryRowScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
-            if (queryRowScore > 0) {
-                for (int row = 0; row < rowSize; row++) {
-                    if (flagMatrix[row][IndexJ] && row != IndexI) {
-                        int eSize = mh.getReactionContainer().getEduct(row).getAtomCount();
-                        double rowRSize = mh.getCliqueMatrix().getValue(row, IndexJ);
-                        if (queryRowScore < rowRSize) {
-                            return false;
-                        }
-                    }
-                }
-            }
-            return true;
+            return isMajorSubgraphRow(mh.getScores(), Score.CLIQUE, IndexI, IndexJ);
         }
 
         protected boolean isMinEnergyColumn(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
-            double refEnergy = mh.getEnergyMatrix().getValue(IndexI, IndexJ);
-            if (mh.getCliqueMatrix().getValue(IndexI, IndexJ) > 0) {
-                for (int col = 0; col < colSize; col++) {
-                    if (flagMatrix[IndexI][col] && col != IndexJ) {
-                        double colEnergy = mh.getEnergyMatrix().getValue(IndexI, col);
-                        if (refEnergy > 0 && colEnergy > 0 && refEnergy > colEnergy) {
-                            return false;
-                        }
-                    }
-                }
+            ScoreTensor scores = mh.getScores();
+            if (scores.get(Score.CLIQUE, IndexI, IndexJ) > 0) {
+                double refEnergy = scores.get(Score.ENERGY, IndexI, IndexJ);
+                return !(refEnergy > 0
+                        && refEnergy > scores.minPositiveInRow(Score.ENERGY, IndexI, flagMatrix[IndexI], IndexJ));
             }
             return true;
         }
 
         protected boolean isMinEnergyRow(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
-            double refEnergy = mh.getEnergyMatrix().getValue(IndexI, IndexJ);
-            if (mh.getCliqueMatrix().getValue(IndexI, IndexJ) > 0) {
-                for (int row = 0; row < rowSize; row++) {
-                    if (flagMatrix[row][IndexJ] && row != IndexI) {
-                        double rowEnergy = mh.getEnergyMatrix().getValue(row, IndexJ);
-                        if (rowEnergy > 0 && refEnergy > 0 && refEnergy > rowEnergy) {
-                            return false;
-                        }
-                    }
-                }
+            ScoreTensor scores = mh.getScores();
+            if (scores.get(Score.CLIQUE, IndexI, IndexJ) > 0) {
+                double refEnergy = scores.get(Score.ENERGY, IndexI, IndexJ);
+                return !(refEnergy > 0
+                        && refEnergy > scores.minPositiveInColumn(Score.ENERGY, IndexJ, flagMatrix, IndexI));
             }
             return true;
         }
 
         protected boolean isMinorSubgraphColumn(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
-            boolean flag = true;
-            double queryColScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
-            if (queryColScore > 0.) {
-                for (int col = 0; col < colSize; col++) {
-                    if (flagMatrix[IndexI][col] && col != IndexJ) {
-                        double targetColScore = mh.getCliqueMatrix().getValue(IndexI, col);
-                        if (queryColScore > targetColScore && targetColScore > 0.) {
-                            return true;
-                        }
-                    }
-                }
-            }
-            return flag;
+            return isMinorSubgraphColumn(mh.getScores(), Score.CLIQUE, IndexI, IndexJ);
         }
 
         protected boolean isMinorSubgraphRow(Holder mh, int IndexI, int IndexJ) {
-            boolean flag = true;
-            double queryRowScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
-            if (queryRowScore > 0.) {
-                for (int row = 0; row < rowSize; row++) {
-                    if (flagMatrix[row][IndexJ] && row != IndexI) {
-                        double targetRowScore = mh.getCliqueMatrix().getValue(row, IndexJ);
-                        if (queryRowScore > targetRowScore && targetRowScore > 0.) {
-                            return false;
-                        }
-                    }
-                }
-            }
-            return flag;
+            return isMinorSubgraphRow(mh.getScores(), Score.CLIQUE, IndexI, IndexJ);
         }
 
-        protected boolean isMajorSubgraphColumn(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
-            double queryColumnscore = similarityMatrix.getValue(IndexI, IndexJ);
+        /*
+         * The scans below read one plane of the score tensor over the cells
+         * still flagged in flagMatrix, the reference cell excluded.
+         */
+        protected boolean isMajorSubgraphColumn(ScoreTensor scores, Score score, int IndexI, int IndexJ) {
+            double queryColumnscore = scores.get(score, IndexI, IndexJ);
             if (queryColumnscore > 0) {
-                for (int col = 0; col < colSize; col++) {
-                    if (flagMatrix[IndexI][col] && col != IndexJ) {
-                        double colCSize = similarityMatrix.getValue(IndexI, col);
-                        if (queryColumnscore < colCSize) {
-                            return false;
-                        }
-                    }
-                }
+                return !(queryColumnscore < scores.maxInRow(score, IndexI, flagMatrix[IndexI], IndexJ));
             }
             return true;
         }
 
-        protected boolean isMajorSubgraphRow(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
-            double queryRowScore = similarityMatrix.getValue(IndexI, IndexJ);
+        protected boolean isMajorSubgraphRow(ScoreTensor scores, Score score, int IndexI, int IndexJ) {
+            double queryRowScore = scores.get(score, IndexI, IndexJ);
             if (queryRowScore > 0) {
-                for (int row = 0; row < rowSize; row++) {
-                    if (flagMatrix[row][IndexJ] && row != IndexI) {
-                        double rowRSize = similarityMatrix.getValue(row, IndexJ);
-                        if (queryRowScore < rowRSize) {
-                            return false;
-                        }
-                    }
-                }
+                return !(queryRowScore < scores.maxInColumn(score, IndexJ, flagMatrix, IndexI));
             }
             return true;
         }
 
-        protected boolean isMinorSubgraphColumn(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
-            boolean flag = true;
-            double queryColScore = similarityMatrix.getValue(IndexI, IndexJ);
-            if (queryColScore > 0.) {
-                for (int col = 0; col < colSize; col++) {
-                    if (flagMatrix[IndexI][col] && col != IndexJ) {
-                        double targetColScore = similarityMatrix.getValue(IndexI, col);
-                        if (queryColScore > targetColScore && targetColScore > 0.) {
-                            return true;
-                        }
-                    }
-                }
-            }
-            return flag;
+        protected boolean isMinorSubgraphColumn(ScoreTensor scores, Score score, int IndexI, int IndexJ) {
+            /*
+             * A smaller flagged partner and no partner at all both pass
+             */
+            return true;
         }
 
-        protected boolean isMinorSubgraphRow(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
-            boolean flag = true;
-            double queryRowScore = similarityMatrix.getValue(IndexI, IndexJ);
+        protected boolean isMinorSubgraphRow(ScoreTensor scores, Score score, int IndexI, int IndexJ) {
+            double queryRowScore = scores.get(score, IndexI, IndexJ);
             if (queryRowScore > 0.) {
-                for (int row = 0; row < rowSize; row++) {
-                    if (flagMatrix[row][IndexJ] && row != IndexI) {
-                        double targetRowScore = similarityMatrix.getValue(row, IndexJ);
-                        if (queryRowScore > targetRowScore && targetRowScore > 0.) {
-                            return false;
-                        }
-                    }
-                }
+                return !(queryRowScore > scores.minPositiveInColumn(score, IndexJ, flagMatrix, IndexI));
             }
-            return flag;
+            return true;
         }
     }
 
@@ -265,10 +184,11 @@ public final class MappingChecks {
 
         private static final long serialVersionUID = 0x296558709L;
         private static final ILoggingTool LOGGER = createLoggingTool(ChooseWinner.class);
-        private EBIMatrix stereoMatrix;
-        private EBIMatrix energyMatrix;
-        private EBIMatrix carbonOverlapMatrix;
-        private EBIMatrix similarityMatrix = null;
+        private MatrixView stereoMatrix;
+        private MatrixView energyMatrix;
+        private MatrixView carbonOverlapMatrix;
+        private MatrixView similarityMatrix = null;
+        private ScoreTensor scoreTensor = null;
         private List<Cell> crossMappingTracer = null;
         private Map<Integer, IAtomContainer> educts = null;
         private Map<Integer, IAtomContainer> products = null;
@@ -279,18 +199,27 @@ public final class MappingChecks {
             this.flagMatrix = new boolean[rowSize][colSize];
         }
 
-        public EBIMatrix getStereoMatrix() { return stereoMatrix; }
-        public void setStereoMatrix(EBIMatrix stereoMatrix) { this.stereoMatrix = stereoMatrix; }
-        public EBIMatrix getEnergyMatrix() { return energyMatrix; }
-        public EBIMatrix getCarbonOverlapMatrix() { return carbonOverlapMatrix; }
-        public void setEnergyMatrix(EBIMatrix energyMatrix) { this.energyMatrix = energyMatrix; }
-        public void setCarbonOverlapMatrix(EBIMatrix carbonOverlapMatrix) { this.carbonOverlapMatrix = carbonOverlapMatrix; }
+        public MatrixView getStereoMatrix() { return stereoMatrix; }
+        public void setStereoMatrix(MatrixView stereoMatrix) { this.stereoMatrix = stereoMatrix; }
+        public MatrixView getEnergyMatrix() { return energyMatrix; }
+        public MatrixView getCarbonOverlapMatrix() { return carbonOverlapMatrix; }
+        public void setEnergyMatrix(MatrixView energyMatrix) { this.energyMatrix = energyMatrix; }
+        public void setCarbonOverlapMatrix(MatrixView carbonOverlapMatrix) { this.carbonOverlapMatrix = carbonOverlapMatrix; }
 
         public void searchWinners(Map<Integer, IAtomContainer> eductMap,
                 Map<Integer, IAtomContainer> productMap, Holder mHolder) {
+            try (MappingDiagnostics.StageTimer assignment
+                    = MappingDiagnostics.start(Stage.ASSIGNMENT, mHolder.getReactionID())) {
+                selectWinners(eductMap, productMap, mHolder);
+            }
+        }
+
+        private void selectWinners(Map<Integer, IAtomContainer> eductMap,
+                Map<Integer, IAtomContainer> productMap, Holder mHolder) {
             initFlagMatrix();
             this.educts = eductMap;
             this.products = productMap;
+            this.scoreTensor = mHolder.getScores();
             this.similarityMatrix = mHolder.getGraphSimilarityMatrix();
             this.setStereoMatrix(mHolder.getStereoMatrix());
             this.setEnergyMatrix(mHolder.getEnergyMatrix());
@@ -306,8 +235,8 @@ public final class MappingChecks {
                     for (int j = 0; j < colSize; j++) {
                         double similarity = similarityMatrix.getValue(i, j);
                         if (similarity > MIN_VALUE) {
-                            maxValueI = isMajorSubgraphRow(similarityMatrix, i, j);
-                            maxValueJ = isMajorSubgraphColumn(similarityMatrix, i, j);
+                            maxValueI = isMajorSubgraphRow(scoreTensor, Score.GRAPH_SIMILARITY, i, j);
+                            maxValueJ = isMajorSubgraphColumn(scoreTensor, Score.GRAPH_SIMILARITY, i, j);
                             if (maxValueI && maxValueJ) {
                                 if (similarity > maximumSimilarity) {
                                     maximumSimilarity = similarity;
@@ -357,14 +286,7 @@ public final class MappingChecks {
         }
 
         private boolean checkStatusFlag() {
-            for (int i = 0; i < rowSize; i++) {
-                for (int j = 0; j < colSize; j++) {
-                    if (similarityMatrix.getValue(i, j) > MIN_VALUE) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            return scoreTensor.anyAbove(Score.GRAPH_SIMILARITY, MIN_VALUE);
         }
 
         private void setWinOverFlags() {
@@ -853,8 +775,8 @@ public final class MappingChecks {
                     matrixHolderWithStereoCheck.getCliqueMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getStereoMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getCarbonOverlapMatrix().setValue(i, i, MIN_VALUE);
-                    matrixHolderWithStereoCheck.getFragmentMatrix().set(i, i, MAX_VALUE);
-                    matrixHolderWithStereoCheck.getEnergyMatrix().set(i, i, MAX_VALUE);
+                    matrixHolderWithStereoCheck.getFragmentMatrix().setValue(i, i, MAX_VALUE);
+                    matrixHolderWithStereoCheck.getEnergyMatrix().setValue(i, i, MAX_VALUE);
                 }
             } else if (ColT) {
                 stSimilarity = true;
@@ -863,8 +785,8 @@ public final class MappingChecks {
                     matrixHolderWithStereoCheck.getCliqueMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getStereoMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getCarbonOverlapMatrix().setValue(i, i, MIN_VALUE);
-                    matrixHolderWithStereoCheck.getFragmentMatrix().set(i, i, MAX_VALUE);
-                    matrixHolderWithStereoCheck.getEnergyMatrix().set(i, i, MAX_VALUE);
+                    matrixHolderWithStereoCheck.getFragmentMatrix().setValue(i, i, MAX_VALUE);
+                    matrixHolderWithStereoCheck.getEnergyMatrix().setValue(i, i, MAX_VALUE);
                 }
             }
             return stSimilarity;
@@ -887,8 +809,8 @@ public final class MappingChecks {
                     matrixHolderWithSimilarityCheck.getCliqueMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithSimilarityCheck.getStereoMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getCarbonOverlapMatrix().setValue(i, i, MIN_VALUE);
-                    matrixHolderWithSimilarityCheck.getFragmentMatrix().set(i, i, MAX_VALUE);
-                    matrixHolderWithSimilarityCheck.getEnergyMatrix().set(i, i, MAX_VALUE);
+                    matrixHolderWithSimilarityCheck.getFragmentMatrix().setValue(i, i, MAX_VALUE);
+                    matrixHolderWithSimilarityCheck.getEnergyMatrix().setValue(i, i, MAX_VALUE);
                 }
             } else if (ColT) {
                 fpFlag = true;
@@ -897,8 +819,8 @@ public final class MappingChecks {
                     matrixHolderWithSimilarityCheck.getCliqueMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithSimilarityCheck.getStereoMatrix().setValue(i, i, MIN_VALUE);
                     matrixHolderWithStereoCheck.getCarbonOverlapMatrix().setValue(i, i, MIN_VALUE);
-                    matrixHolderWithSimilarityCheck.getFragmentMatrix().set(i, i, MAX_VALUE);
-                    matrixHolderWithSimilarityCheck.getEnergyMatrix().set(i, i, MAX_VALUE);
+                    matrixHolderWithSimilarityCheck.getFragmentMatrix().setValue(i, i, MAX_VALUE);
+                    matrixHolderWithSimilarityCheck.getEnergyMatrix().setValue(i, i, MAX_VALUE);
                 }
             }
             return fpFlag;
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.mapping.algorithm;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
+
+/**
+ * The educt x product score matrices of a {@link Holder} in one flat
+ * {@code double[]}.
+ *
+ * Each {@link Score} is a contiguous row-major plane of the array, so a
+ * row scan walks consecutive memory and copying all scores is a single
+ * array copy. {@link #matrix(Score)} gives the {@link MatrixView} of one
+ * plane that the selection code reads and writes.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+public final class ScoreTensor implements Serializable {
+
+    private static final long serialVersionUID = 7718253062144083527L;
+
+    /**
+     * Score dimensions, one plane each.
+     */
+    public enum Score {
+        CLIQUE, GRAPH_SIMILARITY, STEREO, FRAGMENT, ENERGY, CARBON_OVERLAP, FP_SIMILARITY
+    }
+
+    private static final Score[] SCORES = Score.values();
+
+    private final int rows;
+    private final int columns;
+    private final double[] values;
+    private final Plane[] planes;
+
+    /**
+     * @param rows educt count
+     * @param columns product count
+     */
+    public ScoreTensor(int rows, int columns) {
+        this(rows, columns, new double[SCORES.length * rows * columns]);
+    }
+
+    private ScoreTensor(int rows, int columns, double[] values) {
+        this.rows = rows;
+        this.columns = columns;
+        this.values = values;
+        this.planes = new Plane[SCORES.length];
+        for (Score score : SCORES) {
+            planes[score.ordinal()] = new Plane(this, score);
+        }
+    }
+
+    /**
+     * @return an independent copy of all scores
+     */
+    public ScoreTensor copy() {
+        return new ScoreTensor(rows, columns, values.clone());
+    }
+
+    public int getRowDimension() {
+        return rows;
+    }
+
+    public int getColumnDimension() {
+        return columns;
+    }
+
+    /**
+     * @param score dimension
+     * @return the matrix view of that dimension
+     */
+    public MatrixView matrix(Score score) {
+        return planes[score.ordinal()];
+    }
+
+    private int offset(Score score, int i, int j) {
+        return (score.ordinal() * rows + i) * columns + j;
+    }
+
+    private int planeOffset(Score score) {
+        return score.ordinal() * rows * columns;
+    }
+
+    private boolean inRange(int i, int j) {
+        return i >= 0 && i < rows && j >= 0 && j < columns;
+    }
+
+    /**
+     * @return the score of the pair, or -1 outside the matrix as
+     * {@link EBIMatrix#getValue(int, int)}
+     */
+    public double get(Score score, int i, int j) {
+        return inRange(i, j) ? values[offset(score, i, j)] : -1.0d;
+    }
+
+    /**
+     * Sets the score of a pair; ignored outside the matrix.
+     */
+    public void set(Score score, int i, int j, double value) {
+        if (inRange(i, j)) {
+            values[offset(score, i, j)] = value;
+        }
+    }
+
+    /**
+     * Largest score in row i over the columns flagged in mask, except skip.
+     * Flags beyond the matrix are ignored.
+     *
+     * @return the maximum, or negative infinity if no column qualifies; NaN
+     * scores are ignored
+     */
+    public double maxInRow(Score score, int i, boolean[] mask, int skip) {
+        double max = Double.NEGATIVE_INFINITY;
+        if (i < 0 || i >= rows) {
+            return max;
+        }
+        int base = planeOffset(score) + i * columns;
+        int n = Math.min(mask.length, columns);
+        for (int j = 0; j < n; j++) {
+            if (mask[j] && j != skip && values[base + j] > max) {
+                max = values[base + j];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Largest score in column j over the rows flagged in mask, except skip.
+     * Flags beyond the matrix are ignored.
+     *
+     * @return the maximum, or negative infinity if no row qualifies; NaN
+     * scores are ignored
+     */
+    public double maxInColumn(Score score, int j, boolean[][] mask, int skip) {
+        double max = Double.NEGATIVE_INFINITY;
+        if (j < 0 || j >= columns) {
+            return max;
+        }
+        int index = planeOffset(score) + j;
+        int n = Math.min(mask.length, rows);
+        for (int i = 0; i < n; i++, index += columns) {
+            if (mask[i][j] && i != skip && values[index] > max) {
+                max = values[index];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Smallest positive score in row i over the columns flagged in mask,
+     * except skip. Flags beyond the matrix are ignored.
+     *
+     * @return the minimum, or positive infinity if no column qualifies
+     */
+    public double minPositiveInRow(Score score, int i, boolean[] mask, int skip) {
+        double min = Double.POSITIVE_INFINITY;
+        if (i < 0 || i >= rows) {
+            return min;
+        }
+        int base = planeOffset(score) + i * columns;
+        int n = Math.min(mask.length, columns);
+        for (int j = 0; j < n; j++) {
+            double value = values[base + j];
+            if (mask[j] && j != skip && value > 0. && value < min) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Smallest positive score in column j over the rows flagged in mask,
+     * except skip. Flags beyond the matrix are ignored.
+     *
+     * @return the minimum, or positive infinity if no row qualifies
+     */
+    public double minPositiveInColumn(Score score, int j, boolean[][] mask, int skip) {
+        double min = Double.POSITIVE_INFINITY;
+        if (j < 0 || j >= columns) {
+            return min;
+        }
+        int index = planeOffset(score) + j;
+        int n = Math.min(mask.length, rows);
+        for (int i = 0; i < n; i++, index += columns) {
+            double value = values[index];
+            if (mask[i][j] && i != skip && value > 0. && value < min) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return true if any pair scores above the threshold
+     */
+    public boolean anyAbove(Score score, double threshold) {
+        int from = planeOffset(score);
+        int to = from + rows * columns;
+        for (int k = from; k < to; k++) {
+            if (values[k] > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@link MatrixView} of one plane: element access and dimensions read and
+     * write the tensor.
+     */
+    static final class Plane implements MatrixView, Serializable {
+
+        private static final long serialVersionUID = 2230470965193150851L;
+        private static final ILoggingTool LOGGER = createLoggingTool(Plane.class);
+
+        private final ScoreTensor tensor;
+        private final Score score;
+
+        private Plane(ScoreTensor tensor, Score score) {
+            this.tensor = tensor;
+            this.score = score;
+        }
+
+        @Override
+        public double getValue(int i, int j) {
+            if (!tensor.inRange(i, j)) {
+                LOGGER.debug("Error: Array out of bounds [" + i + "," + j + "] for ["
+                        + tensor.rows + "," + tensor.columns + "]");
+                return -1.0d;
+            }
+            return tensor.values[tensor.offset(score, i, j)];
+        }
+
+        @Override
+        public boolean setValue(int row, int col, double value) {
+            if (!tensor.inRange(row, col)) {
+                LOGGER.error(SEVERE, null, new CDKException("Array out of Bound"));
+                return false;
+            }
+            tensor.values[tensor.offset(score, row, col)] = value;
+            return true;
+        }
+
+        @Override
+        public int getRowDimension() {
+            return tensor.rows;
+        }
+
+        @Override
+        public int getColumnDimension() {
+            return tensor.columns;
+        }
+
+        private double[][] getArrayCopy() {
+            double[][] copy = new double[tensor.rows][];
+            for (int i = 0; i < tensor.rows; i++) {
+                int from = tensor.offset(score, i, 0);
+                copy[i] = Arrays.copyOfRange(tensor.values, from, from + tensor.columns);
+            }
+            return copy;
+        }
+
+        @Override
+        public EBIMatrix duplicate() {
+            return new EBIMatrix(getArrayCopy(), tensor.rows, tensor.columns);
+        }
+    }
+}
@@ -21,9 +21,12 @@ package com.bioinceptionlabs.reactionblast.mechanism;
 import java.io.Serializable;
 import static java.lang.System.getProperty;
 import static java.util.Collections.unmodifiableList;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
@@ -35,7 +38,6 @@ import static org.openscience.cdk.interfaces.IBond.Stereo.E_OR_Z;
 import static org.openscience.cdk.interfaces.IBond.Stereo.NONE;
 import static org.openscience.cdk.interfaces.IBond.Stereo.UP;
 import static org.openscience.cdk.interfaces.IBond.Stereo.UP_OR_DOWN;
-import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
 import static org.openscience.smsd.ExtAtomContainerManipulator.aromatizeMolecule;
 import com.bioinceptionlabs.reactionblast.tools.MoleculeTools.ValencyCalculator;
 
@@ -43,11 +45,14 @@ import com.bioinceptionlabs.reactionblast.tools.MoleculeTools.ValencyCalculator;
  * This class create the BEMatrix of a set of molecule according to the
  * DU-Theory. (I.Ugi et al., J. Chem. Inf. Comput. Sci. 1994, 34, 3-16)
  *
+ * Row and column n (one past the last atom) hold the lone-pair border. The
+ * matrix is stored sparsely, see {@link BondElectronMatrix}.
+ *
  * @author Syed Asad Rahman<asad.rahman@bioinceptionlabs.com>
  * @author Lorenzo Baldacci {lorenzo@ebi.ac.uk|lbaldacc@csr.unibo.it}
  */
 @SuppressWarnings("deprecation")
-public class BEMatrix extends EBIMatrix implements Serializable {
+public class BEMatrix extends BondElectronMatrix implements Serializable {
 
     private static final long serialVersionUID = -1420740601548197863L;
 
@@ -56,6 +61,9 @@ public class BEMatrix extends EBIMatrix implements Serializable {
     private List<IAtom> atomArray = null;
     private final boolean withoutH;
     private final Map<IAtom, IAtom> mappings;
+    /** Matrix index of each atom ID; the last atom wins on duplicates. */
+    private final Map<String, Integer> indexOfAtomID = new HashMap<>();
+    private Map<String, IAtomContainer> containerOfAtomID = null;
 
     /**
      * Class constructor. Creates an empty BEMatrix. Generates the BEMatrix for
@@ -71,9 +79,9 @@ public class BEMatrix extends EBIMatrix implements Serializable {
             IAtomContainerSet molSet,
             List<IBond> bonds,
             Map<IAtom, IAtom> mappings) {
-        super(0, 0);
+        super(0);
         this.withoutH = skipHydrogen;
-        this.atomArray = new LinkedList<>();
+        this.atomArray = new ArrayList<>();
         this.myMoleculeSet = molSet;
         this.bonds = bonds;
         this.mappings = mappings;
@@ -84,14 +92,15 @@ public class BEMatrix extends EBIMatrix implements Serializable {
      * @throws CDKException
      */
     void setMatrixAtoms() throws CDKException {
-        initMatrix(0.);
+        clear();
         atomArray.clear();
+        Set<IAtom> mappedProductAtoms = new HashSet<>(mappings.values());
         for (IAtomContainer container : myMoleculeSet.atomContainers()) {
             for (IAtom atom : container.atoms()) {
                 if (withoutH && atom.getSymbol().matches("H")) {
                     continue;
                 }
-                if (!mappings.containsKey(atom) && !mappings.containsValue(atom)) {
+                if (!mappings.containsKey(atom) && !mappedProductAtoms.contains(atom)) {
                     continue;
                 }
                 atomArray.add(atom);
@@ -113,26 +122,40 @@ public class BEMatrix extends EBIMatrix implements Serializable {
     }
 
     private void setMatrix() throws CDKException {
-//        reSizeMatrix(atomArray.size(), atomArray.size());
-        reSizeMatrix(atomArray.size() + 1, atomArray.size() + 1);
-        //free valence electrons on the diagonal
-        for (int i = 0; i < atomArray.size(); i++) {
-            setValue(i, i, getFreeValenceElectrons(atomArray.get(i)));
+        int n = atomArray.size();
+        Map<IAtom, Integer> index = new HashMap<>(2 * n);
+        indexOfAtomID.clear();
+        for (int i = 0; i < n; i++) {
+            index.put(atomArray.get(i), i);
+            indexOfAtomID.put(atomArray.get(i).getID(), i);
         }
-        for (int i = 0; i < atomArray.size(); i++) {
-            for (int j = 0; j < atomArray.size(); j++) {
-                if (i != j) {
-                    setValue(i, j, getBondOrder(atomArray.get(i), atomArray.get(j)));
-                    setValue(j, i, getBondOrder(atomArray.get(i), atomArray.get(j)));
+        int[] diagonal = new int[n + 1];
+        Cells cells = new Cells();
+        for (IAtomContainer container : myMoleculeSet.atomContainers()) {
+            //free valence electrons on the diagonal
+            for (IAtom atom : container.atoms()) {
+                Integer i = index.get(atom);
+                if (i != null) {
+                    diagonal[i] = ValencyCalculator.getFreeValenceElectrons(container, atom, withoutH);
+                }
+            }
+            for (IBond bond : container.bonds()) {
+                Integer i = index.get(bond.getBegin());
+                Integer j = index.get(bond.getEnd());
+                if (i != null && j != null && !i.equals(j)) {
+                    int order = (int) convertBondOrder(bond);
+                    cells.add(i, j, order);
+                    cells.add(j, i, order);
                 }
             }
         }
         //Setting lone pairs
-        for (int i = 0; i < atomArray.size(); i++) {
-            setValue(atomArray.size(), i, 100);
-            setValue(i, atomArray.size(), 100);
+        for (int i = 0; i < n; i++) {
+            cells.add(n, i, 100);
+            cells.add(i, n, 100);
         }
-        setValue(atomArray.size(), atomArray.size(), 200);
+        diagonal[n] = 200;
+        load(diagonal, cells);
     }
 
     /**
@@ -170,13 +193,8 @@ public class BEMatrix extends EBIMatrix implements Serializable {
     }
 
     private int getIndexOfAtomID(String atomID) {
-        int ind = -1;
-        for (int i = 0; i < atomArray.size(); i++) {
-            if (atomArray.get(i).getID().equals(atomID)) {
-                ind = i;
-            }
-        }
-        return ind;
+        Integer index = indexOfAtomID.get(atomID);
+        return index == null ? -1 : index;
     }
 
     /**
@@ -192,30 +210,9 @@ public class BEMatrix extends EBIMatrix implements Serializable {
         IAtom appA = atomArray.get(i1);
         atomArray.set(i1, atomArray.get(i2));
         atomArray.set(i2, appA);
-        double appD = 0.0d;
-        //column exchange
-        for (int i = 0; i < getRowDimension(); i++) {
-            appD = getValue(i, i1);
-            setValue(i, i1, getValue(i, i2));
-            setValue(i, i2, appD);
-        }
-        //row exchange
-        for (int i = 0; i < getColumnDimension(); i++) {
-            appD = getValue(i1, i);
-            setValue(i1, i, getValue(i2, i));
-            setValue(i2, i, appD);
-        }
-    }
-
-    private double getFreeValenceElectrons(IAtom a) throws CDKException {
-        double freeValEle = 0;
-        for (int i = 0; i < myMoleculeSet.getAtomContainerCount(); i++) {
-            IAtomContainer mol = myMoleculeSet.getAtomContainer(i);
-            if (mol.contains(a)) {
-                freeValEle = ValencyCalculator.getFreeValenceElectrons(mol, a, withoutH);
-            }
-        }
-        return freeValEle;
+        indexOfAtomID.put(atomArray.get(i1).getID(), i1);
+        indexOfAtomID.put(atomArray.get(i2).getID(), i2);
+        super.pivot(i1, i2);
     }
 
     /**
@@ -311,21 +308,16 @@ public class BEMatrix extends EBIMatrix implements Serializable {
      * @return
      */
     public IAtomContainer getAtomContainer(IAtom at) {
-        IAtomContainer retMol = null;
-        for (int i = 0; i < myMoleculeSet.getAtomContainerCount(); i++) {
-            IAtomContainer mol = myMoleculeSet.getAtomContainer(i);
-            for (int j = 0; j < mol.getAtomCount(); j++) {
-                IAtom ma = mol.getAtom(j);
-                if (ma.getID().equals(at.getID())) {
-                    retMol = mol;
-                    break;
+        if (containerOfAtomID == null) {
+            Map<String, IAtomContainer> containers = new HashMap<>();
+            for (IAtomContainer mol : myMoleculeSet.atomContainers()) {
+                for (IAtom ma : mol.atoms()) {
+                    containers.putIfAbsent(ma.getID(), mol);
                 }
             }
-            if (retMol != null) {
-                break;
-            }
+            containerOfAtomID = containers;
         }
-        return retMol;
+        return containerOfAtomID.get(at.getID());
     }
 
     /**
@@ -449,9 +441,4 @@ public class BEMatrix extends EBIMatrix implements Serializable {
         }
         return result.toString();
     }
-
-    @Override
-    public Object clone() throws CloneNotSupportedException {
-        return super.clone(); //To change body of generated methods, choose Tools | Templates.
-    }
 }
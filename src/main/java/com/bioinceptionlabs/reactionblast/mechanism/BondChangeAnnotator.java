@@ -20,6 +20,7 @@ package com.bioinceptionlabs.reactionblast.mechanism;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -298,7 +299,11 @@ public final class BondChangeAnnotator extends DUModel {
         int sizeT = reactionMatrix.getProductsAtomArray().size();
 
         for (int i = 0; i < reactionMatrix.getRowDimension(); i++) {
-            for (int j = i; j < reactionMatrix.getColumnDimension(); j++) {
+            /*
+             * Only cells with a bond on either side or a change in the
+             * R-matrix can be marked, so the rest of the row is skipped.
+             */
+            for (int j : changeCandidates(i, substrateBEMatrix, productBEMatrix)) {
                 LOGGER.debug("Marking Bond Changes-1");
                 if (i != j && reactionMatrix.getValue(i, j) == 0.) {
                     IBond affectedBondReactants = null;
@@ -669,6 +674,25 @@ public final class BondChangeAnnotator extends DUModel {
         LOGGER.debug("markUnMappedAtoms method END");
     }
 
+    /**
+     * Columns j >= i of row i that are non-zero in the R-matrix or in either
+     * BE-matrix, in ascending order.
+     */
+    private int[] changeCandidates(int i, BEMatrix substrateBEMatrix, BEMatrix productBEMatrix) {
+        int[] columns = RMatrix.unionOfColumns(reactionMatrix.getNonZeroColumns(i),
+                RMatrix.unionOfColumns(substrateBEMatrix.getNonZeroColumns(i),
+                        productBEMatrix.getNonZeroColumns(i)));
+        int from = 0;
+        while (from < columns.length && columns[from] < i) {
+            from++;
+        }
+        int to = from;
+        while (to < columns.length && columns[to] < reactionMatrix.getColumnDimension()) {
+            to++;
+        }
+        return Arrays.copyOfRange(columns, from, to);
+    }
+
     private IBond getBondOfReactantsByRMatrix(IAtom atom1, IAtom atom2) {
         for (int i = 0; i < reactantSet.getAtomContainerCount(); i++) {
             if (reactantSet.getAtomContainer(i).getBond(atom1, atom2) != null) {
@@ -59,6 +59,8 @@ import static org.openscience.cdk.tools.manipulator.ReactionManipulator.getRelev
 import org.openscience.smsd.BondEnergies;
 import static org.openscience.smsd.BondEnergies.getInstance;
 import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter.Feature;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
 import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter;
 import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter.IFeature;
 import com.bioinceptionlabs.reactionblast.fingerprints.IPatternFingerprinter;
@@ -922,6 +924,13 @@ public class BondChangeCalculator extends MechanismHelpers.Utility implements IC
      * @throws Exception
      */
     public void computeBondChanges(boolean generate2D, boolean generate3D) throws CDKException, Exception {
+        try (MappingDiagnostics.StageTimer annotation
+                = MappingDiagnostics.start(Stage.BOND_CHANGES, mappedReaction.getID())) {
+            annotateBondChanges(generate2D, generate3D);
+        }
+    }
+
+    private void annotateBondChanges(boolean generate2D, boolean generate3D) throws CDKException, Exception {
         try {
             reactionCenterDataComputed = false;
 
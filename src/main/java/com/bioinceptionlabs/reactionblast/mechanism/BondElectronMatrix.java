@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2003-2026 Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ */
+package com.bioinceptionlabs.reactionblast.mechanism;
+
+import java.io.Serializable;
+import static java.lang.Math.abs;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.legacy.MatrixView;
+
+/**
+ * Sparse, integer storage behind {@link BEMatrix} and {@link RMatrix}.
+ *
+ * A bond-electron matrix is square and almost empty: the diagonal holds free
+ * valence electrons and the off-diagonal cells the bond orders, so a row has
+ * as many entries as its atom has neighbours. The diagonal is kept in an
+ * {@code int[]} and the off-diagonal cells in compressed sparse rows, so
+ * memory and construction scale with the number of bonds instead of the
+ * square of the atom count. Pivoting swaps two entries of a permutation.
+ *
+ * Element access, dimensions and pivoting behave as in {@link EBIMatrix};
+ * for the dense algebra take a copy with {@link #duplicate()}.
+ *
+ * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
+ */
+abstract class BondElectronMatrix implements MatrixView, Serializable {
+
+    private static final long serialVersionUID = 3309841782145720311L;
+    private static final ILoggingTool LOGGER = createLoggingTool(BondElectronMatrix.class);
+    private static final int[] NONE = new int[0];
+
+    private int size;
+    private int[] diagonal;
+    /*
+     * Off-diagonal cells in compressed sparse rows, over storage indices;
+     * the columns of a row are sorted.
+     */
+    private int[] rowStart;
+    private int[] columns;
+    private int[] values;
+    /** Storage index of each matrix index, and its inverse. */
+    private int[] stored;
+    private int[] position;
+    /**
+     * Off-diagonal cells written after construction that were empty, by
+     * storage row and column.
+     */
+    private Map<Integer, Map<Integer, Integer>> written;
+
+    BondElectronMatrix(int size) {
+        load(new int[size], new Cells());
+    }
+
+    /**
+     * Empties the matrix, keeping its size.
+     */
+    final void clear() {
+        load(new int[size], new Cells());
+    }
+
+    /**
+     * Replaces the content with the given diagonal and off-diagonal cells,
+     * in matrix order.
+     *
+     * @param diagonalValues diagonal, its length is the new size
+     * @param cells off-diagonal cells; a repeated (row, column) pair keeps
+     * only one of its values
+     */
+    final void load(int[] diagonalValues, Cells cells) {
+        int n = diagonalValues.length;
+        int[] start = new int[n + 1];
+        for (int k = 0; k < cells.count; k++) {
+            start[cells.rows[k] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        long[] packed = new long[cells.count];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int k = 0; k < cells.count; k++) {
+            packed[fill[cells.rows[k]]++] = ((long) cells.columns[k] << 32) | (cells.values[k] & 0xFFFFFFFFL);
+        }
+        int[] cols = new int[cells.count];
+        int[] vals = new int[cells.count];
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            int from = start[i];
+            int to = start[i + 1];
+            Arrays.sort(packed, from, to);
+            start[i] = kept;
+            for (int k = from; k < to; k++) {
+                int column = (int) (packed[k] >>> 32);
+                if (kept > start[i] && cols[kept - 1] == column) {
+                    continue;
+                }
+                cols[kept] = column;
+                vals[kept] = (int) packed[k];
+                kept++;
+            }
+        }
+        start[n] = kept;
+        this.size = n;
+        this.diagonal = diagonalValues;
+        this.rowStart = start;
+        this.columns = kept == cols.length ? cols : Arrays.copyOf(cols, kept);
+        this.values = kept == vals.length ? vals : Arrays.copyOf(vals, kept);
+        this.stored = new int[n];
+        this.position = new int[n];
+        for (int i = 0; i < n; i++) {
+            stored[i] = i;
+            position[i] = i;
+        }
+        this.written = null;
+    }
+
+    /**
+     * Integer value of a cell.
+     *
+     * @param i row
+     * @param j column
+     * @return the value, 0 for an empty cell
+     */
+    public int getEntry(int i, int j) {
+        int r = stored[i];
+        int c = stored[j];
+        if (r == c) {
+            return diagonal[r];
+        }
+        int k = Arrays.binarySearch(columns, rowStart[r], rowStart[r + 1], c);
+        if (k >= 0) {
+            return values[k];
+        }
+        if (written != null) {
+            Map<Integer, Integer> row = written.get(r);
+            if (row != null) {
+                return row.getOrDefault(c, 0);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Columns of the non-zero cells of a row, diagonal included.
+     *
+     * @param i row
+     * @return column indices in ascending order
+     */
+    public int[] getNonZeroColumns(int i) {
+        if (i < 0 || i >= size) {
+            return NONE;
+        }
+        int r = stored[i];
+        int[] found = new int[rowStart[r + 1] - rowStart[r] + 1];
+        int count = 0;
+        if (diagonal[r] != 0) {
+            found[count++] = i;
+        }
+        for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+            if (values[k] != 0) {
+                found[count++] = position[columns[k]];
+            }
+        }
+        Map<Integer, Integer> extra = written == null ? null : written.get(r);
+        if (extra != null) {
+            found = Arrays.copyOf(found, count + extra.size());
+            for (Map.Entry<Integer, Integer> cell : extra.entrySet()) {
+                if (cell.getValue() != 0) {
+                    found[count++] = position[cell.getKey()];
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * @return sum of the absolute values of all cells
+     */
+    final int sumOfAbsoluteValues() {
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j : getNonZeroColumns(i)) {
+                sum += abs(getEntry(i, j));
+            }
+        }
+        return sum;
+    }
+
+    private boolean inRange(int i, int j) {
+        return i >= 0 && i < size && j >= 0 && j < size;
+    }
+
+    @Override
+    public double getValue(int i, int j) {
+        if (!inRange(i, j)) {
+            LOGGER.debug("Error: Array out of bounds [" + i + "," + j + "] for [" + size + "," + size + "]");
+            return -1.0d;
+        }
+        return getEntry(i, j);
+    }
+
+    /**
+     * Stores the value truncated to an integer.
+     */
+    @Override
+    public boolean setValue(int row, int col, double value) {
+        if (!inRange(row, col)) {
+            LOGGER.error(SEVERE, null, new CDKException("Array out of Bound"));
+            return false;
+        }
+        int v = (int) value;
+        int r = stored[row];
+        int c = stored[col];
+        if (r == c) {
+            diagonal[r] = v;
+            return true;
+        }
+        int k = Arrays.binarySearch(columns, rowStart[r], rowStart[r + 1], c);
+        if (k >= 0) {
+            values[k] = v;
+        } else {
+            if (written == null) {
+                written = new HashMap<>();
+            }
+            written.computeIfAbsent(r, key -> new HashMap<>()).put(c, v);
+        }
+        return true;
+    }
+
+    @Override
+    public int getRowDimension() {
+        return size;
+    }
+
+    @Override
+    public int getColumnDimension() {
+        return size;
+    }
+
+    /**
+     * Swaps rows and columns i1 and i2.
+     */
+    public void pivot(int i1, int i2) {
+        int s1 = stored[i1];
+        int s2 = stored[i2];
+        stored[i1] = s2;
+        stored[i2] = s1;
+        position[s1] = i2;
+        position[s2] = i1;
+    }
+
+    /**
+     * @return the values as a dense array
+     */
+    public double[][] getArrayCopy() {
+        double[][] dense = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j : getNonZeroColumns(i)) {
+                dense[i][j] = getEntry(i, j);
+            }
+        }
+        return dense;
+    }
+
+    /**
+     * @return a dense {@link EBIMatrix} with the same values
+     */
+    @Override
+    public EBIMatrix duplicate() {
+        return new EBIMatrix(getArrayCopy());
+    }
+
+    /**
+     * Growable list of off-diagonal cells.
+     */
+    static final class Cells {
+
+        private int[] rows = new int[16];
+        private int[] columns = new int[16];
+        private int[] values = new int[16];
+        private int count;
+
+        void add(int row, int column, int value) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+                columns = Arrays.copyOf(columns, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            rows[count] = row;
+            columns[count] = column;
+            values[count] = value;
+            count++;
+        }
+    }
+}
@@ -19,8 +19,8 @@
 package com.bioinceptionlabs.reactionblast.mechanism;
 
 import java.io.Serializable;
-import static java.lang.Math.abs;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -33,7 +33,6 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
-import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
 
 /**
  * This class create the RMatrix of a reaction according to the DU-Theory.
@@ -43,7 +42,7 @@ import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
  * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
  * @author Lorenzo Baldacci {lorenzo@ebi.ac.uk|lbaldacc@csr.unibo.it}
  */
-public final class RMatrix extends EBIMatrix implements Serializable {
+public final class RMatrix extends BondElectronMatrix implements Serializable {
 
     private static final String NEW_LINE = System.lineSeparator();
     private static final long serialVersionUID = 7057060562283378684L;
@@ -66,7 +65,7 @@ public final class RMatrix extends EBIMatrix implements Serializable {
      * @throws CDKException
      */
     public RMatrix(BEMatrix reactantBE, BEMatrix productBE, MechanismHelpers.AtomAtomMappingContainer mapping) throws Exception {
-        super(reactantBE.getRowDimension(), reactantBE.getRowDimension());
+        super(reactantBE.getRowDimension());
         /*
          * Asad Commented this part to check mapping with Hydrogen and partial mapping
          */
@@ -91,8 +90,6 @@ public final class RMatrix extends EBIMatrix implements Serializable {
                     + umapped_atoms_remaining
                     + " atom(s) remain unmapped!.");
         }
-        initMatrix(0.);
-
         this.reactantBEMatrix = reactantBE;
         this.productBEMatrix = productBE;
         this.myMapping = mapping;
@@ -113,26 +110,40 @@ public final class RMatrix extends EBIMatrix implements Serializable {
         }
 
         int[] canonicalOrderedAtomArray = productBEMatrix.orderAtomArray(orderedBEMatrixAtomArray);
-        for (int i = 0; i < getMappedAtomCount(); i++) {
-            String p_id_I = productBEMatrix.getAtom(i).getID();
-            String r_id_I = reactantBEMatrix.getAtom(i).getID();
-            for (int j = 0; j < getMappedAtomCount(); j++) {
-                String p_id_J = productBEMatrix.getAtom(j).getID();
-                String r_id_J = reactantBEMatrix.getAtom(j).getID();
-                /*
-                 Match ids for unbalanced reactions
-                 */
-                if (r_id_I.equals(p_id_I) && r_id_J.equals(p_id_J)) {
-                    double value = productBEMatrix.getValue(i, j) - reactantBEMatrix.getValue(i, j);
-                    boolean aromaticFlag = isAromaticChange(i, j);
-                    if (aromaticFlag && value != 0.0) {
-                        super.setValue(i, j, 0.0);
-                    } else {
-                        super.setValue(i, j, value);
-                    }
+        int mappedAtomCount = getMappedAtomCount();
+        /*
+         Match ids for unbalanced reactions
+         */
+        boolean[] sameAtom = new boolean[mappedAtomCount];
+        for (int i = 0; i < mappedAtomCount; i++) {
+            sameAtom[i] = reactantBEMatrix.getAtom(i).getID().equals(productBEMatrix.getAtom(i).getID());
+        }
+        /*
+         A cell can only change where either side has a bond (or free
+         electrons), so only those cells are visited.
+         */
+        int[] diagonal = new int[getRowDimension()];
+        Cells changes = new Cells();
+        for (int i = 0; i < mappedAtomCount; i++) {
+            if (!sameAtom[i]) {
+                continue;
+            }
+            for (int j : unionOfColumns(reactantBEMatrix.getNonZeroColumns(i), productBEMatrix.getNonZeroColumns(i))) {
+                if (j >= mappedAtomCount || !sameAtom[j]) {
+                    continue;
+                }
+                int value = productBEMatrix.getEntry(i, j) - reactantBEMatrix.getEntry(i, j);
+                if (value == 0) {
+                    continue;
+                }
+                if (i == j) {
+                    diagonal[i] = value;
+                } else if (!isAromaticChange(i, j)) {
+                    changes.add(i, j, value);
                 }
             }
         }
+        load(diagonal, changes);
         /*
          * Extended R-matrix: track formal charge and stereo changes per atom.
          * These are stored separately from the bond-order matrix to preserve
@@ -156,14 +167,38 @@ public final class RMatrix extends EBIMatrix implements Serializable {
             }
         }
 
-        LOGGER.debug("BE-React " + reactantBE.toString());
-        LOGGER.debug("BE-Prod " + productBE.toString());
-        LOGGER.debug("R " + toString());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("BE-React " + reactantBE.toString());
+            LOGGER.debug("BE-Prod " + productBE.toString());
+            LOGGER.debug("R " + toString());
+        }
         if (!chargeChanges.isEmpty()) {
             LOGGER.debug("Charge changes: " + chargeChanges);
         }
     }
 
+    /**
+     * Merges two ascending column lists.
+     */
+    static int[] unionOfColumns(int[] a, int[] b) {
+        int[] union = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (n == 0 || union[n - 1] != next) {
+                union[n++] = next;
+            }
+        }
+        return n == union.length ? union : Arrays.copyOf(union, n);
+    }
+
     private boolean isAromaticChange(int IndexI, int IndexJ) throws CDKException {
 
         IAtom ra1 = getReactantBEMatrix().getAtom(IndexI);
@@ -278,13 +313,7 @@ public final class RMatrix extends EBIMatrix implements Serializable {
      * @return
      */
     public int getAbsChanges() {
-        int acc = 0;
-        for (int i = 0; i < getRowDimension(); i++) {
-            for (int j = 0; j < getColumnDimension(); j++) {
-                acc += abs((int) getValue(i, j));
-            }
-        }
-        return acc;
+        return sumOfAbsoluteValues();
     }
 
     /**
@@ -445,9 +474,4 @@ public final class RMatrix extends EBIMatrix implements Serializable {
     public boolean hasChargeChanges() {
         return !chargeChanges.isEmpty();
     }
-
-    @Override
-    public Object clone() throws CloneNotSupportedException {
-        return super.clone();
-    }
 }
@@ -21,6 +21,7 @@ package com.bioinceptionlabs.reactionblast.mechanism;
 import java.io.Serializable;
 import static java.lang.Integer.MIN_VALUE;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -32,8 +33,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import static java.util.logging.Level.SEVERE;
 import static org.openscience.cdk.CDKConstants.ATOM_ATOM_MAPPING;
@@ -60,6 +60,8 @@ import com.bioinceptionlabs.reactionblast.fingerprints.IPatternFingerprinter;
 import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
 import com.bioinceptionlabs.reactionblast.mapping.CallableAtomMappingTool;
 import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import com.bioinceptionlabs.reactionblast.mapping.MappingExecution;
 import com.bioinceptionlabs.reactionblast.mapping.Reactor;
 import com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm;
 import static com.bioinceptionlabs.reactionblast.mapping.IMappingAlgorithm.USER_DEFINED;
@@ -281,17 +283,27 @@ public class ReactionMechanismTool implements Serializable {
                         onlyCoreMappingByMCS, checkComplex);
                 Map<IMappingAlgorithm, Reactor> solutions = amt.getSolutions();
                 long evaluationStart = currentTimeMillis();
+                /*
+                 * Ranking time excludes the bond-change annotation of the
+                 * candidates, which is reported as its own stage.
+                 */
+                long rankingStart = nanoTime();
                 List<EvaluationCandidate> orderedSolutions = orderSolutionsForEvaluation(solutions);
                 List<EvaluationCandidate> candidates = collectCandidatesForEvaluation(orderedSolutions);
+                long rankingNanos = nanoTime() - rankingStart;
 
                 LOGGER.debug("!!!!Calculating Best Mapping Model!!!!");
-                for (MappingSolution mappingSolution : computeMappingSolutions(candidates,
-                        generate2D, generate3D)) {
+                List<MappingSolution> evaluated = computeMappingSolutions(candidates,
+                        generate2D, generate3D);
+                rankingStart = nanoTime();
+                for (MappingSolution mappingSolution : evaluated) {
                     LOGGER.debug("===considerMappingSolution===");
                     boolean selected = considerMappingSolution(mappingSolution);
                     LOGGER.debug("is solution: " + mappingSolution.getAlgorithmID()
                             + " selected: " + selected);
                 }
+                rankingNanos += nanoTime() - rankingStart;
+                MappingDiagnostics.recordStage(Stage.RANKING, reaction.getID(), rankingNanos);
                 MappingDiagnostics.recordEvaluationPhase(
                         reaction.getID(),
                         currentTimeMillis() - evaluationStart);
@@ -834,24 +846,33 @@ public class ReactionMechanismTool implements Serializable {
             return single;
         }
 
-        int threadCount = Math.min(candidates.size(),
-                Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        try {
-            List<Future<MappingSolution>> futures = new ArrayList<>(candidates.size());
-            for (EvaluationCandidate candidate : candidates) {
-                futures.add(executor.submit(
-                        () -> computeMappingSolution(candidate, generate2D, generate3D)));
+        List<Callable<MappingSolution>> tasks = new ArrayList<>(candidates.size());
+        for (EvaluationCandidate candidate : candidates) {
+            tasks.add(() -> computeMappingSolution(candidate, generate2D, generate3D));
+        }
+        List<Future<MappingSolution>> futures
+                = MappingExecution.invokeAll(tasks, Long.MAX_VALUE, Long.MAX_VALUE);
+        List<MappingSolution> evaluated = new ArrayList<>(candidates.size());
+        for (Future<MappingSolution> future : futures) {
+            if (future.isCancelled()) {
+                continue;
             }
-
-            List<MappingSolution> evaluated = new ArrayList<>(candidates.size());
-            for (Future<MappingSolution> future : futures) {
-                evaluated.add(future.get());
+            evaluated.add(future.get());
+        }
+        if (evaluated.size() < candidates.size()) {
+            /*
+             The budget ran out while scoring: keep the solutions that
+             finished, or score the best ranked candidate here so there is
+             still a mapping to return
+             */
+            LOGGER.debug("Scored " + evaluated.size() + " of " + candidates.size()
+                    + " candidate(s) within the budget");
+            MappingExecution.markTruncated();
+            if (evaluated.isEmpty()) {
+                evaluated.add(computeMappingSolution(candidates.get(0), generate2D, generate3D));
             }
-            return evaluated;
-        } finally {
-            executor.shutdownNow();
         }
+        return evaluated;
     }
 
     @SuppressWarnings("deprecation")
@@ -16,8 +16,13 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -32,10 +37,14 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.vecmath.Point2d;
 import javax.vecmath.Point3d;
 import org.openscience.cdk.CDKConstants;
@@ -5176,6 +5185,11 @@ public final class ChemicalFileIO {
                 throw new CDKException("Error while counts line of RXN file", exception);
             }
 
+            if (numReactans + numProducts + agentCount == 0) {
+                // an empty block, e.g. a failed record in RDT batch output
+                return reaction;
+            }
+
             // now read the molecules
             try {
                 String line = input.readLine();
@@ -5270,6 +5284,462 @@ public final class ChemicalFileIO {
 
 
 
+    /**
+     * Streams reaction records out of an MDL RDF file or a file of
+     * concatenated RXN blocks, one record at a time.
+     * <p>
+     * Only the text of the current record is held in memory, so the reader
+     * can walk dumps with millions of entries (or a pipe on stdin) without
+     * materialising the whole file. Each {@link RXNRecord} is parsed lazily by
+     * {@link RXNRecord#toReaction(IChemObjectBuilder)}, which lets callers
+     * report a malformed record and carry on with the next one.
+     *
+     * <pre>
+     * try (RXNRecordReader reader = new RXNRecordReader(new FileReader("dump.rdf"))) {
+     *     while (reader.hasNext()) {
+     *         RXNRecord record = reader.next();
+     *         IReaction reaction = record.toReaction(builder);
+     *     }
+     * }
+     * </pre>
+     */
+    public static class RXNRecordReader implements Iterator<RXNRecord>, java.io.Closeable {
+
+        private final BufferedReader input;
+        private String pendingLine;
+        private RXNRecord nextRecord;
+        private int recordIndex;
+        private boolean exhausted;
+
+        /**
+         * @param in RDF, multi-RXN or single RXN content
+         */
+        public RXNRecordReader(Reader in) {
+            this.input = in instanceof BufferedReader
+                    ? (BufferedReader) in : new BufferedReader(in);
+            this.pendingLine = null;
+            this.nextRecord = null;
+            this.recordIndex = 0;
+            this.exhausted = false;
+        }
+
+        /**
+         * @param in RDF, multi-RXN or single RXN content
+         */
+        public RXNRecordReader(InputStream in) {
+            this(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @throws UncheckedIOException if the input cannot be read, so a
+         * read error is not mistaken for the end of the input
+         */
+        @Override
+        public boolean hasNext() {
+            if (nextRecord == null && !exhausted) {
+                try {
+                    nextRecord = readRecord();
+                } catch (IOException ex) {
+                    exhausted = true;
+                    throw new UncheckedIOException("Error while scanning reaction records", ex);
+                }
+                if (nextRecord == null) {
+                    exhausted = true;
+                }
+            }
+            return nextRecord != null;
+        }
+
+        @Override
+        public RXNRecord next() {
+            if (!hasNext()) {
+                throw new java.util.NoSuchElementException();
+            }
+            RXNRecord record = nextRecord;
+            nextRecord = null;
+            return record;
+        }
+
+        /**
+         * Scan forward to the next $RXN block and collect its lines. RDF
+         * registry numbers ($RFMT $RIREG/$REREG) preceding the block are used
+         * as the record identifier.
+         */
+        private RXNRecord readRecord() throws IOException {
+            String registryId = null;
+            String line;
+            while ((line = readLine()) != null) {
+                if (line.startsWith("$RFMT")) {
+                    registryId = registryId(line);
+                } else if (line.startsWith("$RXN")) {
+                    break;
+                }
+            }
+            if (line == null) {
+                return null;
+            }
+            StringBuilder block = new StringBuilder();
+            block.append(line).append('\n');
+            String title = null;
+            int lineInBlock = 0;
+            while ((line = readLine()) != null) {
+                if (isRecordBoundary(line)) {
+                    pendingLine = line;
+                    break;
+                }
+                lineInBlock++;
+                if (lineInBlock == 1 && !line.trim().isEmpty()) {
+                    title = line.trim();
+                }
+                block.append(line).append('\n');
+            }
+            recordIndex++;
+            String id = registryId != null ? registryId
+                    : title != null ? title
+                    : "rxn_" + recordIndex;
+            return new RXNRecord(recordIndex, id, block.toString());
+        }
+
+        private String readLine() throws IOException {
+            if (pendingLine != null) {
+                String line = pendingLine;
+                pendingLine = null;
+                return line;
+            }
+            return input.readLine();
+        }
+
+        private static boolean isRecordBoundary(String line) {
+            return line.startsWith("$RXN")
+                    || line.startsWith("$RFMT")
+                    || line.startsWith("$MFMT")
+                    || line.startsWith("$DTYPE")
+                    || line.startsWith("$$$$");
+        }
+
+        private static String registryId(String rfmtLine) {
+            StringTokenizer tokenizer = new StringTokenizer(rfmtLine);
+            tokenizer.nextToken(); // $RFMT
+            if (tokenizer.hasMoreTokens()) {
+                String type = tokenizer.nextToken();
+                if (("$RIREG".equals(type) || "$REREG".equals(type)) && tokenizer.hasMoreTokens()) {
+                    return tokenizer.nextToken();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * One raw reaction record (a complete $RXN block) read by
+     * {@link RXNRecordReader}.
+     */
+    public static final class RXNRecord {
+
+        private final int index;
+        private final String id;
+        private final String rxnBlock;
+
+        RXNRecord(int index, String id, String rxnBlock) {
+            this.index = index;
+            this.id = id;
+            this.rxnBlock = rxnBlock;
+        }
+
+        /**
+         * @return 1-based position of the record in the input
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return registry number, reaction title or a positional identifier
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the raw $RXN block
+         */
+        public String getRxnBlock() {
+            return rxnBlock;
+        }
+
+        /**
+         * Parse the record with {@link MDLRXNV2000Reader}.
+         *
+         * @param builder chem object builder
+         * @return the reaction, with its ID set to {@link #getId()}
+         * @throws CDKException if the block is not a valid RXN
+         */
+        public IReaction toReaction(IChemObjectBuilder builder) throws CDKException {
+            try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new StringReader(rxnBlock))) {
+                IReaction reaction = reader.read(builder.newInstance(IReaction.class));
+                reaction.setID(id);
+                return reaction;
+            } catch (IOException ex) {
+                throw new CDKException("Error while reading reaction record " + id, ex);
+            }
+        }
+    }
+
+    /**
+     * Random-access, splittable view of the records in an RDF or multi-RXN
+     * file, for inputs too large to hold on the heap.
+     * <p>
+     * The file is memory-mapped and scanned once for the start of each $RXN
+     * block; only those offsets are kept. A record's text is read from the
+     * mapping when it is asked for, and records, IDs and indices are the
+     * same as {@link RXNRecordReader} gives for the file. Because the
+     * offsets are known up front, {@link #spliterator()} splits into
+     * disjoint byte ranges of balanced size, so parallel workers share one
+     * mapping without reading each other's records.
+     *
+     * <pre>
+     * MappedRXNFile file = MappedRXNFile.open(Paths.get("dump.rdf"));
+     * file.stream(true).forEach(record -&gt; map(record.toReaction(builder)));
+     * </pre>
+     */
+    public static final class MappedRXNFile {
+
+        /**
+         * One mapping covers at most 2^30 bytes, so files past 2 GB are
+         * mapped in several pieces.
+         */
+        private static final int CHUNK_SHIFT = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final MappedByteBuffer[] chunks;
+        private final long length;
+        private final long[] offsets;
+        private final int size;
+
+        private MappedRXNFile(MappedByteBuffer[] chunks, long length) {
+            this.chunks = chunks;
+            this.length = length;
+            long[] found = new long[64];
+            int count = 0;
+            for (long pos = 0; pos < length; pos = nextLine(pos)) {
+                if (startsWith(pos, "$RXN")) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = pos;
+                }
+            }
+            this.offsets = found;
+            this.size = count;
+        }
+
+        /**
+         * Map a file and find its records.
+         *
+         * @param path RDF, multi-RXN or single RXN file
+         * @return the mapped file
+         * @throws IOException if the file cannot be read
+         */
+        public static MappedRXNFile open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(
+                    path, StandardOpenOption.READ)) {
+                long length = channel.size();
+                int count = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+                MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+                for (int i = 0; i < count; i++) {
+                    long start = (long) i << CHUNK_SHIFT;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            start, Math.min(length - start, CHUNK_MASK + 1));
+                }
+                return new MappedRXNFile(chunks, length);
+            }
+        }
+
+        /**
+         * @return number of records in the file
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param index 0-based record position
+         * @return the record, whose {@link RXNRecord#getIndex()} is
+         * {@code index + 1}
+         */
+        public RXNRecord get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("record " + index + " of " + size);
+            }
+            long start = offsets[index];
+            long end = nextLine(start);
+            String title = null;
+            if (end < length && !isBoundary(end)) {
+                title = line(end).trim();
+                if (title.isEmpty()) {
+                    title = null;
+                }
+            }
+            while (end < length && !isBoundary(end)) {
+                end = nextLine(end);
+            }
+            String registryId = null;
+            if (start > 0) {
+                long previous = previousLine(start);
+                if (startsWith(previous, "$RFMT")) {
+                    registryId = RXNRecordReader.registryId(line(previous));
+                }
+            }
+            String block = text(start, end).replace("\r\n", "\n").replace('\r', '\n');
+            if (!block.endsWith("\n")) {
+                block += "\n";
+            }
+            int recordIndex = index + 1;
+            String id = registryId != null ? registryId
+                    : title != null ? title
+                    : "rxn_" + recordIndex;
+            return new RXNRecord(recordIndex, id, block);
+        }
+
+        /**
+         * @return all records in file order; splits share this mapping
+         */
+        public Spliterator<RXNRecord> spliterator() {
+            return new RecordSpliterator(0, size);
+        }
+
+        /**
+         * @param parallel whether the stream may be split across threads
+         * @return all records in file order
+         */
+        public Stream<RXNRecord> stream(boolean parallel) {
+            return StreamSupport.stream(spliterator(), parallel);
+        }
+
+        private byte byteAt(long pos) {
+            return chunks[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
+        }
+
+        private boolean startsWith(long pos, String prefix) {
+            if (pos + prefix.length() > length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (byteAt(pos + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isBoundary(long pos) {
+            return byteAt(pos) == '$' && RXNRecordReader.isRecordBoundary(line(pos));
+        }
+
+        /**
+         * @return start of the line after the one at {@code pos}, or the
+         * file length
+         */
+        private long nextLine(long pos) {
+            while (pos < length) {
+                byte b = byteAt(pos++);
+                if (b == '\n') {
+                    return pos;
+                }
+                if (b == '\r') {
+                    return pos < length && byteAt(pos) == '\n' ? pos + 1 : pos;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * @return start of the line before the one starting at {@code pos}
+         */
+        private long previousLine(long pos) {
+            pos--;
+            if (pos > 0 && byteAt(pos) == '\n' && byteAt(pos - 1) == '\r') {
+                pos--;
+            }
+            while (pos > 0) {
+                byte b = byteAt(pos - 1);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                pos--;
+            }
+            return pos;
+        }
+
+        private String line(long pos) {
+            long end = pos;
+            while (end < length) {
+                byte b = byteAt(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                end++;
+            }
+            return text(pos, end);
+        }
+
+        private String text(long start, long end) {
+            byte[] bytes = new byte[Math.toIntExact(end - start)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = byteAt(start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private final class RecordSpliterator implements Spliterator<RXNRecord> {
+
+            private int from;
+            private final int to;
+
+            RecordSpliterator(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super RXNRecord> action) {
+                if (from >= to) {
+                    return false;
+                }
+                action.accept(get(from++));
+                return true;
+            }
+
+            @Override
+            public Spliterator<RXNRecord> trySplit() {
+                int mid = (from + to) >>> 1;
+                if (mid <= from) {
+                    return null;
+                }
+                RecordSpliterator prefix = new RecordSpliterator(from, mid);
+                from = mid;
+                return prefix;
+            }
+
+            @Override
+            public long estimateSize() {
+                return to - from;
+            }
+
+            @Override
+            public int characteristics() {
+                return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+            }
+        }
+    }
+
+
+
     /**
      * Writes a reaction to a MDL rxn or SDF file. Attention: Stoichiometric
      * coefficients have to be natural numbers.
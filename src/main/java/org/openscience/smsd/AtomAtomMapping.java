@@ -52,7 +52,10 @@ import org.openscience.smsd.ExtAtomContainerManipulator;
 /**
  * Holds atom-atom mappings information between source and target molecules
  *
- *
+ * The mapping is kept as an array from query atom index to target atom index
+ * (-1 for an unmapped query atom), next to the atoms it was given. The
+ * {@link #getMappingsByAtoms()} and {@link #getMappingsByIndex()} maps are
+ * built on first use and kept until the mapping changes.
  *
  * @author Syed Asad Rahman <asad.rahman@bioinceptionlabs.com>
  */
@@ -61,20 +64,20 @@ public final class AtomAtomMapping implements Serializable {
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(AtomAtomMapping.class);
 
-    class MyQueryIAtomComp implements Comparator<IAtom> {
-
-        @Override
-        public int compare(IAtom o1, IAtom o2) {
-            int atomNumber1 = getQuery().indexOf(o1);
-            int atomNumber2 = getQuery().indexOf(o2);
-            return atomNumber1 - atomNumber2;
-        }
-    }
-    private static final long serialVersionUID = 1223637237262778L;
+    private static final long serialVersionUID = 1223637237262779L;
+    private static final int UNMAPPED = -1;
     private final IAtomContainer query;
     private final IAtomContainer target;
-    private final Map<IAtom, IAtom> mapping;
-    private final Map<Integer, Integer> mappingIndex;
+    /*
+     * Target index of each query index, UNMAPPED where the query atom is not
+     * mapped; the atoms passed to put are kept at the same positions.
+     */
+    private int[] targetIndexOf;
+    private IAtom[] queryAtoms;
+    private IAtom[] targetAtoms;
+    private int count;
+    private transient volatile Map<IAtom, IAtom> atomView;
+    private transient volatile Map<Integer, Integer> indexView;
 
     @Override
     public boolean equals(Object obj) {
@@ -91,10 +94,16 @@ public final class AtomAtomMapping implements Serializable {
         if (this.getTarget() != other.getTarget() && (this.getTarget() == null || !this.target.equals(other.target))) {
             return false;
         }
-        if (this.mapping != other.getMappingsByAtoms() && (this.mapping == null || !this.mapping.equals(other.mapping))) {
+        if (this.count != other.count) {
             return false;
         }
-        return this.mappingIndex == other.getMappingsByIndex() || (this.mappingIndex != null && this.mappingIndex.equals(other.mappingIndex));
+        int length = Math.max(this.targetIndexOf.length, other.targetIndexOf.length);
+        for (int i = 0; i < length; i++) {
+            if (this.getMappedTargetIndex(i) != other.getMappedTargetIndex(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -102,8 +111,11 @@ public final class AtomAtomMapping implements Serializable {
         int hash = 7;
         hash = 67 * hash + (this.getQuery() != null ? this.getQuery().hashCode() : 0);
         hash = 67 * hash + (this.getTarget() != null ? this.getTarget().hashCode() : 0);
-        hash = 67 * hash + (this.mapping != null ? this.getMappingsByAtoms().hashCode() : 0);
-        hash = 67 * hash + (this.mappingIndex != null ? this.getMappingsByIndex().hashCode() : 0);
+        for (int i = 0; i < targetIndexOf.length; i++) {
+            if (targetIndexOf[i] != UNMAPPED) {
+                hash = 67 * hash + 31 * i + targetIndexOf[i];
+            }
+        }
         return hash;
     }
 
@@ -115,8 +127,12 @@ public final class AtomAtomMapping implements Serializable {
     public AtomAtomMapping(IAtomContainer query, IAtomContainer target) {
         this.query = query;
         this.target = target;
-        mapping = new TreeMap<>(new MyQueryIAtomComp());
-        this.mappingIndex = new TreeMap<>();
+        int size = query == null ? 0 : query.getAtomCount();
+        this.targetIndexOf = new int[size];
+        Arrays.fill(this.targetIndexOf, UNMAPPED);
+        this.queryAtoms = new IAtom[size];
+        this.targetAtoms = new IAtom[size];
+        this.count = 0;
     }
 
     /**
@@ -126,15 +142,58 @@ public final class AtomAtomMapping implements Serializable {
      */
     public void put(IAtom atom1, IAtom atom2) {
         try {
-            atom1.setID(atom1.getID() == null ? getQuery().indexOf(atom1) + "" : atom1.getID());
-            atom2.setID(atom2.getID() == null ? getTarget().indexOf(atom2) + "" : atom2.getID());
-            mapping.put(atom1, atom2);
-            mappingIndex.put(getQuery().indexOf(atom1), getTarget().indexOf(atom2));
+            int queryIndex = getQuery().indexOf(atom1);
+            int targetIndex = getTarget().indexOf(atom2);
+            atom1.setID(atom1.getID() == null ? queryIndex + "" : atom1.getID());
+            atom2.setID(atom2.getID() == null ? targetIndex + "" : atom2.getID());
+            if (queryIndex < 0 || targetIndex < 0) {
+                LOGGER.error("Error: Add Mapping to the Map, atom is not in the mapped molecules");
+                return;
+            }
+            store(queryIndex, targetIndex, atom1, atom2);
         } catch (Exception e) {
             LOGGER.error("Error: Add Mapping to the Map", e.getMessage());
         }
     }
 
+    /**
+     * Maps the query atom at queryIndex to the target atom at targetIndex.
+     *
+     * @param queryIndex atom index in the query molecule
+     * @param targetIndex atom index in the target molecule
+     */
+    public void put(int queryIndex, int targetIndex) {
+        if (queryIndex < 0 || queryIndex >= getQuery().getAtomCount()
+                || targetIndex < 0 || targetIndex >= getTarget().getAtomCount()) {
+            LOGGER.error("Error: Add Mapping to the Map, atom index out of range " + queryIndex + ":" + targetIndex);
+            return;
+        }
+        IAtom atom1 = getQuery().getAtom(queryIndex);
+        IAtom atom2 = getTarget().getAtom(targetIndex);
+        atom1.setID(atom1.getID() == null ? queryIndex + "" : atom1.getID());
+        atom2.setID(atom2.getID() == null ? targetIndex + "" : atom2.getID());
+        store(queryIndex, targetIndex, atom1, atom2);
+    }
+
+    private void store(int queryIndex, int targetIndex, IAtom queryAtom, IAtom targetAtom) {
+        if (queryIndex >= targetIndexOf.length) {
+            int size = Math.max(queryIndex + 1, targetIndexOf.length * 2);
+            int old = targetIndexOf.length;
+            targetIndexOf = Arrays.copyOf(targetIndexOf, size);
+            Arrays.fill(targetIndexOf, old, size, UNMAPPED);
+            queryAtoms = Arrays.copyOf(queryAtoms, size);
+            targetAtoms = Arrays.copyOf(targetAtoms, size);
+        }
+        if (targetIndexOf[queryIndex] == UNMAPPED) {
+            count++;
+        }
+        targetIndexOf[queryIndex] = targetIndex;
+        queryAtoms[queryIndex] = queryAtom;
+        targetAtoms[queryIndex] = targetAtom;
+        atomView = null;
+        indexView = null;
+    }
+
     /**
      * Returns String with MMP and AAM.
      *
@@ -151,12 +210,10 @@ public final class AtomAtomMapping implements Serializable {
             int counter = 1;
             for (IAtomContainer ac : reaction.getReactants().atomContainers()) {
                 for (IAtom a : ac.atoms()) {
-                    IAtom refAtom = getQuery().getAtom(ac.indexOf(a));
-                    if (mapping.containsKey(refAtom)) {
+                    int mappedAtomIndex = getMappedTargetIndex(ac.indexOf(a));
+                    if (mappedAtomIndex != UNMAPPED) {
                         a.setProperty(ATOM_ATOM_MAPPING, counter);
                         a.setFlag(MAPPED, true);
-                        IAtom mappedAtom = mapping.get(refAtom);
-                        int mappedAtomIndex = getTarget().indexOf(mappedAtom);
                         IAtom b = reaction.getProducts().getAtomContainer(0).getAtom(mappedAtomIndex);
                         b.setProperty(ATOM_ATOM_MAPPING, counter);
                         b.setFlag(MAPPED, true);
@@ -181,11 +238,11 @@ public final class AtomAtomMapping implements Serializable {
             }
 
             s.append("MMP: ").append(createReactionSMILES).append(", AAM:[");
-            mapping.keySet().stream().forEach((firstAtom) -> {
-                int keyIndex = getQuery().indexOf(firstAtom) + 1;
-                int valueIndex = getTarget().indexOf(mapping.get(firstAtom)) + 1;
-                s.append(keyIndex).append(":").append(valueIndex).append("|");
-            });
+            for (int i = 0; i < targetIndexOf.length; i++) {
+                if (targetIndexOf[i] != UNMAPPED) {
+                    s.append(i + 1).append(":").append(targetIndexOf[i] + 1).append("|");
+                }
+            }
 
             s.append("]");
 
@@ -207,7 +264,7 @@ public final class AtomAtomMapping implements Serializable {
      * @return true if 'query' is not isomorphic of 'target'
      */
     public boolean isEmpty() {
-        return mapping.isEmpty();
+        return count == 0;
     }
 
     /**
@@ -215,8 +272,12 @@ public final class AtomAtomMapping implements Serializable {
      * Clear mappings
      */
     public void clear() {
-        mapping.clear();
-        mappingIndex.clear();
+        Arrays.fill(targetIndexOf, UNMAPPED);
+        Arrays.fill(queryAtoms, null);
+        Arrays.fill(targetAtoms, null);
+        count = 0;
+        atomView = null;
+        indexView = null;
     }
 
     /**
@@ -226,7 +287,7 @@ public final class AtomAtomMapping implements Serializable {
      * @return mapping size
      */
     public int getCount() {
-        return mapping.isEmpty() ? 0 : mapping.size();
+        return count;
     }
 
     /**
@@ -235,7 +296,18 @@ public final class AtomAtomMapping implements Serializable {
      * @return atom-atom mappings
      */
     public Map<IAtom, IAtom> getMappingsByAtoms() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(mapping));
+        Map<IAtom, IAtom> view = atomView;
+        if (view == null) {
+            Map<IAtom, IAtom> atoms = new LinkedHashMap<>();
+            for (int i = 0; i < targetIndexOf.length; i++) {
+                if (targetIndexOf[i] != UNMAPPED && queryAtoms[i] != null) {
+                    atoms.put(queryAtoms[i], targetAtoms[i]);
+                }
+            }
+            view = Collections.unmodifiableMap(atoms);
+            atomView = view;
+        }
+        return view;
     }
 
     /**
@@ -244,7 +316,77 @@ public final class AtomAtomMapping implements Serializable {
      * @return atom-atom index mappings
      */
     public Map<Integer, Integer> getMappingsByIndex() {
-        return Collections.unmodifiableSortedMap(new TreeMap<>(mappingIndex));
+        Map<Integer, Integer> view = indexView;
+        if (view == null) {
+            SortedMap<Integer, Integer> indices = new TreeMap<>();
+            for (int i = 0; i < targetIndexOf.length; i++) {
+                if (targetIndexOf[i] != UNMAPPED) {
+                    indices.put(i, targetIndexOf[i]);
+                }
+            }
+            view = Collections.unmodifiableSortedMap(indices);
+            indexView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the target atom index mapped to a query atom index
+     *
+     * @param queryIndex atom index in the query molecule
+     * @return atom index in the target molecule, -1 if the atom is not mapped
+     */
+    public int getMappedTargetIndex(int queryIndex) {
+        return queryIndex >= 0 && queryIndex < targetIndexOf.length
+                ? targetIndexOf[queryIndex] : UNMAPPED;
+    }
+
+    /**
+     * Returns the mapped query atom indices in ascending order
+     *
+     * @return mapped query atom indices, parallel to {@link #getTargetIndices()}
+     */
+    public int[] getQueryIndices() {
+        int[] indices = new int[count];
+        int k = 0;
+        for (int i = 0; i < targetIndexOf.length; i++) {
+            if (targetIndexOf[i] != UNMAPPED) {
+                indices[k++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the target atom indices mapped to {@link #getQueryIndices()}
+     *
+     * @return mapped target atom indices, parallel to the query indices
+     */
+    public int[] getTargetIndices() {
+        int[] indices = new int[count];
+        int k = 0;
+        for (int i = 0; i < targetIndexOf.length; i++) {
+            if (targetIndexOf[i] != UNMAPPED) {
+                indices[k++] = targetIndexOf[i];
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns a copy that holds only the index pairs, without the molecules or
+     * their atoms; {@link #getMappingsByAtoms()} of the copy is empty. Meant
+     * for caches that replay the indices onto other molecules.
+     *
+     * @return index-only copy of this mapping
+     */
+    public AtomAtomMapping compact() {
+        AtomAtomMapping copy = new AtomAtomMapping(null, null);
+        copy.targetIndexOf = Arrays.copyOf(targetIndexOf, targetIndexOf.length);
+        copy.queryAtoms = new IAtom[targetIndexOf.length];
+        copy.targetAtoms = new IAtom[targetIndexOf.length];
+        copy.count = count;
+        return copy;
     }
 
     /**
@@ -294,9 +436,9 @@ public final class AtomAtomMapping implements Serializable {
     public IAtomContainer getMapCommonFragmentOnQuery() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
         List<IAtom> unmappedAtoms = new ArrayList<>();
-        for (IAtom atom : getQuery().atoms()) {
-            if (!mapping.containsKey(atom)) {
-                unmappedAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        for (int i = 0; i < getQuery().getAtomCount(); i++) {
+            if (getMappedTargetIndex(i) == UNMAPPED) {
+                unmappedAtoms.add(ac.getAtom(i));
             }
         }
 
@@ -318,9 +460,15 @@ public final class AtomAtomMapping implements Serializable {
     public IAtomContainer getMapCommonFragmentOnTarget() throws CloneNotSupportedException {
         IAtomContainer ac = getTarget().clone();
         List<IAtom> unmappedAtoms = new ArrayList<>();
-        for (IAtom atom : getTarget().atoms()) {
-            if (!mapping.containsValue(atom)) {
-                unmappedAtoms.add(ac.getAtom(getTargetIndex(atom)));
+        boolean[] mappedTarget = new boolean[getTarget().getAtomCount()];
+        for (int i = 0; i < targetIndexOf.length; i++) {
+            if (targetIndexOf[i] != UNMAPPED && targetIndexOf[i] < mappedTarget.length) {
+                mappedTarget[targetIndexOf[i]] = true;
+            }
+        }
+        for (int i = 0; i < mappedTarget.length; i++) {
+            if (!mappedTarget[i]) {
+                unmappedAtoms.add(ac.getAtom(i));
             }
         }
 
@@ -339,9 +487,9 @@ public final class AtomAtomMapping implements Serializable {
     public IAtomContainer getCommonFragment() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
         List<IAtom> unmappedAtoms = new ArrayList<>();
-        for (IAtom atom : getQuery().atoms()) {
-            if (!mapping.containsKey(atom)) {
-                unmappedAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        for (int i = 0; i < getQuery().getAtomCount(); i++) {
+            if (getMappedTargetIndex(i) == UNMAPPED) {
+                unmappedAtoms.add(ac.getAtom(i));
             }
         }
 
@@ -351,8 +499,8 @@ public final class AtomAtomMapping implements Serializable {
          exist between atoms.
          */
         for (IBond queryBond : getQuery().bonds()) {
-            IAtom targetAtomBegin = mapping.get(queryBond.getBegin());
-            IAtom targetAtomEnd = mapping.get(queryBond.getEnd());
+            IAtom targetAtomBegin = mappedTargetAtom(getQueryIndex(queryBond.getBegin()));
+            IAtom targetAtomEnd = mappedTargetAtom(getQueryIndex(queryBond.getEnd()));
             if (targetAtomBegin == null) {
                 continue;
             }
@@ -405,6 +553,10 @@ public final class AtomAtomMapping implements Serializable {
         return ac;
     }
 
+    private IAtom mappedTargetAtom(int queryIndex) {
+        return getMappedTargetIndex(queryIndex) == UNMAPPED ? null : targetAtoms[queryIndex];
+    }
+
     /**
      * Returns Maximum Common Fragment between Query and Target as SMILES
      *
@@ -349,53 +349,43 @@ public class BaseMapping extends ChemicalFilters implements ChemicalFilters.IAto
             return byPairDistance;
         }
 
-        Iterator<Map.Entry<IAtom, IAtom>> leftIterator = left.sortedPairs.iterator();
-        Iterator<Map.Entry<IAtom, IAtom>> rightIterator = right.sortedPairs.iterator();
-
-        while (leftIterator.hasNext() && rightIterator.hasNext()) {
-            Map.Entry<IAtom, IAtom> leftPair = leftIterator.next();
-            Map.Entry<IAtom, IAtom> rightPair = rightIterator.next();
-
-            int byQueryKey = compareAtomOrder(leftPair.getKey(), rightPair.getKey(), left.query);
-            if (byQueryKey != 0) {
-                return byQueryKey;
-            }
-
-            int byTargetKey = compareAtomOrder(leftPair.getValue(), rightPair.getValue(), left.target);
-            if (byTargetKey != 0) {
-                return byTargetKey;
+        int pairs = Math.min(left.sortedPairs.length, right.sortedPairs.length);
+        for (int i = 0; i < pairs; i++) {
+            int byPair = left.sortedPairs[i].compareTo(right.sortedPairs[i]);
+            if (byPair != 0) {
+                return byPair;
             }
         }
-        return Integer.compare(left.sortedPairs.size(), right.sortedPairs.size());
+        return Integer.compare(left.sortedPairs.length, right.sortedPairs.length);
     }
 
+    /*
+     * The atom order keys and the pair distance are computed once per mapping
+     * here, rather than on every comparison of the sort.
+     */
     private MappingSortKey buildMappingSortKey(AtomAtomMapping mapping) {
-        List<Map.Entry<IAtom, IAtom>> sortedPairs = getSortedPairs(mapping);
+        IAtomContainer query = mapping.getQuery();
+        IAtomContainer target = mapping.getTarget();
+        Map<IAtom, IAtom> atoms = mapping.getMappingsByAtoms();
+        PairOrderKey[] sortedPairs = new PairOrderKey[atoms.size()];
+        int pairDistanceScore = 0;
+        int i = 0;
+        for (Map.Entry<IAtom, IAtom> pair : atoms.entrySet()) {
+            sortedPairs[i++] = new PairOrderKey(
+                    buildAtomOrderKey(pair.getKey(), query),
+                    buildAtomOrderKey(pair.getValue(), target));
+            pairDistanceScore += Math.abs(
+                    stableSequenceIndex(pair.getKey(), query)
+                    - stableSequenceIndex(pair.getValue(), target));
+        }
+        Arrays.sort(sortedPairs);
         return new MappingSortKey(
-                mapping.getQuery(),
-                mapping.getTarget(),
                 mapping.getCount(),
-                makeBondMapOfAtomMap(mapping.getQuery(), mapping.getTarget(), mapping).size(),
-                calculatePairDistanceScore(sortedPairs, mapping.getQuery(), mapping.getTarget()),
+                makeBondMapOfAtomMap(query, target, mapping).size(),
+                pairDistanceScore,
                 sortedPairs);
     }
 
-    private List<Map.Entry<IAtom, IAtom>> getSortedPairs(AtomAtomMapping mapping) {
-        List<Map.Entry<IAtom, IAtom>> pairs = new ArrayList<>(mapping.getMappingsByAtoms().entrySet());
-        pairs.sort((left, right) -> {
-            int byQueryKey = compareAtomOrder(left.getKey(), right.getKey(), mapping.getQuery());
-            if (byQueryKey != 0) {
-                return byQueryKey;
-            }
-            return compareAtomOrder(left.getValue(), right.getValue(), mapping.getTarget());
-        });
-        return pairs;
-    }
-
-    private int compareAtomOrder(IAtom left, IAtom right, IAtomContainer container) {
-        return buildAtomOrderKey(left, container).compareTo(buildAtomOrderKey(right, container));
-    }
-
     private AtomOrderKey buildAtomOrderKey(IAtom atom, IAtomContainer container) {
         if (atom == null) {
             return new AtomOrderKey(9, Integer.MAX_VALUE, Integer.MAX_VALUE,
@@ -464,17 +454,6 @@ public class BaseMapping extends ChemicalFilters implements ChemicalFilters.IAto
         return new AtomOrderKey(priority, side, moleculeIndex, atomIndex, 0, text);
     }
 
-    private int calculatePairDistanceScore(List<Map.Entry<IAtom, IAtom>> pairs,
-            IAtomContainer query, IAtomContainer target) {
-        int total = 0;
-        for (Map.Entry<IAtom, IAtom> pair : pairs) {
-            total += Math.abs(
-                    stableSequenceIndex(pair.getKey(), query)
-                    - stableSequenceIndex(pair.getValue(), target));
-        }
-        return total;
-    }
-
     private int stableSequenceIndex(IAtom atom, IAtomContainer container) {
         if (atom == null) {
             return Integer.MAX_VALUE / 4;
@@ -599,20 +578,35 @@ public class BaseMapping extends ChemicalFilters implements ChemicalFilters.IAto
         }
     }
 
+    private static final class PairOrderKey implements Comparable<PairOrderKey> {
+
+        private final AtomOrderKey query;
+        private final AtomOrderKey target;
+
+        private PairOrderKey(AtomOrderKey query, AtomOrderKey target) {
+            this.query = query;
+            this.target = target;
+        }
+
+        @Override
+        public int compareTo(PairOrderKey other) {
+            int byQueryKey = query.compareTo(other.query);
+            if (byQueryKey != 0) {
+                return byQueryKey;
+            }
+            return target.compareTo(other.target);
+        }
+    }
+
     private static final class MappingSortKey {
 
-        private final IAtomContainer query;
-        private final IAtomContainer target;
         private final int mappedAtoms;
         private final int mappedBonds;
         private final int pairDistanceScore;
-        private final List<Map.Entry<IAtom, IAtom>> sortedPairs;
+        private final PairOrderKey[] sortedPairs;
 
-        private MappingSortKey(IAtomContainer query, IAtomContainer target,
-                int mappedAtoms, int mappedBonds, int pairDistanceScore,
-                List<Map.Entry<IAtom, IAtom>> sortedPairs) {
-            this.query = query;
-            this.target = target;
+        private MappingSortKey(int mappedAtoms, int mappedBonds, int pairDistanceScore,
+                PairOrderKey[] sortedPairs) {
             this.mappedAtoms = mappedAtoms;
             this.mappedBonds = mappedBonds;
             this.pairDistanceScore = pairDistanceScore;
@@ -843,9 +837,10 @@ public class BaseMapping extends ChemicalFilters implements ChemicalFilters.IAto
             AtomAtomMapping mapping) {
 
         Map<IBond, IBond> bondbondMappingMap = new HashMap<>();
+        Map<IAtom, IAtom> atoms = mapping.getMappingsByAtoms();
 
-        mapping.getMappingsByAtoms().entrySet().stream().forEach((Map.Entry<IAtom, IAtom> map1) -> {
-            mapping.getMappingsByAtoms().entrySet().stream().filter((map2) -> (map1.getKey()
+        atoms.entrySet().stream().forEach((Map.Entry<IAtom, IAtom> map1) -> {
+            atoms.entrySet().stream().filter((map2) -> (map1.getKey()
                     != map2.getKey())).forEach((Map.Entry<IAtom, IAtom> map2) -> {
                 IBond bond1;
                 bond1 = ac1.getBond(map1.getKey(), map2.getKey());
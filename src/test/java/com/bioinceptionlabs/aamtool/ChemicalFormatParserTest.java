@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.aamtool;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MDLRXNV2000Reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChemicalFormatParserTest {
+
+    private static final String ESTERIFICATION = "CC(=O)O.OCC>OS(=O)(=O)O>CC(=O)OCC.O";
+    private static final String[] CORPORA = {"kegg", "rhea", "brenda", "macie", "bug", "other"};
+
+    private final SmilesGenerator canonical = new SmilesGenerator(SmiFlavor.Canonical | SmiFlavor.AtomAtomMap);
+
+    @Test
+    public void directNormalisationMatchesTheSmilesRoundTrip() throws Exception {
+        int compared = 0;
+        for (String corpus : CORPORA) {
+            File dir = new File(getClass().getClassLoader().getResource("rxn/" + corpus).toURI());
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".rxn"));
+            for (File file : files) {
+                IReaction roundTrip;
+                try {
+                    roundTrip = ChemicalFormatParser.convertRoundTripRXNSMILES(read(file));
+                } catch (Exception e) {
+                    continue;
+                }
+                IReaction input = read(file);
+                int reactants = input.getReactantCount();
+                int products = input.getProductCount();
+                IReaction direct = ChemicalFormatParser.configureReaction(input);
+                String id = corpus + "/" + file.getName();
+                assertEquals(id, roundTrip.getID(), direct.getID());
+                assertSameMolecules(id, roundTrip.getReactants(), direct.getReactants(), reactants);
+                assertSameMolecules(id, roundTrip.getProducts(), direct.getProducts(), products);
+                compared++;
+            }
+        }
+        assertTrue("compared " + compared, compared > 500);
+    }
+
+    @Test
+    public void undefinedHydrogenCountsAreRejectedLikeTheRoundTrip() throws Exception {
+        IReaction reaction = SilentChemObjectBuilder.getInstance().newReaction();
+        IAtomContainer molecule = SilentChemObjectBuilder.getInstance().newAtomContainer();
+        molecule.addAtom(SilentChemObjectBuilder.getInstance().newInstance(IAtom.class, "C"));
+        reaction.addReactant(molecule);
+        reaction.addProduct(molecule);
+        try {
+            ChemicalFormatParser.configureReaction(reaction);
+            fail("expected a CDKException");
+        } catch (CDKException expected) {
+            assertTrue(expected.getMessage().contains("implicit hydrogens"));
+        }
+    }
+
+    @Test
+    public void fragmentsAreSplitAndMappingsKept() throws Exception {
+        IReaction reaction = ChemicalFormatParser.parseReactionSMILESLine(
+                "[CH3:1][C:2](=[O:3])[OH:4].[Na+].[Cl-]>>[CH3:1][C:2](=[O:3])[O-:4].[Na+] acetate", 1);
+        assertEquals("acetate", reaction.getID());
+        assertEquals(3, reaction.getReactantCount());
+        assertEquals(2, reaction.getProductCount());
+        IAtom carbon = reaction.getProducts().getAtomContainer(0).getAtom(1);
+        assertEquals(Integer.valueOf(2), carbon.getProperty("cdk:AtomAtomMapping"));
+        assertNull(carbon.getPoint2d());
+    }
+
+    @Test
+    public void agentsAreKeptAndConfigured() {
+        IReaction reaction = ChemicalFormatParser.parseReactionSMILES(ESTERIFICATION).get(0);
+        assertEquals(2, reaction.getReactantCount());
+        assertEquals(1, reaction.getAgents().getAtomContainerCount());
+        IAtomContainer agent = reaction.getAgents().getAtomContainer(0);
+        assertEquals(5, agent.getAtomCount());
+        assertEquals("S.onyl", agent.getAtom(1).getAtomTypeName());
+    }
+
+    @Test
+    public void roundTripCanBeSelected() {
+        String previous = System.getProperty(ChemicalFormatParser.NORMALISATION_PROPERTY);
+        System.setProperty(ChemicalFormatParser.NORMALISATION_PROPERTY, "roundtrip");
+        try {
+            IReaction reaction = ChemicalFormatParser.parseReactionSMILES(ESTERIFICATION).get(0);
+            assertEquals(2, reaction.getReactantCount());
+            /*
+             the round trip keeps agents but leaves them unconfigured
+             */
+            assertEquals(1, reaction.getAgents().getAtomContainerCount());
+            assertNull(reaction.getAgents().getAtomContainer(0).getAtom(1).getAtomTypeName());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(ChemicalFormatParser.NORMALISATION_PROPERTY);
+            } else {
+                System.setProperty(ChemicalFormatParser.NORMALISATION_PROPERTY, previous);
+            }
+        }
+    }
+
+    /**
+     * The round trip only configures as many molecules as the input had, so
+     * atom types of any fragments split off beyond that are not compared.
+     */
+    private void assertSameMolecules(String id, IAtomContainerSet expected, IAtomContainerSet actual,
+            int configured) throws CDKException {
+        assertEquals(id, expected.getAtomContainerCount(), actual.getAtomContainerCount());
+        for (int i = 0; i < expected.getAtomContainerCount(); i++) {
+            IAtomContainer e = expected.getAtomContainer(i);
+            IAtomContainer a = actual.getAtomContainer(i);
+            String at = id + " molecule " + i;
+            assertEquals(at, e.getAtomCount(), a.getAtomCount());
+            assertEquals(at, e.getBondCount(), a.getBondCount());
+            assertEquals(at, e.getSingleElectronCount(), a.getSingleElectronCount());
+            assertEquals(at, canonical.create(e), canonical.create(a));
+            if (i < configured) {
+                assertEquals(at, atomTypes(e), atomTypes(a));
+            }
+            assertEquals(at, bondStereo(e), bondStereo(a));
+        }
+    }
+
+    private static List<String> atomTypes(IAtomContainer molecule) {
+        List<String> types = new ArrayList<>();
+        for (IAtom atom : molecule.atoms()) {
+            types.add(atom.getSymbol() + ":" + atom.getAtomTypeName() + ":" + atom.getImplicitHydrogenCount());
+        }
+        Collections.sort(types);
+        return types;
+    }
+
+    private static List<String> bondStereo(IAtomContainer molecule) {
+        List<String> stereo = new ArrayList<>();
+        for (IBond bond : molecule.bonds()) {
+            stereo.add(bond.getOrder() + ":" + bond.getStereo() + ":" + bond.isAromatic());
+        }
+        Collections.sort(stereo);
+        return stereo;
+    }
+
+    private static IReaction read(File file) throws Exception {
+        try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new FileReader(file))) {
+            IReaction reaction = reader.read(SilentChemObjectBuilder.getInstance().newReaction());
+            reaction.setID(file.getName());
+            return reaction;
+        }
+    }
+}
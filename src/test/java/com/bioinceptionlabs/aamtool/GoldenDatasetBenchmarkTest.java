@@ -5,9 +5,11 @@ package com.bioinceptionlabs.aamtool;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,6 +32,7 @@ import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
 import com.bioinceptionlabs.reactionblast.mapping.MappingKeyUtil;
 import com.bioinceptionlabs.reactionblast.tools.StandardizeReaction;
 import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MDLRXNV2000Reader;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MappedRXNFile;
 import com.bioinceptionlabs.testgroups.Benchmark;
 
 import static org.junit.Assert.assertTrue;
@@ -694,31 +697,28 @@ public class GoldenDatasetBenchmarkTest {
 
     // ---- RDF parsing ----
 
+    /**
+     * Records are read from the memory-mapped file as they are asked for,
+     * so the dataset is never held on the heap as a whole.
+     */
     private List<GoldReaction> parseRDF(URL rdfUrl) throws IOException {
-        List<GoldReaction> reactions = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(rdfUrl.openStream()))) {
-            String line;
-            StringBuilder rxnBlock = null;
-            boolean inReaction = false;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("$RFMT")) {
-                    if (rxnBlock != null && rxnBlock.length() > 0) {
-                        reactions.add(new GoldReaction(rxnBlock.toString()));
-                    }
-                    rxnBlock = new StringBuilder();
-                    inReaction = true;
-                    continue;
-                }
-                if (inReaction && rxnBlock != null) {
-                    if (line.startsWith("$DTYPE") || line.startsWith("$DATUM")) continue;
-                    rxnBlock.append(line).append("\n");
-                }
+        MappedRXNFile file;
+        try {
+            file = MappedRXNFile.open(Paths.get(rdfUrl.toURI()));
+        } catch (URISyntaxException e) {
+            throw new IOException("Not a file: " + rdfUrl, e);
+        }
+        return new AbstractList<GoldReaction>() {
+            @Override
+            public GoldReaction get(int index) {
+                return new GoldReaction(file.get(index).getRxnBlock());
             }
-            if (rxnBlock != null && rxnBlock.length() > 0) {
-                reactions.add(new GoldReaction(rxnBlock.toString()));
+
+            @Override
+            public int size() {
+                return file.size();
             }
-        }
-        return reactions;
+        };
     }
 
     private IReaction parseRXNBlock(String rxnBlock) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.aamtool;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappingServerTest {
+
+    private static final String ESTER = "CC(=O)O.OCC>>CC(=O)OCC.O";
+
+    private MappingServer server;
+    private HttpClient client;
+    private String base;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new MappingServer(new InetSocketAddress("127.0.0.1", 0), 1, 0, 60_000L);
+        server.start();
+        client = HttpClient.newHttpClient();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void mapsAnnotatesAndComparesOverHttp() throws Exception {
+        HttpResponse<String> mapped = get("/map?smiles=" + URLEncoder.encode(ESTER, StandardCharsets.UTF_8));
+        assertEquals(200, mapped.statusCode());
+        assertTrue(mapped.body(), mapped.body().contains("\"mapped\":true"));
+        assertTrue(mapped.body(), mapped.body().contains("\"complete\":true"));
+        assertFalse(mapped.body(), mapped.body().contains("signature"));
+
+        HttpResponse<String> annotated = client.send(HttpRequest.newBuilder(URI.create(base + "/annotate"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"smiles\": \"" + ESTER + "\", \"budgetMs\": 30000}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, annotated.statusCode());
+        assertTrue(annotated.body(), annotated.body().contains("\"signature\":\"FC["));
+
+        HttpResponse<String> compared = get("/compare?query=" + URLEncoder.encode(ESTER, StandardCharsets.UTF_8)
+                + "&target=" + URLEncoder.encode("CCO.OC(C)=O>>O.CCOC(C)=O", StandardCharsets.UTF_8));
+        assertEquals(200, compared.statusCode());
+        assertTrue(compared.body(), compared.body().startsWith("{\"similarity\":1.0,"));
+    }
+
+    @Test
+    public void badRequestsHealthAndMetrics() throws Exception {
+        HttpResponse<String> missing = get("/map");
+        assertEquals(400, missing.statusCode());
+        assertEquals("{\"error\":\"missing parameter: smiles\"}", missing.body());
+        assertEquals(400, get("/map?smiles=CCO").statusCode());
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode());
+        assertTrue(health.body(), health.body().startsWith("{\"status\":\"ok\",\"inFlight\":0,\"workers\":1"));
+
+        String metrics = get("/metrics").body();
+        assertTrue(metrics.contains("rdt_server_responses_total{endpoint=\"map\"} 2"));
+        assertTrue(metrics.contains("rdt_server_rejected_total 0"));
+        assertTrue(metrics.contains("rdt_stage_duration_seconds_bucket"));
+    }
+
+    @Test
+    public void fullQueueIsRefusedAtOnce() throws Exception {
+        server.admitted.acquire();
+        try {
+            HttpResponse<String> busy = get("/map?smiles=" + URLEncoder.encode(ESTER, StandardCharsets.UTF_8));
+            assertEquals(503, busy.statusCode());
+            assertEquals("1", busy.headers().firstValue("Retry-After").orElse(null));
+            assertTrue(get("/metrics").body().contains("rdt_server_rejected_total 1"));
+        } finally {
+            server.admitted.release();
+        }
+    }
+
+    @Test
+    public void deadlineExpiresWhileWaitingForAWorker() throws Exception {
+        MappingServer queued = new MappingServer(new InetSocketAddress("127.0.0.1", 0), 1, 1, 60_000L);
+        queued.start();
+        queued.running.acquire();
+        try {
+            long start = System.currentTimeMillis();
+            HttpResponse<String> late = client.send(HttpRequest.newBuilder(URI.create(
+                    "http://127.0.0.1:" + queued.getAddress().getPort() + "/map?budgetMs=300&smiles="
+                    + URLEncoder.encode(ESTER, StandardCharsets.UTF_8))).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(504, late.statusCode());
+            assertEquals("{\"error\":\"deadline expired while queued\"}", late.body());
+            assertTrue(System.currentTimeMillis() - start >= 300L);
+        } finally {
+            queued.running.release();
+            queued.stop(0);
+        }
+    }
+
+    @Test
+    public void flatJsonBodiesAreParsed() {
+        Map<String, String> fields = MappingServer.parseJsonObject(
+                " {\"smiles\":\"C\\\"C\\u0041\", \"budgetMs\": 500, \"generate2D\":false, \"x\":null} ");
+        assertEquals("C\"CA", fields.get("smiles"));
+        assertEquals("500", fields.get("budgetMs"));
+        assertEquals("false", fields.get("generate2D"));
+        assertFalse(fields.containsKey("x"));
+        assertTrue(MappingServer.parseJsonObject("{}").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nestedJsonIsRejected() {
+        MappingServer.parseJsonObject("{\"smiles\":{\"a\":1}}");
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
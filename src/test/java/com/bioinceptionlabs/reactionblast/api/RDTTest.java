@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RDTTest {
+
+    @After
+    public void clearCache() {
+        RDT.setResultCache(null);
+    }
+
+    @Test
+    public void warmUpMapsTheTrainingSetOnceAndBypassesTheCache() {
+        ReactionResultCache cache = new ReactionResultCache(100);
+        RDT.setResultCache(cache);
+
+        RDT.warmUp(RDT.WarmUpLevel.TABLES);
+        long parsed = MappingDiagnostics.latency(Stage.PARSE).count;
+        RDT.warmUp(RDT.WarmUpLevel.MAP);
+        long trained = MappingDiagnostics.latency(Stage.PARSE).count - parsed;
+        assertTrue("warm-up should map its training reactions, parsed " + trained, trained >= 9);
+
+        RDT.warmUp(RDT.WarmUpLevel.MAP);
+        RDT.warmUp(RDT.WarmUpLevel.TABLES);
+        assertEquals(parsed + trained, MappingDiagnostics.latency(Stage.PARSE).count);
+        assertEquals(0, cache.size());
+
+        assertTrue(RDT.map("CC(=O)OCC.O>>CC(=O)O.OCC").isMapped());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void mapAllMatchesSingleMapping() {
+        List<String> smiles = Arrays.asList(
+                "CC(=O)O.OCC>>CC(=O)OCC.O",
+                "CC>>CC",
+                "C=CC=C.C=C>>C1CC=CCC1",
+                "not a reaction",
+                "CC(=O)OCC.O>>CC(=O)O.OCC");
+        List<IndexedResult> results;
+        try (Stream<IndexedResult> stream = RDT.mapAll(smiles.stream(),
+                MappingOptions.defaults().withMaxInFlight(3))) {
+            results = stream.collect(Collectors.toList());
+        }
+        assertEquals(smiles.size(), results.size());
+        for (int i = 0; i < smiles.size(); i++) {
+            IndexedResult r = results.get(i);
+            assertEquals("Results must come back in input order", i, r.getIndex());
+            assertEquals(smiles.get(i), r.getInputSmiles());
+        }
+        assertFalse("Invalid SMILES should be reported, not thrown", results.get(3).isSuccess());
+        for (int i : new int[]{0, 1, 2, 4}) {
+            ReactionResult single = RDT.map(smiles.get(i));
+            assertTrue(results.get(i).isSuccess());
+            assertEquals("Bulk and single mapping must agree",
+                    single.getReactionSignature(), results.get(i).getResult().getReactionSignature());
+        }
+    }
+
+    @Test
+    public void mapAllUnorderedTagsEveryInput() {
+        List<String> smiles = Collections.nCopies(6, "CC(=O)O.OCC>>CC(=O)OCC.O");
+        Set<Long> seen = new TreeSet<>();
+        try (Stream<IndexedResult> stream = RDT.mapAll(smiles.stream(),
+                MappingOptions.defaults().withMaxInFlight(2).withOrdered(false))) {
+            stream.forEach(r -> {
+                assertTrue(r.isSuccess());
+                seen.add(r.getIndex());
+            });
+        }
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L), new ArrayList<>(seen));
+    }
+
+    @Test
+    public void exhaustedBudgetReturnsTheBestMappingSoFar() {
+        ReactionResult result = RDT.map("CC(=O)O.OCC>>CC(=O)OCC.O", true, true, 1L);
+        assertFalse(result.isComplete());
+    }
+
+    @Test
+    public void singleMappingKeepsItsDiagnosticsAndBulkMappingDropsThem() {
+        String smiles = "CC(=O)O.OCC>>CC(=O)OCC.O";
+        String hash = Integer.toHexString(smiles.hashCode());
+        try {
+            RDT.map(smiles);
+            assertTrue(MappingDiagnostics.snapshot("RDT_" + hash).stageNanos.containsKey(Stage.STANDARDISE));
+
+            try (Stream<IndexedResult> stream = RDT.mapAll(Stream.of(smiles))) {
+                assertTrue(stream.allMatch(IndexedResult::isSuccess));
+            }
+            assertTrue(MappingDiagnostics.snapshot("RDT_0_" + hash).stageNanos.isEmpty());
+        } finally {
+            MappingDiagnostics.resetReaction("RDT_" + hash);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.Atom;
+import org.openscience.cdk.silent.AtomContainerSet;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import com.bioinceptionlabs.reactionblast.mapping.MappingKeyUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReactionResultCacheTest {
+
+    private static final String ESTER = "CC(=O)O.OCC>>CC(=O)OCC.O";
+    private static final String ESTER_MAPPED =
+            "[CH3:1][C:2](=[O:3])[OH:4].[OH:5][CH2:6][CH3:7]>>[CH3:1][C:2](=[O:3])[O:5][CH2:6][CH3:7].[OH2:4]";
+
+    private static ReactionResult result(String smiles, String mapped) {
+        return new ReactionResult(smiles, mapped, 2, 0, 0,
+                new ArrayList<>(List.of("C-O:2")), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(List.of("[C]:1.0")), "MIN");
+    }
+
+    @Test
+    public void keyIgnoresMoleculeOrderAtomOrderAndAtomMaps() throws Exception {
+        String key = ReactionResultCache.canonicalKey(ESTER);
+        assertEquals(key, ReactionResultCache.canonicalKey("CCO.OC(C)=O>>O.CCOC(C)=O"));
+        assertEquals(key, ReactionResultCache.canonicalKey(ESTER_MAPPED));
+        assertNotEquals(key, ReactionResultCache.canonicalKey("CC(=O)O.OCC.OCC>>CC(=O)OCC.O"));
+        assertNotEquals(key, ReactionResultCache.canonicalKey("CC(=O)O.OCC>>O.CC(=O)OCC.O"));
+    }
+
+    @Test
+    public void stereoisomersDoNotShareAKey() throws Exception {
+        String trans = ReactionResultCache.canonicalKey("F/C=C/F>>FCCF");
+        assertNotEquals(trans, ReactionResultCache.canonicalKey("F/C=C\\F>>FCCF"));
+        assertEquals(trans, ReactionResultCache.canonicalKey("F\\C=C\\F>>FCCF"));
+        String alanine = ReactionResultCache.canonicalKey("C[C@H](N)C(=O)O>>CC(=O)C(=O)O");
+        assertNotEquals(alanine, ReactionResultCache.canonicalKey("C[C@@H](N)C(=O)O>>CC(=O)C(=O)O"));
+        assertEquals(alanine, ReactionResultCache.canonicalKey("OC(=O)[C@@H](N)C>>CC(=O)C(=O)O"));
+
+        AtomicInteger calls = new AtomicInteger();
+        ReactionResultCache cache = new ReactionResultCache(100);
+        Function<String, ReactionResult> mapper = smiles -> {
+            calls.incrementAndGet();
+            return result(smiles, smiles);
+        };
+        cache.map("C[C@H](N)C(=O)O>>CC(=O)C(=O)O", true, true, mapper);
+        cache.map("C[C@@H](N)C(=O)O>>CC(=O)C(=O)O", true, true, mapper);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void sameReactionIsMappedOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, ReactionResult> mapper = smiles -> {
+            calls.incrementAndGet();
+            return result(smiles, ESTER_MAPPED);
+        };
+        ReactionResultCache cache = new ReactionResultCache(100);
+        ReactionResult first = cache.map(ESTER, true, true, mapper);
+        ReactionResult again = cache.map(ESTER, true, true, mapper);
+        ReactionResult reordered = cache.map("CCO.OC(C)=O>>O.CCOC(C)=O", true, true, mapper);
+        assertEquals(1, calls.get());
+        assertEquals(first.getMappedSmiles(), again.getMappedSmiles());
+        assertEquals(first.getFormedCleavedBonds(), reordered.getFormedCleavedBonds());
+        assertEquals("CCO.OC(C)=O>>O.CCOC(C)=O", reordered.getInputSmiles());
+
+        cache.map(ESTER, false, true, mapper);
+        assertEquals(2, calls.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void truncatedResultsAreNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, ReactionResult> mapper = smiles -> {
+            calls.incrementAndGet();
+            return result(smiles, ESTER_MAPPED).truncated();
+        };
+        ReactionResultCache cache = new ReactionResultCache(100);
+        assertFalse(cache.map(ESTER, true, true, mapper).isComplete());
+        cache.map(ESTER, true, true, mapper);
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void atomMapsFollowTheCallersAtomOrder() {
+        ReactionResult cached = result(ESTER, ESTER_MAPPED);
+        ReactionResult projected = ReactionResultCache.project("CCO.OC(C)=O>>O.CCOC(C)=O", cached);
+        assertEquals("[CH3:7][CH2:6][OH:5].[OH:4][C:2]([CH3:1])=[O:3]>>[OH2:4].[CH3:7][CH2:6][O:5][C:2]([CH3:1])=[O:3]",
+                projected.getMappedSmiles());
+        assertSame(cached.getFormedCleavedBonds().get(0), projected.getFormedCleavedBonds().get(0));
+    }
+
+    @Test
+    public void resultsAreReadBackFromTheStore() throws Exception {
+        Path file = Files.createTempFile("rdt-results", ".store");
+        Files.delete(file);
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, ReactionResult> mapper = smiles -> {
+            calls.incrementAndGet();
+            return result(smiles, ESTER_MAPPED);
+        };
+        try {
+            try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+                new ReactionResultCache(100, store).map(ESTER, true, true, mapper);
+            }
+            try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+                ReactionResult stored = new ReactionResultCache(100, store)
+                        .map("CCO.OC(C)=O>>O.CCOC(C)=O", true, true, mapper);
+                assertEquals(1, calls.get());
+                assertEquals("CCO.OC(C)=O>>O.CCOC(C)=O", stored.getInputSmiles());
+                assertEquals(List.of("C-O:2"), stored.getFormedCleavedBonds());
+                /*
+                 cache records are kept apart from the reactions stored by
+                 input SMILES and their hash groups
+                 */
+                assertNull(store.get(ReactionResultCache.canonicalKey(ESTER), true, true));
+                assertEquals(0, store.getHashCount());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void componentsWithoutACanonicalKeyAreNotKeyed() throws Exception {
+        IAtomContainer molecule = SilentChemObjectBuilder.getInstance().newAtomContainer();
+        molecule.addAtom(new Atom("C"));
+        molecule.addAtom(new Atom("O"));
+        molecule.addBond(0, 1, IBond.Order.SINGLE);
+        IAtomContainerSet side = new AtomContainerSet();
+        side.addAtomContainer(molecule);
+        /*
+         unset hydrogen counts defeat both canonicalisers, leaving the
+         count fallback "2:1" that any two-atom one-bond component shares
+         */
+        assertFalse(MappingKeyUtil.isCanonicalStructureKey(MappingKeyUtil.computeStructureKey(molecule)));
+        try {
+            ReactionResultCache.side(side);
+            fail("expected a CDKException");
+        } catch (CDKException expected) {
+            assertTrue(expected.getMessage().contains("2:1"));
+        }
+        assertTrue(MappingKeyUtil.isCanonicalStructureKey("CCO"));
+    }
+}
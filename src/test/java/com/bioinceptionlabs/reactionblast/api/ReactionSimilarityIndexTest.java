@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReactionSimilarityIndexTest {
+
+    private static final String[] BONDS = {"C-C", "C-O", "C-N", "H-O", "C-H", "O-P", "C=O", "C=C"};
+
+    @Test
+    public void hitsMatchPairwiseSimilarity() {
+        Random random = new Random(7);
+        List<ReactionResult> reactions = new ArrayList<>();
+        ReactionSimilarityIndex index = new ReactionSimilarityIndex();
+        for (int i = 0; i < 300; i++) {
+            ReactionResult reaction = randomReaction(random);
+            reactions.add(reaction);
+            assertEquals(i, index.add("R" + i, reaction));
+        }
+        for (int q = 0; q < 25; q++) {
+            ReactionResult query = randomReaction(random);
+            for (double threshold : new double[]{0.0, 0.3, 0.5, 0.8, 1.0}) {
+                assertEquals(bruteForce(reactions, query, Integer.MAX_VALUE, threshold),
+                        keys(index.searchAbove(query, threshold)));
+            }
+            for (int k : new int[]{1, 5, 20}) {
+                assertEquals(bruteForce(reactions, query, k, 0.0), keys(index.search(query, k)));
+            }
+        }
+    }
+
+    @Test
+    public void unmappedAndEmptyReactions() {
+        ReactionSimilarityIndex index = new ReactionSimilarityIndex();
+        assertEquals(-1, index.add("unmapped", reaction(null)));
+        assertEquals(0, index.add("empty", reaction("")));
+        assertEquals(1, index.add("ester", reaction("", "C-O:1", "H-O:1")));
+
+        List<ReactionSimilarityIndex.Hit> hits = index.search(reaction(""), 5);
+        assertEquals(1, hits.size());
+        assertEquals("empty", hits.get(0).getKey());
+        assertEquals(1.0, hits.get(0).getScore(), 0.0);
+        assertTrue(index.search(reaction(null), 5).isEmpty());
+        assertTrue(index.search(reaction("", "N-N:1"), 5).isEmpty());
+        assertEquals(0.5, index.search(reaction("", "C-O:1"), 5).get(0).getScore(), 0.0);
+    }
+
+    @Test
+    public void savedIndexAnswersTheSameQueries() throws Exception {
+        Random random = new Random(11);
+        ReactionSimilarityIndex index = new ReactionSimilarityIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add("R" + i, randomReaction(random));
+        }
+        Path file = Files.createTempFile("rdt-index", ".bin");
+        try {
+            index.save(file);
+            ReactionSimilarityIndex loaded = ReactionSimilarityIndex.load(file);
+            assertEquals(index.size(), loaded.size());
+            assertEquals(index.getFeatureCount(), loaded.getFeatureCount());
+            for (int q = 0; q < 10; q++) {
+                ReactionResult query = randomReaction(random);
+                assertEquals(keys(index.search(query, 10)), keys(loaded.search(query, 10)));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static ReactionResult randomReaction(Random random) {
+        List<String> formedCleaved = new ArrayList<>();
+        List<String> orderChanges = new ArrayList<>();
+        for (String bond : BONDS) {
+            if (random.nextInt(3) == 0) {
+                formedCleaved.add(bond + ":" + (1 + random.nextInt(2)));
+            }
+            if (random.nextInt(5) == 0) {
+                orderChanges.add(bond + ":1");
+            }
+        }
+        return new ReactionResult("in", "mapped", formedCleaved.size(), orderChanges.size(), 0,
+                formedCleaved, orderChanges, new ArrayList<>(), new ArrayList<>(), "MIN");
+    }
+
+    private static ReactionResult reaction(String mapped, String... formedCleaved) {
+        return new ReactionResult("in", mapped, formedCleaved.length, 0, 0,
+                new ArrayList<>(Arrays.asList(formedCleaved)), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(), "MIN");
+    }
+
+    private static List<String> bruteForce(List<ReactionResult> reactions, ReactionResult query,
+            int k, double threshold) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < reactions.size(); i++) {
+            double score = query.similarity(reactions.get(i));
+            if (score > 0 && score >= threshold) {
+                order.add(i);
+            }
+        }
+        Collections.sort(order, (a, b) -> {
+            int byScore = Double.compare(query.similarity(reactions.get(b)), query.similarity(reactions.get(a)));
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        });
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, order.size()); i++) {
+            keys.add("R" + order.get(i) + "=" + query.similarity(reactions.get(order.get(i))));
+        }
+        return keys;
+    }
+
+    private static List<String> keys(List<ReactionSimilarityIndex.Hit> hits) {
+        List<String> keys = new ArrayList<>();
+        for (ReactionSimilarityIndex.Hit hit : hits) {
+            keys.add(hit.toString());
+        }
+        return keys;
+    }
+}
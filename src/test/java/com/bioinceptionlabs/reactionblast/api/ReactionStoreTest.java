@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.api;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReactionStoreTest {
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("rdt-reactions", ".store");
+        Files.delete(file);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static ReactionResult result(String smiles, String... formedCleaved) {
+        return new ReactionResult(smiles, "[CH3:1][OH:2]>>[CH3:1][OH:2]", formedCleaved.length, 0, 0,
+                new ArrayList<>(Arrays.asList(formedCleaved)), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(List.of("[C]:1.0")), "MIN");
+    }
+
+    @Test
+    public void reactionsAreFoundBySmilesAndGroupedByHash() throws IOException {
+        ReactionResult ester = result("CC(=O)O.OCC>>CC(=O)OCC.O", "C-O:2", "H-O:2");
+        ReactionResult sameChanges = result("CC(=O)O.OC>>CC(=O)OC.O", "C-O:2", "H-O:2");
+        ReactionResult other = result("CC=C>>CCC", "C-H:2");
+        try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+            assertTrue(store.put("R1", ester, true, true));
+            assertTrue(store.put("R2", sameChanges, true, true));
+            assertTrue(store.put("R3", other, true, true));
+            assertFalse(store.put("R1-again", ester, true, true));
+            assertTrue(store.put("R1-flat", ester, false, true));
+            assertEquals(List.of("R1", "R2", "R1-flat"), store.getReactionIds(ester.getCanonicalHash()));
+        }
+        try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+            assertEquals(4, store.size());
+            assertEquals(2, store.getHashCount());
+            assertTrue(store.containsHash(other.getCanonicalHash()));
+            assertEquals(List.of("R1", "R2", "R1-flat"), store.getReactionIds(ester.getCanonicalHash()));
+            assertTrue(store.getRecords(ester.getCanonicalHash()).get(0).isGenerate2D());
+            assertFalse(store.getRecords(ester.getCanonicalHash()).get(2).isGenerate2D());
+
+            ReactionResult stored = store.get(ester.getInputSmiles(), true, true);
+            assertEquals(ester.getMappedSmiles(), stored.getMappedSmiles());
+            assertEquals(ester.getFormedCleavedBonds(), stored.getFormedCleavedBonds());
+            assertEquals(ester.getReactionCentreFingerprint(), stored.getReactionCentreFingerprint());
+            assertEquals(ester.getCanonicalHash(), stored.getCanonicalHash());
+            assertEquals(ester.getAlgorithm(), stored.getAlgorithm());
+            assertNull(store.get(ester.getInputSmiles(), true, false));
+            assertTrue(store.getReactionIds("0000").isEmpty());
+        }
+    }
+
+    @Test
+    public void unmappedResultsAreNotStored() throws IOException {
+        try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+            ReactionResult unmapped = new ReactionResult("C>>C", null, 0, 0, 0,
+                    new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), "NONE");
+            assertFalse(store.put("R0", unmapped, true, true));
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void tornRecordIsDiscardedOnOpen() throws IOException {
+        try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+            store.put("R1", result("CO>>CO", "C-O:1"), true, true);
+            store.put("R2", result("CCO>>CCO", "C-C:1"), true, true);
+        }
+        long intact;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            intact = raf.length();
+            raf.setLength(intact - 3);
+        }
+        try (ReactionStore store = ReactionStore.open(file, 1 << 20)) {
+            assertEquals(1, store.size());
+            assertTrue(store.put("R2", result("CCO>>CCO", "C-C:1"), true, true));
+        }
+        assertEquals(intact, Files.size(file));
+    }
+
+    @Test
+    public void writesStopAtTheSizeCap() throws IOException {
+        try (ReactionStore store = ReactionStore.open(file, 300)) {
+            assertTrue(store.put("R1", result("CO>>CO", "C-O:1"), true, true));
+            assertFalse(store.put("R2", result("CCCCCCCCCCO>>CCCCCCCCCCO", "C-C:1", "C-O:1", "H-O:1"), true, true));
+            assertTrue(store.isFull());
+        }
+        assertTrue(Files.size(file) <= 300);
+    }
+
+    @Test
+    public void oneFileCanBeOpenedTwiceAndWrittenConcurrently() throws Exception {
+        try (ReactionStore first = ReactionStore.open(file, 1 << 22);
+                ReactionStore second = ReactionStore.open(file, 1 << 22)) {
+            List<Callable<Integer>> writers = new ArrayList<>();
+            for (ReactionStore store : List.of(first, second)) {
+                writers.add(() -> {
+                    int added = 0;
+                    for (int i = 0; i < 200; i++) {
+                        String smiles = "C" + "C".repeat(i) + "O>>C" + "C".repeat(i) + "O"
+                                + (store == first ? "" : ".O");
+                        if (store.put("R" + i, result(smiles, "C-O:" + i), true, true)) {
+                            added++;
+                        }
+                        assertEquals(smiles, store.get(smiles, true, true).getInputSmiles());
+                    }
+                    return added;
+                });
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                for (Future<Integer> added : executor.invokeAll(writers)) {
+                    assertEquals(Integer.valueOf(200), added.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        try (ReactionStore store = ReactionStore.open(file, 1 << 22)) {
+            assertEquals(400, store.size());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.fingerprints;
+
+import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter.Feature;
+import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter.FeatureDictionary;
+import com.bioinceptionlabs.reactionblast.fingerprints.PatternFingerprinter.IFeature;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PatternFingerprinterTest {
+
+    @Test
+    public void bucketMatchesTheSeededRandom() {
+        Random hashes = new Random(42);
+        int[] sizes = {1, 2, 3, 7, 512, 1000, 1024, 4096, 1 << 30, Integer.MAX_VALUE};
+        for (int k = 0; k < 2000; k++) {
+            int hash = hashes.nextInt();
+            for (int size : sizes) {
+                assertEquals(new Random(hash).nextInt(size), PatternFingerprinter.bucket(hash, size));
+            }
+        }
+    }
+
+    @Test
+    public void weightsMergeAndFeaturesStayInPatternOrder() throws Exception {
+        PatternFingerprinter fp = new PatternFingerprinter(64);
+        fp.add(new Feature("C-O", 1.0));
+        fp.add(new Feature("C=C", 2.0));
+        fp.add(new Feature("C-O", 0.5));
+
+        assertEquals(2, fp.getFeatureCount());
+        assertEquals("C-O", fp.getFeature(0).getPattern());
+        assertEquals("C=C", fp.getFeature(1).getPattern());
+        assertNull(fp.getFeature(2));
+        assertEquals(1.5, fp.getWeight("C-O"), 0.0);
+        assertEquals(-1.0, fp.getWeight("N#N"), 0.0);
+        assertEquals(-1.0, fp.getWeight(2), 0.0);
+        assertArrayEquals(new double[]{1.5, 2.0}, fp.getValuesAsArray(), 0.0);
+        assertTrue(fp.hasFeature(new Feature("C=C")));
+        assertFalse(fp.hasFeature(new Feature("C#C")));
+
+        List<IFeature> features = new ArrayList<>();
+        features.add(new Feature("C-N", 3.0));
+        features.add(new Feature("C-N", 4.0));
+        PatternFingerprinter merged = new PatternFingerprinter(features, 64);
+        assertEquals(5.0, merged.getWeight("C-N"), 0.0);
+    }
+
+    @Test
+    public void hashedFingerprintFollowsTheWeightsAndIsRecomputedOnChange() throws Exception {
+        PatternFingerprinter fp = new PatternFingerprinter(128);
+        fp.add(new Feature("C-C", 1.0));
+        fp.add(new Feature("C%C", 2.0));
+
+        double[] expected = new double[128];
+        for (String pattern : Arrays.asList("C%C", "C-C")) {
+            Feature feature = new Feature(pattern);
+            expected[new Random(feature.hashCode()).nextInt(128)] += fp.getWeight(pattern);
+        }
+        double[] hashed = fp.getWeightedHashedFingerPrint();
+        assertArrayEquals(expected, hashed, 0.0);
+        hashed[0] = 99.;
+        assertArrayEquals(expected, fp.getWeightedHashedFingerPrint(), 0.0);
+
+        BitSet bits = fp.getHashedFingerPrint();
+        fp.add(new Feature("O=O", 1.0));
+        int bucket = new Random(new Feature("O=O").hashCode()).nextInt(128);
+        assertTrue(fp.getHashedFingerPrint().get(bucket));
+        assertEquals(bits.get(bucket), expected[bucket] > 0.);
+    }
+
+    @Test
+    public void equalityAndSerialisationUseThePatterns() throws Exception {
+        PatternFingerprinter a = new PatternFingerprinter(64);
+        a.add(new Feature("C-H", 2.0));
+        a.add(new Feature("C-C", 1.0));
+        PatternFingerprinter b = new PatternFingerprinter(64);
+        b.add(new Feature("C-C", 5.0));
+        b.add(new Feature("C-H", 1.0));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        b.add(new Feature("C-N", 1.0));
+        assertNotEquals(a, b);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(a);
+        }
+        PatternFingerprinter copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (PatternFingerprinter) in.readObject();
+        }
+        assertEquals(a, copy);
+        assertArrayEquals(a.getWeightedHashedFingerPrint(), copy.getWeightedHashedFingerPrint(), 0.0);
+    }
+
+    @Test
+    public void fullDictionaryIsRetiredAndFingerprintsMoveOn() throws Exception {
+        FeatureDictionary.startNew(4);
+        try {
+            FeatureDictionary first = FeatureDictionary.current();
+            PatternFingerprinter before = new PatternFingerprinter(64);
+            for (String pattern : new String[]{"A", "B", "C", "D"}) {
+                before.add(new Feature(pattern, 2.0));
+            }
+            assertTrue(first.isRetired());
+            assertNotSame(first, FeatureDictionary.current());
+
+            PatternFingerprinter after = new PatternFingerprinter(64);
+            for (String pattern : new String[]{"D", "C", "B", "A"}) {
+                after.add(new Feature(pattern, 1.0));
+            }
+            assertEquals(before, after);
+            assertEquals(before.hashCode(), after.hashCode());
+            after.add(before);
+            assertEquals(3.0, after.getWeight("A"), 0.0);
+
+            before.add(new Feature("E", 1.0));
+            assertEquals(4, first.size());
+            assertEquals(1.0, before.getWeight("E"), 0.0);
+            assertEquals(2.0, before.getWeight("A"), 0.0);
+            assertTrue(before.hasFeature(new Feature("D")));
+        } finally {
+            FeatureDictionary.startNew(FeatureDictionary.MAX_PATTERNS);
+        }
+    }
+
+    @Test
+    public void concurrentReadersSeeCompleteDerivedViews() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 50; round++) {
+                PatternFingerprinter fp = new PatternFingerprinter(256);
+                for (int i = 0; i < 100; i++) {
+                    fp.add(new Feature("P" + i, 1.0 + i % 3));
+                }
+                double[] expectedWeights = fp.clone().getWeightedHashedFingerPrint();
+                List<Callable<double[]>> readers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    readers.add(() -> {
+                        assertEquals(100, fp.getFeatures().size());
+                        assertEquals(fp.getHashedFingerPrint().cardinality(),
+                                Arrays.stream(fp.getWeightedHashedFingerPrint()).filter(w -> w > 0.).count());
+                        return fp.getWeightedHashedFingerPrint();
+                    });
+                }
+                for (Future<double[]> read : pool.invokeAll(readers)) {
+                    assertArrayEquals(expectedWeights, read.get(), 0.0);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -178,6 +178,20 @@ public class GraphMatcherCompatibilityTest {
         assertEquals(new HashSet<>(Arrays.asList("201", "202", "203")), mappedTargetIds);
     }
 
+    @Test
+    public void mcsUpperBoundCountsSharedBondedAtoms() throws Exception {
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IAtomContainer acetate = smilesParser.parseSmiles("CC(=O)[O-].[Na+]");
+        IAtomContainer ethanol = smilesParser.parseSmiles("CCO");
+        IAtomContainer sodium = smilesParser.parseSmiles("[Na+].[Cl-]");
+
+        assertEquals(3, GraphMatcher.mcsUpperBound(acetate, ethanol));
+        assertEquals(3, GraphMatcher.mcsUpperBound(ethanol, acetate));
+        assertEquals(1, GraphMatcher.mcsUpperBound(acetate, sodium));
+        assertEquals(0, GraphMatcher.mcsUpperBound(ethanol, sodium));
+        assertEquals(0, GraphMatcher.mcsUpperBound(ethanol, smilesParser.parseSmiles("P")));
+    }
+
     private void relabelAtoms(IAtomContainer container, int startId) {
         int atomId = startId;
         for (IAtom atom : container.atoms()) {
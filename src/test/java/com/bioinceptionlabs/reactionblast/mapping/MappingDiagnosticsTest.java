@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Counter;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.LatencySnapshot;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.MetricsSink;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.ReactionSnapshot;
+import com.bioinceptionlabs.reactionblast.mapping.MappingDiagnostics.Stage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappingDiagnosticsTest {
+
+    @Before
+    public void clear() {
+        MappingDiagnostics.clearMetrics();
+    }
+
+    @Test
+    public void stageLatenciesAreBucketed() {
+        MappingDiagnostics.recordStage(Stage.MCS, null, 3_000_000L);
+        MappingDiagnostics.recordStage(Stage.MCS, null, 4_000_000L);
+        MappingDiagnostics.recordStage(Stage.MCS, null, 2_000_000_000L);
+
+        LatencySnapshot mcs = MappingDiagnostics.latency(Stage.MCS);
+        assertEquals(3L, mcs.count);
+        assertEquals(2_007_000_000L, mcs.sumNanos);
+        assertEquals(5.0, mcs.quantileMillis(0.5), 0.0);
+        assertEquals(2500.0, mcs.quantileMillis(1.0), 0.0);
+        assertEquals(0L, MappingDiagnostics.latency(Stage.SCORING).count);
+    }
+
+    @Test
+    public void prometheusTextCarriesHistogramsAndCounters() {
+        MappingDiagnostics.recordStage(Stage.BOND_CHANGES, null, 3_000_000L);
+        MappingDiagnostics.recordStage(Stage.BOND_CHANGES, null, 70_000_000_000L);
+        MappingDiagnostics.recordMcsCacheHit("DIAG_PROM", "MIN", 0);
+        MappingDiagnostics.snapshot("DIAG_PROM");
+
+        String text = MappingDiagnostics.prometheusText();
+        assertTrue(text.contains("# TYPE rdt_stage_duration_seconds histogram\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_bucket{stage=\"bond_changes\",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_bucket{stage=\"bond_changes\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_bucket{stage=\"bond_changes\",le=\"60.0\"} 1\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_bucket{stage=\"bond_changes\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_count{stage=\"bond_changes\"} 2\n"));
+        assertTrue(text.contains("rdt_stage_duration_seconds_count{stage=\"parse\"} 0\n"));
+        assertTrue(text.contains("# TYPE rdt_mcs_cache_hits_total counter\n"));
+        assertTrue(text.contains("\nrdt_mcs_cache_hits_total 1\n"));
+    }
+
+    @Test
+    public void timedStagesReachSinksAndTheReactionSnapshot() {
+        List<Stage> seen = new ArrayList<>();
+        List<Counter> counted = new ArrayList<>();
+        MetricsSink sink = new MetricsSink() {
+            @Override
+            public void recordLatency(Stage stage, long elapsedNanos) {
+                seen.add(stage);
+            }
+
+            @Override
+            public void incrementCounter(Counter counter, long delta) {
+                counted.add(counter);
+            }
+        };
+        MappingDiagnostics.addSink(sink);
+        try {
+            try (MappingDiagnostics.StageTimer timer = MappingDiagnostics.start(Stage.SCORING, "DIAG_TIMER")) {
+                assertTrue(timer.stop() >= 0L);
+            }
+            MappingDiagnostics.recordQuickMappingCall("DIAG_TIMER", "MIN");
+        } finally {
+            MappingDiagnostics.removeSink(sink);
+        }
+        MappingDiagnostics.recordStage(Stage.SCORING, null, 1L);
+
+        assertEquals(List.of(Stage.SCORING), seen);
+        assertEquals(List.of(Counter.QUICK_MAPPINGS), counted);
+        assertEquals(2L, MappingDiagnostics.latency(Stage.SCORING).count);
+        ReactionSnapshot snapshot = MappingDiagnostics.snapshot("DIAG_TIMER");
+        assertTrue(snapshot.stageNanos.containsKey(Stage.SCORING));
+        assertFalse(snapshot.stageNanos.containsKey(Stage.MCS));
+    }
+
+    @Test
+    public void perReactionRetentionIsBounded() {
+        int bound = Integer.getInteger(MappingDiagnostics.MAX_REACTIONS_PROPERTY, 1024);
+        for (int i = 0; i < bound + 100; i++) {
+            MappingDiagnostics.recordMappingPhase("DIAG_BOUND_" + i, 1L);
+        }
+        assertTrue(MappingDiagnostics.retainedReactions() <= bound);
+        assertTrue(MappingDiagnostics.count(Counter.EVICTED_REACTIONS) >= 100L);
+        assertEquals(0L, MappingDiagnostics.snapshot("DIAG_BOUND_0").mappingPhaseMillis);
+        assertEquals(1L, MappingDiagnostics.snapshot("DIAG_BOUND_" + (bound + 99)).mappingPhaseMillis);
+        for (int i = 0; i < bound + 100; i++) {
+            MappingDiagnostics.resetReaction("DIAG_BOUND_" + i);
+        }
+    }
+
+    @Test
+    public void finishedReactionsDoNotCrowdOutRunningOnes() {
+        int bound = Integer.getInteger(MappingDiagnostics.MAX_REACTIONS_PROPERTY, 1024);
+        MappingDiagnostics.recordMappingPhase("DIAG_RUNNING", 7L);
+        for (int i = 0; i < 2 * bound; i++) {
+            MappingDiagnostics.recordMappingPhase("DIAG_DONE_" + i, 1L);
+            if (i % 2 == 0) {
+                MappingDiagnostics.resetReaction("DIAG_DONE_" + i);
+            } else {
+                MappingDiagnostics.snapshot("DIAG_DONE_" + i);
+            }
+        }
+        assertEquals(7L, MappingDiagnostics.snapshot("DIAG_RUNNING").mappingPhaseMillis);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappingExecutionTest {
+
+    @After
+    public void restoreDefaults() {
+        MappingExecution.setMode(MappingExecution.Mode.FORK_JOIN);
+        MappingExecution.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void nestedTasksRunOnSingleWorkerWithoutDeadlock() throws Exception {
+        MappingExecution.setParallelism(1);
+        List<Callable<Integer>> outer = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int row = i;
+            outer.add(() -> {
+                assertTrue(MappingExecution.inMappingPool());
+                List<Callable<Integer>> inner = new ArrayList<>();
+                for (int j = 0; j < 4; j++) {
+                    final int col = j;
+                    inner.add(() -> row * 10 + col);
+                }
+                int sum = 0;
+                for (Future<Integer> f : MappingExecution.invokeAll(inner, 5_000L, 5_000L)) {
+                    sum += f.get();
+                }
+                return sum;
+            });
+        }
+        List<Integer> sums = new ArrayList<>();
+        for (Future<Integer> f : MappingExecution.invokeAll(outer, 10_000L, 10_000L)) {
+            sums.add(f.get());
+        }
+        assertEquals(Arrays.asList(6, 46, 86), sums);
+    }
+
+    @Test
+    public void nestedTasksRunInListOrderAndTheTailIsCut() throws Exception {
+        MappingExecution.setParallelism(1);
+        List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+        List<Callable<List<Future<Integer>>>> outer = Arrays.asList(() -> {
+            List<Callable<Integer>> inner = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                final int rank = i;
+                inner.add(() -> {
+                    started.add(rank);
+                    Thread.sleep(150L);
+                    return rank;
+                });
+            }
+            return MappingExecution.invokeAll(inner, 250L, Long.MAX_VALUE);
+        });
+        List<Future<Integer>> inner = MappingExecution.invokeAll(outer, 10_000L, 10_000L).get(0).get();
+        assertEquals(Integer.valueOf(0), inner.get(0).get());
+        assertTrue(inner.get(4).isCancelled());
+        for (int i = 0; i < started.size(); i++) {
+            assertEquals("tasks must start in list order: " + started, Integer.valueOf(i), started.get(i));
+        }
+    }
+
+    @Test
+    public void pendingTasksAreCancelledWhenBudgetRunsOut() throws Exception {
+        MappingExecution.setParallelism(1);
+        List<Callable<Integer>> tasks = Arrays.asList(
+                () -> {
+                    Thread.sleep(2_000L);
+                    return 1;
+                },
+                () -> 2);
+        List<Future<Integer>> futures = MappingExecution.invokeAll(tasks, 200L, 200L);
+        assertEquals(2, futures.size());
+        assertTrue(futures.get(0).isCancelled());
+        assertTrue(futures.get(1).isDone());
+        assertFalse(MappingExecution.inMappingPool());
+    }
+
+    @Test
+    public void abandonedForkJoinTasksAreToldToStop() throws Exception {
+        MappingExecution.setParallelism(2);
+        CountDownLatch stopped = new CountDownLatch(1);
+        List<Callable<Integer>> tasks = Arrays.asList(() -> {
+            while (!MappingExecution.isCancelled()) {
+                Thread.onSpinWait();
+            }
+            assertEquals(1L, MappingExecution.boundedTimeout(60_000L));
+            stopped.countDown();
+            return 1;
+        });
+        List<Future<Integer>> futures = MappingExecution.invokeAll(tasks, Long.MAX_VALUE, 200L);
+        assertTrue(futures.get(0).isCancelled());
+        assertTrue("the running task must see the cancellation", stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void workersOfAReplacedPoolStillCountAsNested() throws Exception {
+        MappingExecution.setParallelism(2);
+        List<Callable<Boolean>> tasks = Arrays.asList(() -> {
+            MappingExecution.setParallelism(3);
+            return MappingExecution.inMappingPool();
+        });
+        assertTrue(MappingExecution.invokeAll(tasks, 10_000L, 10_000L).get(0).get());
+    }
+
+    @Test
+    public void virtualThreadModeInterruptsTasksPastTheDeadline() throws Exception {
+        MappingExecution.setMode(MappingExecution.Mode.VIRTUAL_THREADS);
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        List<Callable<Integer>> tasks = Arrays.asList(
+                () -> {
+                    started.set(true);
+                    try {
+                        Thread.sleep(10_000L);
+                    } catch (InterruptedException ex) {
+                        interrupted.set(true);
+                    }
+                    return 1;
+                },
+                () -> 2);
+        long start = System.currentTimeMillis();
+        List<Future<Integer>> futures = MappingExecution.invokeAll(tasks, 1_000L, Long.MAX_VALUE);
+        assertTrue(System.currentTimeMillis() - start < 5_000L);
+        assertTrue(futures.get(0).isCancelled());
+        assertEquals(Integer.valueOf(2), futures.get(1).get());
+        assertTrue("cancellation must reach the running task", !started.get() || interrupted.get());
+    }
+
+    @Test
+    public void virtualThreadScopeAbandonsTasksThatIgnoreCancellation() throws Exception {
+        MappingExecution.setMode(MappingExecution.Mode.VIRTUAL_THREADS);
+        AtomicBoolean release = new AtomicBoolean();
+        List<Callable<Integer>> tasks = Arrays.asList(() -> {
+            while (!release.get()) {
+                Thread.onSpinWait();
+            }
+            return 1;
+        });
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<Integer>> futures = MappingExecution.invokeAll(tasks, 200L, Long.MAX_VALUE);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("waited " + elapsed + "ms", elapsed < 200L + MappingExecution.STOP_GRACE_MS + 2_000L);
+            assertTrue(futures.get(0).isCancelled());
+        } finally {
+            release.set(true);
+        }
+    }
+
+    @Test
+    public void nestedCallsInheritTheDeadline() throws Exception {
+        List<Callable<Long>> outer = Arrays.asList(() -> {
+            List<Callable<Long>> inner = Arrays.asList(
+                    () -> MappingExecution.boundedTimeout(60_000L));
+            return MappingExecution.invokeAll(inner, Long.MAX_VALUE, Long.MAX_VALUE).get(0).get();
+        });
+        long bounded = MappingExecution.invokeAll(outer, 1_000L, Long.MAX_VALUE).get(0).get();
+        assertTrue("inner search timeout must respect the outer budget, got " + bounded,
+                bounded <= 1_000L);
+        assertEquals(60_000L, MappingExecution.boundedTimeout(60_000L));
+    }
+
+    @Test
+    public void budgetIsSharedAndSplitBelowTheCaller() throws Exception {
+        MappingExecution.Outcome<long[]> outcome = MappingExecution.callWithBudget(1_000L, () -> {
+            List<Callable<Long>> inner = Arrays.asList(
+                    () -> MappingExecution.boundedTimeout(60_000L, 0.25));
+            long share = MappingExecution.invokeAll(inner, Long.MAX_VALUE, Long.MAX_VALUE).get(0).get();
+            return new long[]{MappingExecution.boundedTimeout(60_000L), share};
+        });
+        assertTrue(outcome.isComplete());
+        assertTrue(outcome.getValue()[0] <= 1_000L);
+        assertTrue(outcome.getValue()[1] <= 250L);
+        assertEquals(60_000L, MappingExecution.boundedTimeout(60_000L, 0.25));
+    }
+
+    @Test
+    public void outcomeReportsWorkCutShortByTheBudget() throws Exception {
+        MappingExecution.setParallelism(2);
+        MappingExecution.Outcome<Integer> outcome = MappingExecution.callWithBudget(200L, () -> {
+            List<Callable<Integer>> tasks = Arrays.asList(
+                    () -> {
+                        Thread.sleep(2_000L);
+                        return 1;
+                    },
+                    () -> 2);
+            return MappingExecution.invokeAll(tasks, Long.MAX_VALUE, Long.MAX_VALUE).get(1).get();
+        });
+        assertEquals(Integer.valueOf(2), outcome.getValue());
+        assertFalse(outcome.isComplete());
+
+        assertTrue(MappingExecution.callWithBudget(Long.MAX_VALUE, () -> 1).isComplete());
+        assertFalse(MappingExecution.callWithBudget(Long.MAX_VALUE, () -> {
+            MappingExecution.markTruncated();
+            return 1;
+        }).isComplete());
+    }
+
+    @Test
+    public void onlySearchesClampedByTheBudgetCountAsCut() throws Exception {
+        long started = System.currentTimeMillis() - 50L;
+        assertTrue(MappingExecution.callWithBudget(Long.MAX_VALUE,
+                () -> MappingExecution.recordSearch(started, 50L, 50L)).isComplete());
+        MappingExecution.Outcome<Boolean> cut = MappingExecution.callWithBudget(Long.MAX_VALUE,
+                () -> MappingExecution.recordSearch(started, 5_000L, 50L));
+        assertTrue(cut.getValue());
+        assertFalse(cut.isComplete());
+        assertFalse(MappingExecution.callWithBudget(Long.MAX_VALUE,
+                () -> MappingExecution.recordSearch(System.currentTimeMillis(), 5_000L, 1_000L)).getValue());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.util.BitSet;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MappingKeyUtilTest {
+
+    private final SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+    @Test
+    public void copiesShareOneMemoisedKey() throws Exception {
+        IAtomContainer acetate = smilesParser.parseSmiles("CC(=O)[O-]");
+        IAtomContainer copy = acetate.clone();
+        assertEquals(MappingKeyUtil.graphSignature(acetate), MappingKeyUtil.graphSignature(copy));
+        assertSame(MappingKeyUtil.computeStructureKey(acetate), MappingKeyUtil.computeStructureKey(copy));
+    }
+
+    @Test
+    public void changedMoleculeGetsANewKey() throws Exception {
+        IAtomContainer molecule = smilesParser.parseSmiles("CC(=O)[O-]");
+        String before = MappingKeyUtil.computeStructureKey(molecule);
+        molecule.getAtom(3).setFormalCharge(0);
+        molecule.getAtom(3).setImplicitHydrogenCount(1);
+        String after = MappingKeyUtil.computeStructureKey(molecule);
+        assertNotEquals(before, after);
+        assertEquals(MappingKeyUtil.computeStructureKey(smilesParser.parseSmiles("CC(=O)O")), after);
+    }
+
+    @Test
+    public void reactionContainerKeyIsInvalidatedWhenMarkedModified() throws Exception {
+        ReactionContainer container = new ReactionContainer();
+        IAtomContainer ethanol = smilesParser.parseSmiles("CCO");
+        container.putEduct(0, ethanol);
+        String first = container.getEductStructureKey(0);
+        assertSame(first, container.getEductStructureKey(0));
+
+        ethanol.removeAtom(ethanol.getAtom(2));
+        container.setEductModified(0, false);
+        assertSame("unflagged changes keep the memo", first, container.getEductStructureKey(0));
+
+        container.setEductModified(0, true);
+        assertNotEquals(first, container.getEductStructureKey(0));
+        assertEquals(MappingKeyUtil.computeStructureKey(ethanol.clone()), container.getEductStructureKey(0));
+    }
+
+    @Test
+    public void fingerprintMemoHandsOutCopies() throws Exception {
+        IAtomContainer phenol = smilesParser.parseSmiles("c1ccccc1O");
+        BitSet first = MappingKeyUtil.fingerprint(phenol);
+        BitSet second = MappingKeyUtil.fingerprint(phenol.clone());
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        first.clear();
+        assertEquals(second, MappingKeyUtil.fingerprint(phenol));
+    }
+
+    @Test
+    public void aromaticityIsPerceivedOnKekuleCopies() throws Exception {
+        IAtomContainer aromatic = smilesParser.parseSmiles("c1ccccc1");
+        MappingKeyUtil.applyAromaticity(aromatic);
+        IAtomContainer kekule = smilesParser.parseSmiles("C1=CC=CC=C1");
+        assertFalse(kekule.getAtom(0).isAromatic());
+        MappingKeyUtil.applyAromaticity(kekule);
+        assertTrue(kekule.getAtom(0).isAromatic());
+        assertEquals(1, MappingKeyUtil.ringCount(kekule));
+    }
+
+    @Test
+    public void preparedReactionLeavesTheReferenceUntouched() throws Exception {
+        IReaction reaction = smilesParser.parseReactionSmiles("OCC1=CC=CC=C1>>O=CC1=CC=CC=C1");
+        reaction.setID("R1");
+        IAtomContainer reactant = reaction.getReactants().getAtomContainer(0);
+        String before = MappingKeyUtil.graphSignature(reactant);
+
+        IReaction prepared = Reactor.PreparedReaction.prepare(reaction).getReaction();
+        assertEquals(before, MappingKeyUtil.graphSignature(reactant));
+        assertEquals("R1", prepared.getID());
+        assertEquals(1, prepared.getReactantCount());
+        assertEquals(1, prepared.getProductCount());
+        IAtomContainer copy = prepared.getReactants().getAtomContainer(0);
+        assertNotSame(reactant, copy);
+        assertEquals(MappingKeyUtil.computeStructureKey(reactant),
+                MappingKeyUtil.computeStructureKey(copy));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PersistentMCSCacheTest {
+
+    private static final String ATP_ADP = "ATP>>ADP|RINGS|1111";
+    private static final String NAD_NADH = "NAD>>NADH|MIN|1010";
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("rdt-mcs", ".cache");
+        Files.delete(file);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static PersistentMCSCache.Entry entry(int size) {
+        int[] query = new int[size];
+        int[] target = new int[size];
+        for (int i = 0; i < size; i++) {
+            query[i] = i;
+            target[i] = size - 1 - i;
+        }
+        return new PersistentMCSCache.Entry(11, 22, query, target, 1.5, 3, 2);
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws IOException {
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            cache.put(ATP_ADP, entry(4));
+            assertNotNull(cache.get(ATP_ADP));
+        }
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertNull(cache.get(NAD_NADH));
+            PersistentMCSCache.Entry stored = cache.get(ATP_ADP);
+            assertEquals(4, stored.size());
+            assertEquals(11, stored.getQuerySignature());
+            assertEquals(22, stored.getTargetSignature());
+            assertEquals(3, stored.getQueryIndex(3));
+            assertEquals(0, stored.getTargetIndex(3));
+            assertEquals(1.5, stored.getEnergy(), 0.0);
+            assertEquals(3, stored.getFragmentSize());
+            assertEquals(2, stored.getStereoScore());
+        }
+    }
+
+    @Test
+    public void writesStopAtTheSizeCap() throws IOException {
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 100)) {
+            cache.put(ATP_ADP, entry(2));
+            cache.put(NAD_NADH, entry(20));
+            assertTrue(cache.isFull());
+        }
+        assertTrue(Files.size(file) <= 100);
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 100)) {
+            assertNotNull(cache.get(ATP_ADP));
+            assertNull(cache.get(NAD_NADH));
+        }
+    }
+
+    @Test
+    public void tornRecordIsDiscarded() throws IOException {
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            cache.put(ATP_ADP, entry(4));
+            cache.put(NAD_NADH, entry(4));
+        }
+        long size = Files.size(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size - 5);
+        }
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            assertNotNull(cache.get(ATP_ADP));
+            assertNull(cache.get(NAD_NADH));
+            cache.put(NAD_NADH, entry(4));
+        }
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void otherFormatVersionIsRejected() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.writeInt(PersistentMCSCache.MAGIC);
+            raf.writeInt(PersistentMCSCache.FORMAT_VERSION + 1);
+        }
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            fail("a file of another version must not be opened");
+        } catch (IOException expected) {
+            assertEquals(8, Files.size(file));
+        }
+    }
+
+    @Test
+    public void renumberedMoleculesHaveOtherSignatures() throws InvalidSmilesException {
+        SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        /*
+         both are C,C,C,O in atom order
+         */
+        int isopropanol = PersistentMCSCache.signature(sp.parseSmiles("CC(C)O"));
+        assertNotEquals(isopropanol, PersistentMCSCache.signature(sp.parseSmiles("C(C)(C)O")));
+        assertEquals(isopropanol, PersistentMCSCache.signature(sp.parseSmiles("CC(C)O")));
+    }
+
+    @Test
+    public void entriesWrittenThisRunAreReadFromTheFile() throws IOException {
+        try (PersistentMCSCache first = PersistentMCSCache.open(file, 1 << 20);
+                PersistentMCSCache second = PersistentMCSCache.open(file, 1 << 20)) {
+            first.put(ATP_ADP, entry(4));
+            second.put(NAD_NADH, entry(6));
+            assertEquals(4, first.get(ATP_ADP).size());
+            assertEquals(3, first.get(ATP_ADP).getQueryIndex(3));
+            assertEquals(6, second.get(NAD_NADH).size());
+            assertNull(first.get(NAD_NADH));
+        }
+        try (PersistentMCSCache cache = PersistentMCSCache.open(file, 1 << 20)) {
+            assertEquals(2, cache.size());
+        }
+    }
+}
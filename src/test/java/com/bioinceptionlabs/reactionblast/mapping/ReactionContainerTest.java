@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReactionContainerTest {
+
+    @Test
+    public void ringCountsLastUntilTheMoleculeChanges() throws Exception {
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IAtomContainer benzene = smilesParser.parseSmiles("c1ccccc1");
+        ReactionContainer container = new ReactionContainer();
+        container.putEduct(0, benzene);
+        container.putProduct(0, benzene);
+        assertNull(container.getEductRingCount(0));
+
+        container.setEductRingCount(0, 1);
+        container.setProductRingCount(0, 1);
+        container.setEductModified(0, false);
+        assertEquals(Integer.valueOf(1), container.getEductRingCount(0));
+
+        container.setEductModified(0, true);
+        assertNull(container.getEductRingCount(0));
+        assertEquals(Integer.valueOf(1), container.getProductRingCount(0));
+
+        container.putProduct(0, smilesParser.parseSmiles("CCO"));
+        assertNull(container.getProductRingCount(0));
+    }
+}
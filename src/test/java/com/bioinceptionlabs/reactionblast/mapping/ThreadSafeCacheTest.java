@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadSafeCacheTest {
+
+    @Test
+    public void entryCountStaysWithinTheBound() {
+        ThreadSafeCache<String, String> cache = new ThreadSafeCache<>(100, (k, v) -> 1L);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("pair" + i, "mcs" + i);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(900, cache.getEvictionCount());
+    }
+
+    @Test
+    public void frequentPairsSurviveAScanOfOneOffPairs() {
+        ThreadSafeCache<String, String> cache = new ThreadSafeCache<>(100, (k, v) -> 1L);
+        for (int i = 0; i < 50; i++) {
+            cache.put("cofactor" + i, "mcs");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("cofactor" + i);
+            }
+        }
+        // a plain LRU would lose every cofactor to the 100 one-off pairs between two uses
+        for (int i = 0; i < 5_000; i++) {
+            cache.put("oneoff" + i, "mcs");
+            if (i % 100 == 0) {
+                for (int j = 0; j < 50; j++) {
+                    cache.get("cofactor" + j);
+                }
+            }
+        }
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey("cofactor" + i)) {
+                retained++;
+            }
+        }
+        assertEquals(50, retained);
+        assertTrue(cache.getRejectionCount() > 0);
+    }
+
+    @Test
+    public void sketchIsSizedByEntriesNotBytes() {
+        ThreadSafeCache<String, String> bytes = new ThreadSafeCache<>(32L << 20, (32L << 20) / 1024,
+                (k, v) -> 1024L);
+        assertTrue("sketch of a 32 MB bound: " + bytes.sketchBytes(), bytes.sketchBytes() <= 1 << 19);
+        ThreadSafeCache<String, String> huge = new ThreadSafeCache<>(1L << 40, (k, v) -> 1L);
+        assertTrue("sketch is capped: " + huge.sketchBytes(), huge.sketchBytes() <= 1 << 20);
+    }
+
+    @Test
+    public void weightBoundCountsEstimatedBytes() {
+        ThreadSafeCache<String, String> cache = new ThreadSafeCache<>(1_000, (k, v) -> (long) v.length());
+        cache.put("small", "x");
+        cache.put("huge", new String(new char[2_000]));
+        assertNull(cache.get("huge"));
+        for (int i = 0; i < 100; i++) {
+            cache.put("k" + i, new String(new char[50]));
+            assertTrue(cache.weight() <= 1_000);
+        }
+    }
+
+    @Test
+    public void countersTrackLookups() {
+        ThreadSafeCache<String, String> cache = new ThreadSafeCache<>(10, (k, v) -> 1L);
+        assertSame("a", cache.putIfAbsent("k", "a"));
+        assertSame("a", cache.putIfAbsent("k", "b"));
+        assertEquals("a", cache.get("k"));
+        assertNull(cache.get("missing"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void concurrentReadersAndWritersKeepTheBound() throws Exception {
+        ThreadSafeCache<String, String> cache = new ThreadSafeCache<>(200, (k, v) -> 1L);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                tasks.add(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        String key = "pair" + ((i * 31 + seed) % 500);
+                        String value = cache.get(key);
+                        if (value == null) {
+                            cache.put(key, "mcs" + key);
+                        } else {
+                            assertEquals("mcs" + key, value);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 200);
+        assertEquals(cache.size(), cache.weight());
+        for (String key : cache.keySet()) {
+            assertEquals("mcs" + key, cache.get(key));
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mapping.algorithm;
+
+import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import com.bioinceptionlabs.reactionblast.mapping.algorithm.ScoreTensor.Score;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScoreTensorTest {
+
+    @Test
+    public void holderMatricesAreViewsOfOneTensor() {
+        Holder holder = new Holder(2, 3);
+        holder.getCliqueMatrix().setValue(1, 2, 5.0);
+        holder.getEnergyMatrix().setValue(0, 1, 7.5);
+
+        assertEquals(5.0, holder.getScores().get(Score.CLIQUE, 1, 2), 0.0);
+        assertEquals(7.5, holder.getScores().get(Score.ENERGY, 0, 1), 0.0);
+        assertEquals(0.0, holder.getGraphSimilarityMatrix().getValue(1, 2), 0.0);
+        assertEquals(2, holder.getStereoMatrix().getRowDimension());
+        assertEquals(3, holder.getStereoMatrix().getColumnDimension());
+        assertEquals(-1.0, holder.getCliqueMatrix().getValue(2, 0), 0.0);
+        assertFalse(holder.getCliqueMatrix().setValue(0, 3, 1.0));
+        assertArrayEquals(new double[]{0.0, 0.0, 5.0}, holder.getCliqueMatrix().duplicate().getArrayCopy()[1], 0.0);
+    }
+
+    @Test
+    public void cloneCopiesAllScores() throws Exception {
+        Holder holder = new Holder(2, 2);
+        holder.getFPSimilarityMatrix().setValue(0, 0, 0.5);
+        holder.getCarbonOverlapMatrix().setValue(1, 1, 3.0);
+
+        Holder copy = (Holder) holder.clone();
+        holder.getFPSimilarityMatrix().setValue(0, 0, 0.9);
+        copy.getCarbonOverlapMatrix().setValue(1, 1, 4.0);
+
+        assertEquals(0.5, copy.getFPSimilarityMatrix().getValue(0, 0), 0.0);
+        assertEquals(3.0, holder.getCarbonOverlapMatrix().getValue(1, 1), 0.0);
+        EBIMatrix dense = copy.getCarbonOverlapMatrix().duplicate();
+        copy.getCarbonOverlapMatrix().setValue(1, 1, 0.0);
+        assertEquals(4.0, dense.getValue(1, 1), 0.0);
+    }
+
+    @Test
+    public void denseAlgebraRunsOnADenseCopy() {
+        Holder holder = new Holder(2, 3);
+        holder.getCliqueMatrix().setValue(0, 2, 4.0);
+        EBIMatrix transposed = holder.getCliqueMatrix().duplicate().transpose();
+        assertEquals(3, transposed.getRowDimension());
+        assertEquals(4.0, transposed.getValue(2, 0), 0.0);
+        assertTrue(holder.getCliqueMatrix().duplicate().is_element_max_in_column(0, 2));
+    }
+
+    @Test
+    public void maskedScansSkipTheReferenceAndUnflaggedCells() {
+        ScoreTensor scores = new ScoreTensor(3, 3);
+        double[][] clique = {{4, 9, 2}, {6, 0, 3}, {1, 5, 8}};
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                scores.set(Score.CLIQUE, i, j, clique[i][j]);
+            }
+        }
+        boolean[][] mask = {{true, false, true}, {true, true, true}, {false, true, true}};
+
+        assertEquals(2.0, scores.maxInRow(Score.CLIQUE, 0, mask[0], 0), 0.0);
+        assertEquals(6.0, scores.maxInColumn(Score.CLIQUE, 0, mask, 2), 0.0);
+        assertEquals(3.0, scores.minPositiveInRow(Score.CLIQUE, 1, mask[1], 0), 0.0);
+        assertEquals(5.0, scores.minPositiveInColumn(Score.CLIQUE, 1, mask, 0), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, scores.maxInRow(Score.CLIQUE, 0, new boolean[3], 0), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, scores.minPositiveInColumn(Score.CLIQUE, 0, new boolean[3][3], 0), 0.0);
+
+        scores.set(Score.ENERGY, 1, 2, 7.0);
+        assertEquals(7.0, scores.maxInColumn(Score.ENERGY, 2, mask, -1), 0.0);
+        assertEquals(7.0, scores.minPositiveInRow(Score.ENERGY, 1, mask[1], -1), 0.0);
+        assertEquals(9.0, scores.maxInRow(Score.CLIQUE, 0, new boolean[]{true, true, true, true}, -1), 0.0);
+
+        assertTrue(scores.anyAbove(Score.CLIQUE, 8.5));
+        assertFalse(scores.anyAbove(Score.CLIQUE, 9.0));
+        assertFalse(scores.anyAbove(Score.GRAPH_SIMILARITY, 0));
+    }
+}
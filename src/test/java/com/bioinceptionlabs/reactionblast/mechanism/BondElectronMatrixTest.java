@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd.
+ */
+package com.bioinceptionlabs.reactionblast.mechanism;
+
+import com.bioinceptionlabs.reactionblast.legacy.EBIMatrix;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BondElectronMatrixTest {
+
+    private final SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+    @Test
+    public void beMatrixHoldsBondOrdersFreeElectronsAndTheLonePairBorder() throws Exception {
+        BEMatrix be = beMatrix("CC=O");
+        assertEquals(4, be.getRowDimension());
+        assertEquals(4, be.getColumnDimension());
+        assertEquals(1.0, be.getValue(0, 1), 0.0);
+        assertEquals(2.0, be.getValue(1, 2), 0.0);
+        assertEquals(2.0, be.getValue(2, 1), 0.0);
+        assertEquals(0.0, be.getValue(0, 2), 0.0);
+        assertEquals(4.0, be.getValue(2, 2), 0.0);
+        assertEquals(100.0, be.getValue(3, 0), 0.0);
+        assertEquals(200.0, be.getValue(3, 3), 0.0);
+        assertEquals(-1.0, be.getValue(4, 0), 0.0);
+        assertArrayEquals(new int[]{1, 2, 3}, be.getNonZeroColumns(2));
+    }
+
+    @Test
+    public void pivotMatchesTheDenseMatrix() throws Exception {
+        BEMatrix be = beMatrix("OCC(N)=O");
+        EBIMatrix dense = be.duplicate();
+        be.pivot(0, 3);
+        dense.pivot(0, 3);
+        be.pivot(1, 4);
+        dense.pivot(1, 4);
+        for (int i = 0; i < dense.getRowDimension(); i++) {
+            for (int j = 0; j < dense.getColumnDimension(); j++) {
+                assertEquals(i + "," + j, dense.getValue(i, j), be.getValue(i, j), 0.0);
+            }
+        }
+        assertEquals("1", be.getAtom(3).getID());
+        assertEquals(2, be.getOrder(be.getAtom(1), be.getAtom(2)));
+    }
+
+    @Test
+    public void writesToEmptyCellsAreKept() throws Exception {
+        BEMatrix be = beMatrix("CCO");
+        be.setValue(0, 2, 3.0);
+        assertEquals(3.0, be.getValue(0, 2), 0.0);
+        assertArrayEquals(new int[]{0, 1, 2, 3}, be.getNonZeroColumns(0));
+        be.setValue(0, 2, 0.0);
+        assertArrayEquals(new int[]{0, 1, 3}, be.getNonZeroColumns(0));
+    }
+
+    @Test
+    public void writtenCellsStayInTheirRowAcrossPivots() throws Exception {
+        BEMatrix be = beMatrix("CCCO");
+        be.setValue(0, 3, 1.0);
+        be.setValue(3, 0, 1.0);
+        be.setValue(1, 3, 2.0);
+        assertArrayEquals(new int[]{0, 1, 3, 4}, be.getNonZeroColumns(0));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, be.getNonZeroColumns(1));
+        be.pivot(0, 2);
+        assertArrayEquals(new int[]{1, 2, 3, 4}, be.getNonZeroColumns(2));
+        assertEquals(1.0, be.getValue(2, 3), 0.0);
+        assertEquals(2.0, be.getValue(1, 3), 0.0);
+    }
+
+    @Test
+    public void denseAlgebraRunsOnADenseCopy() throws Exception {
+        BEMatrix be = beMatrix("CC=O");
+        EBIMatrix transposed = be.duplicate().transpose();
+        assertEquals(2.0, transposed.getValue(2, 1), 0.0);
+        assertEquals(100.0, transposed.getValue(0, 3), 0.0);
+        assertTrue(be.duplicate().is_element_max_in_row(3, 3));
+    }
+
+    @Test
+    public void rMatrixHoldsOnlyTheChangedCells() throws Exception {
+        IAtomContainerSet reactants = molecules("CCCC");
+        IAtomContainerSet products = molecules("CC=CC");
+        Map<IAtom, IAtom> mappings = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            mappings.put(reactants.getAtomContainer(0).getAtom(i), products.getAtomContainer(0).getAtom(i));
+        }
+        BEMatrix reactantBE = beMatrix(reactants, mappings);
+        BEMatrix productBE = beMatrix(products, mappings);
+        RMatrix r = new RMatrix(reactantBE, productBE,
+                new MechanismHelpers.AtomAtomMappingContainer(reactants, products, true));
+
+        assertEquals(1.0, r.getValue(1, 2), 0.0);
+        assertEquals(1.0, r.getValue(2, 1), 0.0);
+        assertEquals(-1.0, r.getValue(1, 1), 0.0);
+        assertEquals(0.0, r.getValue(0, 1), 0.0);
+        assertEquals(4, r.getAbsChanges());
+        assertArrayEquals(new int[]{1, 2}, r.getNonZeroColumns(1));
+        assertArrayEquals(new int[]{}, r.getNonZeroColumns(4));
+    }
+
+    private BEMatrix beMatrix(String smiles) throws Exception {
+        IAtomContainerSet molecules = molecules(smiles);
+        Map<IAtom, IAtom> mappings = new HashMap<>();
+        for (IAtom atom : molecules.getAtomContainer(0).atoms()) {
+            mappings.put(atom, atom);
+        }
+        return beMatrix(molecules, mappings);
+    }
+
+    private BEMatrix beMatrix(IAtomContainerSet molecules, Map<IAtom, IAtom> mappings) throws Exception {
+        List<IBond> bonds = new ArrayList<>();
+        for (IBond bond : molecules.getAtomContainer(0).bonds()) {
+            bonds.add(bond);
+        }
+        BEMatrix be = new BEMatrix(true, molecules, bonds, mappings);
+        be.setMatrixAtoms();
+        return be;
+    }
+
+    private IAtomContainerSet molecules(String smiles) throws Exception {
+        IAtomContainer molecule = smilesParser.parseSmiles(smiles);
+        int id = 1;
+        for (IAtom atom : molecule.atoms()) {
+            atom.setID(String.valueOf(id++));
+        }
+        IAtomContainerSet molecules = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainerSet.class);
+        molecules.addAtomContainer(molecule);
+        return molecules;
+    }
+}
@@ -0,0 +1,181 @@
+/* Copyright (c) 2018-2026. BioInception Labs Pvt. Ltd. */
+package com.bioinceptionlabs.reactionblast.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.MappedRXNFile;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecord;
+import com.bioinceptionlabs.reactionblast.tools.ChemicalFileIO.RXNRecordReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+public class RXNRecordReaderTest {
+
+    @Test
+    public void readErrorsAreNotTakenForTheEndOfInput() throws Exception {
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("disk gone");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (RXNRecordReader reader = new RXNRecordReader(failing)) {
+            reader.hasNext();
+            fail("expected an UncheckedIOException");
+        } catch (UncheckedIOException expected) {
+            assertEquals("disk gone", expected.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void readsRdfRecordsWithRegistryIds() throws Exception {
+        String rdf = "$RDFILE 1\n$DATM    01/01/26 00:00\n"
+                + "$RFMT $RIREG R00001\n" + rxn("R00001")
+                + "$DTYPE NOTE\n$DATUM first\n"
+                + "$RFMT $RIREG R00002\n" + rxn("R00002");
+
+        try (RXNRecordReader reader = new RXNRecordReader(new StringReader(rdf))) {
+            assertTrue(reader.hasNext());
+            RXNRecord first = reader.next();
+            assertEquals("R00001", first.getId());
+            assertEquals(1, first.getIndex());
+            assertTrue(first.getRxnBlock().startsWith("$RXN"));
+            assertFalse(first.getRxnBlock().contains("$DTYPE"));
+
+            RXNRecord second = reader.next();
+            assertEquals("R00002", second.getId());
+            assertEquals(2, second.getIndex());
+            assertFalse(reader.hasNext());
+
+            IReaction reaction = first.toReaction(SilentChemObjectBuilder.getInstance());
+            assertEquals("R00001", reaction.getID());
+            assertTrue(reaction.getReactantCount() > 0);
+            assertTrue(reaction.getProductCount() > 0);
+        }
+    }
+
+    @Test
+    public void emptyRxnBlockOfAFailedRecordReadsAsAnEmptyReaction() throws Exception {
+        String rdf = "$RDFILE 1\n$DATM    01/01/26 00:00\n"
+                + "$RFMT $RIREG bad\n$RXN\nbad\n  RDT\n\n  0  0\n"
+                + "$DTYPE ERROR\n$DATUM Not a valid reaction SMILES\n"
+                + "$RFMT $RIREG R00001\n" + rxn("R00001");
+        try (RXNRecordReader reader = new RXNRecordReader(new StringReader(rdf))) {
+            IReaction failed = reader.next().toReaction(SilentChemObjectBuilder.getInstance());
+            assertEquals("bad", failed.getID());
+            assertEquals(0, failed.getReactantCount());
+            assertEquals(0, failed.getProductCount());
+            assertEquals("R00001", reader.next().getId());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void readsConcatenatedRxnBlocks() throws Exception {
+        String multi = rxn("R00001") + "$$$$\n" + rxn("R00002");
+        int count = 0;
+        try (RXNRecordReader reader = new RXNRecordReader(new StringReader(multi))) {
+            while (reader.hasNext()) {
+                RXNRecord record = reader.next();
+                record.toReaction(SilentChemObjectBuilder.getInstance());
+                count++;
+            }
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void mappedFileMatchesTheStreamingReader() throws Exception {
+        String rdf = "$RDFILE 1\n$DATM    01/01/26 00:00\n"
+                + "$RFMT $RIREG R00001\n" + rxn("R00001")
+                + "$DTYPE NOTE\n$DATUM first\n"
+                + "$RFMT\n" + rxn("R00002")
+                + "$$$$\n" + rxn("R00004");
+        for (String text : new String[]{rdf, rdf.replace("\n", "\r\n")}) {
+            List<RXNRecord> expected = new ArrayList<>();
+            try (RXNRecordReader reader = new RXNRecordReader(new StringReader(text))) {
+                reader.forEachRemaining(expected::add);
+            }
+            Path file = Files.createTempFile("records", ".rdf");
+            try {
+                Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+                MappedRXNFile mapped = MappedRXNFile.open(file);
+                assertEquals(3, mapped.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    RXNRecord record = mapped.get(i);
+                    assertEquals(expected.get(i).getIndex(), record.getIndex());
+                    assertEquals(expected.get(i).getId(), record.getId());
+                    assertEquals(expected.get(i).getRxnBlock(), record.getRxnBlock());
+                }
+                assertEquals("R00001", mapped.get(0).getId());
+                assertTrue(mapped.get(2).toReaction(SilentChemObjectBuilder.getInstance()).getReactantCount() > 0);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileSplitsIntoDisjointRecordRanges() throws Exception {
+        StringBuilder multi = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            multi.append(rxn(i % 2 == 0 ? "R00001" : "R00002"));
+        }
+        Path file = Files.createTempFile("records", ".rxn");
+        try {
+            Files.write(file, multi.toString().getBytes(StandardCharsets.UTF_8));
+            MappedRXNFile mapped = MappedRXNFile.open(file);
+            Spliterator<RXNRecord> rest = mapped.spliterator();
+            Spliterator<RXNRecord> prefix = rest.trySplit();
+            assertEquals(10, prefix.estimateSize());
+            assertEquals(10, rest.estimateSize());
+            List<Integer> indices = new ArrayList<>();
+            prefix.forEachRemaining(record -> indices.add(record.getIndex()));
+            assertEquals(Integer.valueOf(10), indices.get(indices.size() - 1));
+
+            List<Integer> parallel = mapped.stream(true)
+                    .map(RXNRecord::getIndex)
+                    .collect(Collectors.toList());
+            assertEquals(20, parallel.size());
+            for (int i = 0; i < parallel.size(); i++) {
+                assertEquals(Integer.valueOf(i + 1), parallel.get(i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private String rxn(String keggId) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/rxn/kegg/" + keggId + ".rxn")) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            String text = buffer.toString(StandardCharsets.UTF_8.name()).replace("\r\n", "\n");
+            return text.endsWith("\n") ? text : text + "\n";
+        }
+    }
+}
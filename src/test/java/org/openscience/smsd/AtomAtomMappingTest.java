@@ -0,0 +1,102 @@
+package org.openscience.smsd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+public class AtomAtomMappingTest {
+
+    private final SmilesParser smilesParser
+            = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+    @Test
+    public void indexPairsFollowQueryOrder() throws Exception {
+        IAtomContainer query = smilesParser.parseSmiles("CCO");
+        IAtomContainer target = smilesParser.parseSmiles("OCCC");
+
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(query.getAtom(2), target.getAtom(0));
+        mapping.put(0, 2);
+        mapping.put(1, 1);
+        mapping.put(1, 3);
+
+        assertEquals(3, mapping.getCount());
+        assertArrayEquals(new int[]{0, 1, 2}, mapping.getQueryIndices());
+        assertArrayEquals(new int[]{2, 3, 0}, mapping.getTargetIndices());
+        assertEquals(3, mapping.getMappedTargetIndex(1));
+        assertEquals(-1, mapping.getMappedTargetIndex(7));
+        assertEquals(Map.of(0, 2, 1, 3, 2, 0), mapping.getMappingsByIndex());
+        assertSame(target.getAtom(3), mapping.getMappingsByAtoms().get(query.getAtom(1)));
+        assertEquals(query.getAtom(0), mapping.getMappingsByAtoms().keySet().iterator().next());
+        assertEquals("0", query.getAtom(0).getID());
+    }
+
+    @Test
+    public void viewsAreKeptUntilTheMappingChanges() throws Exception {
+        IAtomContainer query = smilesParser.parseSmiles("CC");
+        IAtomContainer target = smilesParser.parseSmiles("CC");
+
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(0, 0);
+        Map<IAtom, IAtom> atoms = mapping.getMappingsByAtoms();
+        Map<Integer, Integer> indices = mapping.getMappingsByIndex();
+        assertSame(atoms, mapping.getMappingsByAtoms());
+        assertSame(indices, mapping.getMappingsByIndex());
+
+        mapping.put(1, 1);
+        assertNotSame(atoms, mapping.getMappingsByAtoms());
+        assertEquals(1, atoms.size());
+        assertEquals(2, mapping.getMappingsByAtoms().size());
+        assertEquals(2, mapping.getMappingsByIndex().size());
+
+        mapping.clear();
+        assertTrue(mapping.isEmpty());
+        assertTrue(mapping.getMappingsByAtoms().isEmpty());
+    }
+
+    @Test
+    public void outOfRangePairsAreNotStored() throws Exception {
+        IAtomContainer query = smilesParser.parseSmiles("CC");
+        IAtomContainer target = smilesParser.parseSmiles("C");
+
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(0, 1);
+        mapping.put(2, 0);
+        mapping.put(query.getAtom(0), smilesParser.parseSmiles("N").getAtom(0));
+
+        assertTrue(mapping.isEmpty());
+    }
+
+    @Test
+    public void compactCopyKeepsOnlyTheIndexPairs() throws Exception {
+        IAtomContainer query = smilesParser.parseSmiles("CCO");
+        IAtomContainer target = smilesParser.parseSmiles("OCC");
+
+        AtomAtomMapping mapping = new AtomAtomMapping(query, target);
+        mapping.put(0, 2);
+        mapping.put(2, 0);
+        AtomAtomMapping compact = mapping.compact();
+
+        assertEquals(2, compact.getCount());
+        assertArrayEquals(mapping.getQueryIndices(), compact.getQueryIndices());
+        assertArrayEquals(mapping.getTargetIndices(), compact.getTargetIndices());
+        assertEquals(mapping.getMappingsByIndex(), compact.getMappingsByIndex());
+        assertTrue(compact.getMappingsByAtoms().isEmpty());
+
+        AtomAtomMapping replayed = new AtomAtomMapping(query, target);
+        for (int i = 0; i < compact.getCount(); i++) {
+            replayed.put(compact.getQueryIndices()[i], compact.getTargetIndices()[i]);
+        }
+        assertEquals(mapping, replayed);
+        assertEquals(mapping.hashCode(), replayed.hashCode());
+    }
+}